@@ -0,0 +1,198 @@
+package com.ojcoleman.ahni.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.jgapcustomised.Chromosome;
+import org.jgapcustomised.ChromosomeMaterial;
+import org.jgapcustomised.Genotype;
+
+import com.anji.integration.ActivatorTranscriber;
+import com.anji.integration.Transcriber;
+import com.anji.neat.AddConnectionMutationOperator;
+import com.anji.neat.AddNeuronMutationOperator;
+import com.anji.neat.NEATGenotype;
+import com.anji.neat.NeatConfiguration;
+import com.anji.neat.NeatIdMap;
+import com.ojcoleman.ahni.hyperneat.HyperNEATConfiguration;
+import com.ojcoleman.ahni.hyperneat.HyperNEATEvolver;
+import com.ojcoleman.ahni.hyperneat.Properties;
+
+/**
+ * Sets up the objects required by the benchmarks from one of the experiment configurations in the
+ * <code>properties</code> directory: the configuration, evolver, fitness function and transcriber are created from the
+ * properties file as for a real run (with all file output disabled), and a population of the given size is created.
+ * The genomes in the population are grown from the initial topology defined by the configuration by applying add
+ * neuron and add connection mutations until each has (at least) the given number of extra genes, and are given random
+ * fitness and performance values.
+ * <p>
+ * The directory containing the properties files may be set with the system property
+ * {@value #PROPERTIES_DIR_PROPERTY}, by default it is <code>properties</code> in the current working directory.
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class BenchmarkContext {
+	/**
+	 * System property specifying the directory containing the experiment properties files.
+	 */
+	public static final String PROPERTIES_DIR_PROPERTY = "ahni.benchmark.properties.dir";
+
+	/**
+	 * Seed used for all random number generation, so that each benchmark is given the same inputs each time it is run.
+	 */
+	public static final long SEED = 1;
+
+	private static final int MAX_GROWTH_ROUNDS = 10000;
+
+	private final Properties props;
+	private final HyperNEATEvolver evolver;
+	private final HyperNEATConfiguration config;
+	private final Genotype genotype;
+	private final Random random;
+
+	/**
+	 * @param configFile The name of the properties file in the properties directory, e.g. "retina-problem-hyperneat.properties".
+	 * @param populationSize The population size, overriding that specified by the configuration.
+	 * @param extraGenes The minimum number of genes to add to each genome beyond the initial topology.
+	 */
+	public BenchmarkContext(String configFile, int populationSize, int extraGenes) throws Exception {
+		this(configFile, populationSize, extraGenes, "");
+	}
+
+	/**
+	 * @param configFile The name of the properties file in the properties directory, e.g. "retina-problem-hyperneat.properties".
+	 * @param populationSize The population size, overriding that specified by the configuration.
+	 * @param extraGenes The minimum number of genes to add to each genome beyond the initial topology.
+	 * @param overrides Additional properties to override those in the properties file, in the form
+	 *            "key1=value1;key2=value2". May be empty.
+	 */
+	public BenchmarkContext(String configFile, int populationSize, int extraGenes, String overrides) throws Exception {
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		String dir = System.getProperty(PROPERTIES_DIR_PROPERTY, "properties");
+		props = new Properties();
+		props.loadFromResourceWithoutLogging(dir + File.separator + configFile);
+		props.setProperty(NeatConfiguration.POPUL_SIZE_KEY, "" + populationSize);
+		props.setProperty("random.seed", "" + SEED);
+		props.setProperty(HyperNEATConfiguration.NUM_RUNS_KEY, "1");
+		props.setProperty("run.id", "0");
+		props.setProperty(HyperNEATEvolver.HIBERNATE_ENABLE_KEY, "false");
+		props.setProperty(HyperNEATEvolver.PERSIST_ENABLE_KEY, "false");
+		props.setProperty(HyperNEATEvolver.LOGGING_ENABLE_KEY, "false");
+		props.setProperty(HyperNEATEvolver.PRESENTATION_GENERATE_KEY, "false");
+		props.remove(HyperNEATConfiguration.OUTPUT_DIR_KEY);
+		props.remove(NeatIdMap.NEAT_ID_MAP_FILE_KEY);
+		props.remove(NeatConfiguration.ID_FACTORY_KEY);
+		for (String override : overrides.split(";")) {
+			int split = override.indexOf('=');
+			if (split > 0) {
+				props.setProperty(override.substring(0, split).trim(), override.substring(split + 1).trim());
+			}
+		}
+
+		evolver = (HyperNEATEvolver) props.singletonObjectProperty(HyperNEATEvolver.class);
+		config = evolver.getConfig();
+		random = new Random(SEED);
+
+		AddNeuronMutationOperator addNeuron = new AddNeuronMutationOperator(0.1);
+		AddConnectionMutationOperator addConnection = new AddConnectionMutationOperator(0.1, config.getRecurrencyPolicy());
+		int objectiveCount = config.getObjectiveCount();
+		List<Chromosome> population = new ArrayList<Chromosome>(populationSize);
+		for (int i = 0; i < populationSize; i++) {
+			ChromosomeMaterial material = ChromosomeMaterial.randomInitialChromosomeMaterial(config);
+			int targetSize = material.size() + extraGenes;
+			for (int round = 0; material.size() < targetSize && round < MAX_GROWTH_ROUNDS; round++) {
+				if (round % 2 == 0) {
+					addConnection.mutate(config, material);
+				} else {
+					addNeuron.mutate(config, material);
+				}
+			}
+			Chromosome c = new Chromosome(material, config.nextChromosomeId(), objectiveCount, config.getNoveltyObjectiveCount());
+			for (int o = 0; o < objectiveCount; o++) {
+				c.setFitnessValue(random.nextDouble(), o);
+			}
+			c.setFitnessValue(random.nextDouble());
+			c.setPerformanceValue(random.nextDouble());
+			population.add(c);
+		}
+		genotype = new NEATGenotype(props, config, population);
+	}
+
+	/**
+	 * @return The properties, with the overrides applied.
+	 */
+	public Properties getProperties() {
+		return props;
+	}
+
+	/**
+	 * @return The evolver created from the properties. It is not run, but provides the context some components
+	 *         require.
+	 */
+	public HyperNEATEvolver getEvolver() {
+		return evolver;
+	}
+
+	/**
+	 * @return The configuration created from the properties.
+	 */
+	public HyperNEATConfiguration getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return The Genotype containing the population.
+	 */
+	public Genotype getGenotype() {
+		return genotype;
+	}
+
+	/**
+	 * @return The population.
+	 */
+	public List<Chromosome> getPopulation() {
+		return genotype.getChromosomes();
+	}
+
+	/**
+	 * @return The transcriber specified by the configuration.
+	 */
+	public Transcriber getTranscriber() {
+		return (Transcriber) props.singletonObjectProperty(ActivatorTranscriber.TRANSCRIBER_KEY);
+	}
+
+	/**
+	 * @return A seeded random number generator for generating benchmark inputs.
+	 */
+	public Random getRandom() {
+		return random;
+	}
+
+	/**
+	 * @return The mean number of genes in the genomes in the population.
+	 */
+	public double getMeanGenomeSize() {
+		double total = 0;
+		for (Chromosome c : getPopulation()) {
+			total += c.size();
+		}
+		return total / getPopulation().size();
+	}
+
+	/**
+	 * @return An array of the given size of random values in the range [0, 1).
+	 */
+	public double[] randomInput(int size) {
+		double[] input = new double[size];
+		for (int i = 0; i < size; i++) {
+			input[i] = random.nextDouble();
+		}
+		return input;
+	}
+}
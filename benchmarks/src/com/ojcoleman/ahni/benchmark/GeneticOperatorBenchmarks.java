@@ -0,0 +1,127 @@
+package com.ojcoleman.ahni.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jgapcustomised.Chromosome;
+import org.jgapcustomised.ChromosomeMaterial;
+import org.jgapcustomised.Configuration;
+import org.jgapcustomised.SpeciationParms;
+import org.jgapcustomised.Species;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.anji.neat.NeatCrossoverReproductionOperator;
+import com.anji.neat.SpeciationStrategyKMeans;
+import com.anji.neat.WeightMutationOperator;
+
+/**
+ * Benchmarks for the genetic operators applied to the population each generation: the compatibility distance
+ * calculation, speciation, crossover and weight mutation.
+ *
+ * @author Oliver Coleman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeneticOperatorBenchmarks {
+	/**
+	 * The experiment configuration in the properties directory.
+	 */
+	@Param({ "double-pole-balancing.properties", "or3.properties" })
+	public String config;
+
+	/**
+	 * The population size.
+	 */
+	@Param({ "150", "500" })
+	public int populationSize;
+
+	/**
+	 * The number of genes added to each genome beyond the initial topology defined by the configuration.
+	 */
+	@Param({ "0", "50" })
+	public int extraGenes;
+
+	private BenchmarkContext context;
+	private Configuration jgapConfig;
+	private List<Chromosome> population;
+	private SpeciationParms speciationParms;
+	private SpeciationStrategyKMeans speciationStrategy;
+	private BenchmarkCrossoverOperator crossoverOperator;
+	private WeightMutationOperator weightMutationOperator;
+	private int next;
+
+	@Setup
+	public void setup() throws Exception {
+		context = new BenchmarkContext(config, populationSize, extraGenes);
+		jgapConfig = context.getConfig();
+		population = new ArrayList<Chromosome>(context.getPopulation());
+		speciationParms = jgapConfig.getSpeciationParms();
+		speciationStrategy = (SpeciationStrategyKMeans) context.getProperties().singletonObjectProperty(SpeciationStrategyKMeans.class);
+		crossoverOperator = new BenchmarkCrossoverOperator();
+		weightMutationOperator = (WeightMutationOperator) context.getProperties().singletonObjectProperty(WeightMutationOperator.class);
+	}
+
+	// Cycle through the population so that each invocation operates on different genomes.
+	private Chromosome nextChromosome() {
+		next = (next + 1) % population.size();
+		return population.get(next);
+	}
+
+	/**
+	 * The compatibility distance between two genomes.
+	 */
+	@Benchmark
+	public double distance() {
+		ChromosomeMaterial a = nextChromosome().getMaterial();
+		ChromosomeMaterial b = nextChromosome().getMaterial();
+		return a.distance(b, speciationParms);
+	}
+
+	/**
+	 * Speciation of the entire population from scratch, as performed when the speciation target changes.
+	 */
+	@Benchmark
+	public List<Species> speciate() {
+		List<Species> species = new ArrayList<Species>();
+		speciationStrategy.speciate(population, species, context.getGenotype());
+		return species;
+	}
+
+	/**
+	 * Crossover of two genomes.
+	 */
+	@Benchmark
+	public ChromosomeMaterial crossover() {
+		return crossoverOperator.reproduce(jgapConfig, nextChromosome(), nextChromosome());
+	}
+
+	/**
+	 * Weight mutation of a copy of a genome.
+	 */
+	@Benchmark
+	public ChromosomeMaterial weightMutation() throws Exception {
+		ChromosomeMaterial material = nextChromosome().cloneMaterial();
+		weightMutationOperator.mutate(jgapConfig, material);
+		return material;
+	}
+
+	/**
+	 * Exposes the crossover of two given parents, bypassing the selection of parents from the species performed by
+	 * {@link org.jgapcustomised.CrossoverReproductionOperator}.
+	 */
+	private static class BenchmarkCrossoverOperator extends NeatCrossoverReproductionOperator {
+		@Override
+		public ChromosomeMaterial reproduce(Configuration config, Chromosome parent1, Chromosome parent2) {
+			return super.reproduce(config, parent1, parent2);
+		}
+	}
+}
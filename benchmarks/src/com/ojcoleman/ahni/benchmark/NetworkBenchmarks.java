@@ -0,0 +1,160 @@
+package com.ojcoleman.ahni.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jgapcustomised.Chromosome;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.anji.integration.Activator;
+import com.anji.integration.Transcriber;
+import com.ojcoleman.ahni.nn.BainNN;
+import com.ojcoleman.ahni.nn.GridNet;
+import com.ojcoleman.ahni.transcriber.HyperNEATTranscriberBain;
+import com.ojcoleman.ahni.transcriber.HyperNEATTranscriberGridNet;
+
+/**
+ * Benchmarks for the activation of the neural network implementations used to evaluate individuals: AnjiNet (NEAT),
+ * GridNet and BainNN (HyperNEAT substrates). Each state transcribes a number of networks from a population generated
+ * from an experiment configuration, and the benchmarks cycle through them.
+ *
+ * @author Oliver Coleman
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NetworkBenchmarks {
+	/**
+	 * The number of networks to transcribe and cycle through.
+	 */
+	public static final int NETWORK_COUNT = 32;
+
+	@State(Scope.Thread)
+	public static class AnjiNetState {
+		@Param({ "double-pole-balancing.properties" })
+		public String config;
+
+		@Param({ "0", "50", "200" })
+		public int extraGenes;
+
+		Activator[] networks;
+		double[] input;
+		int next;
+
+		@Setup
+		public void setup() throws Exception {
+			BenchmarkContext context = new BenchmarkContext(config, NETWORK_COUNT, extraGenes);
+			Transcriber transcriber = context.getTranscriber();
+			List<Chromosome> population = context.getPopulation();
+			networks = new Activator[population.size()];
+			for (int i = 0; i < networks.length; i++) {
+				networks[i] = transcriber.transcribe(population.get(i));
+			}
+			input = context.randomInput(networks[0].getInputCount());
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class GridNetState {
+		@Param({ "or3.properties" })
+		public String config;
+
+		@Param({ "0", "50" })
+		public int extraGenes;
+
+		GridNet[] networks;
+		int next;
+
+		@Setup
+		public void setup() throws Exception {
+			BenchmarkContext context = new BenchmarkContext(config, NETWORK_COUNT, extraGenes);
+			HyperNEATTranscriberGridNet transcriber = (HyperNEATTranscriberGridNet) context.getTranscriber();
+			List<Chromosome> population = context.getPopulation();
+			networks = new GridNet[population.size()];
+			for (int i = 0; i < networks.length; i++) {
+				networks[i] = transcriber.transcribe(population.get(i));
+				int[] inputDim = networks[i].getInputDimension();
+				double[][] inputs = new double[inputDim[0]][];
+				for (int y = 0; y < inputs.length; y++) {
+					inputs[y] = context.randomInput(inputDim[1]);
+				}
+				networks[i].setInputs(inputs);
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class BainNNState {
+		@Param({ "retina-problem-hyperneat.properties" })
+		public String config;
+
+		/**
+		 * Overrides for the configuration. The retina problem configuration specifies a reversed z range, which is not
+		 * valid for {@link com.ojcoleman.ahni.util.Range}.
+		 */
+		@Param({ "ann.hyperneat.range.z=0,1" })
+		public String overrides;
+
+		@Param({ "0", "50" })
+		public int extraGenes;
+
+		/**
+		 * The length of the input sequence given to {@link BainNN#nextSequence(double[][])}.
+		 */
+		@Param({ "16" })
+		public int sequenceLength;
+
+		BainNN[] networks;
+		double[][] sequence;
+		int next;
+
+		@Setup
+		public void setup() throws Exception {
+			BenchmarkContext context = new BenchmarkContext(config, NETWORK_COUNT, extraGenes, overrides);
+			HyperNEATTranscriberBain transcriber = (HyperNEATTranscriberBain) context.getTranscriber();
+			List<Chromosome> population = context.getPopulation();
+			networks = new BainNN[population.size()];
+			for (int i = 0; i < networks.length; i++) {
+				networks[i] = transcriber.transcribe(population.get(i));
+			}
+			sequence = new double[sequenceLength][];
+			for (int s = 0; s < sequenceLength; s++) {
+				sequence[s] = context.randomInput(networks[0].getInputCount());
+			}
+		}
+	}
+
+	/**
+	 * A single activation of an AnjiNet.
+	 */
+	@Benchmark
+	public double[] anjiNetNext(AnjiNetState state) {
+		state.next = (state.next + 1) % state.networks.length;
+		return state.networks[state.next].next(state.input);
+	}
+
+	/**
+	 * A single step of a GridNet with a fixed input layer, via {@link GridNet#step()} or {@link GridNet#stepFF()} for
+	 * recurrent and feed-forward networks respectively.
+	 */
+	@Benchmark
+	public Object gridNetStep(GridNetState state) {
+		state.next = (state.next + 1) % state.networks.length;
+		return state.networks[state.next].next();
+	}
+
+	/**
+	 * Activation of a BainNN with a sequence of inputs.
+	 */
+	@Benchmark
+	public double[][] bainNNNextSequence(BainNNState state) {
+		state.next = (state.next + 1) % state.networks.length;
+		return state.networks[state.next].nextSequence(state.sequence);
+	}
+}
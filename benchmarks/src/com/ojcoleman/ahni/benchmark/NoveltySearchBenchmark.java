@@ -0,0 +1,105 @@
+package com.ojcoleman.ahni.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.ojcoleman.ahni.evaluation.novelty.Behaviour;
+import com.ojcoleman.ahni.evaluation.novelty.NoveltySearch;
+import com.ojcoleman.ahni.evaluation.novelty.RealVectorBehaviour;
+import com.ojcoleman.ahni.hyperneat.Properties;
+
+/**
+ * Benchmark for {@link NoveltySearch#testNovelty(Behaviour)} with an archive of a given size. Behaviours are random
+ * real-valued vectors. The archive is filled before measurement by evaluating successive random populations with the
+ * probabilistic archive addition method, with every tested behaviour being added. During measurement the tested
+ * behaviours are queued for addition but {@link NoveltySearch#finishedEvaluation()} is not called, so the archive
+ * remains the same size.
+ *
+ * @author Oliver Coleman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NoveltySearchBenchmark {
+	/**
+	 * Probability of adding a tested behaviour to the archive.
+	 */
+	public static final double ADD_PROBABILITY = 1;
+
+	@Param({ "double-pole-balancing.properties" })
+	public String config;
+
+	@Param({ "150", "500" })
+	public int populationSize;
+
+	@Param({ "1000", "5000" })
+	public int archiveSize;
+
+	/**
+	 * The number of dimensions of the behaviour vectors.
+	 */
+	@Param({ "8", "64" })
+	public int behaviourDimensions;
+
+	/**
+	 * The index type, see {@link NoveltySearch#INDEX}.
+	 */
+	@Param({ "LINEAR", "AUTO" })
+	public String index;
+
+	private BenchmarkContext context;
+	private NoveltySearch noveltySearch;
+	private List<Behaviour> population;
+	private int next;
+
+	@Setup
+	public void setup() throws Exception {
+		context = new BenchmarkContext(config, populationSize, 0);
+		Properties props = context.getProperties();
+		props.remove(NoveltySearch.ARCHIVE_THRESHOLD);
+		props.setProperty(NoveltySearch.ARCHIVE_ADD_PROB, "" + ADD_PROBABILITY);
+		props.setProperty(NoveltySearch.INDEX, index);
+		noveltySearch = new NoveltySearch();
+		noveltySearch.init(props);
+
+		while (noveltySearch.getArchiveSize() < archiveSize) {
+			List<Behaviour> generation = randomBehaviours();
+			noveltySearch.setCurrentPopulation(generation);
+			for (Behaviour b : generation) {
+				noveltySearch.testNovelty(b);
+			}
+			noveltySearch.finishedEvaluation();
+		}
+
+		population = randomBehaviours();
+		noveltySearch.setCurrentPopulation(population);
+	}
+
+	private List<Behaviour> randomBehaviours() {
+		List<Behaviour> behaviours = new ArrayList<Behaviour>(populationSize);
+		for (int i = 0; i < populationSize; i++) {
+			behaviours.add(new RealVectorBehaviour(new ArrayRealVector(context.randomInput(behaviourDimensions))));
+		}
+		return behaviours;
+	}
+
+	/**
+	 * The novelty of a member of the current population against the current population and the archive.
+	 */
+	@Benchmark
+	public double testNovelty() {
+		next = (next + 1) % population.size();
+		return noveltySearch.testNovelty(population.get(next));
+	}
+}
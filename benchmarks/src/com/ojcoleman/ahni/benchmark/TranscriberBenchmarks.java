@@ -0,0 +1,108 @@
+package com.ojcoleman.ahni.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jgapcustomised.Chromosome;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.anji.integration.TranscriberException;
+import com.ojcoleman.ahni.nn.BainNN;
+import com.ojcoleman.ahni.transcriber.ESHyperNEATTranscriberBain;
+import com.ojcoleman.ahni.transcriber.HyperNEATTranscriberBain;
+
+/**
+ * Benchmarks for the transcription of CPPN genomes to HyperNEAT and ES-HyperNEAT substrate networks.
+ *
+ * @author Oliver Coleman
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TranscriberBenchmarks {
+	/**
+	 * The number of genomes to cycle through.
+	 */
+	public static final int GENOME_COUNT = 32;
+
+	@State(Scope.Thread)
+	public static class HyperNEATState {
+		@Param({ "retina-problem-hyperneat.properties" })
+		public String config;
+
+		/**
+		 * Overrides for the configuration. The retina problem configuration specifies a reversed z range, which is not
+		 * valid for {@link com.ojcoleman.ahni.util.Range}.
+		 */
+		@Param({ "ann.hyperneat.range.z=0,1" })
+		public String overrides;
+
+		@Param({ "0", "50" })
+		public int extraGenes;
+
+		HyperNEATTranscriberBain transcriber;
+		List<Chromosome> population;
+		BainNN substrate;
+		int next;
+
+		@Setup
+		public void setup() throws Exception {
+			BenchmarkContext context = new BenchmarkContext(config, GENOME_COUNT, extraGenes, overrides);
+			transcriber = (HyperNEATTranscriberBain) context.getTranscriber();
+			population = context.getPopulation();
+			substrate = transcriber.transcribe(population.get(0));
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ESHyperNEATState {
+		@Param({ "retina-problem-eshyperneat.properties" })
+		public String config;
+
+		/**
+		 * Overrides for the configuration. The retina problem fitness function requires the dimensions of the input
+		 * and output layers to be specified.
+		 */
+		@Param({ "ann.hyperneat.width=4,2;ann.hyperneat.height=2,1" })
+		public String overrides;
+
+		@Param({ "0", "50" })
+		public int extraGenes;
+
+		ESHyperNEATTranscriberBain transcriber;
+		List<Chromosome> population;
+		int next;
+
+		@Setup
+		public void setup() throws Exception {
+			BenchmarkContext context = new BenchmarkContext(config, GENOME_COUNT, extraGenes, overrides);
+			transcriber = (ESHyperNEATTranscriberBain) context.getTranscriber();
+			population = context.getPopulation();
+		}
+	}
+
+	/**
+	 * Transcription of a CPPN to a HyperNEAT substrate, reusing an existing substrate as is done during evaluation.
+	 */
+	@Benchmark
+	public BainNN hyperNEATTranscribe(HyperNEATState state) throws TranscriberException {
+		state.next = (state.next + 1) % state.population.size();
+		state.substrate = state.transcriber.transcribe(state.population.get(state.next), state.substrate);
+		return state.substrate;
+	}
+
+	/**
+	 * Generation of an ES-HyperNEAT substrate from a CPPN.
+	 */
+	@Benchmark
+	public BainNN esHyperNEATGenerateSubstrate(ESHyperNEATState state) throws TranscriberException {
+		state.next = (state.next + 1) % state.population.size();
+		return state.transcriber.generateSubstrate(state.population.get(state.next));
+	}
+}
@@ -78,6 +78,18 @@ public class AnjiActivator implements Activator {
 	}
 
 	public double[] next(double[] newInputValues) {
+		return next(newInputValues, new double[outputDimension]);
+	}
+
+	/**
+	 * Activate the network with the given input values and write the output values to the given array.
+	 * 
+	 * @param newInputValues The input values, or null to reuse the previous input values.
+	 * @param result The array to write the output values to, its length must be at least the number of outputs. Only
+	 *            the first {@link #getOutputCount()} elements are written.
+	 * @return The given result array.
+	 */
+	public double[] next(double[] newInputValues, double[] result) {
 		assert !Double.isNaN(ArrayUtil.sum(newInputValues)) : "input array contains NaN: " + Arrays.toString(newInputValues);
 		
 		if (newInputValues != null)
@@ -95,7 +107,6 @@ public class AnjiActivator implements Activator {
 
 		// last step, get results
 		net.step();
-		double[] result = new double[outputDimension];
 		for (int idx = 0; idx < outputDimension; ++idx) {
 			Neuron n = net.getOutputNeuron(idx);
 			result[idx] = n.getValue();
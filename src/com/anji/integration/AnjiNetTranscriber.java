@@ -40,6 +40,7 @@ import com.anji.neat.NeuronAllele;
 import com.anji.neat.NeuronType;
 import com.anji.nn.AnjiNet;
 import com.anji.nn.CacheNeuronConnection;
+import com.anji.nn.CompiledAnjiNet;
 import com.anji.nn.Neuron;
 import com.anji.nn.NeuronConnection;
 import com.anji.nn.RecurrencyPolicy;
@@ -55,14 +56,22 @@ import com.anji.util.Properties;
  * @see com.anji.nn.AnjiNet
  * @author Philip Tucker
  */
-public class AnjiNetTranscriber implements Transcriber<AnjiActivator>, Configurable {
+public class AnjiNetTranscriber implements Transcriber<Activator>, Configurable {
 	/**
 	 * # recurrent cycles properties key
 	 */
 	public final static String RECURRENT_CYCLES_KEY = "recurrent.cycles";
 
+	/**
+	 * If true then networks are compiled into a {@link com.anji.nn.CompiledAnjiNet} and a {@link CompiledAnjiActivator}
+	 * is returned by the transcribe methods, otherwise an {@link AnjiActivator} is returned. Default is false.
+	 */
+	public final static String COMPILED_KEY = "ann.anji.compiled";
+
 	private int recurrentCycles;
 
+	private boolean compiled;
+
 	private final static Logger logger = Logger.getLogger(AnjiNetTranscriber.class);
 
 	private RecurrencyPolicy recurrencyPolicy = RecurrencyPolicy.BEST_GUESS;
@@ -89,21 +98,30 @@ public class AnjiNetTranscriber implements Transcriber<AnjiActivator>, Configura
 	public void init(Properties props) {
 		recurrencyPolicy = RecurrencyPolicy.load(props);
 		recurrentCycles = props.getIntProperty(RECURRENT_CYCLES_KEY, 1);
+		compiled = props.getBooleanProperty(COMPILED_KEY, false);
 	}
 
 	/**
 	 * @see Transcriber#transcribe(Chromosome)
 	 */
-	public AnjiActivator transcribe(Chromosome genotype) throws TranscriberException {
-		return new AnjiActivator(newAnjiNet(genotype), recurrentCycles);
+	public Activator transcribe(Chromosome genotype) throws TranscriberException {
+		AnjiNet net = newAnjiNet(genotype);
+		if (compiled) {
+			try {
+				return new CompiledAnjiActivator(net, recurrentCycles);
+			} catch (IllegalArgumentException e) {
+				logger.warn("Unable to compile network, using AnjiActivator instead: " + e.getMessage());
+			}
+		}
+		return new AnjiActivator(net, recurrentCycles);
 	}
 
 	/**
 	 * @see Transcriber#transcribe(Chromosome, Activator) Note: this method has been added to conform with the
 	 *      Transcriber interface, but does not use the substrate argument for performance gains.
 	 */
-	public AnjiActivator transcribe(Chromosome genotype, AnjiActivator substrate) throws TranscriberException {
-		return new AnjiActivator(newAnjiNet(genotype), recurrentCycles);
+	public Activator transcribe(Chromosome genotype, Activator substrate) throws TranscriberException {
+		return transcribe(genotype);
 	}
 
 	/**
@@ -224,6 +242,6 @@ public class AnjiNetTranscriber implements Transcriber<AnjiActivator>, Configura
 	 * @see com.anji.integration.Transcriber#getPhenotypeClass()
 	 */
 	public Class getPhenotypeClass() {
-		return AnjiNet.class;
+		return compiled ? CompiledAnjiNet.class : AnjiNet.class;
 	}
 }
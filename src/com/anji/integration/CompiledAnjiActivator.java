@@ -0,0 +1,234 @@
+package com.anji.integration;
+
+import java.awt.Graphics2D;
+import java.util.Arrays;
+
+import com.anji.nn.AnjiNet;
+import com.anji.nn.CompiledAnjiNet;
+import com.ojcoleman.ahni.util.ArrayUtil;
+
+/**
+ * Implementation of the Activator interface backed by a {@link CompiledAnjiNet}. Produces the same output as an
+ * {@link AnjiActivator} wrapping the same network, but is considerably faster. {@link #next(double[], double[])} does
+ * not allocate any memory.
+ *
+ * @see AnjiNetTranscriber#COMPILED_KEY
+ * @author Oliver Coleman
+ */
+public class CompiledAnjiActivator implements Activator {
+	private CompiledAnjiNet net;
+
+	private int numCycles = 1;
+
+	private int inputDimension;
+
+	private int outputDimension;
+
+	private double minResponseValue;
+
+	private double maxResponseValue;
+
+	// Most recently provided input values, as for the input Pattern in AnjiActivator.
+	private double[] lastInputValues;
+
+	/**
+	 * @param aNet ANN to compile.
+	 * @param aNumCycles number of times input pattern is "shown" to network before a result is returned; this allows
+	 *            for recurrent connections to take effect
+	 * @throws IllegalArgumentException
+	 */
+	public CompiledAnjiActivator(AnjiNet aNet, int aNumCycles) throws IllegalArgumentException {
+		this(new CompiledAnjiNet(aNet), aNumCycles);
+	}
+
+	/**
+	 * @param aNet compiled ANN
+	 * @param aNumCycles number of times input pattern is "shown" to network before a result is returned; this allows
+	 *            for recurrent connections to take effect
+	 * @throws IllegalArgumentException
+	 */
+	public CompiledAnjiActivator(CompiledAnjiNet aNet, int aNumCycles) throws IllegalArgumentException {
+		setNumCycles(aNumCycles);
+		net = aNet;
+		inputDimension = net.getInputDimension();
+		outputDimension = net.getOutputDimension();
+		lastInputValues = new double[inputDimension];
+
+		// verify consistent response ranges
+		minResponseValue = net.getOutputFunc(0).getMinValue();
+		maxResponseValue = net.getOutputFunc(0).getMaxValue();
+		for (int i = 1; i < outputDimension; ++i)
+			if (minResponseValue != net.getOutputFunc(i).getMinValue() || maxResponseValue != net.getOutputFunc(i).getMaxValue())
+				throw new IllegalArgumentException("min and max values for response nodes differ");
+	}
+
+	public double[] next() {
+		return next(lastInputValues);
+	}
+
+	public double[] next(double[] newInputValues) {
+		return next(newInputValues, new double[outputDimension]);
+	}
+
+	/**
+	 * Activate the network with the given input and write the output to the given array.
+	 *
+	 * @param newInputValues The input values.
+	 * @param output The array to write output values to, must have length at least {@link #getOutputCount()}.
+	 * @return the given output array.
+	 */
+	public double[] next(double[] newInputValues, double[] output) {
+		assert !Double.isNaN(ArrayUtil.sum(newInputValues)) : "input array contains NaN: " + Arrays.toString(newInputValues);
+		if (newInputValues.length != inputDimension)
+			throw new IllegalArgumentException("can not change array dimension");
+		lastInputValues = newInputValues;
+
+		// Feed-forward networks have no state, so additional cycles would produce the same result.
+		int cycles = net.isRecurrent() ? numCycles : 1;
+		for (int cycle = 0; cycle < cycles; ++cycle) {
+			net.activate(newInputValues);
+		}
+		net.getOutputs(output);
+
+		assert !Double.isNaN(ArrayUtil.sum(output)) : "result array contains NaN: " + Arrays.toString(output);
+
+		return output;
+	}
+
+	/**
+	 * Activate the network for a batch of independent input vectors, see
+	 * {@link CompiledAnjiNet#activateBatch(double[], double[], int)}. Only supported for non-recurrent networks.
+	 *
+	 * @param inputs The input vectors, laid out as [point * {@link #getInputCount()} + input].
+	 * @param outputs Array to write the output vectors to, laid out as [point * {@link #getOutputCount()} + output].
+	 * @param count The number of input vectors.
+	 */
+	public void nextBatch(double[] inputs, double[] outputs, int count) {
+		net.activateBatch(inputs, outputs, count);
+	}
+
+	public double[][] nextSequence(double[][] newInputValues) {
+		double[][] result = new double[newInputValues.length][];
+		for (int i = 0; i < newInputValues.length; ++i) {
+			result[i] = next(newInputValues[i]);
+		}
+		return result;
+	}
+
+	public double[][] next(double[][] stimuli) {
+		throw new IllegalArgumentException("CompiledAnjiActivator can only accept one dimensional input patterns");
+	}
+
+	public double[][][] nextSequence(double[][][] stimuli) {
+		throw new IllegalArgumentException("CompiledAnjiActivator can only accept one dimensional input patterns");
+	}
+
+	/**
+	 * clear all memory in network, including neurons and recurrent connections
+	 */
+	public void reset() {
+		net.reset();
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return net.toString();
+	}
+
+	/**
+	 * @see com.anji.integration.Activator#toXml()
+	 */
+	public String toXml() {
+		return net.toXml();
+	}
+
+	/**
+	 * @see com.anji.integration.Activator#getName()
+	 */
+	public String getName() {
+		return net.getName();
+	}
+
+	public void setName(String string) {
+		net.setName(string);
+	}
+
+	/**
+	 * @param aNumCycles number of times input pattern is "shown" to network before a result is returned; this allows
+	 *            for recurrent connections to take effect
+	 * @throws IllegalArgumentException
+	 */
+	public void setNumCycles(int aNumCycles) throws IllegalArgumentException {
+		if (aNumCycles < 1)
+			throw new IllegalArgumentException("numCycles must be >= 1");
+		numCycles = aNumCycles;
+	}
+
+	public int[] getInputDimension() {
+		return new int[] { inputDimension };
+	}
+
+	public int[] getOutputDimension() {
+		return new int[] { outputDimension };
+	}
+
+	@Override
+	public int getInputCount() {
+		return inputDimension;
+	}
+
+	@Override
+	public int getOutputCount() {
+		return outputDimension;
+	}
+
+	public boolean isRecurrent() {
+		return net.isRecurrent();
+	}
+
+	public double getMinResponse() {
+		return minResponseValue;
+	}
+
+	public double getMaxResponse() {
+		return maxResponseValue;
+	}
+
+	/**
+	 * @see com.anji.util.XmlPersistable#getXmlRootTag()
+	 */
+	public String getXmlRootTag() {
+		return "network";
+	}
+
+	/**
+	 * @see com.anji.util.XmlPersistable#getXmld()
+	 */
+	public String getXmld() {
+		return net.getName();
+	}
+
+	/**
+	 * Return the underlying CompiledAnjiNet.
+	 */
+	public CompiledAnjiNet getCompiledNet() {
+		return net;
+	}
+
+	/**
+	 * Return the AnjiNet the underlying CompiledAnjiNet was compiled from.
+	 */
+	public AnjiNet getAnjiNet() {
+		return net.getSource();
+	}
+
+	public boolean render(Graphics2D g, int width, int height, int neuronSize) {
+		return false;
+	}
+
+	@Override
+	public void dispose() {
+	}
+}
@@ -27,6 +27,7 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.Priority;
 import org.jgapcustomised.Chromosome;
 import org.jgapcustomised.Genotype;
+import org.jgapcustomised.GenotypeSnapshot;
 import org.jgapcustomised.InvalidConfigurationException;
 import org.jgapcustomised.event.GeneticEvent;
 import org.jgapcustomised.event.GeneticEventListener;
@@ -37,7 +38,11 @@ import com.anji.run.Run;
 import com.anji.util.Properties;
 
 /**
- * Writes genetic algorithm data, including chromosomes and run, to persistent storage.
+ * Writes genetic algorithm data, including chromosomes and run, to persistent storage. This listener may be subscribed
+ * to <code>GeneticEvent.GENOTYPE_EVALUATED_EVENT</code> asynchronously (see
+ * {@link org.jgapcustomised.event.EventManager#addEventListener(String, GeneticEventListener, boolean)}), in which
+ * case the event source is a {@link GenotypeSnapshot}. The other events it handles must be subscribed to synchronously
+ * as they load and store the configuration used by the genetic operators.
  * 
  * @author Philip Tucker
  */
@@ -105,14 +110,19 @@ public class PersistenceEventListener implements GeneticEventListener {
 	 *            <code>GeneticEvent.GENOTYPE_FINISH_GENETIC_OPERATORS_EVEN</code> stores config
 	 */
 	public void geneticEventFired(GeneticEvent event) {
-		Genotype genotype = (Genotype) event.getSource();
 		if (GeneticEvent.GENOTYPE_START_GENETIC_OPERATORS_EVENT.equals(event.getEventName())) {
 			genotypeStartGeneticOperatorsEvent();
 		}
 		if (GeneticEvent.GENOTYPE_FINISH_GENETIC_OPERATORS_EVENT.equals(event.getEventName())) {
 			genotypeFinishGeneticOperatorsEvent();
 		} else if (GeneticEvent.GENOTYPE_EVALUATED_EVENT.equals(event.getEventName())) {
-			genotypeEvaluatedEvent(genotype);
+			if (event.getSource() instanceof GenotypeSnapshot) {
+				GenotypeSnapshot snapshot = (GenotypeSnapshot) event.getSource();
+				genotypeEvaluatedEvent(snapshot.getChromosomes(), snapshot.getFittestChromosome());
+			} else {
+				Genotype genotype = (Genotype) event.getSource();
+				genotypeEvaluatedEvent(genotype.getChromosomes(), genotype.getFittestChromosome());
+			}
 		}
 	}
 
@@ -133,9 +143,7 @@ public class PersistenceEventListener implements GeneticEventListener {
 		}
 	}
 
-	private void genotypeEvaluatedEvent(Genotype genotype) {
-		Collection currentGeneration = genotype.getChromosomes();
-
+	private void genotypeEvaluatedEvent(Collection currentGeneration, Chromosome fittest) {
 		// persist generation
 		if (persistAllChroms || persistLastGen) {
 			Iterator iter = currentGeneration.iterator();
@@ -144,7 +152,7 @@ public class PersistenceEventListener implements GeneticEventListener {
 		}
 
 		// persist champ
-		Chromosome c = genotype.getFittestChromosome();
+		Chromosome c = fittest;
 		champs.add(c);
 		if (persistChamps) {
 			storeChromosome(c);
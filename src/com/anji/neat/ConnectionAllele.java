@@ -133,6 +133,11 @@ public class ConnectionAllele extends Allele {
 		return connectionGene.getDestNeuronId();
 	}
 
+	@Override
+	public long getStructuralHash() {
+		return getSrcNeuronId() * 0x9E3779B97F4A7C15L + getDestNeuronId();
+	}
+
 	@Override
 	public boolean isEquivalent(Allele otherAllele) {
 		if (!(otherAllele instanceof ConnectionAllele))
@@ -21,17 +21,22 @@ package com.anji.neat;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
 
 
 import org.apache.log4j.Logger;
 import org.apache.log4j.Priority;
 import org.jgapcustomised.BulkFitnessFunction;
+import org.jgapcustomised.Chromosome;
 import org.jgapcustomised.ChromosomeMaterial;
 import org.jgapcustomised.Configuration;
+import org.jgapcustomised.Genotype;
 import org.jgapcustomised.IdFactory;
 import org.jgapcustomised.InvalidConfigurationException;
 import org.jgapcustomised.NaturalSelector;
 import org.jgapcustomised.event.EventManager;
+import org.jgapcustomised.event.GeneticEvent;
+import org.jgapcustomised.event.GeneticEventListener;
 import org.jgapcustomised.impl.CloneReproductionOperator;
 import org.jgapcustomised.impl.WeightedRouletteSelector;
 
@@ -106,6 +111,12 @@ public class NeatConfiguration extends Configuration implements Configurable {
 	 * properties key, population size
 	 */
 	public static final String POPUL_SIZE_KEY = "popul.size";
+	/**
+	 * properties key, enable pipelined evolution, whereby each offspring is handed to the fitness function (for example
+	 * to begin transcription to its phenotype) as soon as it has been produced, see
+	 * {@link Configuration#setPipelinedEvolution(boolean)}. Default is false.
+	 */
+	public static final String PIPELINED_EVOLUTION_KEY = "popul.pipelined";
 	/**
 	 * properties key, speciation chromosome compatibility excess coefficient
 	 */
@@ -295,6 +306,7 @@ public class NeatConfiguration extends Configuration implements Configurable {
 
 		Randomizer r = (Randomizer) props.singletonObjectProperty(Randomizer.class);
 		setRandomGenerator(r.getRand());
+		setRandomSeed(r.getSeed());
 		setEventManager(new EventManager());
 
 		// id persistence
@@ -357,6 +369,7 @@ public class NeatConfiguration extends Configuration implements Configurable {
 
 		// population
 		setPopulationSize(props.getIntProperty(POPUL_SIZE_KEY, DEFAULT_POPUL_SIZE));
+		setPipelinedEvolution(props.getBooleanProperty(PIPELINED_EVOLUTION_KEY, false));
 		hiddenActivationType = props.getProperty(INITIAL_TOPOLOGY_ACTIVATION_KEY, "sigmoid");
 
 		if (hiddenActivationType.equals("random")) {
@@ -389,6 +402,14 @@ public class NeatConfiguration extends Configuration implements Configurable {
 		// System.out.println(inputActivationType + ", " + hiddenActivationType + ", " + outputActivationType);
 
 		load();
+		if (props.getBooleanProperty(NeatIdMap.NEAT_ID_MAP_PRUNE_KEY, true)) {
+			// Prune the ID map once the population for the next generation has been created (and before it is stored).
+			getEventManager().addEventListener(GeneticEvent.GENOTYPE_FINISH_GENETIC_OPERATORS_EVENT, new GeneticEventListener() {
+				public void geneticEventFired(GeneticEvent event) {
+					pruneIdMap(((Genotype) event.getSource()).getChromosomes());
+				}
+			});
+		}
 
 		ChromosomeMaterial sample = NeatChromosomeUtility.newSampleChromosomeMaterial(props.getShortProperty(STIMULUS_SIZE_KEY, DEFAULT_STIMULUS_SIZE), props.getShortProperty(INITIAL_TOPOLOGY_NUM_HIDDEN_NEURONS_KEY, DEFAULT_INITIAL_HIDDEN_SIZE), props.getShortProperty(RESPONSE_SIZE_KEY, DEFAULT_RESPONSE_SIZE), this, props.getBooleanProperty(INITIAL_TOPOLOGY_FULLY_CONNECTED_KEY, true));
 		setSampleChromosomeMaterial(sample);
@@ -587,9 +608,8 @@ public class NeatConfiguration extends Configuration implements Configurable {
 	public void store() throws InvalidConfigurationException {
 		try {
 			getIdFactory().store();
-			if (neatIdMap.store()) {
-				neatIdMap = null;
-			}
+			// The ID map is retained in memory, only the changes since the last store are written.
+			neatIdMap.store();
 		} catch (IOException e) {
 			String msg = "error storing ID map";
 			logger.error(msg, e);
@@ -597,6 +617,19 @@ public class NeatConfiguration extends Configuration implements Configurable {
 		}
 	}
 
+	/**
+	 * Remove innovation ID mappings for innovations not present in any of the given Chromosomes.
+	 * 
+	 * @param population the living Chromosomes.
+	 * @see NeatIdMap#prune(Collection)
+	 */
+	public void pruneIdMap(Collection<Chromosome> population) {
+		int removed = neatIdMap.prune(population);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Pruned " + removed + " innovation ID mappings, " + neatIdMap.getNeuronIdCount() + " neuron and " + neatIdMap.getConnectionIdCount() + " connection mappings remain.");
+		}
+	}
+
 	/**
 	 * log stats for id maps
 	 * 
@@ -13,6 +13,7 @@ import org.jgapcustomised.Chromosome;
 import org.jgapcustomised.ChromosomeMaterial;
 import org.jgapcustomised.Configuration;
 import org.jgapcustomised.CrossoverReproductionOperator;
+import org.jgapcustomised.PackedAlleles;
 
 import com.anji.integration.AnjiRequiredException;
 
@@ -42,27 +43,10 @@ public class NeatCrossoverReproductionOperator extends CrossoverReproductionOper
 		
 		// If parent1 dominates parent2 (the superclass already performs a check and makes sure that parent2 does not dominate parent1).
 		if (true) { //parent1.dominates(parent2)) {
-			// Child inherits all structure/genes from dominant parent.
-			child = parent1.cloneMaterial();
-			child.setSecondaryParentId(parent2.getId());
-
-			// Values (eg weights) for genes are mixture of those from both parents (where the non-dominant parent has a matching gene).
-			for (Allele allele1 : child.getAlleles()) {
-				Allele allele2 = parent2.findMatchingGene(allele1);
-				if (allele2 != null) { // if rec chrom has allele with same id
-					int valueSwitch = config.getRandomGenerator().nextInt(3);
-					// valueSwitch == 0 means we use parent1 allele value, nothing to do.
-					if (valueSwitch == 1) {
-						// Use parent2 allele value.
-						allele1.setValue(allele2.getValue());
-					}
-					else if (valueSwitch == 2) {
-						// Use value somewhere between those from both parents.
-						double s = config.getRandomGenerator().nextDouble();
-						allele1.setValue(allele1.getValue() * s + allele2.getValue() * (1-s));
-					}
-				}
-			}
+			// Child inherits all structure/genes from dominant parent. Values (eg weights) for genes are mixture of those
+			// from both parents (where the non-dominant parent has a matching gene).
+			PackedAlleles childAlleles = PackedAlleles.crossover(parent1.getMaterial().getPackedAlleles(), parent2.getMaterial().getPackedAlleles(), config.getRandomGenerator());
+			child = new ChromosomeMaterial(childAlleles, parent1.getId(), parent2.getId());
 		}
 		// Neither parent dominates the other. 
 		else {
@@ -21,11 +21,20 @@
  */
 package com.anji.neat;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -36,15 +45,32 @@ import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.apache.log4j.Logger;
 import org.apache.log4j.Priority;
+import org.jgapcustomised.Allele;
+import org.jgapcustomised.Chromosome;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import com.anji.util.Properties;
+import com.ojcoleman.ahni.util.LongLongHashMap;
 
 /**
- * Extension of JGAP configuration with NEAT-specific features added.
+ * Maps the structure added by NEAT add neuron and add connection mutations to the innovation IDs assigned to them, so
+ * that the same mutation occurring in different genomes is given the same innovation ID. The mappings are stored in
+ * primitive long-keyed maps; a source and destination neuron ID pair is packed into a single long key if both IDs are
+ * less than 2<sup>32</sup>, otherwise the mapping is stored in a (slower) secondary map keyed by the pair of IDs.
+ * <p>
+ * Mappings for innovations that are no longer present in any living genome may be removed with
+ * {@link #prune(Collection)}, as a mutation recreating such structure can be given a new innovation ID without
+ * affecting the alignment of genes between living genomes.
+ * </p>
+ * <p>
+ * The map is persisted as an append-only log of changes (additions and removals) in a binary format: each call to
+ * {@link #store()} appends the changes made since the previous call. The log is rewritten in compacted form when the
+ * number of records in it is much larger than the number of mappings. A map file in the older XML format is read by
+ * {@link #load()} and replaced by a log on the next call to store().
+ * </p>
  * 
  * @author Philip Tucker
  */
@@ -57,6 +83,12 @@ public class NeatIdMap {
 	 */
 	public final static String NEAT_ID_MAP_FILE_KEY = "neat.id.file";
 
+	/**
+	 * properties key, whether to remove mappings for innovations no longer present in any living genome after each
+	 * generation. Default is true.
+	 */
+	public final static String NEAT_ID_MAP_PRUNE_KEY = "neat.id.prune";
+
 	/**
 	 * base XML tag for NEAT ID mapping
 	 */
@@ -102,12 +134,43 @@ public class NeatIdMap {
 	 */
 	public final static String DEST_NEURON_ID_XML_TAG = "dest_neuron_id";
 
-	private Map connectionToNeuronId = new HashMap();
+	// Log file header, "NIDM" followed by the format version.
+	private static final int LOG_MAGIC = 0x4E49444D;
+	private static final int LOG_VERSION = 1;
+
+	// Log record types.
+	private static final byte PUT_NEURON = 0;
+	private static final byte PUT_CONNECTION = 1;
+	private static final byte REMOVE_NEURON = 2;
+	private static final byte REMOVE_CONNECTION = 3;
+	private static final byte PUT_WIDE_CONNECTION = 4;
+	private static final byte REMOVE_WIDE_CONNECTION = 5;
+
+	// The log is compacted when it contains more than this many records more than twice the number of mappings.
+	private static final int COMPACT_SLACK = 1024;
+
+	private static final long NO_ID = Long.MIN_VALUE;
 
-	private Map connectionToConnectionId = new HashMap();
+	private LongLongHashMap connectionToNeuronId = new LongLongHashMap();
+
+	private LongLongHashMap connectionToConnectionId = new LongLongHashMap();
+
+	// Connection mappings for neuron ID pairs that can not be packed into a long key, see buildKey(long, long).
+	private Map<List<Long>, Long> wideConnectionToConnectionId = new HashMap<List<Long>, Long>();
 
 	private String neatIdMapFileName = null;
 
+	// Changes not yet appended to the log file.
+	private ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+	private DataOutputStream pendingLog = new DataOutputStream(pendingBytes);
+	private int pendingRecordCount = 0;
+
+	// The number of records in the log file.
+	private int logRecordCount = 0;
+
+	// Whether the log file must be (re)written in full on the next store.
+	private boolean rewriteLog = true;
+
 	/**
 	 * See <a href=" {@docRoot} /params.htm" target="anji_params">Parameter Details </a> for specific property settings.
 	 * 
@@ -133,7 +196,8 @@ public class NeatIdMap {
 	 * @return return id of previous neuron, if any, that mutated on connection <code>connectionId</code>
 	 */
 	public Long findNeuronId(Long connectionId) {
-		return (Long) connectionToNeuronId.get(connectionId);
+		long id = connectionToNeuronId.get(connectionId, NO_ID);
+		return id == NO_ID ? null : id;
 	}
 
 	/**
@@ -143,7 +207,11 @@ public class NeatIdMap {
 	 *         <code>destNeuronId</code>
 	 */
 	public Long findConnectionId(Long srcNeuronId, Long destNeuronId) {
-		return (Long) connectionToConnectionId.get(buildList(srcNeuronId, destNeuronId));
+		if (!fitsKey(srcNeuronId, destNeuronId)) {
+			return wideConnectionToConnectionId.get(buildList(srcNeuronId, destNeuronId));
+		}
+		long id = connectionToConnectionId.get(buildKey(srcNeuronId, destNeuronId), NO_ID);
+		return id == NO_ID ? null : id;
 	}
 
 	/**
@@ -155,6 +223,7 @@ public class NeatIdMap {
 	 */
 	protected void putNeuronId(Long connectionId, Long newNeuronId) {
 		connectionToNeuronId.put(connectionId, newNeuronId);
+		logRecord(PUT_NEURON, connectionId, newNeuronId);
 	}
 
 	/**
@@ -166,23 +235,161 @@ public class NeatIdMap {
 	 * @param newConnectionId
 	 */
 	protected void putConnectionId(Long srcNeuronId, Long destNeuronId, Long newConnectionId) {
-		connectionToConnectionId.put(buildList(srcNeuronId, destNeuronId), newConnectionId);
+		if (!fitsKey(srcNeuronId, destNeuronId)) {
+			wideConnectionToConnectionId.put(buildList(srcNeuronId, destNeuronId), newConnectionId);
+			logWideRecord(PUT_WIDE_CONNECTION, srcNeuronId, destNeuronId, newConnectionId);
+			return;
+		}
+		long key = buildKey(srcNeuronId, destNeuronId);
+		connectionToConnectionId.put(key, newConnectionId);
+		logRecord(PUT_CONNECTION, key, newConnectionId);
 	}
 
 	/**
-	 * creates list used us key between src/dest neuron pairs and connection
+	 * @param srcNeuronId
+	 * @param destNeuronId
+	 * @return true iff the given src/dest neuron pair can be packed into a key by {@link #buildKey(long, long)}.
+	 */
+	protected static boolean fitsKey(long srcNeuronId, long destNeuronId) {
+		return (srcNeuronId >>> 32) == 0 && (destNeuronId >>> 32) == 0;
+	}
+
+	/**
+	 * creates the key used between src/dest neuron pairs and connection, with the source neuron ID in the upper 32
+	 * bits and the destination neuron ID in the lower 32 bits
+	 * 
+	 * @param srcNeuronId
+	 * @param destNeuronId
+	 * @return key
+	 * @throws IllegalArgumentException if either neuron ID is not in the range [0, 2<sup>32</sup>), see
+	 *             {@link #fitsKey(long, long)}.
+	 */
+	protected static long buildKey(long srcNeuronId, long destNeuronId) {
+		if (!fitsKey(srcNeuronId, destNeuronId)) {
+			throw new IllegalArgumentException("Neuron IDs must be in the range [0, 2^32) to be packed into a key: " + srcNeuronId + ", " + destNeuronId);
+		}
+		return (srcNeuronId << 32) | destNeuronId;
+	}
+
+	/**
+	 * creates list used as key between src/dest neuron pairs that do not fit in a packed key and connection
 	 * 
 	 * @param srcNeuronId
 	 * @param destNeuronId
 	 * @return List contains Long objects
 	 */
-	protected List buildList(Long srcNeuronId, Long destNeuronId) {
-		List result = new ArrayList();
+	protected static List<Long> buildList(long srcNeuronId, long destNeuronId) {
+		List<Long> result = new ArrayList<Long>(2);
 		result.add(srcNeuronId);
 		result.add(destNeuronId);
 		return result;
 	}
 
+	/**
+	 * Remove mappings for innovations that are not present in any of the given Chromosomes: neuron mappings for which
+	 * the neuron is not present and connection mappings for which the connection is not present.
+	 * 
+	 * @param population the living Chromosomes.
+	 * @return the number of mappings removed.
+	 */
+	public int prune(Collection<Chromosome> population) {
+		int geneCount = 0;
+		for (Chromosome c : population) {
+			geneCount += c.size();
+		}
+		long[] liveIds = new long[geneCount];
+		int i = 0;
+		for (Chromosome c : population) {
+			for (Allele allele : c.getAlleles()) {
+				liveIds[i++] = allele.getInnovationId();
+			}
+		}
+		Arrays.sort(liveIds, 0, i);
+
+		int removed = 0;
+		for (long connectionId : connectionToNeuronId.keys()) {
+			if (Arrays.binarySearch(liveIds, 0, i, connectionToNeuronId.get(connectionId, NO_ID)) < 0) {
+				connectionToNeuronId.remove(connectionId);
+				logRecord(REMOVE_NEURON, connectionId, NO_ID);
+				removed++;
+			}
+		}
+		for (long key : connectionToConnectionId.keys()) {
+			if (Arrays.binarySearch(liveIds, 0, i, connectionToConnectionId.get(key, NO_ID)) < 0) {
+				connectionToConnectionId.remove(key);
+				logRecord(REMOVE_CONNECTION, key, NO_ID);
+				removed++;
+			}
+		}
+		Iterator<Map.Entry<List<Long>, Long>> wideIter = wideConnectionToConnectionId.entrySet().iterator();
+		while (wideIter.hasNext()) {
+			Map.Entry<List<Long>, Long> entry = wideIter.next();
+			if (Arrays.binarySearch(liveIds, 0, i, entry.getValue()) < 0) {
+				wideIter.remove();
+				logWideRecord(REMOVE_WIDE_CONNECTION, entry.getKey().get(0), entry.getKey().get(1), NO_ID);
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @return the number of mappings from connections to the neurons that replaced them.
+	 */
+	public int getNeuronIdCount() {
+		return connectionToNeuronId.size();
+	}
+
+	/**
+	 * @return the number of mappings from neuron pairs to the connections between them.
+	 */
+	public int getConnectionIdCount() {
+		return connectionToConnectionId.size() + wideConnectionToConnectionId.size();
+	}
+
+	// Record a change to be appended to the log file on the next store, if there is a log file and it won't be
+	// rewritten anyway.
+	private void logRecord(byte type, long key, long value) {
+		if (neatIdMapFileName == null || rewriteLog) {
+			return;
+		}
+		try {
+			pendingLog.writeByte(type);
+			pendingLog.writeLong(key);
+			if (type == PUT_NEURON || type == PUT_CONNECTION) {
+				pendingLog.writeLong(value);
+			}
+			pendingRecordCount++;
+		} catch (IOException e) {
+			// Can't happen when writing to a byte array.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// As logRecord(byte, long, long), for mappings in wideConnectionToConnectionId.
+	private void logWideRecord(byte type, long srcNeuronId, long destNeuronId, long value) {
+		if (neatIdMapFileName == null || rewriteLog) {
+			return;
+		}
+		try {
+			pendingLog.writeByte(type);
+			pendingLog.writeLong(srcNeuronId);
+			pendingLog.writeLong(destNeuronId);
+			if (type == PUT_WIDE_CONNECTION) {
+				pendingLog.writeLong(value);
+			}
+			pendingRecordCount++;
+		} catch (IOException e) {
+			// Can't happen when writing to a byte array.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void clearPending() {
+		pendingBytes.reset();
+		pendingRecordCount = 0;
+	}
+
 	/**
 	 * Load ID factories and maps.
 	 * 
@@ -190,43 +397,139 @@ public class NeatIdMap {
 	 */
 	public void load() throws IOException {
 		if (neatIdMapFileName != null) {
-			FileInputStream in = null;
+			InputStream in = null;
 			try {
-				in = new FileInputStream(neatIdMapFileName);
-				neatIdMapFromXml(in);
+				in = new BufferedInputStream(new FileInputStream(neatIdMapFileName));
+				in.mark(1);
+				int first = in.read();
+				in.reset();
+				if (first == '<') {
+					neatIdMapFromXml(in);
+					rewriteLog = true;
+				} else {
+					neatIdMapFromLog(new DataInputStream(in));
+				}
 			} catch (Exception e) {
 				// logger.info( "couldn't load NEAT ids from file, starting with new mapping" );
-
+				rewriteLog = true;
 			} finally {
 				if (in != null) {
 					in.close();
 				}
 			}
+			clearPending();
 		}
 	}
 
 	/**
-	 * Persist ID factories and maps.
+	 * Persist ID factories and maps. The changes since the last call are appended to the log file, or the log file is
+	 * rewritten in full if it does not exist yet or needs compacting.
 	 * 
 	 * @return true if file is stored
 	 * @throws IOException
 	 */
 	public boolean store() throws IOException {
 		if (neatIdMapFileName != null) {
-			FileWriter out = null;
-			try {
-				out = new FileWriter(neatIdMapFileName);
-				out.write(toXml());
-				out.flush();
-				return true;
-			} finally {
-				if (out != null)
+			int mappingCount = getNeuronIdCount() + getConnectionIdCount();
+			if (rewriteLog || logRecordCount + pendingRecordCount > mappingCount * 2 + COMPACT_SLACK) {
+				writeFullLog();
+			} else if (pendingRecordCount > 0) {
+				FileOutputStream out = new FileOutputStream(neatIdMapFileName, true);
+				try {
+					pendingBytes.writeTo(out);
+					out.flush();
+				} finally {
 					out.close();
+				}
+				logRecordCount += pendingRecordCount;
 			}
+			clearPending();
+			return true;
 		}
 		return false;
 	}
 
+	// Write all the current mappings to a new log file and replace the existing log file with it.
+	private void writeFullLog() throws IOException {
+		File file = new File(neatIdMapFileName);
+		File tempFile = new File(neatIdMapFileName + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(LOG_MAGIC);
+			out.writeInt(LOG_VERSION);
+			for (long connectionId : connectionToNeuronId.keys()) {
+				out.writeByte(PUT_NEURON);
+				out.writeLong(connectionId);
+				out.writeLong(connectionToNeuronId.get(connectionId, NO_ID));
+			}
+			for (long key : connectionToConnectionId.keys()) {
+				out.writeByte(PUT_CONNECTION);
+				out.writeLong(key);
+				out.writeLong(connectionToConnectionId.get(key, NO_ID));
+			}
+			for (Map.Entry<List<Long>, Long> entry : wideConnectionToConnectionId.entrySet()) {
+				out.writeByte(PUT_WIDE_CONNECTION);
+				out.writeLong(entry.getKey().get(0));
+				out.writeLong(entry.getKey().get(1));
+				out.writeLong(entry.getValue());
+			}
+			out.flush();
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete() || !tempFile.renameTo(file)) {
+			throw new IOException("Could not replace NEAT ID map file " + file + " with " + tempFile);
+		}
+		logRecordCount = getNeuronIdCount() + getConnectionIdCount();
+		rewriteLog = false;
+	}
+
+	/**
+	 * Load innovation ID map from the log in <code>in</code>. If the log is truncated (for example because the
+	 * process was killed while appending to it) the complete records are loaded and the log will be rewritten on the
+	 * next store.
+	 * 
+	 * @param in
+	 * @throws IOException
+	 */
+	private void neatIdMapFromLog(DataInputStream in) throws IOException {
+		if (in.readInt() != LOG_MAGIC)
+			throw new IOException("not a NEAT ID map log");
+		int version = in.readInt();
+		if (version != LOG_VERSION)
+			throw new IOException("unsupported NEAT ID map log version: " + version);
+		logRecordCount = 0;
+		rewriteLog = false;
+		try {
+			while (true) {
+				int type = in.read();
+				if (type == -1)
+					break;
+				long key = in.readLong();
+				if (type == PUT_NEURON) {
+					connectionToNeuronId.put(key, in.readLong());
+				} else if (type == PUT_CONNECTION) {
+					connectionToConnectionId.put(key, in.readLong());
+				} else if (type == REMOVE_NEURON) {
+					connectionToNeuronId.remove(key);
+				} else if (type == REMOVE_CONNECTION) {
+					connectionToConnectionId.remove(key);
+				} else if (type == PUT_WIDE_CONNECTION) {
+					List<Long> pair = buildList(key, in.readLong());
+					wideConnectionToConnectionId.put(pair, in.readLong());
+				} else if (type == REMOVE_WIDE_CONNECTION) {
+					wideConnectionToConnectionId.remove(buildList(key, in.readLong()));
+				} else {
+					throw new IOException("invalid NEAT ID map log record type: " + type);
+				}
+				logRecordCount++;
+			}
+		} catch (EOFException e) {
+			logger.warn("NEAT ID map log " + neatIdMapFileName + " is truncated, it will be rewritten.");
+			rewriteLog = true;
+		}
+	}
+
 	/**
 	 * Convert NEAT ID mappings (enables re-use of innovation IDs) to XML string.
 	 * 
@@ -237,10 +540,8 @@ public class NeatIdMap {
 		result.append("<").append(NEAT_ID_MAP_XML_TAG).append(">\n");
 
 		result.append("<").append(NEURON_ID_MAP_XML_TAG).append(">\n");
-		Iterator iter = connectionToNeuronId.keySet().iterator();
-		while (iter.hasNext()) {
-			Long connId = (Long) iter.next();
-			Long neuronId = (Long) connectionToNeuronId.get(connId);
+		for (long connId : connectionToNeuronId.keys()) {
+			long neuronId = connectionToNeuronId.get(connId, NO_ID);
 			result.append("<").append(CONNECTION_TO_NEURON_XML_TAG).append(" ");
 			result.append(ID_XML_TAG).append("=\"").append(neuronId).append("\" ");
 			result.append(CONNECTION_ID_XML_TAG).append("=\"").append(connId).append("\" />");
@@ -248,17 +549,21 @@ public class NeatIdMap {
 		result.append("</").append(NEURON_ID_MAP_XML_TAG).append(">\n");
 
 		result.append("<").append(CONNECTION_ID_MAP_XML_TAG).append(">\n");
-		iter = connectionToConnectionId.keySet().iterator();
-		while (iter.hasNext()) {
-			List key = (List) iter.next();
-			Long srcNeuronId = (Long) key.get(0);
-			Long destNeuronId = (Long) key.get(1);
-			Long connId = (Long) connectionToConnectionId.get(key);
+		for (long key : connectionToConnectionId.keys()) {
+			long srcNeuronId = key >>> 32;
+			long destNeuronId = key & 0xffffffffL;
+			long connId = connectionToConnectionId.get(key, NO_ID);
 			result.append("<").append(CONNECTION_TO_CONNECTION_XML_TAG).append(" ");
 			result.append(ID_XML_TAG).append("=\"").append(connId).append("\" ");
 			result.append(SRC_NEURON_ID_XML_TAG).append("=\"").append(srcNeuronId).append("\" ");
 			result.append(DEST_NEURON_ID_XML_TAG).append("=\"").append(destNeuronId).append("\" />");
 		}
+		for (Map.Entry<List<Long>, Long> entry : wideConnectionToConnectionId.entrySet()) {
+			result.append("<").append(CONNECTION_TO_CONNECTION_XML_TAG).append(" ");
+			result.append(ID_XML_TAG).append("=\"").append(entry.getValue()).append("\" ");
+			result.append(SRC_NEURON_ID_XML_TAG).append("=\"").append(entry.getKey().get(0)).append("\" ");
+			result.append(DEST_NEURON_ID_XML_TAG).append("=\"").append(entry.getKey().get(1)).append("\" />");
+		}
 		result.append("</").append(CONNECTION_ID_MAP_XML_TAG).append(">\n");
 
 		result.append("</").append(NEAT_ID_MAP_XML_TAG).append(">\n");
@@ -128,6 +128,11 @@ public class NeuronAllele extends Allele {
 		return "N-" + neuronGene.toString() + " [" + nf.format(bias) + "]";
 	}
 	
+	@Override
+	public long getStructuralHash() {
+		return getType().hashCode() * 0x9E3779B97F4A7C15L + getActivationType().hashCode();
+	}
+
 	@Override
 	public boolean isEquivalent(Allele otherAllele) {
 		if (!(otherAllele instanceof NeuronAllele))
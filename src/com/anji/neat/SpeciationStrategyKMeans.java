@@ -5,19 +5,20 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
-import org.jgapcustomised.Allele;
 import org.jgapcustomised.Chromosome;
 import org.jgapcustomised.ChromosomeMaterial;
 import org.jgapcustomised.Configuration;
 import org.jgapcustomised.Genotype;
+import org.jgapcustomised.PackedAlleles;
 import org.jgapcustomised.SpeciationParms;
 import org.jgapcustomised.SpeciationStrategy;
 import org.jgapcustomised.Species;
@@ -44,13 +45,26 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 	 */
 	static final String MULTI_THREADED = "speciation.kmeans.multithreaded";
 	
+	/**
+	 * Whether to use triangle-inequality bounds (as in Elkan's accelerated k-means) to skip computing the distance
+	 * between a genome and a species centroid when the distance can not be less than the distance to the genome's
+	 * current species. This is only exact if the compatibility distance satisfies the triangle inequality, which is
+	 * not guaranteed for all combinations of the speciation.* compatibility parameters, thus enabling this may change
+	 * the speciation produced. Distances to centroids that have not changed are always cached regardless of this
+	 * setting. Default is false.
+	 */
+	static final String TRIANGLE_BOUNDS = "speciation.kmeans.bounds";
+	
 	static final int MAX_KMEANS_LOOPS = 5;
 	
 	private boolean multiThreaded = true;
 	
+	private boolean useBounds = false;
+	
 	@Override
 	public void init(Properties props) throws Exception {
 		multiThreaded = props.getBooleanProperty(MULTI_THREADED, true);
+		useBounds = props.getBooleanProperty(TRIANGLE_BOUNDS, false);
 	}
 	
 	@Override
@@ -87,15 +101,18 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 			return;
 		}
 		
+		// Genome to centroid distances are cached for the duration of this speciation.
+		final DistanceCache cache = new DistanceCache(genomeList, speciesList, specParms);
+		
 		// Update the centroid of each species. If we're adding offspring this means that old genomes
 		// have been removed from the population and therefore the centroids are out-of-date.
-		calculateSpecieCentroids(speciesList);
+		calculateSpecieCentroids(speciesList, cache);
 		
 		// Allocate each genome to the species it is closest to.
 		Parallel.foreach(genomeList, 0, new Operation<Chromosome>() {
 			@Override
 			public void perform(Chromosome genome) {
-				Species closestSpecies = findClosestSpecies(genome, speciesList, specParms);
+				Species closestSpecies = findClosestSpecies(genome, speciesList, cache);
 				closestSpecies.addOrMoveFromCurrentSpecies(genome);
 			}
 		});
@@ -103,12 +120,16 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 		assert testSpeciationIntegrity(genomeList, speciesList);
 		
 		// Recalculate each species centroid now that they contain additional genomes.
-		calculateSpecieCentroids(speciesList);
+		calculateSpecieCentroids(speciesList, cache);
 		
 		//double initialDistance = calculateAverageDistance(genomeList, specParms);
 		
 		// Perform the main k-means loop until convergence.
-		speciateUntilConvergence(genomeList, speciesList, specParms);
+		speciateUntilConvergence(genomeList, speciesList, cache);
+		
+		if (logger.isDebugEnabled()) {
+			logger.debug("k-means speciation computed " + cache.computedCount + " of " + cache.requestedCount + " genome to centroid distances.");
+		}
 		
 		//System.err.println(initialDistance + "  ->  " + calculateAverageDistance(genomeList, specParms)); 
 	}
@@ -119,7 +140,7 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 	// / therefore we require the additional max loops threshold exit strategy - the clusters should be pretty
 	// / stable and well defined after a few loops even if the the algorithm hasn't converged completely.
 	// / </summary>
-	private synchronized void speciateUntilConvergence(final List<Chromosome> genomeList, final List<Species> speciesList, final SpeciationParms speciationParms) {
+	private synchronized void speciateUntilConvergence(final List<Chromosome> genomeList, final List<Species> speciesList, final DistanceCache cache) {
 		List<Species> emptySpeciesList = Collections.synchronizedList(new ArrayList<Species>());
 		for (Species species : speciesList) {
 			if (species.isEmpty()) {
@@ -147,7 +168,7 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 			Parallel.foreach(genomeList, 0, new Operation<Chromosome>() {
 				@Override
 				public void perform(Chromosome genome) {
-					Species closestSpecies = findClosestSpecies(genome, speciesList, speciationParms);
+					Species closestSpecies = findClosestSpecies(genome, speciesList, cache);
 					if (!genome.getSpecie().equals(closestSpecies)) {
 						// Track which species have been modified.
 						speciesMod.add(genome.getSpecie());
@@ -171,7 +192,7 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 			}
 			
 			// Recalculate centroid for all affected species.
-			calculateSpecieCentroids(speciesMod);
+			calculateSpecieCentroids(speciesMod, cache);
 			
 			assert testSpeciationIntegrity(genomeList, speciesList);
 			
@@ -186,7 +207,7 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 				// centroid - we call these outlier genomes. We then move these genomes into the empty species to
 				// act as the sole member and centroid of those species; These act as species seeds for the next k-means
 				// loop.
-				Chromosome[] genomesByDistance = getChromosomesByDistanceFromSpecies(genomeList, speciesList, speciationParms);
+				Chromosome[] genomesByDistance = getChromosomesByDistanceFromSpecies(genomeList, cache);
 				
 				assert testSpeciationIntegrity(genomeList, speciesList);
 				
@@ -217,7 +238,7 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 				}
 				
 				// Recalculate centroid for all affected species.
-				calculateSpecieCentroids(speciesMod);
+				calculateSpecieCentroids(speciesMod, cache);
 				
 				assert testSpeciationIntegrity(genomeList, speciesList);
 				
@@ -242,12 +263,14 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 		}
 	}
 	
-	private void calculateSpecieCentroids(Collection<Species> speciesList) {
+	private void calculateSpecieCentroids(Collection<Species> speciesList, final DistanceCache cache) {
 		Parallel.foreach(speciesList, 0, new Operation<Species>() {
 			@Override
 			public void perform(Species species) {
 				if (!species.isEmpty()) {
+					ChromosomeMaterial oldCentroid = species.getRepresentative();
 					species.setRepresentative(calculateSpecieCentroid(species));
+					cache.centroidChanged(species, oldCentroid);
 				}
 			}
 		});
@@ -301,48 +324,15 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 
 		// Each coordinate element has an ID. Here we calculate the total for each ID across all CoordinateVectors,
 		// then divide the totals by the number of CoordinateVectors to get the average for each ID. That is, we
-		// calculate the component-wise mean.
-		//
-		// Coord elements within a CoordinateVector must be sorted by ID, therefore we use a SortedDictionary here
-		// when building the centroid coordinate to eliminate the need to sort elements later.
-		//
-		// We use SortedDictionary and not SortedList for performance. SortedList is fastest for insertion
-		// only if the inserts are in order (sorted). However, this is generally not the case here because although
-		// coordinate IDs are sorted within the source CoordinateVectors, not all IDs exist within all CoordinateVectors
-		// therefore a low ID may be presented to coordElemTotals after a higher ID.
-		TreeMap<Allele, double[]> coordElemTotals = new TreeMap<Allele, double[]>();
-
-		// Loop over coords.
+		// calculate the component-wise mean. This is performed directly on the packed (array-based) representation
+		// of the coordinates, in which elements are sorted by ID, by merging each coordinate into the running totals.
+		List<PackedAlleles> packedCoords = new ArrayList<PackedAlleles>(coordList.size());
 		for (ChromosomeMaterial coord : coordList) {
-			// Loop over each element within the current coord.
-			for (Allele coordElem : coord.getAlleles()) {
-				// If the ID has previously been encountered then add the current element value to it, otherwise
-				// add a new double[1] to hold the value.
-				// Note that we wrap the double value in an object so that we do not have to re-insert values
-				// to increment them. In tests this approach was about 40% faster (including GC overhead).
-				double[] doubleWrapper = coordElemTotals.get(coordElem);
-				if (doubleWrapper != null) {
-					doubleWrapper[0] += coordElem.getValue();
-				} else {
-					coordElemTotals.put(coordElem.cloneAllele(), new double[] { coordElem.getValue() });
-				}
-			}
+			packedCoords.add(coord.getPackedAlleles());
 		}
 
-		// Put the unique coord elems from coordElemTotals into a list, dividing each element's value
-		// by the total number of coords as we go.
-		double coordCountReciprocol = 1.0 / coordList.size();
-		ArrayList<Allele> centroidElem = new ArrayList<Allele>(coordElemTotals.size());
-		for (Map.Entry<Allele, double[]> coordElem : coordElemTotals.entrySet()) { // For speed we multiply by
-																					// reciprocol instead of dividing by
-																					// coordCount.
-			Allele allele = coordElem.getKey();
-			allele.setValue(coordElem.getValue()[0] * coordCountReciprocol);
-			centroidElem.add(allele);
-		}
-
-		// Use the new list of elements to construct a centroid CoordinateVector.
-		ChromosomeMaterial m = new ChromosomeMaterial(centroidElem);
+		// Use the mean to construct a centroid CoordinateVector.
+		ChromosomeMaterial m = new ChromosomeMaterial(PackedAlleles.mean(packedCoords), null, null);
 		//System.err.println("\n" + coordList);
 		//System.err.println("----\n" + m);
 		return m;
@@ -351,9 +341,9 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 	/**
 	 * Gets an array of all genomes ordered by their distance from their current species.
 	 */
-	private Chromosome[] getChromosomesByDistanceFromSpecies(List<Chromosome> genomeList, List<Species> speciesList, SpeciationParms speciationParms) {
+	private Chromosome[] getChromosomesByDistanceFromSpecies(List<Chromosome> genomeList, DistanceCache cache) {
 		// Build a list of all genomes paired with their distance from their centroid.
-		GenomeDistancePair[] genomeDistanceArr = getGenomeDistancePairs(genomeList, speciesList, speciationParms);
+		GenomeDistancePair[] genomeDistanceArr = getGenomeDistancePairs(genomeList, cache);
 
 		// Put the sorted genomes in an array and return it.
 		Chromosome[] genomeArr = new Chromosome[genomeList.size()];
@@ -367,12 +357,12 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 	/**
 	 * Gets an array of GenomeDistancePairs ordered by their distance from their current species.
 	 */
-	private GenomeDistancePair[] getGenomeDistancePairs(List<Chromosome> genomeList, List<Species> speciesList, SpeciationParms speciationParms) {
+	private GenomeDistancePair[] getGenomeDistancePairs(List<Chromosome> genomeList, DistanceCache cache) {
 		// Build a list of all genomes paired with their distance from their centroid.
 		GenomeDistancePair[] genomeDistanceArr = new GenomeDistancePair[genomeList.size()];
 		for (int i = 0; i < genomeList.size(); i++) {
 			Chromosome genome = genomeList.get(i);
-			double distance = genome.getMaterial().distance(genome.getSpecie().getRepresentative(), speciationParms);
+			double distance = cache.distance(cache.genomeIndex(genome), genome.getSpecie());
 			genomeDistanceArr[i] = new GenomeDistancePair(distance, genome);
 		}
 
@@ -385,13 +375,22 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 	/**
 	 * Find the species that a genome is closest to.
 	 */
-	private Species findClosestSpecies(Chromosome genome, List<Species> speciesList, SpeciationParms speciationParms) {
+	private Species findClosestSpecies(Chromosome genome, List<Species> speciesList, DistanceCache cache) {
 		Species closestSpecies = null;
 		double closestDistance = Double.MAX_VALUE;
+		int g = cache.genomeIndex(genome);
+		Species currentSpecies = genome.getSpecie();
+		
+		// If using bounds then species whose lower bound distance is not less than the distance to the current
+		// species can not be closer (and the current species is preferred if the distances are equal).
+		double currentDistance = useBounds && currentSpecies != null ? cache.distance(g, currentSpecies) : Double.POSITIVE_INFINITY;
 
 		// Find closest species.
 		for (Species species : speciesList) {
-			double distance = genome.getMaterial().distance(species.getRepresentative(), speciationParms);
+			if (species != currentSpecies && cache.lowerBound(g, species) >= currentDistance) {
+				continue;
+			}
+			double distance = cache.distance(g, species);
 			// All else being equal keep genome in same species. 
 			if (distance < closestDistance || (distance == closestDistance && genome.getSpecie() != null && genome.getSpecie().equals(species))) {
 				closestDistance = distance;
@@ -468,4 +467,102 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 			return 0;
 		}
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Caches the distances between genomes and species centroids for the duration of a call to
+	 * {@link SpeciationStrategyKMeans#speciate(List, List, Genotype)}. Genomes do not change during speciation, so
+	 * only the distances to a species centroid need be recomputed when the centroid changes. If bounds are enabled then
+	 * when a centroid changes the previously computed distances to it are retained as lower bounds, reduced by the
+	 * distance the centroid moved.
+	 * 
+	 * Distances for a given genome may be requested concurrently with those for other genomes, but
+	 * {@link #centroidChanged(Species, ChromosomeMaterial)} must not be called concurrently with requests.
+	 */
+	private class DistanceCache {
+		final SpeciationParms speciationParms;
+		final Map<Chromosome, Integer> genomeIndices;
+		final Map<Species, Integer> speciesIndices;
+		final Chromosome[] genomes;
+		final int speciesCount;
+		// Distance, or lower bound on distance, between each genome and species centroid, indexed by
+		// [genome * speciesCount + species].
+		final double[] distance;
+		// A distance is exact iff its version equals the version of the species centroid.
+		final int[] distanceVersion;
+		final int[] centroidVersion;
+		// Counts of distances requested and computed, for debug logging. The counters are shared by all threads so
+		// they're only updated when debug logging is enabled.
+		final boolean countDistances = logger.isDebugEnabled();
+		final AtomicLong requestedCount = new AtomicLong(), computedCount = new AtomicLong();
+
+		DistanceCache(List<Chromosome> genomeList, List<Species> speciesList, SpeciationParms speciationParms) {
+			this.speciationParms = speciationParms;
+			genomes = genomeList.toArray(new Chromosome[genomeList.size()]);
+			speciesCount = speciesList.size();
+			genomeIndices = new IdentityHashMap<Chromosome, Integer>(genomes.length * 2);
+			for (int g = 0; g < genomes.length; g++) {
+				genomeIndices.put(genomes[g], g);
+			}
+			speciesIndices = new IdentityHashMap<Species, Integer>(speciesCount * 2);
+			for (int s = 0; s < speciesCount; s++) {
+				speciesIndices.put(speciesList.get(s), s);
+			}
+			distance = new double[genomes.length * speciesCount];
+			distanceVersion = new int[distance.length];
+			centroidVersion = new int[speciesCount];
+			Arrays.fill(centroidVersion, 1);
+		}
+
+		int genomeIndex(Chromosome genome) {
+			return genomeIndices.get(genome);
+		}
+
+		/**
+		 * Get the distance between the given genome and the centroid of the given species, computing it if necessary.
+		 */
+		double distance(int g, Species species) {
+			if (countDistances) {
+				requestedCount.incrementAndGet();
+			}
+			int s = speciesIndices.get(species);
+			int i = g * speciesCount + s;
+			if (distanceVersion[i] != centroidVersion[s]) {
+				if (countDistances) {
+					computedCount.incrementAndGet();
+				}
+				distance[i] = genomes[g].getMaterial().distance(species.getRepresentative(), speciationParms);
+				distanceVersion[i] = centroidVersion[s];
+			}
+			return distance[i];
+		}
+
+		/**
+		 * Get a lower bound on the distance between the given genome and the centroid of the given species. If
+		 * bounds are disabled and the distance has not been computed for the current centroid then 0 is returned.
+		 */
+		double lowerBound(int g, Species species) {
+			int s = speciesIndices.get(species);
+			int i = g * speciesCount + s;
+			if (useBounds || distanceVersion[i] == centroidVersion[s]) {
+				return distance[i];
+			}
+			return 0;
+		}
+
+		/**
+		 * Invalidate the cached distances for the given species, which has been given a new centroid.
+		 */
+		void centroidChanged(Species species, ChromosomeMaterial oldCentroid) {
+			int s = speciesIndices.get(species);
+			centroidVersion[s]++;
+			if (useBounds) {
+				// By the triangle inequality the distance to the new centroid is at least the distance to the old
+				// centroid minus the distance between the old and new centroids.
+				double shift = oldCentroid.distance(species.getRepresentative(), speciationParms);
+				for (int i = s; i < distance.length; i += speciesCount) {
+					distance[i] = Math.max(0, distance[i] - shift);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,501 @@
+package com.anji.nn;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.anji.nn.activationfunction.ActivationFunction;
+import com.anji.nn.activationfunction.ActivationFunctionNonIntegrating;
+
+/**
+ * A "compiled" form of an {@link AnjiNet} that evaluates the network with a single sweep over flat arrays instead of a
+ * recursive pull through {@link Neuron#getValue()}. Neurons are sorted topologically with respect to the
+ * non-recurrent connections, and the incoming connections for each neuron are laid out contiguously in parallel
+ * arrays (in the same order as in the source network so that sums are accumulated identically). Recurrent connections
+ * read from a second buffer containing the neuron values from the previous activation cycle; the two value buffers
+ * are swapped at each cycle. Once constructed no memory is allocated when activating the network.
+ *
+ * The output is identical to that produced by an {@link com.anji.integration.AnjiActivator} wrapping the source
+ * network, including the behaviour of recurrent connections on the first activation cycle after a reset.
+ *
+ * @author Oliver Coleman
+ */
+public class CompiledAnjiNet {
+	// Connection source types.
+	private static final byte CONN_NEURON = 0;
+	private static final byte CONN_RECURRENT = 1;
+	private static final byte CONN_INPUT = 2;
+	private static final byte CONN_BIAS = 3;
+
+	/**
+	 * The number of points evaluated together in each block by {@link #activateBatch(double[], double[], int)}.
+	 */
+	public static final int BATCH_BLOCK_SIZE = 128;
+
+	private final AnjiNet source;
+
+	private final int neuronCount;
+	private final int inputCount;
+	private final int outputCount;
+
+	// Per neuron, in topological order.
+	private final ActivationFunction[] func;
+	private final double[] bias;
+	// Scratch input arrays for neurons with non-integrating activation functions, null for other neurons.
+	private final double[][] nonIntegratingInput;
+	// Index of first incoming connection for each neuron, connStart[neuronCount] == total connection count.
+	private final int[] connStart;
+
+	// Per connection, grouped by target neuron.
+	private final byte[] connType;
+	// Index of source neuron (or input index for input connections).
+	private final int[] connSource;
+	private final double[] connWeight;
+	// For recurrent connections the index of the connection in the source networks list of recurrent connections.
+	private final int[] connRecurrentIndex;
+
+	private final int[] outputIndex;
+
+	// Recurrent connections in the order they are stepped by AnjiNet, used when priming the network after a reset.
+	private final int[] recurrentConn;
+	private final boolean[] recurrentStepped;
+	private final boolean[] primeComputed;
+
+	// Double buffered neuron values.
+	private double[] values;
+	private double[] previousValues;
+	private boolean primed;
+	private double[] input;
+
+	// Buffers for batch activation, allocated on first use. Values are stored as [neuron * BATCH_BLOCK_SIZE + point].
+	private double[] batchValues;
+	private double[] batchSum;
+
+	/**
+	 * Create a compiled version of the given network.
+	 *
+	 * @param net The network to compile. The input neurons should not yet have any connections from an input pattern
+	 *            (i.e. the network should not have been wrapped by an {@link com.anji.integration.AnjiActivator}).
+	 * @throws IllegalArgumentException if the network contains a cycle of non-recurrent connections or an unsupported
+	 *             connection type.
+	 */
+	public CompiledAnjiNet(AnjiNet net) throws IllegalArgumentException {
+		source = net;
+		List<Neuron> neurons = net.getAllNeurons();
+		neuronCount = neurons.size();
+		inputCount = net.getInputDimension();
+		outputCount = net.getOutputDimension();
+
+		Map<Neuron, Integer> originalIndex = new HashMap<Neuron, Integer>();
+		for (int n = 0; n < neuronCount; n++) {
+			originalIndex.put(neurons.get(n), n);
+		}
+		Map<Neuron, Integer> inputIndex = new HashMap<Neuron, Integer>();
+		for (int i = 0; i < inputCount; i++) {
+			inputIndex.put(net.getInputNeuron(i), i);
+		}
+		Map<CacheNeuronConnection, Integer> recurrentIndex = new HashMap<CacheNeuronConnection, Integer>();
+		int r = 0;
+		for (CacheNeuronConnection c : net.getRecurrentConns()) {
+			recurrentIndex.put(c, r++);
+		}
+
+		// Topological sort (Kahn's algorithm) over non-recurrent neuron to neuron connections.
+		int[] inDegree = new int[neuronCount];
+		int[][] outgoing = new int[neuronCount][];
+		int[] outgoingCount = new int[neuronCount];
+		int totalConnCount = 0;
+		for (int n = 0; n < neuronCount; n++) {
+			Neuron neuron = neurons.get(n);
+			for (Connection c : neuron.getIncomingConns()) {
+				totalConnCount++;
+				if (c instanceof NeuronConnection && !(c instanceof CacheNeuronConnection)) {
+					Integer src = originalIndex.get(((NeuronConnection) c).getIncomingNode());
+					if (src == null) {
+						throw new IllegalArgumentException("Connection from neuron not in network: " + c);
+					}
+					inDegree[n]++;
+					outgoingCount[src]++;
+				}
+			}
+			if (inputIndex.containsKey(neuron)) {
+				totalConnCount++;
+			}
+		}
+		for (int n = 0; n < neuronCount; n++) {
+			outgoing[n] = new int[outgoingCount[n]];
+			outgoingCount[n] = 0;
+		}
+		for (int n = 0; n < neuronCount; n++) {
+			for (Connection c : neurons.get(n).getIncomingConns()) {
+				if (c instanceof NeuronConnection && !(c instanceof CacheNeuronConnection)) {
+					int src = originalIndex.get(((NeuronConnection) c).getIncomingNode());
+					outgoing[src][outgoingCount[src]++] = n;
+				}
+			}
+		}
+		int[] order = new int[neuronCount];
+		int head = 0, tail = 0;
+		for (int n = 0; n < neuronCount; n++) {
+			if (inDegree[n] == 0)
+				order[tail++] = n;
+		}
+		while (head < tail) {
+			int n = order[head++];
+			for (int t : outgoing[n]) {
+				if (--inDegree[t] == 0)
+					order[tail++] = t;
+			}
+		}
+		if (tail != neuronCount) {
+			throw new IllegalArgumentException("Network " + net.getName() + " contains a cycle of non-recurrent connections.");
+		}
+		int[] sortedIndex = new int[neuronCount];
+		for (int i = 0; i < neuronCount; i++) {
+			sortedIndex[order[i]] = i;
+		}
+
+		// Lay out neurons and connections in topological order.
+		func = new ActivationFunction[neuronCount];
+		bias = new double[neuronCount];
+		nonIntegratingInput = new double[neuronCount][];
+		connStart = new int[neuronCount + 1];
+		connType = new byte[totalConnCount];
+		connSource = new int[totalConnCount];
+		connWeight = new double[totalConnCount];
+		connRecurrentIndex = new int[totalConnCount];
+		recurrentConn = new int[recurrentIndex.size()];
+		int ci = 0;
+		for (int i = 0; i < neuronCount; i++) {
+			Neuron neuron = neurons.get(order[i]);
+			func[i] = neuron.getFunc();
+			bias[i] = neuron.getBias();
+			connStart[i] = ci;
+			for (Connection c : neuron.getIncomingConns()) {
+				connRecurrentIndex[ci] = -1;
+				if (c instanceof CacheNeuronConnection) {
+					CacheNeuronConnection cnc = (CacheNeuronConnection) c;
+					Integer rIdx = recurrentIndex.get(cnc);
+					if (rIdx == null) {
+						throw new IllegalArgumentException("Recurrent connection not registered with network: " + c);
+					}
+					connType[ci] = CONN_RECURRENT;
+					connSource[ci] = sortedIndex[originalIndex.get(cnc.getIncomingNode())];
+					connWeight[ci] = cnc.getWeight();
+					connRecurrentIndex[ci] = rIdx;
+					recurrentConn[rIdx] = ci;
+				} else if (c instanceof NeuronConnection) {
+					NeuronConnection nc = (NeuronConnection) c;
+					connType[ci] = CONN_NEURON;
+					connSource[ci] = sortedIndex[originalIndex.get(nc.getIncomingNode())];
+					connWeight[ci] = nc.getWeight();
+				} else if (c instanceof BiasConnection) {
+					connType[ci] = CONN_BIAS;
+				} else {
+					throw new IllegalArgumentException("Unsupported connection type: " + c.getClass().getName());
+				}
+				ci++;
+			}
+			// AnjiActivator adds the connection from the input pattern after all other connections.
+			Integer inIdx = inputIndex.get(neuron);
+			if (inIdx != null) {
+				connType[ci] = CONN_INPUT;
+				connSource[ci] = inIdx;
+				connRecurrentIndex[ci] = -1;
+				ci++;
+			}
+			if (func[i] instanceof ActivationFunctionNonIntegrating) {
+				nonIntegratingInput[i] = new double[ci - connStart[i]];
+			}
+		}
+		connStart[neuronCount] = ci;
+
+		outputIndex = new int[outputCount];
+		for (int o = 0; o < outputCount; o++) {
+			outputIndex[o] = sortedIndex[originalIndex.get(net.getOutputNeuron(o))];
+		}
+
+		recurrentStepped = new boolean[recurrentConn.length];
+		primeComputed = new boolean[neuronCount];
+		values = new double[neuronCount];
+		previousValues = new double[neuronCount];
+		reset();
+	}
+
+	/**
+	 * Perform one activation cycle of the network given the specified input. This is equivalent to calling
+	 * {@link AnjiNet#step()} followed by {@link AnjiNet#fullyActivate()}.
+	 *
+	 * @param in The input values, must have length equal to {@link #getInputDimension()}.
+	 */
+	public void activate(double[] in) {
+		input = in;
+		if (recurrentConn.length > 0) {
+			if (!primed) {
+				prime();
+			} else {
+				double[] t = previousValues;
+				previousValues = values;
+				values = t;
+			}
+		}
+
+		final double[] v = values;
+		for (int n = 0; n < neuronCount; n++) {
+			v[n] = compute(n, v);
+		}
+	}
+
+	/**
+	 * Compute the value of the given neuron, reading the current value of non-recurrent source neurons from the given
+	 * array.
+	 */
+	private double compute(int n, double[] current) {
+		final int start = connStart[n];
+		final int end = connStart[n + 1];
+		double[] nonIntInput = nonIntegratingInput[n];
+		if (nonIntInput != null) {
+			for (int c = start; c < end; c++) {
+				nonIntInput[c - start] = read(c, current);
+			}
+			return ((ActivationFunctionNonIntegrating) func[n]).apply(nonIntInput, bias[n]);
+		}
+		double sum = bias[n];
+		for (int c = start; c < end; c++) {
+			sum += read(c, current);
+		}
+		return func[n].apply(sum);
+	}
+
+	private double read(int c, double[] current) {
+		switch (connType[c]) {
+		case CONN_NEURON:
+			return connWeight[c] * current[connSource[c]];
+		case CONN_RECURRENT:
+			return readRecurrent(c);
+		case CONN_INPUT:
+			return input[connSource[c]];
+		default:
+			return 1;
+		}
+	}
+
+	private double readRecurrent(int c) {
+		if (!primed && !recurrentStepped[connRecurrentIndex[c]]) {
+			return 0;
+		}
+		return Math.min(Math.max(connWeight[c] * previousValues[connSource[c]], -Float.MAX_VALUE), Float.MAX_VALUE);
+	}
+
+	/**
+	 * On the first step after a reset AnjiNet steps each recurrent connection in turn, causing the source neuron of
+	 * each to be lazily evaluated given the current input and the recurrent connections stepped so far. We replicate
+	 * that here by evaluating the (transitive) sources of each recurrent connection into the previous values buffer.
+	 */
+	private void prime() {
+		for (int r = 0; r < recurrentConn.length; r++) {
+			primeValue(connSource[recurrentConn[r]]);
+			recurrentStepped[r] = true;
+		}
+		primed = true;
+	}
+
+	private double primeValue(int n) {
+		if (!primeComputed[n]) {
+			for (int c = connStart[n]; c < connStart[n + 1]; c++) {
+				if (connType[c] == CONN_NEURON) {
+					primeValue(connSource[c]);
+				}
+			}
+			previousValues[n] = compute(n, previousValues);
+			primeComputed[n] = true;
+		}
+		return previousValues[n];
+	}
+
+	/**
+	 * Activate the network for a batch of independent input vectors. Rather than activating the whole network for
+	 * each input vector in turn, each neuron is evaluated for a block of input vectors at a time, allowing tight
+	 * loops over contiguous arrays. The results are identical to calling {@link #reset()} and
+	 * {@link #activate(double[])} for each input vector. Only networks without recurrent connections are supported.
+	 *
+	 * @param inputs The input vectors, laid out as [point * {@link #getInputDimension()} + input].
+	 * @param outputs Array to write the output vectors to, laid out as [point * {@link #getOutputDimension()} + output].
+	 * @param count The number of input vectors.
+	 * @throws IllegalStateException if the network is recurrent.
+	 */
+	public void activateBatch(double[] inputs, double[] outputs, int count) {
+		if (isRecurrent()) {
+			throw new IllegalStateException("Batch activation is not supported for recurrent networks.");
+		}
+		if (batchValues == null) {
+			batchValues = new double[neuronCount * BATCH_BLOCK_SIZE];
+			batchSum = new double[BATCH_BLOCK_SIZE];
+		}
+		for (int offset = 0; offset < count; offset += BATCH_BLOCK_SIZE) {
+			activateBatchBlock(inputs, outputs, offset, Math.min(BATCH_BLOCK_SIZE, count - offset));
+		}
+	}
+
+	private void activateBatchBlock(double[] inputs, double[] outputs, int offset, int size) {
+		final double[] v = batchValues;
+		final double[] sum = batchSum;
+		for (int n = 0; n < neuronCount; n++) {
+			final int start = connStart[n];
+			final int end = connStart[n + 1];
+			final int base = n * BATCH_BLOCK_SIZE;
+			double[] nonIntInput = nonIntegratingInput[n];
+			if (nonIntInput != null) {
+				ActivationFunctionNonIntegrating f = (ActivationFunctionNonIntegrating) func[n];
+				for (int b = 0; b < size; b++) {
+					for (int c = start; c < end; c++) {
+						switch (connType[c]) {
+						case CONN_NEURON:
+							nonIntInput[c - start] = connWeight[c] * v[connSource[c] * BATCH_BLOCK_SIZE + b];
+							break;
+						case CONN_INPUT:
+							nonIntInput[c - start] = inputs[(offset + b) * inputCount + connSource[c]];
+							break;
+						default:
+							nonIntInput[c - start] = 1;
+						}
+					}
+					v[base + b] = f.apply(nonIntInput, bias[n]);
+				}
+			} else {
+				final double bn = bias[n];
+				for (int b = 0; b < size; b++) {
+					sum[b] = bn;
+				}
+				for (int c = start; c < end; c++) {
+					switch (connType[c]) {
+					case CONN_NEURON:
+						final double w = connWeight[c];
+						final int srcBase = connSource[c] * BATCH_BLOCK_SIZE;
+						for (int b = 0; b < size; b++) {
+							sum[b] += w * v[srcBase + b];
+						}
+						break;
+					case CONN_INPUT:
+						int inIdx = offset * inputCount + connSource[c];
+						for (int b = 0; b < size; b++, inIdx += inputCount) {
+							sum[b] += inputs[inIdx];
+						}
+						break;
+					default:
+						for (int b = 0; b < size; b++) {
+							sum[b] += 1;
+						}
+					}
+				}
+				final ActivationFunction f = func[n];
+				for (int b = 0; b < size; b++) {
+					v[base + b] = f.apply(sum[b]);
+				}
+			}
+		}
+		for (int o = 0; o < outputCount; o++) {
+			final int base = outputIndex[o] * BATCH_BLOCK_SIZE;
+			int outIdx = offset * outputCount + o;
+			for (int b = 0; b < size; b++, outIdx += outputCount) {
+				outputs[outIdx] = v[base + b];
+			}
+		}
+	}
+
+	/**
+	 * Copy the current output values into the given array.
+	 *
+	 * @param out Array to copy into, must have length at least {@link #getOutputDimension()}.
+	 * @return The given array.
+	 */
+	public double[] getOutputs(double[] out) {
+		for (int o = 0; o < outputCount; o++) {
+			out[o] = values[outputIndex[o]];
+		}
+		return out;
+	}
+
+	/**
+	 * @param idx
+	 * @return The current value of the output neuron at position <code>idx</code>.
+	 */
+	public double getOutput(int idx) {
+		return values[outputIndex[idx]];
+	}
+
+	/**
+	 * Clear all memory in network, including neuron values and recurrent connections.
+	 */
+	public void reset() {
+		for (int n = 0; n < neuronCount; n++) {
+			values[n] = 0;
+			previousValues[n] = 0;
+			primeComputed[n] = false;
+		}
+		for (int r = 0; r < recurrentStepped.length; r++) {
+			recurrentStepped[r] = false;
+		}
+		primed = false;
+	}
+
+	/**
+	 * @return number input neurons
+	 */
+	public int getInputDimension() {
+		return inputCount;
+	}
+
+	/**
+	 * @return number output neurons
+	 */
+	public int getOutputDimension() {
+		return outputCount;
+	}
+
+	/**
+	 * @return The activation function of the output neuron at position <code>idx</code>.
+	 */
+	public ActivationFunction getOutputFunc(int idx) {
+		return func[outputIndex[idx]];
+	}
+
+	/**
+	 * @return true if network contains any recurrent connections, false otherwise
+	 */
+	public boolean isRecurrent() {
+		return recurrentConn.length > 0;
+	}
+
+	/**
+	 * @return The network this network was compiled from.
+	 */
+	public AnjiNet getSource() {
+		return source;
+	}
+
+	/**
+	 * @return the name.
+	 */
+	public String getName() {
+		return source.getName();
+	}
+
+	public void setName(String name) {
+		source.setName(name);
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return source.toString();
+	}
+
+	/**
+	 * @return <code>String</code> XML representation
+	 */
+	public String toXml() {
+		return source.toXml();
+	}
+}
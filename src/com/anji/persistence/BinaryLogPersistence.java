@@ -0,0 +1,466 @@
+package com.anji.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.log4j.Logger;
+import org.jgapcustomised.Chromosome;
+import org.jgapcustomised.Configuration;
+
+import com.anji.integration.XmlPersistableChromosome;
+import com.anji.neat.Evolver;
+import com.anji.util.Properties;
+
+/**
+ * Persistence implementation that stores Chromosomes in a binary log rather than as one XML file per Chromosome.
+ * Chromosomes are encoded with {@link ChromosomeCodec} and appended, via NIO channels, to a sequence of chunk files for
+ * the run, <code>baseDir</code>/chromosome-log/<code>runId</code>-<code>n</code>.bin. An index of the offset of
+ * each Chromosome in the log, by ID, is kept in memory for random access and appended to
+ * <code>baseDir</code>/chromosome-log/<code>runId</code>.idx as each Chromosome is stored or deleted, so that it may
+ * be reloaded when a run is resumed. Deleting or replacing a Chromosome only removes the old record from the index;
+ * the log is rewritten to reclaim the space occupied by such records when they make up a large enough fraction of it
+ * (see {@link #COMPACT_THRESHOLD_KEY}). Each record may optionally be compressed. Runs and Activators are stored as
+ * XML files as for {@link FilePersistence}.
+ *
+ * Converters to and from the XML format used by {@link FilePersistence} are provided, see
+ * {@link #loadChromosomeXml(String)}, {@link #toXml(Chromosome)} and {@link #fromXml(Configuration, String)}.
+ *
+ * @author Oliver Coleman
+ */
+public class BinaryLogPersistence extends FilePersistence {
+	private final static Logger logger = Logger.getLogger(BinaryLogPersistence.class);
+
+	/**
+	 * properties key, the maximum size of each chunk file of the log in megabytes. Default is 64.
+	 */
+	public final static String CHUNK_SIZE_KEY = "persistence.binary.chunk.size";
+
+	/**
+	 * properties key, whether to compress each Chromosome record in the log. Default is false.
+	 */
+	public final static String COMPRESS_KEY = "persistence.binary.compress";
+
+	/**
+	 * properties key, the log is compacted (rewritten to contain only the Chromosomes still in the index) when the
+	 * fraction of the log occupied by such Chromosomes falls below this value. 0 disables compaction. Default is 0.5.
+	 */
+	public final static String COMPACT_THRESHOLD_KEY = "persistence.binary.compact.threshold";
+
+	private static final String LOG_DIR = "chromosome-log";
+	private static final byte FLAG_COMPRESSED = 1;
+	// Record header: length of record data (int) and flags (byte).
+	private static final int RECORD_HEADER_SIZE = 5;
+	// Index entry: chromosome ID (long), chunk (int, -1 for deleted), offset (long), length (int).
+	private static final int INDEX_ENTRY_SIZE = 24;
+	// The minimum amount of space occupied by deleted or replaced records before the log is compacted.
+	private static final long MIN_COMPACTION_GARBAGE = 1024 * 1024;
+
+	private File logDir;
+	private long chunkSize = 64L * 1024 * 1024;
+	private boolean compress = false;
+	private double compactThreshold = 0.5;
+	private String logRunId = null;
+
+	private List<FileChannel> chunks = new ArrayList<FileChannel>();
+	private FileChannel indexChannel;
+	private ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+	// Location of each Chromosome in the log: {chunk, offset, length}.
+	private Map<Long, long[]> index = new HashMap<Long, long[]>();
+	// The total size of the log, and the size of the records in the index.
+	private long logBytes, liveBytes;
+	private ByteBuffer headerBuffer = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+	/**
+	 * See <a href=" {@docRoot} /params.htm" target="anji_params">Parameter Details </a> for specific property settings.
+	 *
+	 * @param props configuration parameters
+	 */
+	@Override
+	public void init(Properties props) {
+		super.init(props);
+		chunkSize = props.getLongProperty(CHUNK_SIZE_KEY, 64) * 1024 * 1024;
+		compress = props.getBooleanProperty(COMPRESS_KEY, false);
+		compactThreshold = props.getDoubleProperty(COMPACT_THRESHOLD_KEY, compactThreshold);
+		if (props.getBooleanProperty(Evolver.PERSIST_ENABLE_KEY, false)) {
+			logDir = new File(props.getProperty(BASE_DIR_KEY), LOG_DIR);
+			logDir.mkdirs();
+		}
+	}
+
+	/**
+	 * @see com.anji.persistence.Persistence#startRun(java.lang.String)
+	 */
+	@Override
+	public synchronized void startRun(String aRunId) {
+		super.startRun(aRunId);
+		// If persistence is disabled there is no log directory, and the log is not used.
+		if (logDir == null || aRunId.equals(logRunId))
+			return;
+		close();
+		logRunId = aRunId;
+		try {
+			openLog();
+		} catch (IOException e) {
+			String msg = "error opening chromosome log for run " + aRunId;
+			logger.error(msg, e);
+			throw new IllegalStateException(msg + ": " + e);
+		}
+	}
+
+	// Open the existing chunks and index for the current run, if any, and load the index.
+	private void openLog() throws IOException {
+		for (int chunk = 0;; chunk++) {
+			File chunkFile = chunkFile(chunk);
+			if (!chunkFile.exists())
+				break;
+			chunks.add(new RandomAccessFile(chunkFile, "rw").getChannel());
+		}
+		indexChannel = new RandomAccessFile(new File(logDir, logRunId + ".idx"), "rw").getChannel();
+		// Ignore any partially written entry at the end of the index.
+		long entryCount = indexChannel.size() / INDEX_ENTRY_SIZE;
+		ByteBuffer entries = ByteBuffer.allocate(INDEX_ENTRY_SIZE * 1024);
+		indexChannel.position(0);
+		for (long read = 0; read < entryCount;) {
+			entries.clear();
+			entries.limit((int) Math.min(entries.capacity(), (entryCount - read) * INDEX_ENTRY_SIZE));
+			while (entries.hasRemaining() && indexChannel.read(entries) >= 0)
+				;
+			entries.flip();
+			while (entries.remaining() >= INDEX_ENTRY_SIZE) {
+				long id = entries.getLong();
+				int chunk = entries.getInt();
+				long offset = entries.getLong();
+				int length = entries.getInt();
+				if (chunk < 0)
+					index.remove(id);
+				else
+					index.put(id, new long[] { chunk, offset, length });
+				read++;
+			}
+		}
+		indexChannel.position(entryCount * INDEX_ENTRY_SIZE);
+
+		logBytes = 0;
+		for (FileChannel chunk : chunks) {
+			logBytes += chunk.size();
+		}
+		liveBytes = 0;
+		for (long[] location : index.values()) {
+			liveBytes += RECORD_HEADER_SIZE + location[2];
+		}
+	}
+
+	private File chunkFile(int chunk) {
+		return new File(logDir, logRunId + "-" + chunk + ".bin");
+	}
+
+	private void checkStarted() {
+		if (logDir == null)
+			throw new IllegalStateException("the chromosome log is not available as persistence is disabled (" + Evolver.PERSIST_ENABLE_KEY + ")");
+		if (logRunId == null)
+			throw new IllegalStateException("startRun() must be called before storing or loading chromosomes");
+	}
+
+	/**
+	 * @see com.anji.persistence.Persistence#store(org.jgapcustomised.Chromosome)
+	 */
+	@Override
+	public synchronized void store(Chromosome c) throws Exception {
+		checkStarted();
+		byte[] data = ChromosomeCodec.toBytes(c, false);
+		byte flags = 0;
+		if (compress) {
+			data = deflate(data);
+			flags |= FLAG_COMPRESSED;
+		}
+
+		// Start a new chunk if the current one is full.
+		if (chunks.isEmpty() || (chunks.get(chunks.size() - 1).size() > 0 && chunks.get(chunks.size() - 1).size() + RECORD_HEADER_SIZE + data.length > chunkSize)) {
+			chunks.add(new RandomAccessFile(chunkFile(chunks.size()), "rw").getChannel());
+		}
+		int chunk = chunks.size() - 1;
+		FileChannel channel = chunks.get(chunk);
+		long offset = channel.size();
+		headerBuffer.clear();
+		headerBuffer.putInt(data.length).put(flags).flip();
+		ByteBuffer dataBuffer = ByteBuffer.wrap(data);
+		long position = offset;
+		while (headerBuffer.hasRemaining())
+			position += channel.write(headerBuffer, position);
+		while (dataBuffer.hasRemaining())
+			position += channel.write(dataBuffer, position);
+
+		long[] previous = index.put(c.getId(), new long[] { chunk, offset, data.length });
+		appendIndexEntry(c.getId(), chunk, offset, data.length);
+		logBytes += RECORD_HEADER_SIZE + data.length;
+		liveBytes += RECORD_HEADER_SIZE + data.length;
+		if (previous != null) {
+			liveBytes -= RECORD_HEADER_SIZE + previous[2];
+			compactIfNecessary();
+		}
+	}
+
+	/**
+	 * @see com.anji.persistence.Persistence#loadChromosome(java.lang.String, org.jgapcustomised.Configuration)
+	 */
+	@Override
+	public synchronized Chromosome loadChromosome(String id, Configuration config) {
+		try {
+			byte[] data = loadRecord(id);
+			return data == null ? null : ChromosomeCodec.fromBytes(data);
+		} catch (Exception e) {
+			String msg = "error loading chromosome " + id;
+			logger.error(msg, e);
+			throw new IllegalStateException(msg + ": " + e);
+		}
+	}
+
+	/**
+	 * Load the specified Chromosome from the log in the XML format used by {@link FilePersistence}, for use with
+	 * {@link FilePersistence#chromosomeFromXml(Configuration, String)} and other XML consumers.
+	 *
+	 * @param id The ID of the Chromosome.
+	 * @return The XML representation of the Chromosome, or null if it is not in the log.
+	 */
+	public synchronized String loadChromosomeXml(String id) {
+		Chromosome c = loadChromosome(id, null);
+		return c == null ? null : toXml(c);
+	}
+
+	// Returns the (decompressed) encoded chromosome with the given ID, or null if it's not in the log.
+	private byte[] loadRecord(String id) throws IOException, DataFormatException {
+		checkStarted();
+		long[] location = index.get(Long.valueOf(id));
+		if (location == null)
+			return null;
+		ByteBuffer buffer = readRecord(location);
+		int length = buffer.getInt();
+		byte flags = buffer.get();
+		byte[] data = new byte[length];
+		buffer.get(data);
+		return (flags & FLAG_COMPRESSED) != 0 ? inflate(data) : data;
+	}
+
+	// Returns the record, including the header, at the given location.
+	private ByteBuffer readRecord(long[] location) throws IOException {
+		FileChannel channel = chunks.get((int) location[0]);
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + (int) location[2]);
+		long position = location[1];
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0)
+				throw new IOException("unexpected end of chromosome log");
+			position += read;
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Removes the specified Chromosome from the index. The space it occupies in the log is reclaimed when the log is
+	 * next compacted, see {@link #COMPACT_THRESHOLD_KEY}.
+	 *
+	 * @see com.anji.persistence.Persistence#deleteChromosome(java.lang.String)
+	 */
+	@Override
+	public synchronized void deleteChromosome(String id) throws Exception {
+		checkStarted();
+		Long chromId = Long.valueOf(id);
+		long[] location = index.remove(chromId);
+		if (location != null) {
+			appendIndexEntry(chromId, -1, 0, 0);
+			liveBytes -= RECORD_HEADER_SIZE + location[2];
+			compactIfNecessary();
+		}
+	}
+
+	// Append an entry to the index file. Entries are written immediately so that the index on disk is up to date if
+	// the run is terminated abruptly.
+	private void appendIndexEntry(long id, int chunk, long offset, int length) throws IOException {
+		indexBuffer.clear();
+		indexBuffer.putLong(id).putInt(chunk).putLong(offset).putInt(length).flip();
+		while (indexBuffer.hasRemaining())
+			indexChannel.write(indexBuffer);
+	}
+
+	private void compactIfNecessary() throws IOException {
+		long garbage = logBytes - liveBytes;
+		if (compactThreshold > 0 && garbage >= MIN_COMPACTION_GARBAGE && liveBytes < logBytes * compactThreshold) {
+			compact();
+		}
+	}
+
+	/**
+	 * Rewrite the log for the current run so that it contains only the Chromosomes in the index, reclaiming the space
+	 * occupied by deleted and replaced Chromosomes. The live records are copied to new chunk files along with a new
+	 * index, which then replace the existing files.
+	 */
+	public synchronized void compact() throws IOException {
+		checkStarted();
+		long oldLogBytes = logBytes;
+
+		// Copy the live records, in log order, to new chunk files.
+		List<Map.Entry<Long, long[]>> entries = new ArrayList<Map.Entry<Long, long[]>>(index.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<Long, long[]>>() {
+			@Override
+			public int compare(Map.Entry<Long, long[]> e1, Map.Entry<Long, long[]> e2) {
+				long[] l1 = e1.getValue(), l2 = e2.getValue();
+				if (l1[0] != l2[0])
+					return l1[0] < l2[0] ? -1 : 1;
+				return l1[1] < l2[1] ? -1 : (l1[1] == l2[1] ? 0 : 1);
+			}
+		});
+		List<FileChannel> newChunks = new ArrayList<FileChannel>();
+		FileChannel newIndex = new RandomAccessFile(compactFile(new File(logDir, logRunId + ".idx")), "rw").getChannel();
+		newIndex.truncate(0);
+		ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+		FileChannel out = null;
+		long outPosition = 0;
+		try {
+			for (Map.Entry<Long, long[]> e : entries) {
+				long[] location = e.getValue();
+				ByteBuffer record = readRecord(location);
+				if (out == null || (outPosition > 0 && outPosition + record.remaining() > chunkSize)) {
+					out = new RandomAccessFile(compactFile(chunkFile(newChunks.size())), "rw").getChannel();
+					out.truncate(0);
+					newChunks.add(out);
+					outPosition = 0;
+				}
+				long offset = outPosition;
+				while (record.hasRemaining())
+					outPosition += out.write(record, outPosition);
+				entry.clear();
+				entry.putLong(e.getKey()).putInt(newChunks.size() - 1).putLong(offset).putInt((int) location[2]).flip();
+				while (entry.hasRemaining())
+					newIndex.write(entry);
+			}
+		} finally {
+			for (FileChannel chunk : newChunks) {
+				chunk.close();
+			}
+			newIndex.close();
+		}
+
+		// Replace the existing log with the new one and reload it. The files can not be replaced atomically, so if the
+		// run is terminated abruptly while this is in progress the log may be left inconsistent.
+		String runId = logRunId;
+		close();
+		logRunId = runId;
+		for (int chunk = 0; chunk < newChunks.size(); chunk++) {
+			replace(compactFile(chunkFile(chunk)), chunkFile(chunk));
+		}
+		for (int chunk = newChunks.size(); chunkFile(chunk).exists(); chunk++) {
+			if (!chunkFile(chunk).delete())
+				throw new IOException("could not delete " + chunkFile(chunk));
+		}
+		File indexFile = new File(logDir, runId + ".idx");
+		replace(compactFile(indexFile), indexFile);
+		openLog();
+		logger.info("Compacted chromosome log for run " + runId + " from " + oldLogBytes + " to " + logBytes + " bytes.");
+	}
+
+	// The temporary file used when compacting the log to replace the given file.
+	private static File compactFile(File file) {
+		return new File(file.getPath() + ".compact");
+	}
+
+	private static void replace(File from, File to) throws IOException {
+		if (to.exists() && !to.delete())
+			throw new IOException("could not delete " + to);
+		if (!from.renameTo(to))
+			throw new IOException("could not rename " + from + " to " + to);
+	}
+
+	/**
+	 * Deletes the chromosome log for all runs.
+	 *
+	 * @see com.anji.persistence.Persistence#reset()
+	 */
+	@Override
+	public synchronized void reset() {
+		close();
+		if (logDir != null && logDir.isDirectory()) {
+			for (File file : logDir.listFiles()) {
+				if (!file.delete())
+					logger.warn("could not delete " + file);
+			}
+		}
+		super.reset();
+	}
+
+	/**
+	 * Close the log files. The log is reopened by {@link #startRun(String)}.
+	 */
+	public synchronized void close() {
+		try {
+			if (indexChannel != null) {
+				indexChannel.close();
+			}
+			for (FileChannel chunk : chunks) {
+				chunk.close();
+			}
+		} catch (IOException e) {
+			logger.error("error closing chromosome log", e);
+		}
+		indexChannel = null;
+		chunks.clear();
+		index.clear();
+		logRunId = null;
+	}
+
+	/**
+	 * @return The XML representation of the given Chromosome, as stored by {@link FilePersistence}.
+	 */
+	public static String toXml(Chromosome c) {
+		return new XmlPersistableChromosome(c).toXml();
+	}
+
+	/**
+	 * @return The Chromosome represented by the given XML, as stored by {@link FilePersistence}.
+	 * @see FilePersistence#chromosomeFromXml(Configuration, String)
+	 */
+	public static Chromosome fromXml(Configuration config, String xml) throws Exception {
+		return chromosomeFromXml(config, xml);
+	}
+
+	private byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+		byte[] buffer = new byte[4096];
+		while (!deflater.finished()) {
+			out.write(buffer, 0, deflater.deflate(buffer));
+		}
+		deflater.end();
+		return out.toByteArray();
+	}
+
+	private byte[] inflate(byte[] data) throws DataFormatException {
+		Inflater inflater = new Inflater();
+		inflater.setInput(data);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+		byte[] buffer = new byte[4096];
+		while (!inflater.finished()) {
+			int count = inflater.inflate(buffer);
+			if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				throw new DataFormatException("truncated chromosome record");
+			out.write(buffer, 0, count);
+		}
+		inflater.end();
+		return out.toByteArray();
+	}
+}
@@ -19,9 +19,9 @@
  */
 package com.anji.run;
 
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jgapcustomised.Genotype;
 import org.jgapcustomised.event.GeneticEvent;
@@ -49,7 +49,8 @@ public class Run implements GeneticEventListener, Configurable {
 
 	private String name;
 
-	private List generations = new ArrayList();
+	// Copy-on-write so that the generations may be iterated by asynchronous listeners while new ones are added.
+	private List generations = new CopyOnWriteArrayList();
 
 	private Properties props;
 
@@ -9,9 +9,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 
@@ -20,6 +27,9 @@ import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.log4j.Logger;
 import org.jgapcustomised.BulkFitnessFunction;
 import org.jgapcustomised.Chromosome;
+import org.jgapcustomised.Configuration;
+import org.jgapcustomised.EvolutionMetrics;
+import org.jgapcustomised.TaskRandom;
 
 import com.anji.integration.Activator;
 import com.anji.integration.ActivatorTranscriber;
@@ -37,6 +47,8 @@ import com.ojcoleman.ahni.hyperneat.HyperNEATEvolver;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.util.ArrayUtil;
 import com.ojcoleman.ahni.util.CircularFifoBuffer;
+import com.ojcoleman.ahni.util.DaemonThreadFactory;
+import com.ojcoleman.ahni.util.WorkStealingScheduler;
 
 /**
  * <p>
@@ -57,6 +69,10 @@ import com.ojcoleman.ahni.util.CircularFifoBuffer;
  */
 public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implements Configurable {
 	private static final long serialVersionUID = 1L;
+	// Key identifying the random streams used when testing novelty, see Configuration#newTaskRandomGenerator(long...).
+	private static final long NOVELTY_RANDOM_STREAM_KEY = 0x6E6F76656C7479L;
+	// Key identifying the random streams used when evaluating individuals.
+	private static final long EVALUATION_RANDOM_STREAM_KEY = 0x6576616CL;
 	private static Logger logger = Logger.getLogger(BulkFitnessFunctionMT.class);
 
 	/**
@@ -95,13 +111,64 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	 */
 	public static final String FORCE_PERF_FITNESS = "fitness.function.performance.force.fitness";
 
+	/**
+	 * Property key for specifying the order in which individuals are evaluated, see {@link EvaluationOrder}. Individuals
+	 * are distributed over the evaluator threads according to their expected evaluation time, and idle threads steal
+	 * individuals from busy threads, so that threads are not left idle at the end of each generation while a few
+	 * expensive individuals are evaluated. Default is TIME.
+	 */
+	public static final String EVALUATION_ORDER_KEY = "fitness.evaluation.order";
+
+	/**
+	 * The orderings available for {@link #EVALUATION_ORDER_KEY}.
+	 */
+	public enum EvaluationOrder {
+		/**
+		 * Individuals are evaluated in population order.
+		 */
+		POPULATION,
+		/**
+		 * Individuals are evaluated in order of decreasing genome size.
+		 */
+		SIZE,
+		/**
+		 * Individuals are evaluated in order of decreasing expected evaluation time. The expected time is the time
+		 * taken to evaluate the individual in the previous generation or, for new individuals, is estimated from its
+		 * genome size and the average evaluation time per gene in the previous generation.
+		 */
+		TIME
+	}
+
+	/**
+	 * Property key for the maximum number of evaluation results to cache. If greater than 0 then the results of
+	 * evaluating an individual (fitness values, performance values and behaviours) are cached and reused for
+	 * subsequently evaluated individuals with identical genetic material (for example clones and elites), in this or
+	 * later generations, without transcribing or evaluating them again. The cache is only used if
+	 * {@link #fitnessValuesStable()} returns true for the primary fitness function and all fitness functions specified
+	 * by {@link #MULTI_KEY}, as otherwise the results of a previous evaluation may not be valid. Default is 0
+	 * (disabled).
+	 * 
+	 * @see EvaluationCache
+	 */
+	public static final String EVALUATION_CACHE_SIZE_KEY = "fitness.evaluation.cache.size";
 
 	protected Properties props;
 	protected Transcriber transcriber;
 	protected int numThreads;
-	protected int evaluatorsFinishedCount;
 	protected Evaluator[] evaluators;
-	protected Iterator<Chromosome> chromosomesIterator;
+	protected WorkStealingScheduler<Chromosome> scheduler;
+	protected EvaluationOrder evaluationOrder;
+	private CountDownLatch evaluatorsFinished;
+	// Evaluation times in nanoseconds, indexed by chromosome ID, recorded in the current (or most recent) generation.
+	private Map<Long, Long> evaluationTimes = new ConcurrentHashMap<Long, Long>();
+	// Total evaluation time and genome size over the individuals in evaluationTimes.
+	private long totalEvaluationTime, totalEvaluationSize;
+	// Used to transcribe offspring in the background when pipelined evolution is enabled, see offspringCreated().
+	private ExecutorService transcriptionPool;
+	// Substrates being transcribed in the background, indexed by chromosome ID.
+	private Map<Long, Future<Activator>> pendingSubstrates = new ConcurrentHashMap<Long, Future<Activator>>();
+	// Cache of evaluation results, null if disabled. See EVALUATION_CACHE_SIZE_KEY.
+	private EvaluationCache evaluationCache;
 	protected int logChampPerGens = -1;
 	protected BulkFitnessFunctionMT[] multiFitnessFunctions;
 	protected double[] multiFitnessFunctionWeights;
@@ -113,7 +180,10 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	protected boolean forcePerfFitness;
 
 	/**
-	 * This RNG should be used by all sub-classes for all randomness.
+	 * This RNG should be used by all sub-classes for all randomness. During the evaluation of an individual it draws
+	 * from a random stream specific to that individual (see {@link Configuration#newTaskRandomGenerator(long...)}), so
+	 * that evaluations are reproducible regardless of the number of evaluation threads; otherwise it draws from the
+	 * main random generator.
 	 */
 	protected Random random;
 
@@ -160,7 +230,7 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	 */
 	public void init(Properties props) {
 		this.props = props;
-		random = ((Randomizer) props.singletonObjectProperty(Randomizer.class)).getRand();
+		random = new TaskRandom(((Randomizer) props.singletonObjectProperty(Randomizer.class)).getRand());
 
 		// If this is not the primary fitness function, skip everything else.
 		if (props.getBooleanProperty("fitness.function.multi.addingsub", false)) {
@@ -182,8 +252,11 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		if (maxThreads > 0 && numThreads > maxThreads)
 			numThreads = maxThreads;
 
+		evaluationOrder = props.getEnumProperty(EVALUATION_ORDER_KEY, EvaluationOrder.class, EvaluationOrder.TIME);
+
 		EvaluatorGroup eg = new EvaluatorGroup(this.getClass().getSimpleName() + " evaluators");
 		logger.info("Using " + numThreads + " threads for transcription and evaluation.");
+		scheduler = new WorkStealingScheduler<Chromosome>(numThreads);
 		evaluators = new Evaluator[numThreads];
 		for (int i = 0; i < numThreads; i++) {
 			evaluators[i] = new Evaluator(i, eg);
@@ -249,6 +322,19 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		}
 		
 		forcePerfFitness = props.getBooleanProperty(FORCE_PERF_FITNESS, false);
+
+		int evaluationCacheSize = props.getIntProperty(EVALUATION_CACHE_SIZE_KEY, 0);
+		if (evaluationCacheSize > 0) {
+			evaluationCache = new EvaluationCache(evaluationCacheSize);
+			logger.info("Caching up to " + evaluationCacheSize + " evaluation results.");
+		}
+	}
+
+	// Make the random field draw from the Configuration's random generator, and so from task random streams.
+	private void useTaskRandom() {
+		if (random instanceof TaskRandom) {
+			((TaskRandom) random).setConfiguration(props.getConfig());
+		}
 	}
 
 	/**
@@ -363,6 +449,36 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		return false;
 	}
 
+	/**
+	 * Returns true iff the evaluation cache is enabled (see {@link #EVALUATION_CACHE_SIZE_KEY}) and the results of
+	 * previous evaluations remain valid, that is {@link #fitnessValuesStable()} returns true for the primary fitness
+	 * function and all fitness functions specified by {@link #MULTI_KEY}.
+	 */
+	protected boolean useEvaluationCache() {
+		if (evaluationCache == null || !fitnessValuesStable()) {
+			return false;
+		}
+		for (BulkFitnessFunctionMT f : multiFitnessFunctions) {
+			if (!f.fitnessValuesStable()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Remove all cached evaluation results. Subclasses whose fitness values are stable (see
+	 * {@link #fitnessValuesStable()}) but which change the task in some way, such that the results of previous
+	 * evaluations are no longer valid, should call this method when the task is changed.
+	 * 
+	 * @see #EVALUATION_CACHE_SIZE_KEY
+	 */
+	protected void clearEvaluationCache() {
+		if (evaluationCache != null) {
+			evaluationCache.clear();
+		}
+	}
+
 	/**
 	 * Evaluate a set of chromosomes.
 	 * 
@@ -371,6 +487,12 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	public void evaluate(List<Chromosome> genotypes) {
 		transcriber = (Transcriber) props.singletonObjectProperty(ActivatorTranscriber.TRANSCRIBER_KEY);
 
+		// The Configuration is not available when this function is initialised.
+		useTaskRandom();
+		for (BulkFitnessFunctionMT f : multiFitnessFunctions) {
+			f.useTaskRandom();
+		}
+
 		initialiseEvaluation();
 		for (BulkFitnessFunctionMT f : multiFitnessFunctions) {
 			f.initialiseEvaluation();
@@ -379,40 +501,28 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		bestPerformance = targetPerformanceType == 1 ? 0 : Float.MAX_VALUE;
 
 		// Evaluate fitness/performance over all individuals.
-		chromosomesIterator = genotypes.iterator();
-		evaluatorsFinishedCount = 0;
-		for (Evaluator ev : evaluators)
-			ev.go();
-		while (true) {
-			try {
-				synchronized (this) {
-					if (evaluatorsFinishedCount == evaluators.length)
-						break;
-					wait();
-				}
-			} catch (InterruptedException ignore) {
-				System.out.println(ignore);
-			}
+		// The costs are estimated from the evaluation times recorded in the previous generation.
+		scheduler.schedule(genotypes, estimateEvaluationCosts(genotypes));
+		evaluationTimes = new ConcurrentHashMap<Long, Long>(genotypes.size() * 2);
+		totalEvaluationTime = 0;
+		totalEvaluationSize = 0;
+		runEvaluators(false);
+		discardPendingSubstrates();
+		if (logger.isDebugEnabled()) {
+			logger.debug("Evaluator threads stole " + scheduler.getStealCount() + " individuals from each other.");
+		}
+		if (evaluationCache != null && useEvaluationCache()) {
+			long hits = evaluationCache.getHitCount();
+			long lookups = hits + evaluationCache.getMissCount();
+			logger.info("Evaluation cache: " + hits + " hits from " + lookups + " lookups (" + (lookups > 0 ? Math.round(100.0 * hits / lookups) : 0) + "% hit rate), " + evaluationCache.size() + " entries.");
+			evaluationCache.resetStatistics();
 		}
 		
 		if (noveltyArchives != null) {
 			// Evaluate novelty over all individuals (this must be done after fitness/performance evaluation so that
 			// we have the behaviour record of every individual in the population.
-			chromosomesIterator = genotypes.iterator();
-			evaluatorsFinishedCount = 0;
-			for (Evaluator ev : evaluators)
-				ev.goNovelty();
-			while (true) {
-				try {
-					synchronized (this) {
-						if (evaluatorsFinishedCount == evaluators.length)
-							break;
-						wait();
-					}
-				} catch (InterruptedException ignore) {
-					System.out.println(ignore);
-				}
-			}
+			scheduler.schedule(genotypes, null);
+			runEvaluators(true);
 
 			// double avgArchiveSize = 0;
 			for (int n = 0; n < noveltyObjectiveCount; n++) {
@@ -501,16 +611,124 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		return endRun;
 	}
 
-	private synchronized Chromosome getNextChromosome() {
-		if (chromosomesIterator.hasNext())
-			return chromosomesIterator.next();
-		else
+	/**
+	 * Estimate the relative cost of evaluating each of the given individuals, according to the configured
+	 * {@link EvaluationOrder}. The individuals are scheduled for evaluation in order of decreasing cost. Subclasses may
+	 * override this method to provide better estimates.
+	 * 
+	 * @param genotypes The individuals to be evaluated.
+	 * @return The estimated cost of evaluating each individual, or null to evaluate them in population order.
+	 */
+	protected double[] estimateEvaluationCosts(List<Chromosome> genotypes) {
+		if (evaluationOrder == EvaluationOrder.POPULATION) {
 			return null;
+		}
+		// Average evaluation time per gene in the previous generation, used for individuals that weren't evaluated in
+		// the previous generation.
+		double timePerGene = 1;
+		if (evaluationOrder == EvaluationOrder.TIME && totalEvaluationSize > 0 && totalEvaluationTime > 0) {
+			timePerGene = (double) totalEvaluationTime / totalEvaluationSize;
+		}
+		double[] costs = new double[genotypes.size()];
+		int i = 0;
+		for (Chromosome chrom : genotypes) {
+			Long time = evaluationOrder == EvaluationOrder.TIME ? evaluationTimes.get(chrom.getId()) : null;
+			costs[i++] = time != null ? time : chrom.size() * timePerGene;
+		}
+		return costs;
+	}
+
+	/**
+	 * {@inheritDoc} This implementation begins transcribing the offspring to its substrate in the background. The
+	 * substrate is then used when the offspring is evaluated, instead of transcribing it in the evaluator thread.
+	 */
+	@Override
+	public void offspringCreated(final Chromosome offspring) {
+		synchronized (this) {
+			if (transcriptionPool == null) {
+				transcriptionPool = Executors.newFixedThreadPool(numThreads, new DaemonThreadFactory(getClass().getSimpleName() + " transcribers"));
+			}
+			if (transcriber == null) {
+				transcriber = (Transcriber) props.singletonObjectProperty(ActivatorTranscriber.TRANSCRIBER_KEY);
+			}
+		}
+		pendingSubstrates.put(offspring.getId(), transcriptionPool.submit(new Callable<Activator>() {
+			@Override
+			public Activator call() throws Exception {
+				return (Activator) transcriber.transcribe(offspring, null);
+			}
+		}));
+	}
+
+	/**
+	 * Get the substrate for the given chromosome, either by retrieving the substrate transcribed in the background (see
+	 * {@link #offspringCreated(Chromosome)}) or by transcribing it now via
+	 * {@link #generateSubstrate(Chromosome, Activator)}.
+	 */
+	private Activator getSubstrate(Chromosome chrom, Activator substrate) throws TranscriberException {
+		Future<Activator> pending = pendingSubstrates.remove(chrom.getId());
+		if (pending != null) {
+			try {
+				Activator newSubstrate = pending.get();
+				// If the substrate decoding was a dud the previous substrate may still be reused (see Evaluator).
+				if (newSubstrate != null && substrate != null && substrate != newSubstrate) {
+					substrate.dispose();
+				}
+				return newSubstrate;
+			} catch (InterruptedException e) {
+				logger.warn("Interrupted while waiting for background transcription, transcribing again.");
+			} catch (ExecutionException e) {
+				// Transcribe again so the exception is handled in the usual way.
+			}
+		}
+		return generateSubstrate(chrom, substrate);
 	}
 
-	private synchronized void finishedEvaluating() {
-		evaluatorsFinishedCount++;
-		notifyAll();
+	/**
+	 * Dispose of any substrates transcribed in the background for chromosomes that were not evaluated (for example
+	 * because they were removed from the population as clones).
+	 */
+	private void discardPendingSubstrates() {
+		for (Future<Activator> pending : pendingSubstrates.values()) {
+			if (!pending.cancel(false)) {
+				try {
+					Activator substrate = pending.get();
+					if (substrate != null) {
+						substrate.dispose();
+					}
+				} catch (Exception ignore) {
+				}
+			}
+		}
+		pendingSubstrates.clear();
+	}
+
+	private void runEvaluators(boolean novelty) {
+		evaluatorsFinished = new CountDownLatch(evaluators.length);
+		for (Evaluator ev : evaluators) {
+			if (novelty)
+				ev.goNovelty();
+			else
+				ev.go();
+		}
+		while (true) {
+			try {
+				evaluatorsFinished.await();
+				break;
+			} catch (InterruptedException ignore) {
+				System.out.println(ignore);
+			}
+		}
+	}
+
+	private void finishedEvaluating() {
+		evaluatorsFinished.countDown();
+	}
+
+	private synchronized void recordEvaluationTime(Chromosome chrom, long time) {
+		evaluationTimes.put(chrom.getId(), time);
+		totalEvaluationTime += time;
+		totalEvaluationSize += chrom.size();
 	}
 
 	protected class Evaluator extends Thread {
@@ -560,12 +778,41 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 						}
 					}
 
+					boolean useCache = useEvaluationCache();
+					int cachedFitnessCount = objectiveCount - noveltyObjectiveCount;
+					EvolutionMetrics metrics = props.getConfig().getMetrics();
+
 					Chromosome chrom;
-					while ((chrom = getNextChromosome()) != null) {
+					while ((chrom = scheduler.next(id)) != null) {
 						if (!testingNovelty) {
+							long startTime = System.nanoTime();
+							long transcriptionTime = 0;
+							// Use a random stream specific to this chromosome so that the evaluation is reproducible
+							// regardless of the number of threads.
+							Configuration config = props.getConfig();
+							config.setTaskRandomGenerator(config.newTaskRandomGenerator(EVALUATION_RANDOM_STREAM_KEY, chrom.getId()));
 							try {
+								// If an individual with the same genetic material has been evaluated previously then
+								// reuse the results (they were recorded after postEvaluate()).
+								if (useCache && evaluationCache.apply(chrom, cachedFitnessCount)) {
+									chrom.setEvaluationDataStable();
+									if (noveltyArchives == null) {
+										finaliseEvaluation(chrom);
+									} else {
+										for (int n = 0; n < noveltyObjectiveCount; n++) {
+											noveltyArchives[n].addToCurrentPopulation(chrom.behaviours[n]);
+										}
+									}
+									long time = System.nanoTime() - startTime;
+									recordEvaluationTime(chrom, time);
+									metrics.recordEvaluation(0, time);
+									continue;
+								}
+
 								Activator previousSubstrate = substrate;
-								substrate = generateSubstrate(chrom, substrate);
+								long transcriptionStart = System.nanoTime();
+								substrate = getSubstrate(chrom, substrate);
+								transcriptionTime = System.nanoTime() - transcriptionStart;
 
 								// If a valid substrate could be generated.
 								if (substrate != null) {
@@ -623,6 +870,10 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 
 									postEvaluate(chrom, substrate, id);
 
+									if (useCache) {
+										evaluationCache.put(chrom, cachedFitnessCount);
+									}
+
 									// We just set the overall fitness value according to the weightings. A different
 									// selector (eg NSGA-II selector) may set the overall fitness to something else
 									// based on the multiple objectives.
@@ -645,13 +896,26 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 							} catch (Exception e) {
 								logger.warn("Exception during transcription or evaluation: " + e.getMessage());
 								e.printStackTrace();
+							} finally {
+								config.setTaskRandomGenerator(null);
 							}
+							long time = System.nanoTime() - startTime;
+							recordEvaluationTime(chrom, time);
+							metrics.recordEvaluation(transcriptionTime, time - transcriptionTime);
 						} else { // testingNovelty
 							int fitnessSlot = objectiveCount - noveltyArchives.length;
 							// May be empty if substrate decoding was a dud (see above).
 							if (chrom.behaviours != null) {
-								for (int n = 0; n < noveltyArchives.length; n++) {
-									chrom.setFitnessValue(noveltyArchives[n].testNovelty(chrom.behaviours[n]), fitnessSlot++);
+								// Use a random stream specific to this chromosome so that probabilistic archive
+								// additions are reproducible regardless of thread scheduling.
+								Configuration config = props.getConfig();
+								config.setTaskRandomGenerator(config.newTaskRandomGenerator(NOVELTY_RANDOM_STREAM_KEY, chrom.getId()));
+								try {
+									for (int n = 0; n < noveltyArchives.length; n++) {
+										chrom.setFitnessValue(noveltyArchives[n].testNovelty(chrom.behaviours[n]), fitnessSlot++);
+									}
+								} finally {
+									config.setTaskRandomGenerator(null);
 								}
 								finaliseEvaluation(chrom);
 							}
@@ -770,11 +1034,12 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		}
 
 		for (int n = 0; n < noveltyArchives.length; n++) {
-			if (noveltyArchives[n].archive.isEmpty())
+			List<Behaviour> archive = noveltyArchives[n].getArchive();
+			if (archive.isEmpty())
 				continue;
 			
 			String fileName = props.getProperty(HyperNEATConfiguration.OUTPUT_DIR_KEY) + props.getProperty(HyperNEATConfiguration.OUTPUT_PREFIX_KEY, "") + "novelty_archive-" + n + ".png";
-			noveltyArchives[n].archive.get(0).renderArchive(noveltyArchives[n].archive, fileName);
+			archive.get(0).renderArchive(archive, fileName);
 		}
 	}
 	
@@ -783,6 +1048,10 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	 * Sub-classes may override this method to dispose of resources upon disposal of this object.
 	 */
 	public void dispose() {
+		if (transcriptionPool != null) {
+			transcriptionPool.shutdownNow();
+			discardPendingSubstrates();
+		}
 		if (evaluators != null) {
 			for (Evaluator e : evaluators) {
 				e.dispose();
@@ -0,0 +1,180 @@
+package com.ojcoleman.ahni.evaluation;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jgapcustomised.Chromosome;
+import org.jgapcustomised.PackedAlleles;
+
+import com.ojcoleman.ahni.evaluation.novelty.Behaviour;
+
+/**
+ * A bounded cache of evaluation results (fitness values, performance values and behaviours), keyed by the genetic
+ * material of the evaluated individuals. Two individuals are considered to have the same genetic material if they have
+ * the same set of genes (innovation IDs) with the same values. When the cache is full the least recently used entry is
+ * discarded. Instances are safe for use by multiple threads.
+ *
+ * This is useful for fitness functions whose evaluations are deterministic, as elites and clones need not be
+ * transcribed and evaluated again in subsequent generations.
+ *
+ * @see BulkFitnessFunctionMT#EVALUATION_CACHE_SIZE_KEY
+ * @author Oliver Coleman
+ */
+public class EvaluationCache {
+	private final int maxSize;
+	private final LinkedHashMap<Key, Entry> entries;
+	private long hitCount, missCount;
+
+	/**
+	 * @param maxSize The maximum number of entries to store.
+	 */
+	public EvaluationCache(final int maxSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("The maximum size of the evaluation cache must be at least 1.");
+		this.maxSize = maxSize;
+		entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, EvaluationCache.Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Apply the cached evaluation results for the given Chromosome, if any, to it.
+	 *
+	 * @param chrom The Chromosome to retrieve and apply evaluation results for.
+	 * @param fitnessValueCount The number of fitness values to set, starting from the first.
+	 * @return true iff cached results were found and applied.
+	 */
+	public boolean apply(Chromosome chrom, int fitnessValueCount) {
+		Key key = new Key(chrom.getMaterial().getPackedAlleles());
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry == null) {
+				missCount++;
+				return false;
+			}
+			hitCount++;
+		}
+		for (int i = 0; i < fitnessValueCount; i++) {
+			chrom.setFitnessValue(entry.fitnessValues[i], i);
+		}
+		for (Map.Entry<String, Double> perf : entry.performanceValues.entrySet()) {
+			chrom.setPerformanceValue(perf.getKey(), perf.getValue());
+		}
+		if (entry.behaviours != null) {
+			System.arraycopy(entry.behaviours, 0, chrom.behaviours, 0, entry.behaviours.length);
+		}
+		return true;
+	}
+
+	/**
+	 * Store the evaluation results of the given (evaluated) Chromosome.
+	 *
+	 * @param chrom The Chromosome to store evaluation results for.
+	 * @param fitnessValueCount The number of fitness values to store, starting from the first.
+	 */
+	public void put(Chromosome chrom, int fitnessValueCount) {
+		Entry entry = new Entry();
+		entry.fitnessValues = Arrays.copyOf(chrom.getFitnessValues(), fitnessValueCount);
+		entry.performanceValues = new TreeMap<String, Double>(chrom.getAllPerformanceValues());
+		entry.behaviours = chrom.behaviours == null ? null : chrom.behaviours.clone();
+		Key key = new Key(chrom.getMaterial().getPackedAlleles());
+		synchronized (this) {
+			entries.put(key, entry);
+		}
+	}
+
+	/**
+	 * Remove all entries from the cache, for example because the task has changed such that previous evaluations are
+	 * no longer valid.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return The number of entries currently stored.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The maximum number of entries stored.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return The number of calls to {@link #apply(Chromosome, int)} that found cached results since the last call to
+	 *         {@link #resetStatistics()}.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return The number of calls to {@link #apply(Chromosome, int)} that did not find cached results since the last
+	 *         call to {@link #resetStatistics()}.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Reset the hit and miss counts.
+	 */
+	public synchronized void resetStatistics() {
+		hitCount = 0;
+		missCount = 0;
+	}
+
+	/**
+	 * A canonical representation of a set of genes: the innovation IDs and values of the genes in innovation ID order.
+	 * A copy is made of the IDs and values so that the cache does not retain references to the genetic material
+	 * itself.
+	 */
+	private static class Key {
+		private final long[] ids;
+		private final long[] valueBits;
+		private final int hash;
+
+		Key(PackedAlleles alleles) {
+			int size = alleles.size();
+			ids = new long[size];
+			valueBits = new long[size];
+			for (int i = 0; i < size; i++) {
+				ids[i] = alleles.getInnovationId(i);
+				valueBits[i] = Double.doubleToLongBits(alleles.getValue(i));
+			}
+			hash = 31 * Arrays.hashCode(ids) + Arrays.hashCode(valueBits);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return hash == other.hash && Arrays.equals(ids, other.ids) && Arrays.equals(valueBits, other.valueBits);
+		}
+	}
+
+	private static class Entry {
+		double[] fitnessValues;
+		Map<String, Double> performanceValues;
+		Behaviour[] behaviours;
+	}
+}
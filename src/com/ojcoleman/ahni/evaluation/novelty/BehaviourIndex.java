@@ -0,0 +1,136 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A collection of {@link Behaviour}s supporting nearest-neighbour and radius queries, used by {@link NoveltySearch}
+ * to avoid comparing each behaviour with every member of the archive and current population. Tree-based
+ * implementations assume that {@link Behaviour#distanceFrom(Behaviour)} is a metric (in particular that it satisfies
+ * the triangle inequality).
+ * 
+ * Queries may be performed concurrently by multiple threads, but modifications must not be performed concurrently with
+ * queries or other modifications.
+ */
+public abstract class BehaviourIndex {
+	/**
+	 * Slack allowed when pruning with bounds derived from the triangle inequality, to allow for rounding error in
+	 * distance calculations.
+	 */
+	protected static final double PRUNE_EPSILON = 1e-12;
+
+	/**
+	 * The available index implementations.
+	 */
+	public enum Type {
+		/**
+		 * Compare against every behaviour, see {@link LinearBehaviourIndex}.
+		 */
+		LINEAR,
+		/**
+		 * Vantage-point tree usable with any Behaviour, see {@link MetricTreeBehaviourIndex}.
+		 */
+		METRIC_TREE,
+		/**
+		 * KD-tree for {@link RealVectorBehaviour}s, see {@link KDTreeBehaviourIndex}.
+		 */
+		KD_TREE,
+		/**
+		 * Use {@link #KD_TREE} for low-dimensional {@link RealVectorBehaviour}s and {@link #METRIC_TREE} otherwise.
+		 */
+		AUTO
+	}
+
+	/**
+	 * The maximum number of dimensions for which {@link Type#AUTO} will select a KD-tree.
+	 */
+	public static final int AUTO_KD_TREE_MAX_DIMENSIONS = 16;
+
+	/**
+	 * Create a new index of the given type.
+	 * 
+	 * @param type The type of index.
+	 * @param sample A sample behaviour, used to select the index type when type is {@link Type#AUTO}.
+	 */
+	public static BehaviourIndex newIndex(Type type, Behaviour sample) {
+		if (type == Type.AUTO) {
+			if (sample instanceof RealVectorBehaviour && ((RealVectorBehaviour) sample).p.getDimension() <= AUTO_KD_TREE_MAX_DIMENSIONS) {
+				type = Type.KD_TREE;
+			} else {
+				type = Type.METRIC_TREE;
+			}
+		}
+		switch (type) {
+		case METRIC_TREE:
+			return new MetricTreeBehaviourIndex();
+		case KD_TREE:
+			return new KDTreeBehaviourIndex();
+		default:
+			return new LinearBehaviourIndex();
+		}
+	}
+
+	/**
+	 * Add a behaviour to this index.
+	 */
+	public abstract void add(Behaviour b);
+
+	/**
+	 * Add all the given behaviours to this index.
+	 */
+	public void addAll(Collection<Behaviour> behaviours) {
+		for (Behaviour b : behaviours) {
+			add(b);
+		}
+	}
+
+	/**
+	 * Remove the given behaviour from this index. Behaviours are compared by identity.
+	 * 
+	 * @return true iff the behaviour was contained in this index.
+	 */
+	public abstract boolean remove(Behaviour b);
+
+	/**
+	 * Remove all behaviours from this index.
+	 */
+	public abstract void clear();
+
+	/**
+	 * @return The number of behaviours in this index.
+	 */
+	public abstract int size();
+
+	/**
+	 * @return true iff this index contains no behaviours.
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return The behaviours in this index. The returned list should not be modified. This may reorganise the storage
+	 *         of the index, so it must not be called concurrently with queries.
+	 */
+	public abstract List<Behaviour> getBehaviours();
+
+	/**
+	 * Offer the behaviours in this index that may be among the nearest neighbours of the given query behaviour to the
+	 * given {@link NearestNeighbours}. Distances are calculated as <code>query.distanceFrom(b)</code>. The given
+	 * NearestNeighbours may already contain neighbours from other sources, in which case its current bound is used to
+	 * prune the search.
+	 */
+	public abstract void nearest(Behaviour query, NearestNeighbours neighbours);
+
+	/**
+	 * @return true iff this index contains a behaviour whose distance from the given query behaviour is less than the
+	 *         given radius.
+	 */
+	public abstract boolean containsWithin(Behaviour query, double radius);
+
+	/**
+	 * @return The number of behaviours in this index whose distance from the given query behaviour is less than the
+	 *         given radius.
+	 */
+	public abstract int countWithin(Behaviour query, double radius);
+}
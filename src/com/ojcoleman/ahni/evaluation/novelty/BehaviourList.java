@@ -0,0 +1,159 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Storage for the behaviours in a {@link BehaviourIndex}, in the order they were added. Behaviours are located by
+ * identity via a map from behaviour to slot, and removing a behaviour clears its slot rather than shifting the
+ * following behaviours, so both take constant time. Cleared slots are discarded when they outnumber the behaviours
+ * remaining, so the amortised cost of removal remains constant.
+ */
+class BehaviourList {
+	/**
+	 * The minimum number of cleared slots before the list is compacted automatically.
+	 */
+	static final int MIN_CLEARED_FOR_COMPACTION = 64;
+
+	// The behaviours, or null for slots that have been cleared.
+	private ArrayList<Behaviour> slots = new ArrayList<Behaviour>();
+	private List<Behaviour> view = Collections.unmodifiableList(slots);
+	// The slot of the most recent occurrence of each behaviour.
+	private IdentityHashMap<Behaviour, Integer> positions = new IdentityHashMap<Behaviour, Integer>();
+	private int size;
+	// Whether a behaviour has ever been added while already contained in this list.
+	private boolean duplicates;
+
+	/**
+	 * Add the given behaviour to the end of this list.
+	 */
+	void add(Behaviour b) {
+		if (positions.put(b, slots.size()) != null) {
+			duplicates = true;
+		}
+		slots.add(b);
+		size++;
+	}
+
+	/**
+	 * Remove the most recent occurrence of the given behaviour (compared by identity) by clearing its slot.
+	 *
+	 * @return The slot the behaviour occupied, or -1 if it is not contained in this list.
+	 */
+	int remove(Behaviour b) {
+		Integer slot = positions.remove(b);
+		if (slot == null)
+			return -1;
+		slots.set(slot, null);
+		size--;
+		if (duplicates) {
+			// Record the previous occurrence, if any.
+			for (int i = slot - 1; i >= 0; i--) {
+				if (slots.get(i) == b) {
+					positions.put(b, i);
+					break;
+				}
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * @return true iff a behaviour has been added to this list while already contained in it (since it was last
+	 *         cleared). Such behaviours can not be distinguished by identity.
+	 */
+	boolean hasDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * @return The number of behaviours in this list.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return The number of slots in this list, including cleared slots.
+	 */
+	int slotCount() {
+		return slots.size();
+	}
+
+	/**
+	 * @return The behaviour in the given slot, or null if the slot has been cleared.
+	 */
+	Behaviour get(int slot) {
+		return slots.get(slot);
+	}
+
+	/**
+	 * @return true iff there are enough cleared slots that the list should be compacted.
+	 */
+	boolean needsCompaction() {
+		return slots.size() - size > Math.max(MIN_CLEARED_FOR_COMPACTION, size);
+	}
+
+	/**
+	 * Discard the cleared slots, preserving the order of the behaviours.
+	 *
+	 * @param prefix A number of slots.
+	 * @return The number of behaviours contained in the first <code>prefix</code> slots, which is the position of the
+	 *         first slot following them after compaction.
+	 */
+	int compact(int prefix) {
+		int newPrefix = prefix;
+		if (size < slots.size()) {
+			int j = 0;
+			for (int i = 0; i < slots.size(); i++) {
+				Behaviour b = slots.get(i);
+				if (b != null) {
+					slots.set(j++, b);
+				} else if (i < prefix) {
+					newPrefix--;
+				}
+			}
+			slots.subList(size, slots.size()).clear();
+			positions.clear();
+			for (int i = 0; i < size; i++) {
+				positions.put(slots.get(i), i);
+			}
+			duplicates = positions.size() < size;
+		}
+		return newPrefix;
+	}
+
+	/**
+	 * @return The behaviours in this list, which must be compact (see {@link #compact(int)}). The returned list is
+	 *         unmodifiable and reflects subsequent changes to this list.
+	 */
+	List<Behaviour> view() {
+		assert size == slots.size() : "BehaviourList.view() called on a list that is not compact.";
+		return view;
+	}
+
+	/**
+	 * @return The behaviours in this list, in order.
+	 */
+	Behaviour[] toArray() {
+		Behaviour[] array = new Behaviour[size];
+		int j = 0;
+		for (int i = 0; i < slots.size(); i++) {
+			if (slots.get(i) != null)
+				array[j++] = slots.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Remove all behaviours from this list.
+	 */
+	void clear() {
+		slots.clear();
+		positions.clear();
+		size = 0;
+		duplicates = false;
+	}
+}
@@ -0,0 +1,189 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+/**
+ * A {@link BehaviourIndex} based on a KD-tree, for {@link RealVectorBehaviour}s. The tree is pruned using the L1
+ * distance from the query to the bounding region of each node, matching the distance measure used by
+ * {@link RealVectorBehaviour#distanceFrom(Behaviour)}. KD-trees are most effective for low-dimensional behaviours; for
+ * high-dimensional behaviours {@link MetricTreeBehaviourIndex} may perform better.
+ */
+public class KDTreeBehaviourIndex extends TreeBehaviourIndex {
+	private Node root;
+	private int dimensions = -1;
+
+	private static class Node {
+		// Dimension the node is split on, -1 for leaf nodes.
+		int splitDim = -1;
+		// Behaviours in lower have a value no greater than this in the split dimension, those in upper no less.
+		double splitValue;
+		Node lower, upper;
+		// Behaviours in a leaf node.
+		RealVectorBehaviour[] bucket;
+	}
+
+	@Override
+	protected void checkBehaviour(Behaviour b) {
+		if (!(b instanceof RealVectorBehaviour))
+			throw new IllegalArgumentException("KDTreeBehaviourIndex only supports RealVectorBehaviour, " + b.getClass().getName() + " given.");
+		int dim = ((RealVectorBehaviour) b).p.getDimension();
+		if (dimensions == -1)
+			dimensions = dim;
+		else if (dim != dimensions)
+			throw new IllegalArgumentException("All behaviours in a KDTreeBehaviourIndex must have the same dimension.");
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		dimensions = -1;
+	}
+
+	@Override
+	protected void build(Behaviour[] items) {
+		if (items.length == 0) {
+			root = null;
+			return;
+		}
+		RealVectorBehaviour[] rvItems = new RealVectorBehaviour[items.length];
+		for (int i = 0; i < items.length; i++) {
+			rvItems[i] = (RealVectorBehaviour) items[i];
+		}
+		root = build(rvItems, 0, items.length);
+	}
+
+	private Node build(RealVectorBehaviour[] items, int lo, int hi) {
+		Node node = new Node();
+		if (hi - lo > LEAF_SIZE) {
+			// Split on the dimension with the largest spread.
+			double maxSpread = 0;
+			for (int d = 0; d < dimensions; d++) {
+				double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+				for (int i = lo; i < hi; i++) {
+					double v = items[i].p.getDataRef()[d];
+					if (v < min)
+						min = v;
+					if (v > max)
+						max = v;
+				}
+				if (max - min > maxSpread) {
+					maxSpread = max - min;
+					node.splitDim = d;
+				}
+			}
+		}
+		if (node.splitDim == -1) {
+			// Few enough behaviours, or all behaviours identical.
+			node.bucket = new RealVectorBehaviour[hi - lo];
+			System.arraycopy(items, lo, node.bucket, 0, hi - lo);
+			return node;
+		}
+		int median = (lo + hi) >>> 1;
+		select(items, node.splitDim, lo, hi - 1, median);
+		node.splitValue = items[median].p.getDataRef()[node.splitDim];
+		node.lower = build(items, lo, median);
+		node.upper = build(items, median, hi);
+		return node;
+	}
+
+	@Override
+	protected void treeNearest(Behaviour query, NearestNeighbours neighbours) {
+		if (root != null) {
+			RealVectorBehaviour q = (RealVectorBehaviour) query;
+			nearest(root, q, q.p.getDataRef(), new double[dimensions], 0, neighbours);
+		}
+	}
+
+	/**
+	 * @param offset The per-dimension L1 distance from the query to the region bounding the node.
+	 * @param regionDist The sum of offset.
+	 */
+	private void nearest(Node node, RealVectorBehaviour query, double[] q, double[] offset, double regionDist, NearestNeighbours neighbours) {
+		if (node.bucket != null) {
+			for (RealVectorBehaviour b : node.bucket) {
+				if (!isRemoved(b))
+					neighbours.offer(query.distanceFrom(b), b);
+			}
+			return;
+		}
+		int d = node.splitDim;
+		double diff = q[d] - node.splitValue;
+		Node near = diff < 0 ? node.lower : node.upper;
+		Node far = diff < 0 ? node.upper : node.lower;
+		nearest(near, query, q, offset, regionDist, neighbours);
+
+		double oldOffset = offset[d];
+		double farDist = regionDist - oldOffset + Math.abs(diff);
+		if (farDist / query.maxDist - PRUNE_EPSILON < neighbours.bound()) {
+			offset[d] = Math.abs(diff);
+			nearest(far, query, q, offset, farDist, neighbours);
+			offset[d] = oldOffset;
+		}
+	}
+
+	@Override
+	protected int treeCountWithin(Behaviour query, double radius, boolean stopAtFirst) {
+		if (root == null)
+			return 0;
+		RealVectorBehaviour q = (RealVectorBehaviour) query;
+		return countWithin(root, q, q.p.getDataRef(), new double[dimensions], 0, radius, stopAtFirst);
+	}
+
+	private int countWithin(Node node, RealVectorBehaviour query, double[] q, double[] offset, double regionDist, double radius, boolean stopAtFirst) {
+		int count = 0;
+		if (node.bucket != null) {
+			for (RealVectorBehaviour b : node.bucket) {
+				if (!isRemoved(b) && query.distanceFrom(b) < radius) {
+					count++;
+					if (stopAtFirst)
+						return count;
+				}
+			}
+			return count;
+		}
+		int d = node.splitDim;
+		double diff = q[d] - node.splitValue;
+		Node near = diff < 0 ? node.lower : node.upper;
+		Node far = diff < 0 ? node.upper : node.lower;
+		count += countWithin(near, query, q, offset, regionDist, radius, stopAtFirst);
+		if (stopAtFirst && count > 0)
+			return count;
+
+		double oldOffset = offset[d];
+		double farDist = regionDist - oldOffset + Math.abs(diff);
+		if (farDist / query.maxDist - PRUNE_EPSILON < radius) {
+			offset[d] = Math.abs(diff);
+			count += countWithin(far, query, q, offset, farDist, radius, stopAtFirst);
+			offset[d] = oldOffset;
+		}
+		return count;
+	}
+
+	/**
+	 * Partially sort items[lo..hi] (inclusive) by their value in the given dimension such that the item at index n is
+	 * the one that would be there if the range were fully sorted.
+	 */
+	private static void select(RealVectorBehaviour[] items, int dim, int lo, int hi, int n) {
+		while (hi > lo) {
+			double pivot = items[(lo + hi) >>> 1].p.getDataRef()[dim];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (items[i].p.getDataRef()[dim] < pivot)
+					i++;
+				while (items[j].p.getDataRef()[dim] > pivot)
+					j--;
+				if (i <= j) {
+					RealVectorBehaviour t = items[i];
+					items[i] = items[j];
+					items[j] = t;
+					i++;
+					j--;
+				}
+			}
+			if (n <= j)
+				hi = j;
+			else if (n >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+}
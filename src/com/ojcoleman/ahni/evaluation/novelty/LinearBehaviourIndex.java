@@ -0,0 +1,70 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+import java.util.List;
+
+/**
+ * A {@link BehaviourIndex} that compares a query against every behaviour it contains.
+ */
+public class LinearBehaviourIndex extends BehaviourIndex {
+	private BehaviourList behaviours = new BehaviourList();
+
+	@Override
+	public void add(Behaviour b) {
+		behaviours.add(b);
+	}
+
+	@Override
+	public boolean remove(Behaviour b) {
+		if (behaviours.remove(b) == -1)
+			return false;
+		if (behaviours.needsCompaction())
+			behaviours.compact(0);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		behaviours.clear();
+	}
+
+	@Override
+	public int size() {
+		return behaviours.size();
+	}
+
+	@Override
+	public List<Behaviour> getBehaviours() {
+		behaviours.compact(0);
+		return behaviours.view();
+	}
+
+	@Override
+	public void nearest(Behaviour query, NearestNeighbours neighbours) {
+		for (int i = 0; i < behaviours.slotCount(); i++) {
+			Behaviour b = behaviours.get(i);
+			if (b != null)
+				neighbours.offer(query.distanceFrom(b), b);
+		}
+	}
+
+	@Override
+	public boolean containsWithin(Behaviour query, double radius) {
+		for (int i = 0; i < behaviours.slotCount(); i++) {
+			Behaviour b = behaviours.get(i);
+			if (b != null && query.distanceFrom(b) < radius)
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public int countWithin(Behaviour query, double radius) {
+		int count = 0;
+		for (int i = 0; i < behaviours.slotCount(); i++) {
+			Behaviour b = behaviours.get(i);
+			if (b != null && query.distanceFrom(b) < radius)
+				count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,149 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+/**
+ * A {@link BehaviourIndex} based on a vantage-point tree. Only {@link Behaviour#distanceFrom(Behaviour)} is used, so
+ * this index may be used with any type of Behaviour for which distanceFrom is a metric.
+ */
+public class MetricTreeBehaviourIndex extends TreeBehaviourIndex {
+	private Node root;
+
+	private static class Node {
+		// Vantage point, null for leaf nodes.
+		Behaviour vantage;
+		// Median distance from the vantage point. Behaviours in inside are no further than this, behaviours in
+		// outside are no closer.
+		double radius;
+		Node inside, outside;
+		// Behaviours in a leaf node.
+		Behaviour[] bucket;
+	}
+
+	@Override
+	protected void build(Behaviour[] items) {
+		root = items.length == 0 ? null : build(items, new double[items.length], 0, items.length);
+	}
+
+	private Node build(Behaviour[] items, double[] dist, int lo, int hi) {
+		Node node = new Node();
+		if (hi - lo <= LEAF_SIZE) {
+			node.bucket = new Behaviour[hi - lo];
+			System.arraycopy(items, lo, node.bucket, 0, hi - lo);
+			return node;
+		}
+		// Use the middle item as the vantage point, the order of items is arbitrary after partitioning.
+		swap(items, dist, lo, (lo + hi) >>> 1);
+		node.vantage = items[lo];
+		for (int i = lo + 1; i < hi; i++) {
+			dist[i] = node.vantage.distanceFrom(items[i]);
+		}
+		int median = (lo + 1 + hi) >>> 1;
+		select(items, dist, lo + 1, hi - 1, median);
+		node.radius = dist[median];
+		node.inside = build(items, dist, lo + 1, median);
+		node.outside = build(items, dist, median, hi);
+		return node;
+	}
+
+	@Override
+	protected void treeNearest(Behaviour query, NearestNeighbours neighbours) {
+		if (root != null)
+			nearest(root, query, neighbours);
+	}
+
+	private void nearest(Node node, Behaviour query, NearestNeighbours neighbours) {
+		if (node.bucket != null) {
+			for (Behaviour b : node.bucket) {
+				if (!isRemoved(b))
+					neighbours.offer(query.distanceFrom(b), b);
+			}
+			return;
+		}
+		double d = query.distanceFrom(node.vantage);
+		if (!isRemoved(node.vantage))
+			neighbours.offer(d, node.vantage);
+		// Search the side the query falls in first, as it is more likely to tighten the bound.
+		if (d < node.radius) {
+			if (d - node.radius < neighbours.bound() + PRUNE_EPSILON)
+				nearest(node.inside, query, neighbours);
+			if (node.radius - d < neighbours.bound() + PRUNE_EPSILON)
+				nearest(node.outside, query, neighbours);
+		} else {
+			if (node.radius - d < neighbours.bound() + PRUNE_EPSILON)
+				nearest(node.outside, query, neighbours);
+			if (d - node.radius < neighbours.bound() + PRUNE_EPSILON)
+				nearest(node.inside, query, neighbours);
+		}
+	}
+
+	@Override
+	protected int treeCountWithin(Behaviour query, double radius, boolean stopAtFirst) {
+		return root == null ? 0 : countWithin(root, query, radius, stopAtFirst);
+	}
+
+	private int countWithin(Node node, Behaviour query, double radius, boolean stopAtFirst) {
+		int count = 0;
+		if (node.bucket != null) {
+			for (Behaviour b : node.bucket) {
+				if (!isRemoved(b) && query.distanceFrom(b) < radius) {
+					count++;
+					if (stopAtFirst)
+						return count;
+				}
+			}
+			return count;
+		}
+		double d = query.distanceFrom(node.vantage);
+		if (d < radius && !isRemoved(node.vantage)) {
+			count++;
+			if (stopAtFirst)
+				return count;
+		}
+		if (d - node.radius < radius + PRUNE_EPSILON) {
+			count += countWithin(node.inside, query, radius, stopAtFirst);
+			if (stopAtFirst && count > 0)
+				return count;
+		}
+		if (node.radius - d < radius + PRUNE_EPSILON) {
+			count += countWithin(node.outside, query, radius, stopAtFirst);
+		}
+		return count;
+	}
+
+	/**
+	 * Partially sort items[lo..hi] (inclusive) by the corresponding values in dist such that the item at index n is
+	 * the one that would be there if the range were fully sorted, items before it are no further and items after it
+	 * are no closer.
+	 */
+	private static void select(Behaviour[] items, double[] dist, int lo, int hi, int n) {
+		while (hi > lo) {
+			double pivot = dist[(lo + hi) >>> 1];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (dist[i] < pivot)
+					i++;
+				while (dist[j] > pivot)
+					j--;
+				if (i <= j) {
+					swap(items, dist, i, j);
+					i++;
+					j--;
+				}
+			}
+			if (n <= j)
+				hi = j;
+			else if (n >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	private static void swap(Behaviour[] items, double[] dist, int i, int j) {
+		Behaviour tb = items[i];
+		items[i] = items[j];
+		items[j] = tb;
+		double td = dist[i];
+		dist[i] = dist[j];
+		dist[j] = td;
+	}
+}
@@ -0,0 +1,127 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+import java.util.Arrays;
+
+/**
+ * A bounded max-heap used to collect the k nearest {@link Behaviour}s to a query behaviour. Offering a candidate costs
+ * O(log k), so selecting the k nearest of n candidates costs O(n log k) rather than the O(n log n) of a full sort. The
+ * distance of the current k-th nearest candidate is available via {@link #bound()} so that searches over a
+ * {@link BehaviourIndex} can prune candidates that cannot be among the k nearest.
+ */
+public class NearestNeighbours {
+	private final int k;
+	private final double[] dist;
+	private final Behaviour[] behaviours;
+	private int size;
+
+	/**
+	 * @param k The maximum number of nearest neighbours to retain.
+	 */
+	public NearestNeighbours(int k) {
+		if (k < 1)
+			throw new IllegalArgumentException("k must be >= 1");
+		this.k = k;
+		dist = new double[k];
+		behaviours = new Behaviour[k];
+	}
+
+	/**
+	 * Offer a candidate neighbour.
+	 * 
+	 * @return true iff the candidate is (currently) one of the k nearest.
+	 */
+	public boolean offer(double d, Behaviour b) {
+		if (size < k) {
+			// Sift up.
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >> 1;
+				if (dist[parent] >= d)
+					break;
+				dist[i] = dist[parent];
+				behaviours[i] = behaviours[parent];
+				i = parent;
+			}
+			dist[i] = d;
+			behaviours[i] = b;
+			return true;
+		}
+		if (d >= dist[0])
+			return false;
+		// Replace root and sift down.
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && dist[child + 1] > dist[child])
+				child++;
+			if (dist[child] <= d)
+				break;
+			dist[i] = dist[child];
+			behaviours[i] = behaviours[child];
+			i = child;
+		}
+		dist[i] = d;
+		behaviours[i] = b;
+		return true;
+	}
+
+	/**
+	 * @return The distance a candidate must be less than to be one of the k nearest, or positive infinity if fewer than
+	 *         k candidates have been offered.
+	 */
+	public double bound() {
+		return size < k ? Double.POSITIVE_INFINITY : dist[0];
+	}
+
+	/**
+	 * @return The number of neighbours currently retained, at most k.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The maximum number of neighbours retained.
+	 */
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * @return The number of retained neighbours with a distance less than the given distance.
+	 */
+	public int countWithin(double d) {
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (dist[i] < d)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return The distances of the retained neighbours, sorted in ascending order.
+	 */
+	public double[] getSortedDistances() {
+		double[] sorted = Arrays.copyOf(dist, size);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * @return The retained neighbours, in no particular order.
+	 */
+	public Behaviour[] getBehaviours() {
+		return Arrays.copyOf(behaviours, size);
+	}
+
+	/**
+	 * Remove all neighbours.
+	 */
+	public void clear() {
+		Arrays.fill(behaviours, 0, size, null);
+		size = 0;
+	}
+}
@@ -1,9 +1,11 @@
 package com.ojcoleman.ahni.evaluation.novelty;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Random;
 
 import org.apache.log4j.Logger;
@@ -42,6 +44,47 @@ public class NoveltySearch implements Configurable {
 	 * fitness.function.novelty.threshold. Default is 0 (disabled, threshold method will be used instead).
 	 */
 	public static final String ARCHIVE_ADD_PROB = "fitness.function.novelty.add_probability";
+	/**
+	 * The type of index used to find the nearest neighbours of a behaviour in the archive and current population, one
+	 * of LINEAR, METRIC_TREE, KD_TREE or AUTO. LINEAR compares a behaviour against every member of the archive and
+	 * current population. METRIC_TREE uses a vantage-point tree and may be used with any {@link Behaviour}. KD_TREE
+	 * uses a KD-tree and may only be used with {@link RealVectorBehaviour}. AUTO selects KD_TREE for
+	 * RealVectorBehaviours with at most {@link BehaviourIndex#AUTO_KD_TREE_MAX_DIMENSIONS} dimensions and METRIC_TREE
+	 * otherwise. The tree indexes require that {@link Behaviour#distanceFrom(Behaviour)} is a metric; the novelty
+	 * values produced are identical for all index types. Default is AUTO.
+	 */
+	public static final String INDEX = "fitness.function.novelty.index";
+	/**
+	 * The maximum number of behaviours to store in the archive. When the archive is full a behaviour is evicted for
+	 * each new behaviour added, according to fitness.function.novelty.archive.eviction. Default is 0 (unbounded).
+	 */
+	public static final String ARCHIVE_MAX_SIZE = "fitness.function.novelty.archive.max_size";
+	/**
+	 * The policy used to evict behaviours when the archive is full, one of FIFO, LEAST_NOVEL or RANDOM, see
+	 * {@link EvictionPolicy}. Default is FIFO.
+	 */
+	public static final String ARCHIVE_EVICTION = "fitness.function.novelty.archive.eviction";
+
+	/**
+	 * Policies for evicting behaviours from a full archive, see {@link NoveltySearch#ARCHIVE_EVICTION}.
+	 */
+	public enum EvictionPolicy {
+		/**
+		 * Evict the behaviour that has been in the archive the longest.
+		 */
+		FIFO,
+		/**
+		 * Evict the behaviour that was least novel when it was added to the archive. If a new behaviour is less novel
+		 * than every behaviour in the archive then the new behaviour is discarded instead.
+		 */
+		LEAST_NOVEL,
+		/**
+		 * Maintain the archive as a uniform random sample (reservoir) of all behaviours ever added to it: the n-th
+		 * behaviour added replaces a randomly selected member of the archive with probability max_size / n, and is
+		 * otherwise discarded.
+		 */
+		RANDOM
+	}
 
 	int k = 30;
 	double archiveThreshold = 0;
@@ -49,9 +92,24 @@ public class NoveltySearch implements Configurable {
 	double archiveThresholdMin;
 
 	Properties properties;
-	public List<Behaviour> archive;
+	BehaviourIndex.Type indexType;
+	BehaviourIndex archive;
 	List<Behaviour> currentPop;
+	volatile BehaviourIndex currentPopIndex;
 	List<Behaviour> toArchive;
+	// Novelty of the behaviours in toArchive, for EvictionPolicy.LEAST_NOVEL.
+	Map<Behaviour, Double> toArchiveNovelty;
+	int archiveMaxSize;
+	EvictionPolicy evictionPolicy;
+	// Archived behaviours ordered by their novelty when added, for EvictionPolicy.LEAST_NOVEL.
+	PriorityQueue<ArchiveEntry> archiveByNovelty;
+	// Archived behaviours for EvictionPolicy.FIFO and RANDOM, as a ring buffer in which archiveRingHead is the oldest
+	// behaviour once the archive is full. For RANDOM only the slots matter, not the order.
+	Behaviour[] archiveRing;
+	int archiveRingHead;
+	long archiveAdditionCount; // Total number of behaviours offered to the archive, for EvictionPolicy.RANDOM.
+	long evictionCount;
+	int evictionCountSinceLog;
 	int noNewArchiveCount; // count number of generations in a row for which no individual added to archive.
 	int noNewArchiveGenerationsThreshold = 10;
 	int tooManyArchiveAdditionsThreshold;
@@ -78,6 +136,13 @@ public class NoveltySearch implements Configurable {
 		}
 
 		k = props.getIntProperty(K, k);
+		indexType = props.getEnumProperty(INDEX, BehaviourIndex.Type.class, BehaviourIndex.Type.AUTO);
+		archiveMaxSize = props.getIntProperty(ARCHIVE_MAX_SIZE, 0);
+		evictionPolicy = props.getEnumProperty(ARCHIVE_EVICTION, EvictionPolicy.class, EvictionPolicy.FIFO);
+		if (archiveMaxSize < 0)
+			throw new IllegalArgumentException(ARCHIVE_MAX_SIZE + " must be >= 0.");
+		if (archiveMaxSize > 0)
+			logger.info("Novelty archive size limited to " + archiveMaxSize + " using " + evictionPolicy + " eviction.");
 		// Adjust threshold so that around 1% of population is added at a time.
 		int popSize = props.getIntProperty(NeatConfiguration.POPUL_SIZE_KEY);
 		tooManyArchiveAdditionsThreshold = Math.max(1, (int) Math.round(popSize * 0.01));
@@ -89,10 +154,20 @@ public class NoveltySearch implements Configurable {
 	 * Reset this archive. This empties the archive and resets all state variables.
 	 */
 	public void reset() {
-		archive = new ArrayList<Behaviour>(k);
+		// The archive index is created when the first behaviour is added to it, so that the type of index may be
+		// selected according to the type of behaviour.
+		archive = null;
 		toArchive = Collections.synchronizedList(new ArrayList<Behaviour>());
+		toArchiveNovelty = Collections.synchronizedMap(new IdentityHashMap<Behaviour, Double>());
+		archiveByNovelty = new PriorityQueue<ArchiveEntry>();
+		archiveRing = archiveMaxSize > 0 && evictionPolicy != EvictionPolicy.LEAST_NOVEL ? new Behaviour[archiveMaxSize] : null;
+		archiveRingHead = 0;
 		currentPop = new ArrayList<Behaviour>();
+		currentPopIndex = null;
 		noNewArchiveCount = 0;
+		archiveAdditionCount = 0;
+		evictionCount = 0;
+		evictionCountSinceLog = 0;
 	}
 
 	/**
@@ -103,38 +178,33 @@ public class NoveltySearch implements Configurable {
 	 */
 	public double testNovelty(Behaviour b) {
 		// System.err.println(b);
-		int totalSize = archive.size() + currentPop.size();
-		double[] dist = new double[totalSize];
-		int i = 0;
+		NearestNeighbours neighbours = new NearestNeighbours(k);
+		// Search the archive first so that we can determine how many times this behaviour already occurs in it.
 		int inArchiveCount = 0;
-		for (Behaviour b2 : archive) {
-			dist[i] = b.distanceFrom(b2);
-			assert (dist[i] >= 0 && dist[i] <= 1) : "Values returned by implementations of Behaviour.distanceFrom() must be in the range [0, 1] but a value of " + dist[i] + " was found.";
-			if (dist[i] < 0.0000001) inArchiveCount++;
-			i++;
+		if (archive != null) {
+			archive.nearest(b, neighbours);
+			inArchiveCount = neighbours.countWithin(0.0000001);
 		}
 		assert currentPop.size() > 0 : "The current population in NoveltySearch has zero size.";
-		for (Behaviour b2 : currentPop) {
-			dist[i] = b.distanceFrom(b2);
-			assert (dist[i] >= 0 && dist[i] <= 1) : "Values returned by implementations of Behaviour.distanceFrom() must be in the range [0, 1] but a value of " + dist[i] + " was found.";
-			i++;
-		}
-		int kTemp = Math.min(totalSize, this.k);
-		Arrays.sort(dist);
+		getCurrentPopulationIndex().nearest(b, neighbours);
+
+		double[] dist = neighbours.getSortedDistances();
 		double avgDist = 0;
-		for (i = 0; i < kTemp; i++) {
+		for (int i = 0; i < dist.length; i++) {
+			assert (dist[i] >= 0 && dist[i] <= 1) : "Values returned by implementations of Behaviour.distanceFrom() must be in the range [0, 1] but a value of " + dist[i] + " was found.";
 			avgDist += dist[i];
 		}
-		avgDist /= kTemp;
+		avgDist /= dist.length;
 		assert (avgDist >= 0 && avgDist <= 1) : "Values returned by testNovelty must be in the range [0, 1] but a value of " + avgDist + " was found.";
 
 		// Don't add it if it's already in the archive k times (at which point adding it more times will have no 
 		// effect on the average distance calculation but will consume resources (memory, cpu).
+		// Only the k nearest neighbours from the archive are retained above, so inArchiveCount is at most k.
 		if (inArchiveCount < k) {
 			// If using probabilistic archive addition method.
 			if (addProbability > 0) {
 				if (properties.getConfig().getRandomGenerator().nextDouble() < addProbability) {
-					toArchive.add(b);
+					addToArchiveQueue(b, avgDist);
 				}
 			} else { // Using threshold archive addition method.
 				if (archiveThreshold == 0) {
@@ -143,8 +213,8 @@ public class NoveltySearch implements Configurable {
 	
 				}
 				// If the archive and toArchive queue don't contain a similar behaviour, add it to the archive.
-				if (!containsSimilar(toArchive, b, archiveThreshold) && !containsSimilar(archive, b, archiveThreshold)) {
-					toArchive.add(b);
+				if (!containsSimilar(toArchive, b, archiveThreshold) && (archive == null || !archive.containsWithin(b, archiveThreshold))) {
+					addToArchiveQueue(b, avgDist);
 				}
 			}
 		}
@@ -152,6 +222,13 @@ public class NoveltySearch implements Configurable {
 		return avgDist;
 	}
 
+	private void addToArchiveQueue(Behaviour b, double novelty) {
+		if (archiveMaxSize > 0 && evictionPolicy == EvictionPolicy.LEAST_NOVEL) {
+			toArchiveNovelty.put(b, novelty);
+		}
+		toArchive.add(b);
+	}
+
 	private boolean containsSimilar(List<Behaviour> behaviours, Behaviour b, double threshold) {
 		if (behaviours.isEmpty())
 			return false;
@@ -164,12 +241,32 @@ public class NoveltySearch implements Configurable {
 		return false;
 	}
 
+	/**
+	 * Get the index over the current population, building it if necessary. The current population should not be
+	 * modified while novelty is being tested.
+	 */
+	private BehaviourIndex getCurrentPopulationIndex() {
+		BehaviourIndex index = currentPopIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = currentPopIndex;
+				if (index == null) {
+					index = BehaviourIndex.newIndex(indexType, currentPop.get(0));
+					index.addAll(currentPop);
+					currentPopIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
 	/**
 	 * This may be called before evaluating individuals from a population to allow determining novelty based on the
 	 * archive and the current population.
 	 */
 	public synchronized void setCurrentPopulation(List<Behaviour> behaviours) {
 		currentPop = behaviours;
+		currentPopIndex = null;
 	}
 
 	/**
@@ -178,6 +275,7 @@ public class NoveltySearch implements Configurable {
 	 */
 	public synchronized void addToCurrentPopulation(Behaviour b) {
 		currentPop.add(b);
+		currentPopIndex = null;
 	}
 
 	/**
@@ -209,15 +307,108 @@ public class NoveltySearch implements Configurable {
 			}
 		}
 
-		archive.addAll(toArchive);
-		if (properties.getEvolver().getGeneration() % 50 == 0)
-			logger.info("Novelty archive size is now " + archive.size() + (addProbability == 0 ? "  (archive threshold is " + archiveThreshold + ")." : "."));
+		if (archive == null && !toArchive.isEmpty()) {
+			archive = BehaviourIndex.newIndex(indexType, toArchive.get(0));
+			logger.info("Using " + archive.getClass().getSimpleName() + " for novelty archive.");
+		}
+		if (archive != null) {
+			if (archiveMaxSize == 0) {
+				archive.addAll(toArchive);
+			} else {
+				for (Behaviour b : toArchive) {
+					addToBoundedArchive(b);
+				}
+			}
+		}
+		if (properties.getEvolver().getGeneration() % 50 == 0) {
+			logger.info("Novelty archive size is now " + getArchiveSize() + (addProbability == 0 ? "  (archive threshold is " + archiveThreshold + ")" : "") + (archiveMaxSize > 0 ? "  (evicted " + evictionCountSinceLog + " since last report, " + evictionCount + " in total)." : "."));
+			evictionCountSinceLog = 0;
+		}
 
 		toArchive.clear();
+		toArchiveNovelty.clear();
 		currentPop = new ArrayList<Behaviour>();
+		currentPopIndex = null;
+	}
+
+	/**
+	 * Add the given behaviour to the archive, evicting a behaviour according to the eviction policy if the archive is
+	 * full. The given behaviour may itself be discarded, in which case it is counted as an eviction.
+	 */
+	private void addToBoundedArchive(Behaviour b) {
+		archiveAdditionCount++;
+		if (archive.size() < archiveMaxSize) {
+			if (evictionPolicy == EvictionPolicy.LEAST_NOVEL)
+				archiveByNovelty.add(new ArchiveEntry(b, toArchiveNovelty.get(b)));
+			else
+				archiveRing[archive.size()] = b;
+			archive.add(b);
+			return;
+		}
+
+		evictionCount++;
+		evictionCountSinceLog++;
+		switch (evictionPolicy) {
+		case FIFO:
+			archive.remove(archiveRing[archiveRingHead]);
+			archive.add(b);
+			archiveRing[archiveRingHead] = b;
+			archiveRingHead = (archiveRingHead + 1) % archiveMaxSize;
+			break;
+		case LEAST_NOVEL:
+			double novelty = toArchiveNovelty.get(b);
+			if (novelty > archiveByNovelty.peek().novelty) {
+				archive.remove(archiveByNovelty.poll().behaviour);
+				archive.add(b);
+				archiveByNovelty.add(new ArchiveEntry(b, novelty));
+			}
+			break;
+		case RANDOM:
+			Random rand = properties.getConfig().getRandomGenerator();
+			if (rand.nextDouble() * archiveAdditionCount < archiveMaxSize) {
+				int slot = rand.nextInt(archive.size());
+				archive.remove(archiveRing[slot]);
+				archive.add(b);
+				archiveRing[slot] = b;
+			}
+			break;
+		}
 	}
 
+	/**
+	 * @return The number of behaviours currently in the archive.
+	 */
 	public int getArchiveSize() {
-		return archive.size();
+		return archive == null ? 0 : archive.size();
+	}
+
+	/**
+	 * @return The total number of behaviours evicted from (or not admitted to) the archive because it was full, see
+	 *         {@link #ARCHIVE_MAX_SIZE}.
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return The behaviours in the archive, in the order they were added. The returned list should not be modified.
+	 */
+	public List<Behaviour> getArchive() {
+		return archive == null ? Collections.<Behaviour> emptyList() : archive.getBehaviours();
+	}
+
+	private static class ArchiveEntry implements Comparable<ArchiveEntry> {
+		final Behaviour behaviour;
+		final double novelty;
+
+		ArchiveEntry(Behaviour behaviour, double novelty) {
+			this.behaviour = behaviour;
+			this.novelty = novelty;
+		}
+
+		@Override
+		public int compareTo(ArchiveEntry other) {
+			return Double.compare(novelty, other.novelty);
+		}
 	}
 }
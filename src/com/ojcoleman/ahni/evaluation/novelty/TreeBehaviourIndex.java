@@ -0,0 +1,169 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Base class for tree-based {@link BehaviourIndex}s. Behaviours added since the tree was last built are kept in a
+ * pending list that is searched linearly; the tree is rebuilt over all behaviours when the pending list becomes large
+ * relative to the tree, so that the amortised cost of an addition remains O(log n). Behaviours removed from the tree
+ * are marked as removed and skipped by searches until the tree is next rebuilt, which occurs when the removed
+ * behaviours make up half of the tree. Behaviours are located for removal via a map and removal leaves a gap rather
+ * than shifting the following behaviours, so removal does not take time linear in the size of the index.
+ */
+public abstract class TreeBehaviourIndex extends BehaviourIndex {
+	/**
+	 * The minimum number of pending behaviours before the tree is rebuilt.
+	 */
+	public static final int MIN_PENDING_FOR_REBUILD = 64;
+
+	/**
+	 * The maximum number of behaviours stored in a leaf node.
+	 */
+	protected static final int LEAF_SIZE = 8;
+
+	// All behaviours, in the order they were added. The behaviours in the first builtSlots slots are contained in the
+	// tree, the rest are pending.
+	private BehaviourList behaviours = new BehaviourList();
+	private int builtSlots;
+	// The number of behaviours the tree was built over.
+	private int treeSize;
+	// Behaviours that have been removed but are still contained in the tree.
+	private Set<Behaviour> removed = Collections.newSetFromMap(new IdentityHashMap<Behaviour, Boolean>());
+
+	@Override
+	public void add(Behaviour b) {
+		checkBehaviour(b);
+		behaviours.add(b);
+		int built = treeSize - removed.size();
+		int pending = behaviours.size() - built;
+		if (pending > Math.max(MIN_PENDING_FOR_REBUILD, built / 2)) {
+			rebuild();
+		}
+	}
+
+	@Override
+	public boolean remove(Behaviour b) {
+		int slot = behaviours.remove(b);
+		if (slot == -1)
+			return false;
+
+		if (slot < builtSlots) {
+			// A marker can not distinguish between multiple occurrences of the same behaviour in the tree.
+			if (behaviours.hasDuplicates()) {
+				rebuild();
+				return true;
+			}
+			removed.add(b);
+			if (removed.size() > Math.max(MIN_PENDING_FOR_REBUILD, treeSize - removed.size())) {
+				rebuild();
+				return true;
+			}
+		}
+		if (behaviours.needsCompaction()) {
+			builtSlots = behaviours.compact(builtSlots);
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		behaviours.clear();
+		builtSlots = 0;
+		treeSize = 0;
+		removed.clear();
+		build(new Behaviour[0]);
+	}
+
+	@Override
+	public int size() {
+		return behaviours.size();
+	}
+
+	@Override
+	public List<Behaviour> getBehaviours() {
+		builtSlots = behaviours.compact(builtSlots);
+		return behaviours.view();
+	}
+
+	/**
+	 * Rebuild the tree over all behaviours in this index.
+	 */
+	public void rebuild() {
+		behaviours.compact(0);
+		build(behaviours.toArray());
+		builtSlots = treeSize = behaviours.size();
+		removed.clear();
+	}
+
+	/**
+	 * @return true iff the given behaviour is contained in the tree but has been removed from this index. Tree
+	 *         searches must skip such behaviours.
+	 */
+	protected final boolean isRemoved(Behaviour b) {
+		return !removed.isEmpty() && removed.contains(b);
+	}
+
+	@Override
+	public void nearest(Behaviour query, NearestNeighbours neighbours) {
+		if (treeSize > 0)
+			treeNearest(query, neighbours);
+		for (int i = builtSlots; i < behaviours.slotCount(); i++) {
+			Behaviour b = behaviours.get(i);
+			if (b != null)
+				neighbours.offer(query.distanceFrom(b), b);
+		}
+	}
+
+	@Override
+	public boolean containsWithin(Behaviour query, double radius) {
+		for (int i = builtSlots; i < behaviours.slotCount(); i++) {
+			Behaviour b = behaviours.get(i);
+			if (b != null && query.distanceFrom(b) < radius)
+				return true;
+		}
+		return treeSize > 0 && treeCountWithin(query, radius, true) > 0;
+	}
+
+	@Override
+	public int countWithin(Behaviour query, double radius) {
+		int count = 0;
+		for (int i = builtSlots; i < behaviours.slotCount(); i++) {
+			Behaviour b = behaviours.get(i);
+			if (b != null && query.distanceFrom(b) < radius)
+				count++;
+		}
+		if (treeSize > 0)
+			count += treeCountWithin(query, radius, false);
+		return count;
+	}
+
+	/**
+	 * Check that the given behaviour may be added to this index.
+	 * 
+	 * @throws IllegalArgumentException if the behaviour is not supported by this index.
+	 */
+	protected void checkBehaviour(Behaviour b) {
+	}
+
+	/**
+	 * Build the tree over the given behaviours, replacing any existing tree. Implementations may reorder the given
+	 * array.
+	 */
+	protected abstract void build(Behaviour[] items);
+
+	/**
+	 * Offer the behaviours in the tree that may be among the nearest neighbours of the given query to the given
+	 * NearestNeighbours.
+	 */
+	protected abstract void treeNearest(Behaviour query, NearestNeighbours neighbours);
+
+	/**
+	 * Count the behaviours in the tree whose distance from the given query is less than the given radius.
+	 * 
+	 * @param stopAtFirst If true then the search may stop as soon as one such behaviour is found.
+	 */
+	protected abstract int treeCountWithin(Behaviour query, double radius, boolean stopAtFirst);
+}
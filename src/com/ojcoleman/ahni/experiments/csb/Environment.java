@@ -12,7 +12,7 @@ import com.ojcoleman.ahni.hyperneat.Configurable;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.util.ArrayUtil;
 
-public abstract class Environment implements Configurable {
+public abstract class Environment implements Configurable, Cloneable {
 	Properties props;
 	/**
 	 * The containing RLContinuousStateBased object.
@@ -93,6 +93,22 @@ public abstract class Environment implements Configurable {
 	 */
 	public abstract void increaseDifficulty();
 
+	/**
+	 * Returns a replica of this environment which behaves identically to it, so that each evaluation thread may use
+	 * its own replica rather than sharing mutable state, such as scratch buffers and transform functions, with other
+	 * threads. The replica shares the state created by {@link #setUp(int)} that is not modified during a simulation,
+	 * such as the start and goal states, so a new replica should be created after this environment is set up again.
+	 * The default implementation returns a shallow copy; subclasses with state that is modified during a simulation
+	 * must override this to give the replica its own copy of that state.
+	 */
+	public Environment copy() {
+		try {
+			return (Environment) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	/**
 	 * Optionally allow rendering (some aspect) of the environment configuration to an image. The image is used to track the progress of
 	 * the agent through the environment. This method is called for every trial and is only called if the environment
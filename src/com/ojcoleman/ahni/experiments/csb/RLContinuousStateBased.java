@@ -119,6 +119,10 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 	// Used to determine behaviour when environments used to determine fitness will be replaced over the course of 
 	// evolution (meaning that there would be no constant behaviour metric over the course of evolution).
 	private Environment[] nsEnvironments;
+	// Replicas of environments and nsEnvironments for each evaluation thread, so that threads do not share any
+	// mutable environment state. See Environment#copy().
+	private Environment[][] threadEnvironments;
+	private Environment[][] threadNSEnvironments;
 	private int environmentCounter = 0;
 	private int[] environmentOrder; // evaluation order of environments
 	protected boolean nsFirstSteps;
@@ -202,19 +206,48 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 		}
 		
 		environmentOrder = ArrayUtil.newRandomIndexing(environmentCount, random);
+		
+		threadEnvironments = updateReplicas(environments, threadEnvironments);
+		threadNSEnvironments = updateReplicas(nsEnvironments, threadNSEnvironments);
+	}
+	
+	// Make sure each evaluation thread has an up to date replica of each of the given environments. A replica is
+	// replaced if the original has been set up again since the replica was made (environment IDs are unique to each
+	// set up).
+	private Environment[][] updateReplicas(Environment[] originals, Environment[][] replicas) {
+		if (originals == null) {
+			return null;
+		}
+		if (replicas == null) {
+			replicas = new Environment[numThreads][originals.length];
+		}
+		for (int t = 0; t < replicas.length; t++) {
+			for (int e = 0; e < originals.length; e++) {
+				if (replicas[t][e] == null || replicas[t][e].id != originals[e].id) {
+					replicas[t][e] = originals[e].copy();
+				}
+			}
+		}
+		return replicas;
 	}
 	
 	@Override
 	protected void evaluate(Chromosome genotype, Activator substrate, int evalThreadIndex, double[] fitnessValues, Behaviour[] behaviours) {
-		_evaluate(genotype, substrate, null, false, false, fitnessValues, behaviours);
+		_evaluate(genotype, substrate, null, false, false, fitnessValues, behaviours, threadEnvironments[evalThreadIndex], threadNSEnvironments != null ? threadNSEnvironments[evalThreadIndex] : null);
 	}
 	
 	@Override
 	public void evaluate(Chromosome genotype, Activator substrate, String baseFileName, boolean logText, boolean logImage) {
-		_evaluate(genotype, substrate, baseFileName, logText, logImage, null, null);
+		_evaluate(genotype, substrate, baseFileName, logText, logImage, null, null, environments, nsEnvironments);
 	}
 	
-	public void _evaluate(Chromosome genotype, Activator substrate, String baseFileName, boolean logText, boolean logImage, double[] fitnessValues, Behaviour[] behaviours) {
+	/**
+	 * @param envs The environments to evaluate on, either {@link #environments} or the replicas of them for the
+	 *            current evaluation thread.
+	 * @param nsEnvs The environments to determine novelty behaviour on, either {@link #nsEnvironments} or the replicas
+	 *            of them for the current evaluation thread.
+	 */
+	public void _evaluate(Chromosome genotype, Activator substrate, String baseFileName, boolean logText, boolean logImage, double[] fitnessValues, Behaviour[] behaviours, Environment[] envs, Environment[] nsEnvs) {
 		super.evaluate(genotype, substrate, baseFileName, logText, logImage);
 		double fitness = 0;
 		double performance = 0;
@@ -238,7 +271,7 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 			boolean logImageTemp = logImage;
 			for (int ei = 0; ei < environmentCount; ei++) {
 				int envIndex = ((logText || logImageTemp) && environmentReplaceProb == 0) ? ei : environmentOrder[ei];
-				Environment env = environments[envIndex];
+				Environment env = envs[envIndex];
 				if (logText) {
 					logOutput.put("\n\nBEGIN EVALUATION ON ENVIRONMENT " + env.id + "\n");
 					logOutput.put("\tEnvironment description:\n" + env + "\n");
@@ -493,7 +526,7 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 					if (nsFirstSteps) behaviours[bi++] = new RealVectorBehaviour(behaviourFS);
 				}
 				else {
-					getBehaviourForNovelty(genotype, nn, behaviours);
+					getBehaviourForNovelty(genotype, nn, behaviours, nsEnvs);
 				}
 			}
 		} catch (IOException e) {
@@ -502,7 +535,7 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 	}
 	
 	// Used to determine behaviour when environments used to determine fitness will be replaced over the course of evolution.
-	private void getBehaviourForNovelty(Chromosome genotype, NNAdaptor nn, Behaviour[] behaviours) {
+	private void getBehaviourForNovelty(Chromosome genotype, NNAdaptor nn, Behaviour[] behaviours, Environment[] nsEnvs) {
 		//int trialCount = 1;
 		Range outputRange = new Range(nn.getMinResponse() < -1000 ? -1000 : nn.getMinResponse(), nn.getMaxResponse() > 1000 ? 1000 : nn.getMaxResponse());
 		
@@ -513,7 +546,7 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 		int behaviourIndexED = 0;
 		int behaviourIndexFS = 0;
 		for (int ei = 0; ei < nsEnvironments.length; ei++) {
-			Environment env = nsEnvironments[ei];
+			Environment env = nsEnvs[ei];
 			// Reset substrate to initial state to begin learning (new) environment.
 			nn.reset();
 			// Record the environment state at specified intervals.
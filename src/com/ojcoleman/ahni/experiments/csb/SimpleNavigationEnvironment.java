@@ -59,12 +59,26 @@ public class SimpleNavigationEnvironment extends Environment {
 	int requiredSteps = 0;
 	double maxStepSize = 0.1;
 	static int noveltyEnvironmentsDone = 0;
+	// Scratch buffers for updateStateAndOutput, so that no allocation is required per step. Each replica created by
+	// copy() has its own.
+	private double[] stepInput;
+	private double[] newStateData;
 
 	@Override
 	public void init(Properties props) {
 		super.init(props);
 
 		obstacleCount = props.getIntProperty(OBSTACLE_COUNT_INITIAL, 0);
+		stepInput = new double[size];
+		newStateData = new double[size];
+	}
+
+	@Override
+	public Environment copy() {
+		SimpleNavigationEnvironment copy = (SimpleNavigationEnvironment) super.copy();
+		copy.stepInput = new double[size];
+		copy.newStateData = new double[size];
+		return copy;
 	}
 
 	@Override
@@ -182,29 +196,31 @@ public class SimpleNavigationEnvironment extends Environment {
 		assert !Double.isNaN(ArrayUtil.sum(input)) : "updateStateAndOutput(): input array contains NaN: " + Arrays.toString(input);
 		assert !state.isNaN() : "updateStateAndOutput(): state contains NaN: " + state;
 		
-		// Update state given input.
-		ArrayRealVector inputT = new ArrayRealVector(input);
-		// inputT.mapDivideToSelf(Math.sqrt(input.length));
-		if (inputT.getNorm() > 1) {
-			inputT.unitize();
+		// Update state given input. If the input vector has a norm greater than 1 then it is normalised.
+		double[] inputT = stepInput;
+		double norm = 0;
+		for (int i = 0; i < input.length; i++) {
+			norm += input[i] * input[i];
+		}
+		norm = Math.sqrt(norm);
+		for (int i = 0; i < size; i++) {
+			inputT[i] = norm > 1 ? input[i] / norm : input[i];
 		}
-		ArrayRealVector newState = state.copy();
-		double[] newStateData = newState.getDataRef();
 		double[] stateData = state.getDataRef();
 		for (int i = 0; i < stateData.length; i++) {
-			newStateData[i] = Math.min(1, Math.max(0, stateData[i] + inputT.getEntry(i) * maxStepSize));
+			newStateData[i] = Math.min(1, Math.max(0, stateData[i] + inputT[i] * maxStepSize));
 		}
 
 		// Determine if a collision has occurred with any obstacle.
 		for (int o = 0; o < obstacleCount; o++) {
 			// If collision occurs then disallow the move (state does not change).
-			if (obstacle[o].collision(newState)) {
+			if (obstacle[o].collision(newStateData)) {
 				return getOutputForState(state, output);
 			}
 		}
 
 		// Update state if no collision occurred.
-		state.setSubVector(0, newState);
+		System.arraycopy(newStateData, 0, stateData, 0, stateData.length);
 
 		// Update output given new state.
 		return getOutputForState(state, output);
@@ -508,8 +524,13 @@ public class SimpleNavigationEnvironment extends Environment {
 		}
 		
 		public boolean collision(ArrayRealVector p) {
+			return collision(p.getDataRef());
+		}
+		
+		public boolean collision(double[] p) {
+			double[] c1 = corner1.getDataRef(), c2 = corner2.getDataRef();
 			for (int d = 0; d < size; d++) {
-				if (p.getEntry(d) < corner1.getEntry(d) || p.getEntry(d) > corner2.getEntry(d))
+				if (p[d] < c1[d] || p[d] > c2[d])
 					return false;
 			}
 			return true;
@@ -35,6 +35,7 @@ import com.anji.nn.CacheNeuronConnection;
 import com.anji.nn.Connection;
 import com.anji.nn.Neuron;
 import com.anji.nn.NeuronConnection;
+import com.anji.nn.activationfunction.ActivationFunction;
 import com.anji.nn.activationfunction.ActivationFunctionFactory;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.util.ArrayUtil;
@@ -114,6 +115,11 @@ public class StaticTransformEnvironment extends SimpleNavigationEnvironment {
 	 */
 	protected Transform outputTransform;
 
+	// Scratch buffers for updateStateAndOutput and getOutputForState, so that no allocation is required per step.
+	// Each replica created by copy() has its own.
+	private double[] transformedInput;
+	private double[] scaledState;
+
 	@Override
 	public void init(Properties props) {
 		super.init(props);
@@ -126,6 +132,25 @@ public class StaticTransformEnvironment extends SimpleNavigationEnvironment {
 		for (int i = 0; i < transformFuncTypes.length; i++) {
 			transformFuncTypes[i] = transformFuncTypes[i].trim().toLowerCase();
 		}
+		transformedInput = new double[size];
+		scaledState = new double[size];
+	}
+
+	/**
+	 * {@inheritDoc} The replica has its own instances of the input and output transform functions.
+	 */
+	@Override
+	public Environment copy() {
+		StaticTransformEnvironment copy = (StaticTransformEnvironment) super.copy();
+		if (inputTransform != null) {
+			copy.inputTransform = copy.new Transform(inputTransform);
+		}
+		if (outputTransform != null) {
+			copy.outputTransform = copy.new Transform(outputTransform);
+		}
+		copy.transformedInput = new double[size];
+		copy.scaledState = new double[size];
+		return copy;
 	}
 
 	@Override
@@ -155,7 +180,7 @@ public class StaticTransformEnvironment extends SimpleNavigationEnvironment {
 	@Override
 	public double updateStateAndOutput(ArrayRealVector state, double[] input, double[] output) {
 		if (inputTransform != null) {
-			double[] inputT = inputTransform.transform(input);
+			double[] inputT = inputTransform.transform(input, transformedInput);
 			// Output from transform is always in range [0, 1], scale to [-1, 1].
 			for (int i = 0; i < inputT.length; i++) {
 				inputT[i] = inputT[i] * 2 - 1;
@@ -169,12 +194,16 @@ public class StaticTransformEnvironment extends SimpleNavigationEnvironment {
 	@Override
 	public double getOutputForState(ArrayRealVector state, double[] output) {
 		// Update output given new state.
-		ArrayRealVector stateT = state;
 		if (outputTransform != null) {
-			double[] s = ArrayUtil.scaleFromUnit(state.toArray(), outputTransformInputRange);
-			stateT = new ArrayRealVector(outputTransform.transform(s));
+			double[] stateData = state.getDataRef();
+			for (int i = 0; i < size; i++) {
+				scaledState[i] = outputTransformInputRange.translateFromUnit(stateData[i]);
+			}
+			// Writes the first outputSize - 1 elements of output.
+			outputTransform.transform(scaledState, output);
+		} else {
+			System.arraycopy(state.getDataRef(), 0, output, 0, state.getDimension());
 		}
-		System.arraycopy(stateT.getDataRef(), 0, output, 0, stateT.getDimension());
 		output[output.length - 1] = getRewardForState(state);
 		return getPerformanceForState(state);
 	}
@@ -220,11 +249,23 @@ public class StaticTransformEnvironment extends SimpleNavigationEnvironment {
 		}
 	}
 
+	/**
+	 * A transform function. Instances are not thread-safe, use {@link StaticTransformEnvironment#copy()} to create
+	 * environments with their own instances.
+	 */
 	protected class Transform {
 		private TransformType type;
-		private Activator function;
+		private AnjiActivator function;
 		private Range[] outputValueRanges;
 		private Range inputValueRange;
+		// Specification of the transform network, so that copies of it may be created: the activation function and
+		// bias of each neuron (inputs, then hidden, then outputs), and the source neuron indices and weights of the
+		// incoming connections for each neuron.
+		private int numInputs, numOutputs;
+		private ActivationFunction[] neuronFunctions;
+		private double[] neuronBiases;
+		private int[][] connectionSources;
+		private double[][] connectionWeights;
 
 		public Transform(TransformType type, int numInputs, int numOutputs, int numHidden, int inDegree, Range inputValueRange) {
 			this.type = type;
@@ -243,14 +284,45 @@ public class StaticTransformEnvironment extends SimpleNavigationEnvironment {
 			logger.info("Took " + tries + " to create " + type + " transform.");
 		}
 
-		public synchronized double[] transform(double[] input) {
+		/**
+		 * Create a copy of the given transform which has its own instance of the transform function.
+		 */
+		public Transform(Transform original) {
+			type = original.type;
+			inputValueRange = original.inputValueRange;
+			// The ranges are not modified after the original was created.
+			outputValueRanges = original.outputValueRanges;
+			numInputs = original.numInputs;
+			numOutputs = original.numOutputs;
+			neuronFunctions = original.neuronFunctions;
+			neuronBiases = original.neuronBiases;
+			connectionSources = original.connectionSources;
+			connectionWeights = original.connectionWeights;
+			function = newFunction();
+		}
+
+		public double[] transform(double[] input) {
 			return transform(input, type.scaleOutput());
 		}
 
 		public double[] transform(double[] input, boolean scaleOutput) {
-			double[] output = function.next(input);
+			return transform(input, new double[function.getOutputCount()], scaleOutput);
+		}
+
+		/**
+		 * Transform the given input, writing the result to the first {@link Activator#getOutputCount()} elements of
+		 * the given output array.
+		 * 
+		 * @return The given output array.
+		 */
+		public double[] transform(double[] input, double[] output) {
+			return transform(input, output, type.scaleOutput());
+		}
+
+		private double[] transform(double[] input, double[] output, boolean scaleOutput) {
+			function.next(input, output);
 			if (scaleOutput) {
-				for (int i = 0; i < output.length; i++) {
+				for (int i = 0; i < outputValueRanges.length; i++) {
 					output[i] = outputValueRanges[i].translateToUnit(output[i]);
 					// Scaler may be based on observed output range so may not be quite right, so truncate if necessary.
 					if (output[i] < 0)
@@ -262,23 +334,25 @@ public class StaticTransformEnvironment extends SimpleNavigationEnvironment {
 			return output;
 		}
 
-		private Activator newTransform(int numInputs, int numOutputs, int numHidden, int inDegree) {
-			ArrayList<Neuron> inputNeurons = new ArrayList<Neuron>(numInputs);
-			ArrayList<Neuron> outputNeurons = new ArrayList<Neuron>(numOutputs);
-			ArrayList<Neuron> allNeurons = new ArrayList<Neuron>(numInputs + numHidden + numOutputs);
+		private AnjiActivator newTransform(int numInputs, int numOutputs, int numHidden, int inDegree) {
+			int neuronCount = numInputs + numHidden + numOutputs;
+			this.numInputs = numInputs;
+			this.numOutputs = numOutputs;
+			neuronFunctions = new ActivationFunction[neuronCount];
+			neuronBiases = new double[neuronCount];
+			connectionSources = new int[neuronCount][0];
+			connectionWeights = new double[neuronCount][0];
 
 			for (int i = 0; i < numInputs; i++) {
-				Neuron n = newNeuron("linear", 0);
-				inputNeurons.add(n);
-				allNeurons.add(n);
+				neuronFunctions[i] = newActivationFunction("linear");
 			}
-			for (int i = 0; i < numHidden; i++) {
-				allNeurons.add(newNeuron("random", random.nextDouble() * 2 - 1));
+			for (int i = numInputs; i < numInputs + numHidden; i++) {
+				neuronBiases[i] = random.nextDouble() * 2 - 1;
+				neuronFunctions[i] = newActivationFunction("random");
 			}
-			for (int i = 0; i < numOutputs; i++) {
-				Neuron n = newNeuron("linear", random.nextDouble() * 2 - 1);
-				outputNeurons.add(n);
-				allNeurons.add(n);
+			for (int i = numInputs + numHidden; i < neuronCount; i++) {
+				neuronBiases[i] = random.nextDouble() * 2 - 1;
+				neuronFunctions[i] = newActivationFunction("linear");
 			}
 
 			// Add connections.
@@ -286,13 +360,15 @@ public class StaticTransformEnvironment extends SimpleNavigationEnvironment {
 			for (int src = 0; src < numInputs; src++) {
 				srcIndices.add(src);
 			}
-			for (int trg = numInputs; trg < allNeurons.size(); trg++) {
+			for (int trg = numInputs; trg < neuronCount; trg++) {
 				Collections.shuffle(srcIndices, random);
-				for (int d = 0; d < Math.min(inDegree, srcIndices.size()); d++) {
-					NeuronConnection c = new NeuronConnection(allNeurons.get(srcIndices.get(d)), random.nextGaussian());
-					// NeuronConnection c = new NeuronConnection(allNeurons.get(srcIndices.get(d)),
-					// random.nextDouble()*2-1);
-					allNeurons.get(trg).addIncomingConnection(c);
+				int connCount = Math.min(inDegree, srcIndices.size());
+				connectionSources[trg] = new int[connCount];
+				connectionWeights[trg] = new double[connCount];
+				for (int d = 0; d < connCount; d++) {
+					connectionSources[trg][d] = srcIndices.get(d);
+					connectionWeights[trg][d] = random.nextGaussian();
+					// connectionWeights[trg][d] = random.nextDouble()*2-1;
 				}
 
 				// Add hidden nodes to list of allowable source nodes.
@@ -309,14 +385,38 @@ public class StaticTransformEnvironment extends SimpleNavigationEnvironment {
 				}
 			}
 
+			return newFunction();
+		}
+
+		// Create a new instance of the transform network from its specification.
+		private AnjiActivator newFunction() {
+			int neuronCount = neuronFunctions.length;
+			ArrayList<Neuron> inputNeurons = new ArrayList<Neuron>(numInputs);
+			ArrayList<Neuron> outputNeurons = new ArrayList<Neuron>(numOutputs);
+			ArrayList<Neuron> allNeurons = new ArrayList<Neuron>(neuronCount);
+			for (int i = 0; i < neuronCount; i++) {
+				Neuron n = new Neuron(neuronFunctions[i], neuronBiases[i]);
+				allNeurons.add(n);
+				if (i < numInputs) {
+					inputNeurons.add(n);
+				} else if (i >= neuronCount - numOutputs) {
+					outputNeurons.add(n);
+				}
+			}
+			for (int trg = numInputs; trg < neuronCount; trg++) {
+				for (int d = 0; d < connectionSources[trg].length; d++) {
+					NeuronConnection c = new NeuronConnection(allNeurons.get(connectionSources[trg][d]), connectionWeights[trg][d]);
+					allNeurons.get(trg).addIncomingConnection(c);
+				}
+			}
 			AnjiNet nn = new AnjiNet(allNeurons, inputNeurons, outputNeurons, new ArrayList<CacheNeuronConnection>(), null);
 			return new AnjiActivator(nn, 1);
 		}
 
-		private Neuron newNeuron(String func, double bias) {
+		private ActivationFunction newActivationFunction(String func) {
 			if (func == "random")
-				return new Neuron(ActivationFunctionFactory.valueOf(transformFuncTypes[random.nextInt(transformFuncTypes.length)]), bias);
-			return new Neuron(ActivationFunctionFactory.valueOf(func), bias);
+				return ActivationFunctionFactory.valueOf(transformFuncTypes[random.nextInt(transformFuncTypes.length)]);
+			return ActivationFunctionFactory.valueOf(func);
 		}
 
 		/**
@@ -108,6 +108,7 @@ public class DoublePoleBalancing extends BulkFitnessFunctionMT {
 		
 		double[] input = new double[6 + (biasViaInput ? 1 : 0)];
 		if (biasViaInput) input[6] = 0.5;
+		double[] scratch = new double[SCRATCH_SIZE];
 		for (; timestep < _maxTimesteps; timestep++) {
 			// Provide state info to the network (normalised to +-1.0). Markovian (With velocity info)
 			// Cart Position is +-trackLengthHalfed
@@ -127,7 +128,7 @@ public class DoublePoleBalancing extends BulkFitnessFunctionMT {
 			double[] output = substrate.next(input);
 			// Get network response and calc next timestep state.
 			// output has size 1, containing force on cart in x-axis
-			performAction(state, output[0]);
+			performAction(state, output[0], scratch);
 			
 			// Check for failure state
 			// whether the cart has ran off the ends of the track or the pole angle has gone beyond the threshold.
@@ -156,17 +157,29 @@ public class DoublePoleBalancing extends BulkFitnessFunctionMT {
 	 * @param output Push force.
 	 */
 	public void performAction(double[] state, double output) {
+		performAction(state, output, new double[SCRATCH_SIZE]);
+	}
+
+	/**
+	 * Calculates a state update for the next timestep using current model state and a single action from the
+	 * controller, using the given array to store intermediate states and derivatives so that no arrays are allocated.
+	 * A separate scratch array should be used by each thread.
+	 * 
+	 * @param state Model state.
+	 * @param output Push force.
+	 * @param scratch Array of length at least {@link #SCRATCH_SIZE}.
+	 */
+	public void performAction(double[] state, double output, double[] scratch) {
 		int i;
-		double[] dydx = new double[6];
 
 		for (i = 0; i < 2; ++i) {
 			// Apply action to the simulated cart-pole
 			// Runge-Kutta 4th order integration method
-			dydx[0] = state[1];
-			dydx[2] = state[3];
-			dydx[4] = state[5];
-			step(output, state, dydx);
-			rk4(output, state, dydx);
+			scratch[DYDX + 0] = state[1];
+			scratch[DYDX + 2] = state[3];
+			scratch[DYDX + 4] = state[5];
+			step(output, state, 0, scratch, DYDX);
+			rk4(output, state, scratch);
 		}
 	}
 
@@ -175,92 +188,99 @@ public class DoublePoleBalancing extends BulkFitnessFunctionMT {
 	 * 
 	 * @param action Push force.
 	 * @param st Model state.
+	 * @param stOffset Index of the first model state value in st.
 	 * @param derivs First and second order derivatives.
+	 * @param dOffset Index of the first derivative value in derivs.
 	 */
-	private void step(double action, double[] st, double[] derivs) {
+	private void step(double action, double[] st, int stOffset, double[] derivs, int dOffset) {
 		double force, costheta_1, costheta_2, sintheta_1, sintheta_2, gsintheta_1, gsintheta_2, temp_1, temp_2, ml_1, ml_2, fi_1, fi_2, mi_1, mi_2;
 		
 		force = (action - 0.5) * ForceMag * 2;
 		
-		costheta_1 = Math.cos(st[2]);
-		sintheta_1 = Math.sin(st[2]);
+		costheta_1 = Math.cos(st[stOffset + 2]);
+		sintheta_1 = Math.sin(st[stOffset + 2]);
 		gsintheta_1 = Gravity * sintheta_1;
 		
-		costheta_2 = Math.cos(st[4]);
-		sintheta_2 = Math.sin(st[4]);
+		costheta_2 = Math.cos(st[stOffset + 4]);
+		sintheta_2 = Math.sin(st[stOffset + 4]);
 		gsintheta_2 = Gravity * sintheta_2;
 		
 		ml_1 = Length1 * MassPole1;
 		ml_2 = Length2 * MassPole2;
 		
-		temp_1 = MUP * st[3] / ml_1;
-		temp_2 = MUP * st[5] / ml_2;
+		temp_1 = MUP * st[stOffset + 3] / ml_1;
+		temp_2 = MUP * st[stOffset + 5] / ml_2;
 		
 		// Equation (5)
-		fi_1 = (ml_1 * st[3] * st[3] * sintheta_1) + (0.75 * MassPole1 * costheta_1 * (temp_1 + gsintheta_1));
-		fi_2 = (ml_2 * st[5] * st[5] * sintheta_2) + (0.75 * MassPole2 * costheta_2 * (temp_2 + gsintheta_2));
+		fi_1 = (ml_1 * st[stOffset + 3] * st[stOffset + 3] * sintheta_1) + (0.75 * MassPole1 * costheta_1 * (temp_1 + gsintheta_1));
+		fi_2 = (ml_2 * st[stOffset + 5] * st[stOffset + 5] * sintheta_2) + (0.75 * MassPole2 * costheta_2 * (temp_2 + gsintheta_2));
 		
 		// Equation (6)
 		mi_1 = MassPole1 * (1 - (0.75 * costheta_1 * costheta_1));
 		mi_2 = MassPole2 * (1 - (0.75 * costheta_2 * costheta_2));
 		
 		// Equation (3)
-		derivs[1] = (force + fi_1 + fi_2) / (mi_1 + mi_2 + MassCart);
+		derivs[dOffset + 1] = (force + fi_1 + fi_2) / (mi_1 + mi_2 + MassCart);
 		
 		// Equation (4)
-		derivs[3] = -0.75 * (derivs[1] * costheta_1 + gsintheta_1 + temp_1) / Length1;
-		derivs[5] = -0.75 * (derivs[1] * costheta_2 + gsintheta_2 + temp_2) / Length2;
+		derivs[dOffset + 3] = -0.75 * (derivs[dOffset + 1] * costheta_1 + gsintheta_1 + temp_1) / Length1;
+		derivs[dOffset + 5] = -0.75 * (derivs[dOffset + 1] * costheta_2 + gsintheta_2 + temp_2) / Length2;
 	}
 
+	/**
+	 * The minimum length of the scratch array passed to {@link #performAction(double[], double, double[])}.
+	 */
+	public static final int SCRATCH_SIZE = 24;
+	// Offsets of the derivative and intermediate state vectors in the scratch array.
+	private static final int DYDX = 0, DYM = 6, DYT = 12, YT = 18;
+
 	/**
 	 * RK4 / Runge-Kutta method for approximating evaluations of ordinary differental equations.
 	 * 
 	 * @param f Push force to define function f (calculate model accelerations)
 	 * @param y Vector to update (current model state)
-	 * @param dydx Differential equations (velocities and accelerations)
+	 * @param s Scratch array, containing the differential equations (velocities and accelerations) at index
+	 *            {@link #DYDX} and space for the intermediate derivatives and states.
 	 */
-	private void rk4(double f, double[] y, double[] dydx) {		
+	private void rk4(double f, double[] y, double[] s) {		
 		int i;
 		double hh, h6;
-		double[] dym = new double[6];
-		double[] dyt = new double[6];
-		double[] yt = new double[6];
 		
 		hh = TimeDelta * 0.5;
 		h6 = TimeDelta / 6.0;
 		
 		// Calculate k2
 		for (i = 0; i <= 5; i++) {
-			yt[i] = y[i] + (hh * dydx[i]);
+			s[YT + i] = y[i] + (hh * s[DYDX + i]);
 		}
-		step(f, yt, dyt);
-		dyt[0] = yt[1];
-		dyt[2] = yt[3];
-		dyt[4] = yt[5];
+		step(f, s, YT, s, DYT);
+		s[DYT + 0] = s[YT + 1];
+		s[DYT + 2] = s[YT + 3];
+		s[DYT + 4] = s[YT + 5];
 		
 		// Calculate k3
 		for (i = 0; i <= 5; i++) {
-			yt[i] = y[i] + (hh * dyt[i]);
+			s[YT + i] = y[i] + (hh * s[DYT + i]);
 		}
-		step(f, yt, dym);
-		dym[0] = yt[1];
-		dym[2] = yt[3];
-		dym[4] = yt[5];
+		step(f, s, YT, s, DYM);
+		s[DYM + 0] = s[YT + 1];
+		s[DYM + 2] = s[YT + 3];
+		s[DYM + 4] = s[YT + 5];
 		
 		// Calculate k4
 		for (i = 0; i <= 5; i++) {
-			yt[i] = y[i] + (TimeDelta * dym[i]);
-			dym[i] = dym[i] + dyt[i];
+			s[YT + i] = y[i] + (TimeDelta * s[DYM + i]);
+			s[DYM + i] = s[DYM + i] + s[DYT + i];
 		}
-		step(f, yt, dyt);
-		dyt[0] = yt[1];
-		dyt[2] = yt[3];
-		dyt[4] = yt[5];
+		step(f, s, YT, s, DYT);
+		s[DYT + 0] = s[YT + 1];
+		s[DYT + 2] = s[YT + 3];
+		s[DYT + 4] = s[YT + 5];
 
 		// Approximation
 		for (i = 0; i <= 5; i++) {
 			// y' = y + h/6  * (k1 + k4 + 2(k2 + k3))
-			y[i] = y[i] + h6 * (dydx[i] + dyt[i] + 2.0 * dym[i]);
+			y[i] = y[i] + h6 * (s[DYDX + i] + s[DYT + i] + 2.0 * s[DYM + i]);
 		}
 	}
 	
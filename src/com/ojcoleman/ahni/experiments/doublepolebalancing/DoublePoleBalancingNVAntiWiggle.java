@@ -53,9 +53,10 @@ public class DoublePoleBalancingNVAntiWiggle extends DoublePoleBalancing {
 			input[3] = 0.5;
 
 		JiggleBuffer jiggleBuffer1 = new JiggleBuffer(100);
+		double[] scratch = new double[SCRATCH_SIZE];
 
 		// Run the pole-balancing simulation.
-		int timestep = _simulate(substrate, state, input, jiggleBuffer1, _maxTimesteps);
+		int timestep = _simulate(substrate, state, input, scratch, jiggleBuffer1, _maxTimesteps);
 
 		double f1 = (double) timestep / _maxTimesteps;
 		double f2 = timestep < 100 ? 0 : 0.75 / jiggleBuffer1.getTotal();
@@ -66,7 +67,7 @@ public class DoublePoleBalancingNVAntiWiggle extends DoublePoleBalancing {
 		// Do generalisation tests if successfully balanced for 1000 time steps.
 		if (timestep == _maxTimesteps) {
 			// Continue simulation until 100,000 time steps.
-			timestep += _simulate(substrate, state, input, null, _generalisationSteps - _maxTimesteps);
+			timestep += _simulate(substrate, state, input, scratch, null, _generalisationSteps - _maxTimesteps);
 			
 			fitness += 0.33 * ((double) timestep / _generalisationSteps);
 
@@ -88,7 +89,7 @@ public class DoublePoleBalancingNVAntiWiggle extends DoublePoleBalancing {
 								state[5] = 0.0;
 
 								substrate.reset();
-								timestep = _simulate(substrate, state, input, null, 1000);
+								timestep = _simulate(substrate, state, input, scratch, null, 1000);
 								if (timestep == 1000) {
 									score++;
 								}
@@ -108,7 +109,7 @@ public class DoublePoleBalancingNVAntiWiggle extends DoublePoleBalancing {
 		}
 	}
 
-	private int _simulate(Activator substrate, double[] state, double[] input, JiggleBuffer jiggleBuffer1, int simSteps) {
+	private int _simulate(Activator substrate, double[] state, double[] input, double[] scratch, JiggleBuffer jiggleBuffer1, int simSteps) {
 		for (int timestep = 0; timestep < _maxTimesteps; timestep++) {
 			// Provide state info to the network (normalised to +-1.0). Non-Markovian (Without velocity info)
 			// Cart Position is +-trackLengthHalfed
@@ -122,7 +123,7 @@ public class DoublePoleBalancingNVAntiWiggle extends DoublePoleBalancing {
 			double[] output = substrate.next(input);
 
 			// Get network response and calc next timestep state.
-			performAction(state, output[0]);
+			performAction(state, output[0], scratch);
 
 			// Place the latest jiggle value into buffer1.
 			if (jiggleBuffer1 != null) {
@@ -17,7 +17,6 @@ import org.jgapcustomised.*;
 
 import com.anji.integration.Activator;
 import com.anji.integration.ActivatorTranscriber;
-import com.anji.integration.AnjiActivator;
 import com.anji.integration.AnjiNetTranscriber;
 import com.anji.integration.TranscriberException;
 import com.anji.neat.Evolver;
@@ -477,7 +476,7 @@ public class ObjectRecognitionFitnessFunction3 extends HyperNEATFitnessFunction
 			// spit out CPPN
 			try {
 				AnjiNetTranscriber cppnTranscriber = (AnjiNetTranscriber) props.singletonObjectProperty(AnjiNetTranscriber.class);
-				AnjiNet cppn = ((AnjiActivator) cppnTranscriber.transcribe(genotype)).getAnjiNet();
+				AnjiNet cppn = cppnTranscriber.newAnjiNet(genotype);
 				BufferedWriter cppnFile = new BufferedWriter(new FileWriter(compositesImageDir + File.separatorChar + scaleCount + "-" + genotype.getId() + File.separatorChar + "cppn.xml"));
 				cppnFile.write(cppn.toXml());
 				cppnFile.close();
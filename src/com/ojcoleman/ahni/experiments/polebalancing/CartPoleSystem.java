@@ -0,0 +1,243 @@
+package com.ojcoleman.ahni.experiments.polebalancing;
+
+/**
+ * <p>
+ * Simulates a number of independent carts, each with the same number of poles, using fourth order Runge-Kutta
+ * integration. The state and parameters of all carts and poles are stored in flat arrays (indexed by cart for cart
+ * values, and by <code>cart * getPoleCount() + pole</code> for pole values), and the intermediate states and
+ * derivatives are stored in scratch arrays allocated when the system is created, so no objects are created during
+ * simulation. Many carts, for example for several trials or individuals, may be simulated with a single call to
+ * {@link #rk4(double[], double, double)}.
+ * </p>
+ * <p>
+ * The model and the order of all arithmetic operations are the same as for {@link Cart}, {@link Pole} and
+ * {@link RK4#rk4(double, Cart, Derivatives, Derivatives, double, double)}, so the trajectories produced are identical.
+ * Instances are not thread-safe.
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class CartPoleSystem {
+	private final int cartCount;
+	private final int poleCount;
+
+	// Cart parameters and state, indexed by cart.
+	private final double[] cartMass;
+	private final double[] cartFriction;
+	private final double[] position;
+	private final double[] velocity;
+
+	// Pole parameters and state, indexed by cart * poleCount + pole.
+	private final double[] poleLength;
+	private final double[] poleMass;
+	private final double[] poleFriction;
+	private final double[] angle;
+	private final double[] angularVelocity;
+
+	// Intermediate cart and pole states for the Runge-Kutta stages.
+	private final double[] tempPosition;
+	private final double[] tempVelocity;
+	private final double[] tempAngle;
+	private final double[] tempAngularVelocity;
+	// First and second order derivatives for each of the four Runge-Kutta stages, indexed by
+	// stage * cartCount + cart for carts and by stage * cartCount * poleCount + cart * poleCount + pole for poles.
+	private final double[] cartFirstOrder;
+	private final double[] cartSecondOrder;
+	private final double[] poleFirstOrder;
+	private final double[] poleSecondOrder;
+	// The sine and cosine of the pole angles for the state the accelerations are being calculated for.
+	private final double[] sinAngle;
+	private final double[] cosAngle;
+
+	/**
+	 * Create a new system with the given number of carts and poles per cart. All parameters and state values are
+	 * initially zero.
+	 */
+	public CartPoleSystem(int cartCount, int poleCount) {
+		this.cartCount = cartCount;
+		this.poleCount = poleCount;
+		int poleTotal = cartCount * poleCount;
+		cartMass = new double[cartCount];
+		cartFriction = new double[cartCount];
+		position = new double[cartCount];
+		velocity = new double[cartCount];
+		poleLength = new double[poleTotal];
+		poleMass = new double[poleTotal];
+		poleFriction = new double[poleTotal];
+		angle = new double[poleTotal];
+		angularVelocity = new double[poleTotal];
+		tempPosition = new double[cartCount];
+		tempVelocity = new double[cartCount];
+		tempAngle = new double[poleTotal];
+		tempAngularVelocity = new double[poleTotal];
+		cartFirstOrder = new double[4 * cartCount];
+		cartSecondOrder = new double[4 * cartCount];
+		poleFirstOrder = new double[4 * poleTotal];
+		poleSecondOrder = new double[4 * poleTotal];
+		sinAngle = new double[poleCount];
+		cosAngle = new double[poleCount];
+	}
+
+	public int getCartCount() {
+		return cartCount;
+	}
+
+	public int getPoleCount() {
+		return poleCount;
+	}
+
+	/**
+	 * Set the parameters and state of the given cart.
+	 */
+	public void setCart(int cart, double mass, double friction, double position, double velocity) {
+		cartMass[cart] = mass;
+		cartFriction[cart] = friction;
+		this.position[cart] = position;
+		this.velocity[cart] = velocity;
+	}
+
+	/**
+	 * Set the parameters and state of the given pole on the given cart.
+	 */
+	public void setPole(int cart, int pole, double length, double mass, double friction, double angle, double velocity) {
+		int p = cart * poleCount + pole;
+		poleLength[p] = length;
+		poleMass[p] = mass;
+		poleFriction[p] = friction;
+		this.angle[p] = angle;
+		angularVelocity[p] = velocity;
+	}
+
+	/**
+	 * Set the parameters and state of the given cart and its poles from the given Cart.
+	 */
+	public void setCart(int cart, Cart source) {
+		if (source.poleCount() != poleCount) {
+			throw new IllegalArgumentException("The given Cart has " + source.poleCount() + " poles, this system has " + poleCount + " poles per cart.");
+		}
+		setCart(cart, source.mass, source.friction, source.position, source.velocity);
+		for (int i = 0; i < poleCount; i++) {
+			Pole p = source.poles[i];
+			setPole(cart, i, p.length, p.mass, p.friction, p.angle, p.velocity);
+		}
+	}
+
+	public double getPosition(int cart) {
+		return position[cart];
+	}
+
+	public double getVelocity(int cart) {
+		return velocity[cart];
+	}
+
+	public double getPoleAngle(int cart, int pole) {
+		return angle[cart * poleCount + pole];
+	}
+
+	public double getPoleVelocity(int cart, int pole) {
+		return angularVelocity[cart * poleCount + pole];
+	}
+
+	/**
+	 * Returns true iff the given cart is within the given track length, see {@link Cart#onTrack(double)}.
+	 */
+	public boolean onTrack(int cart, double trackLength) {
+		return (position[cart] > -trackLength * 0.5) && (position[cart] < trackLength * 0.5);
+	}
+
+	/**
+	 * Returns true iff the angle of the given pole is within the given threshold, see {@link Pole#onTrack(double)}.
+	 */
+	public boolean poleOnTrack(int cart, int pole, double threshold) {
+		double a = angle[cart * poleCount + pole];
+		return (a > -threshold) && (a < threshold);
+	}
+
+	/**
+	 * Advance all carts by one time step.
+	 *
+	 * @param forces The force acting on each cart.
+	 * @param gravity The gravitational acceleration.
+	 * @param timeDelta The length of the time step.
+	 */
+	public void rk4(double[] forces, double gravity, double timeDelta) {
+		for (int c = 0; c < cartCount; c++) {
+			rk4(c, forces[c], gravity, timeDelta);
+		}
+	}
+
+	/**
+	 * Advance the given cart by one time step.
+	 *
+	 * @param cart The index of the cart.
+	 * @param force The force acting on the cart.
+	 * @param gravity The gravitational acceleration.
+	 * @param timeDelta The length of the time step.
+	 */
+	public void rk4(int cart, double force, double gravity, double timeDelta) {
+		double hh = timeDelta * 0.5;
+		double h6 = timeDelta / 6.0;
+		int p0 = cart * poleCount;
+		int poleTotal = cartCount * poleCount;
+
+		// k1, from the current state.
+		cartFirstOrder[cart] = velocity[cart];
+		System.arraycopy(angularVelocity, p0, poleFirstOrder, p0, poleCount);
+		secondOrder(cart, force, gravity, angle, angularVelocity, 0);
+
+		// k2, k3 and k4, from the current state moved by the derivatives of the previous stage.
+		for (int stage = 1; stage < 4; stage++) {
+			double stepSize = stage < 3 ? hh : timeDelta;
+			int prevC = (stage - 1) * cartCount + cart;
+			int prevP = (stage - 1) * poleTotal + p0;
+			tempPosition[cart] = position[cart] + cartFirstOrder[prevC] * stepSize;
+			tempVelocity[cart] = velocity[cart] + cartSecondOrder[prevC] * stepSize;
+			for (int i = 0; i < poleCount; i++) {
+				tempAngle[p0 + i] = angle[p0 + i] + poleFirstOrder[prevP + i] * stepSize;
+				tempAngularVelocity[p0 + i] = angularVelocity[p0 + i] + poleSecondOrder[prevP + i] * stepSize;
+			}
+			cartFirstOrder[stage * cartCount + cart] = tempVelocity[cart];
+			System.arraycopy(tempAngularVelocity, p0, poleFirstOrder, stage * poleTotal + p0, poleCount);
+			secondOrder(cart, force, gravity, tempAngle, tempAngularVelocity, stage);
+		}
+
+		// Approximation: y' = y + h/6 * ((k1 + k4) + (k2 + k3) * 2)
+		int c1 = cart, c2 = cartCount + cart, c3 = 2 * cartCount + cart, c4 = 3 * cartCount + cart;
+		position[cart] += ((cartFirstOrder[c1] + cartFirstOrder[c4]) + ((cartFirstOrder[c2] + cartFirstOrder[c3]) * 2)) * h6;
+		velocity[cart] += ((cartSecondOrder[c1] + cartSecondOrder[c4]) + ((cartSecondOrder[c2] + cartSecondOrder[c3]) * 2)) * h6;
+		for (int i = 0; i < poleCount; i++) {
+			int p1 = p0 + i, p2 = poleTotal + p0 + i, p3 = 2 * poleTotal + p0 + i, p4 = 3 * poleTotal + p0 + i;
+			angle[p0 + i] += ((poleFirstOrder[p1] + poleFirstOrder[p4]) + ((poleFirstOrder[p2] + poleFirstOrder[p3]) * 2)) * h6;
+			angularVelocity[p0 + i] += ((poleSecondOrder[p1] + poleSecondOrder[p4]) + ((poleSecondOrder[p2] + poleSecondOrder[p3]) * 2)) * h6;
+		}
+	}
+
+	// Calculates the accelerations of the given cart and its poles for the given pole angles and velocities, and
+	// stores them for the given Runge-Kutta stage. See Cart#secondOrder(double, double).
+	private void secondOrder(int cart, double force, double gravity, double[] angle, double[] angularVelocity, int stage) {
+		int p0 = cart * poleCount;
+		double effectiveForce = 0;
+		double effectiveMass = 0;
+		for (int i = 0; i < poleCount; i++) {
+			int p = p0 + i;
+			double costheta = Math.cos(angle[p]);
+			double sintheta = Math.sin(angle[p]);
+			double ml = poleLength[p] * poleMass[p];
+			double temp = poleFriction[p] * angularVelocity[p] / ml;
+			cosAngle[i] = costheta;
+			sinAngle[i] = sintheta;
+			effectiveForce += (ml * angularVelocity[p] * angularVelocity[p] * sintheta) + (0.75 * poleMass[p] * costheta * (temp + (gravity * sintheta)));
+			effectiveMass += poleMass[p] * (1 - (0.75 * costheta * costheta));
+		}
+
+		double cartAcceleration = (force + effectiveForce) / (effectiveMass + cartMass[cart]);
+		cartSecondOrder[stage * cartCount + cart] = cartAcceleration;
+
+		int s0 = stage * cartCount * poleCount + p0;
+		for (int i = 0; i < poleCount; i++) {
+			int p = p0 + i;
+			double temp = poleFriction[p] * angularVelocity[p] / (poleLength[p] * poleMass[p]);
+			poleSecondOrder[s0 + i] = -0.75 * (cartAcceleration * cosAngle[i] + (gravity * sinAngle[i]) + temp) / poleLength[p];
+		}
+	}
+}
@@ -1,50 +1,52 @@
 /**
- * 
+ *
  */
 package com.ojcoleman.ahni.experiments.polebalancing;
 
 /**
+ * A cart that moves in two dimensions, with poles that may fall in either dimension. Each dimension is simulated
+ * independently, as a {@link CartPoleSystem} with a cart for each dimension.
+ *
  * @author Tom de Ruijter
  *
  */
-public class TwoDimCart {
-	
-	// Design choice: derivatives are provided composite and should first be decomposed.
-	// Updates the state for each dimension separately.
-	// Composite results are then returned.
-	// Possibly not very fast, but my guess is this is not very significant.
-	
-	Cart x;
-	Cart y;
-	
+public class TwoDimCart extends CartPoleSystem {
+	/**
+	 * Index of the cart for the x dimension.
+	 */
+	public static final int X = 0;
+	/**
+	 * Index of the cart for the y dimension.
+	 */
+	public static final int Y = 1;
+
+	private final double[] forces = new double[2];
+
 	// For sake of simplicity, pole initialization is copied into two dimensions.
 	public TwoDimCart(double m, double friction, double[] pos, double[] vel, Pole[] polesX, Pole[] polesY) {
-				
-		x = new Cart(m,friction,pos[0],vel[0], polesX);
-		y = new Cart(m,friction,pos[1],vel[1], polesY);
+		super(2, polesX.length);
+		setCart(X, new Cart(m, friction, pos[0], vel[0], polesX));
+		setCart(Y, new Cart(m, friction, pos[1], vel[1], polesY));
 	}
-	
-	public int poleCount() {
-		return x.poleCount();
-	}	
 
-	public Derivatives[] zeroOrder() {
-		Derivatives[] position = {x.zeroOrder(), y.zeroOrder()};
-		return position;
+	/**
+	 * Advance the cart in both dimensions by one time step.
+	 */
+	public void step(double forceX, double forceY, double gravity, double timeDelta) {
+		forces[X] = forceX;
+		forces[Y] = forceY;
+		rk4(forces, gravity, timeDelta);
 	}
-	
-	// Returns Two dimensional cart and pole velocity vectors
-	public Derivatives[] firstOrder() {
-		Derivatives[] velocity = {x.firstOrder(), y.firstOrder()};
-		return velocity;
-	}
-	
-	public Derivatives[] secondOrder(double forceX, double forceY, double gravity) {
-		Derivatives[] acceleration = {x.secondOrder(forceX, gravity), y.secondOrder(forceY,gravity)};
-		return acceleration;
-	}
-	
+
 	public String toString() {
-		return "X - " + x.toString() + "Y - " + y.toString();
+		StringBuilder s = new StringBuilder();
+		String[] dims = { "X", "Y" };
+		for (int d = 0; d < 2; d++) {
+			s.append(dims[d] + " - =Cart=\nposition: " + getPosition(d) + "\nvelocity: " + getVelocity(d) + "\n");
+			for (int i = 0; i < getPoleCount(); i++) {
+				s.append("=Pole " + (i + 1) + "=\nangle: " + getPoleAngle(d, i) + "\nvelocity: " + getPoleVelocity(d, i) + "\n");
+			}
+		}
+		return s.toString();
 	}
 }
@@ -117,7 +117,7 @@ public class TwoDimPoleBalancing extends BulkFitnessFunctionMT {
 
 		// Take new cart.
 		TwoDimCart cart = initCart();
-		double[] input;
+		double[] input = new double[includeVelocity ? 4 + (4 * cart.getPoleCount()) : 2 + (2 * cart.getPoleCount())];
 		int timeStep = 0;
 		
 		// Prepare objects for optional output
@@ -150,7 +150,7 @@ public class TwoDimPoleBalancing extends BulkFitnessFunctionMT {
 			}
 			
 			// Construct network input values
-			input = convertState(cart);
+			convertState(cart, input);
 	
 			// Clamp input to network
 			double[] output = substrate.next(input);
@@ -178,15 +178,15 @@ public class TwoDimPoleBalancing extends BulkFitnessFunctionMT {
 	private String outputState(TwoDimCart cart) {
 		
 		StringBuilder sb = new StringBuilder();
-		sb.append(cart.x.position);
+		sb.append(cart.getPosition(TwoDimCart.X));
 		sb.append(",");
-		sb.append(cart.y.position);
+		sb.append(cart.getPosition(TwoDimCart.Y));
 		
-		for(int i = 0; i < cart.poleCount(); i++) {
+		for(int i = 0; i < cart.getPoleCount(); i++) {
 			sb.append(",");
-			sb.append(cart.x.poles[i].angle);
+			sb.append(cart.getPoleAngle(TwoDimCart.X, i));
 			sb.append(",");
-			sb.append(cart.y.poles[i].angle);
+			sb.append(cart.getPoleAngle(TwoDimCart.Y, i));
 		}
 		
 		return sb.toString();
@@ -194,12 +194,9 @@ public class TwoDimPoleBalancing extends BulkFitnessFunctionMT {
 	}
 	
 	// Converts cart object to form accepted by substrate
-	private double[] convertState (TwoDimCart cart) {
-		double[] input;
-		int x = 0;
-		int y = 1;
-		
-		Derivatives[] position = cart.zeroOrder();
+	private void convertState (TwoDimCart cart, double[] input) {
+		int x = TwoDimCart.X;
+		int y = TwoDimCart.Y;
 		
 		// TODO Include input bias
 //		double[] input = new double[3 + (biasViaInput ? 1 : 0)];
@@ -207,48 +204,39 @@ public class TwoDimPoleBalancing extends BulkFitnessFunctionMT {
 //			input[3] = 0.5;
 		
 		if(includeVelocity) {
-			input = new double[4+(4*cart.poleCount())];
-			
-			Derivatives[] velocity = cart.firstOrder();
-			input[0] = position[x].cart / (trackLength * 0.5);
-			input[1] = position[y].cart / (trackLength * 0.5);
-			input[2] = velocity[x].cart / 0.75;
-			input[3] = velocity[y].cart / 0.75;
+			input[0] = cart.getPosition(x) / (trackLength * 0.5);
+			input[1] = cart.getPosition(y) / (trackLength * 0.5);
+			input[2] = cart.getVelocity(x) / 0.75;
+			input[3] = cart.getVelocity(y) / 0.75;
 			
-			for(int i = 0; i < cart.poleCount(); i++) {
-				input[4*i + 4] 		= position[x].poles[i] / poleAngleThreshold;
-				input[4*i + 4+1]	= position[y].poles[i] / poleAngleThreshold;
-				input[4*i + 4+2]	= velocity[x].poles[i];
-				input[4*i + 4+3]	= velocity[y].poles[i];
+			for(int i = 0; i < cart.getPoleCount(); i++) {
+				input[4*i + 4] 		= cart.getPoleAngle(x, i) / poleAngleThreshold;
+				input[4*i + 4+1]	= cart.getPoleAngle(y, i) / poleAngleThreshold;
+				input[4*i + 4+2]	= cart.getPoleVelocity(x, i);
+				input[4*i + 4+3]	= cart.getPoleVelocity(y, i);
 			}
 			
 		} else {
-			input = new double[2+(2*cart.poleCount())];
+			input[0] = cart.getPosition(x) / (trackLength * 0.5);
+			input[1] = cart.getPosition(y) / (trackLength * 0.5);
 			
-			input[0] = position[x].cart / (trackLength * 0.5);
-			input[1] = position[y].cart / (trackLength * 0.5);
-			
-			for(int i = 0; i < cart.poleCount(); i++) {
-				input[2*i + 2]		= position[x].poles[i] / poleAngleThreshold;
-				input[2*i + 2+1]	= position[y].poles[i] / poleAngleThreshold;
+			for(int i = 0; i < cart.getPoleCount(); i++) {
+				input[2*i + 2]		= cart.getPoleAngle(x, i) / poleAngleThreshold;
+				input[2*i + 2+1]	= cart.getPoleAngle(y, i) / poleAngleThreshold;
 			}
 		}
-		
-		return input;
 	}
 	
 	// Sums the positions and velocities of the cart and the main pole
 	private double sumState(TwoDimCart cart) {
 		double sum = 0;
-		int x = 0;
-		int y = 1;
-		Derivatives[] position = cart.zeroOrder();
-		Derivatives[] velocity = cart.firstOrder();
+		int x = TwoDimCart.X;
+		int y = TwoDimCart.Y;
 		
-		sum += Math.abs(position[x].cart) + Math.abs(position[y].cart);
-		sum += Math.abs(position[x].poles[0]) + Math.abs(position[y].poles[0]);
-		sum += Math.abs(velocity[x].cart) + Math.abs(velocity[y].cart);
-		sum += Math.abs(velocity[x].poles[0]) + Math.abs(position[y].poles[0]);
+		sum += Math.abs(cart.getPosition(x)) + Math.abs(cart.getPosition(y));
+		sum += Math.abs(cart.getPoleAngle(x, 0)) + Math.abs(cart.getPoleAngle(y, 0));
+		sum += Math.abs(cart.getVelocity(x)) + Math.abs(cart.getVelocity(y));
+		sum += Math.abs(cart.getPoleVelocity(x, 0)) + Math.abs(cart.getPoleAngle(y, 0));
 		return sum;
 	}
 	
@@ -257,13 +245,13 @@ public class TwoDimPoleBalancing extends BulkFitnessFunctionMT {
 	// - pole is below threshold
 	private boolean legalSolution(TwoDimCart cart) {
 
-		boolean valid = cart.x.onTrack(trackLength * 0.5) && cart.y.onTrack(trackLength * 0.5);
+		boolean valid = cart.onTrack(TwoDimCart.X, trackLength * 0.5) && cart.onTrack(TwoDimCart.Y, trackLength * 0.5);
 //		if(!valid)
 //			System.out.println("Cart went off track!");
 		
-		for(int i = 0; i < cart.poleCount(); i++) {
-			valid = valid && cart.x.poles[i].onTrack(poleAngleThreshold)
-						  && cart.y.poles[i].onTrack(poleAngleThreshold);
+		for(int i = 0; i < cart.getPoleCount(); i++) {
+			valid = valid && cart.poleOnTrack(TwoDimCart.X, i, poleAngleThreshold)
+						  && cart.poleOnTrack(TwoDimCart.Y, i, poleAngleThreshold);
 //			if(!valid)
 //				System.out.println("Pole " + i + " fell down!");
 		}
@@ -278,12 +266,9 @@ public class TwoDimPoleBalancing extends BulkFitnessFunctionMT {
 		
 		// Perform iteration twice
 		for(int i = 0; i < 2; i++) {
-			Derivatives[] firstOrder = cart.firstOrder();
-			Derivatives[] secondOrder = cart.secondOrder(forceX, forceY, gravity);
-			RK4.rk4(forceX, cart.x, firstOrder[0], secondOrder[0], gravity, TimeDelta);
-			RK4.rk4(forceY, cart.y, firstOrder[1], secondOrder[1], gravity, TimeDelta);
+			cart.step(forceX, forceY, gravity, TimeDelta);
 		}
-	}	
+	}	
 	// Fraction of time elapsed before failure.
 	// Normalized to a continuous [0,1] domain.
 	private void fitness(double timeStep, double[] fitnessValues, TwoDimCart cart, JiggleBuffer jiggleBuffer1) {
@@ -310,7 +295,7 @@ public class TwoDimPoleBalancing extends BulkFitnessFunctionMT {
 			
 			// Penalize with distance from center
 			double factor = timeStep / (maxTimeSteps * 2);
-			double distanceError = factor * Math.pow((cart.x.position + cart.y.position) / (trackLength * 2),2);
+			double distanceError = factor * Math.pow((cart.getPosition(TwoDimCart.X) + cart.getPosition(TwoDimCart.Y)) / (trackLength * 2),2);
 			if (distanceError < fitnessValues[0] && fitnessValues[0] != 1.0) 
 				fitnessValues[0] -= distanceError;
 		}
@@ -24,9 +24,11 @@ import javax.imageio.ImageIO;
 import org.apache.log4j.Logger;
 import org.jgapcustomised.BulkFitnessFunction;
 import org.jgapcustomised.Chromosome;
+import org.jgapcustomised.EvolutionMetrics;
 import org.jgapcustomised.Genotype;
 import org.jgapcustomised.NaturalSelector;
 import org.jgapcustomised.Species;
+import org.jgapcustomised.event.EventManager;
 import org.jgapcustomised.event.GeneticEvent;
 import org.jgapcustomised.event.GeneticEventListener;
 
@@ -94,6 +96,52 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 	public static final String LOG_CHAMP_TOIMAGE_KEY = "log.champ.toimage";
 	public static final String LOG_SPECIES_HISTORY_KEY = "log.species_history";
 	public static final String INITIAL_CPPN = "hyperneat.cppn.initial";
+	/**
+	 * Whether to record the fittest and best performing Chromosome from each generation in the {@link RunHistory}.
+	 * Default is true.
+	 */
+	public static final String HISTORY_CHAMPIONS_KEY = "history.champions";
+	/**
+	 * If true then the champions recorded in the {@link RunHistory} are written to a file in the output directory
+	 * instead of being kept in memory, so that memory usage doesn't grow with the number of generations. Only takes
+	 * effect if {@link HyperNEATConfiguration#OUTPUT_DIR_KEY} is set. Default is false.
+	 */
+	public static final String HISTORY_SPILL_KEY = "history.spill";
+	/**
+	 * If true then the writing of persistence data (chromosomes and run data), presentation data and champion log
+	 * files is performed on a background thread, so that evolution does not wait for it. The listeners performing
+	 * these tasks receive an immutable snapshot of each generation. Default is false.
+	 */
+	public static final String EVENTS_ASYNC_KEY = "events.async";
+	/**
+	 * The maximum number of generations (or other tasks) that may be waiting to be written when {@link #EVENTS_ASYNC_KEY}
+	 * is enabled. Default is 4.
+	 */
+	public static final String EVENTS_ASYNC_QUEUE_SIZE_KEY = "events.async.queue.size";
+	/**
+	 * What to do when the queue of pending asynchronous writes is full, see
+	 * {@link org.jgapcustomised.event.EventManager.OverflowPolicy}. BLOCK causes evolution to wait until there is space,
+	 * DISCARD skips writing the data for the generation. Default is BLOCK.
+	 */
+	public static final String EVENTS_ASYNC_OVERFLOW_KEY = "events.async.overflow";
+	/**
+	 * If true then the time taken by each phase of each generation (evaluation, speciation, selection, reproduction,
+	 * mutation and clone culling), the transcription and evaluation time of each evaluation thread, the number of
+	 * evaluations per second and the memory allocation rate are recorded, see {@link EvolutionMetrics}. If
+	 * {@link HyperNEATConfiguration#OUTPUT_DIR_KEY} is set the metrics for each generation are written to the file
+	 * metrics.csv or metrics.json in the output directory. Default is false.
+	 */
+	public static final String METRICS_ENABLE_KEY = "metrics.enable";
+	/**
+	 * The format of the metrics file, CSV or JSON (one JSON object per generation per line). Default is CSV.
+	 */
+	public static final String METRICS_FORMAT_KEY = "metrics.format";
+	/**
+	 * If true, and {@link #METRICS_ENABLE_KEY} is enabled, the metrics for the most recent generation are made
+	 * available via JMX as the MBean com.ojcoleman.ahni:type=EvolutionMetrics,name="&lt;run.name&gt;-&lt;run.id&gt;".
+	 * Default is true.
+	 */
+	public static final String METRICS_JMX_KEY = "metrics.jmx";
 
 	private HyperNEATConfiguration config = null;
 	private List<AHNIEventListener> listeners = new ArrayList<AHNIEventListener>();
@@ -107,28 +155,24 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 	private int logPerGenerations = 1;
 	int logChampToString = -1;
 	int logChampToImage = -1;
+	private boolean asyncEvents = false;
 	
 	protected int generation = 0;
 	protected Chromosome fittest = null;
 	protected Chromosome bestPerforming = null;
 
 	/**
-	 * The fittest Chromosome from each generation.
-	 */
-	protected Chromosome[] fittestChromosomes;
-	/**
-	 * The best performing Chromosome from each generation. Sometimes this is equivalent to fittest depending on whether
-	 * the fitness function defines performance independently.
+	 * Compact record of each generation, including the fittest and best performing Chromosome from each generation.
 	 */
-	protected Chromosome[] bestPerformingChromosomes;
+	protected RunHistory history;
 	/**
 	 * The highest fitness achieved in each generation, as a fraction of the maximum possible fitness. This is
-	 * maintained as well as fittestChromosomes because the fitness achieved can vary when the fitness function is
+	 * maintained as well as the fittest Chromosomes because the fitness achieved can vary when the fitness function is
 	 * stochastic.
 	 */
 	protected double[] bestFitnesses;
 	/**
-	 * The highest performance achieved in each generation. This is maintained as well as bestPerformingChromosomes
+	 * The highest performance achieved in each generation. This is maintained as well as the best performing Chromosomes
 	 * because the performance achieved can vary when the fitness function is stochastic.
 	 */
 	protected double[] bestPerformances;
@@ -178,6 +222,13 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 		logChampToString = props.getIntProperty(LOG_CHAMP_TOSTRING_KEY, -1);
 		logChampToImage = props.getIntProperty(LOG_CHAMP_TOIMAGE_KEY, -1);
 
+		asyncEvents = props.getBooleanProperty(EVENTS_ASYNC_KEY, false);
+		if (asyncEvents) {
+			int queueSize = props.getIntProperty(EVENTS_ASYNC_QUEUE_SIZE_KEY, 4);
+			EventManager.OverflowPolicy overflowPolicy = props.getEnumProperty(EVENTS_ASYNC_OVERFLOW_KEY, EventManager.OverflowPolicy.class, EventManager.OverflowPolicy.BLOCK);
+			config.getEventManager().setAsyncQueue(queueSize, overflowPolicy);
+		}
+
 		//
 		// event listeners
 		//
@@ -203,7 +254,7 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 			dbListener.init(props);
 			config.getEventManager().addEventListener(GeneticEvent.GENOTYPE_START_GENETIC_OPERATORS_EVENT, dbListener);
 			config.getEventManager().addEventListener(GeneticEvent.GENOTYPE_FINISH_GENETIC_OPERATORS_EVENT, dbListener);
-			config.getEventManager().addEventListener(GeneticEvent.GENOTYPE_EVALUATED_EVENT, dbListener);
+			config.getEventManager().addEventListener(GeneticEvent.GENOTYPE_EVALUATED_EVENT, dbListener, asyncEvents);
 		}
 		// else {
 		// config.load();
@@ -214,8 +265,8 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 			PresentationEventListener presListener = null;
 			presListener = new PresentationEventListener(run);
 			presListener.init(props);
-			config.getEventManager().addEventListener(GeneticEvent.GENOTYPE_EVALUATED_EVENT, presListener);
-			config.getEventManager().addEventListener(GeneticEvent.RUN_COMPLETED_EVENT, presListener);
+			config.getEventManager().addEventListener(GeneticEvent.GENOTYPE_EVALUATED_EVENT, presListener, asyncEvents);
+			config.getEventManager().addEventListener(GeneticEvent.RUN_COMPLETED_EVENT, presListener, asyncEvents);
 		}
 
 		config.getEventManager().addEventListener(GeneticEvent.GENOTYPE_START_EVALUATION_EVENT, this);
@@ -224,6 +275,24 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 		config.getEventManager().addEventListener(GeneticEvent.GENOTYPE_FINISH_GENETIC_OPERATORS_EVENT, this);
 	}
 
+	private void startMetrics() throws IOException {
+		if (!properties.getBooleanProperty(METRICS_ENABLE_KEY, false)) {
+			return;
+		}
+		EvolutionMetrics.Format format = properties.getEnumProperty(METRICS_FORMAT_KEY, EvolutionMetrics.Format.class, EvolutionMetrics.Format.CSV);
+		File metricsFile = null;
+		if (properties.logFilesEnabled()) {
+			File dirFile = new File(properties.getProperty(HyperNEATConfiguration.OUTPUT_DIR_KEY));
+			if (!dirFile.exists())
+				dirFile.mkdirs();
+			metricsFile = new File(properties.getProperty(HyperNEATConfiguration.OUTPUT_DIR_KEY) + properties.getProperty(HyperNEATConfiguration.OUTPUT_PREFIX_KEY, "") + "metrics." + format.name().toLowerCase());
+		}
+		config.getMetrics().start(metricsFile, format);
+		if (properties.getBooleanProperty(METRICS_JMX_KEY, true)) {
+			config.getMetrics().registerMBean(properties.getProperty("run.name", "ahni") + "-" + properties.getProperty("run.id", "0"));
+		}
+	}
+
 	/**
 	 * Get the configuration object, primarily used by JGAP and ANJI.
 	 * 
@@ -267,8 +336,18 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 		DecimalFormat nf3 = new DecimalFormat("0.000");
 		DecimalFormat nf1 = new DecimalFormat("0.0");
 
-		fittestChromosomes = new Chromosome[numEvolutions];
-		bestPerformingChromosomes = new Chromosome[numEvolutions];
+		if (history != null) {
+			history.close();
+		}
+		File historySpillFile = null;
+		if (properties.getBooleanProperty(HISTORY_SPILL_KEY, false) && properties.containsKey(HyperNEATConfiguration.OUTPUT_DIR_KEY)) {
+			File dirFile = new File(properties.getProperty(HyperNEATConfiguration.OUTPUT_DIR_KEY));
+			if (!dirFile.exists())
+				dirFile.mkdirs();
+			historySpillFile = new File(properties.getProperty(HyperNEATConfiguration.OUTPUT_DIR_KEY) + properties.getProperty(HyperNEATConfiguration.OUTPUT_PREFIX_KEY, "") + "champions-history.bin");
+		}
+		history = new RunHistory(numEvolutions, properties.getBooleanProperty(HISTORY_CHAMPIONS_KEY, true), historySpillFile);
+		startMetrics();
 		bestFitnesses = new double[numEvolutions];
 		bestPerformances = new double[numEvolutions];
 
@@ -318,7 +397,9 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 
 		double avgGenTime = 0, cumulativeDurationBetweenLogging = 0;
 		int previousSpeciesCount = 0;
-		TreeMap<Long, Species> allSpeciesEver = new TreeMap<Long, Species>();
+		// The size of every species that has existed, at the time it was last seen. Only the sizes are kept (rather than
+		// the Species) so that extinct species and their members may be garbage collected.
+		TreeMap<Long, Integer> allSpeciesEver = new TreeMap<Long, Integer>();
 
 		fireEvent(new AHNIEvent(AHNIEvent.Type.RUN_START, this, this));
 
@@ -337,8 +418,6 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 			if (bulkFitnessFunc.endRun())
 				generationOfFirstSolution = generation;
 
-			fittestChromosomes[generation] = fittest;
-			bestPerformingChromosomes[generation] = bestPerforming;
 			bestFitnesses[generation] = fittest.getFitnessValue();
 			bestPerformances[generation] = bestPerforming.getPerformanceValue();
 			
@@ -370,18 +449,25 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 						numSpeciesWithNewPerformance++;
 				} else {
 					numNewSpecies++;
-					allSpeciesEver.put(speciesKey, species);
 				}
+				allSpeciesEver.put(speciesKey, species.previousOriginalSize);
 			}
 			//avgBestSpeciesPerformance /= numSpecies;
 			int numExtinctSpecies = previousSpeciesCount - numSpecies + numNewSpecies;
 
+			double meanGenomeSize = 0;
+			for (Chromosome c : genotype.getChromosomes()) {
+				meanGenomeSize += c.size();
+			}
+			meanGenomeSize /= genotype.getChromosomes().size();
+			history.addGeneration(fittest, bestPerforming, numSpecies, meanGenomeSize);
+
 			if (properties.logFilesEnabled() && properties.getBooleanProperty(LOG_SPECIES_HISTORY_KEY, false)) {
 				// write out some info about species history
 				StringBuffer output = new StringBuffer(generation + ",\t" + allSpeciesEver.size() + ",\t" + numSpecies + ",\t" + numNewSpecies + ",\t" + numExtinctSpecies);
-				for (Species species : allSpeciesEver.values()) {
+				for (Integer speciesSize : allSpeciesEver.values()) {
 					output.append(",\t");
-					output.append(species.previousOriginalSize);
+					output.append(speciesSize);
 				}
 				output.append("\n");
 				speciesInfoWriter.write(output.toString());
@@ -506,22 +592,47 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 		
 		bulkFitnessFunc.evolutionFinished(this);
 		bulkFitnessFunc.dispose();
+		
+		// Make sure any log files written asynchronously since the run completed event are written.
+		config.getEventManager().flush();
+		config.getMetrics().close();
 
 		return bestPerformances;
 	}
 
 	/**
-	 * Returns an array containing the fittest Chromosome from each generation.
+	 * Returns the compact record of the current or most recent run.
+	 */
+	public RunHistory getHistory() {
+		return history;
+	}
+
+	/**
+	 * Returns an array containing (copies of) the fittest Chromosome from each generation, decoded from the
+	 * {@link RunHistory}. Elements for generations not performed are null.
+	 * 
+	 * @throws IllegalStateException if champions were not recorded, see {@link #HISTORY_CHAMPIONS_KEY}.
 	 */
 	public Chromosome[] getFittestChromosomesForEachGen() {
+		Chromosome[] fittestChromosomes = new Chromosome[numEvolutions];
+		for (int g = 0; g < history.getGenerationCount(); g++) {
+			fittestChromosomes[g] = history.getFittest(g);
+		}
 		return fittestChromosomes;
 	}
 
 	/**
-	 * Returns an array containing the best performing Chromosome from each generation. This may be equivalent to the
-	 * fittest Chromosomes depending on whether the fitness function defines performance independently.
+	 * Returns an array containing (copies of) the best performing Chromosome from each generation, decoded from the
+	 * {@link RunHistory}. This may be equivalent to the fittest Chromosomes depending on whether the fitness function
+	 * defines performance independently. Elements for generations not performed are null.
+	 * 
+	 * @throws IllegalStateException if champions were not recorded, see {@link #HISTORY_CHAMPIONS_KEY}.
 	 */
 	public Chromosome[] getBesttPerformingChromosomesForEachGen() {
+		Chromosome[] bestPerformingChromosomes = new Chromosome[numEvolutions];
+		for (int g = 0; g < history.getGenerationCount(); g++) {
+			bestPerformingChromosomes[g] = history.getBestPerforming(g);
+		}
 		return bestPerformingChromosomes;
 	}
 
@@ -639,23 +750,23 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 					logger.warn("Champ substrate is null, which probably means it's been classified as a dud by the transcriber (e.g. perhaps because there are no connections from input to output.");
 				} else {
 					String baseFileName = properties.getProperty(HyperNEATConfiguration.OUTPUT_DIR_KEY) + properties.getProperty(HyperNEATConfiguration.OUTPUT_PREFIX_KEY, "") + label + "best_performing-" + (finished ? "final" : generation) + "-" + champ.getId();
+					// The string representation and image are generated here as the substrate is used again below,
+					// but writing them to file may be done asynchronously.
 					if (logString) {
-						BufferedWriter outputfile = new BufferedWriter(new FileWriter(baseFileName + ".txt"));
-						outputfile.write("String representation of " + msg + ":\n" + substrate);
+						StringBuilder output = new StringBuilder();
+						output.append("String representation of " + msg + ":\n" + substrate);
 						if (cppn != null) {
-							outputfile.write("\n\n\nString representation of CPPN:\n" + cppn);
+							output.append("\n\n\nString representation of CPPN:\n" + cppn);
 						}
-						outputfile.write("\n\n\nString representation of Chromosome:\n" + champ.getMaterial());
-						outputfile.close();
+						output.append("\n\n\nString representation of Chromosome:\n" + champ.getMaterial());
+						writeLogFile(new TextFileWriter(new File(baseFileName + ".txt"), output.toString()));
 					}
 
 					if (logImage) {
 						BufferedImage image = new BufferedImage(800, 800, BufferedImage.TYPE_3BYTE_BGR);
 						boolean success = substrate.render(image.createGraphics(), image.getWidth(), image.getHeight(), 30);
 						if (success) {
-							File outputfile = new File(baseFileName + ".png");
-							ImageIO.write(image, "png", outputfile);
-							logger.info("Rendered " + msg + " to " + outputfile);
+							writeLogFile(new ImageFileWriter(new File(baseFileName + ".png"), image, msg));
 						}
 					}
 					
@@ -679,13 +790,74 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 			} catch (TranscriberException e) {
 				System.err.println("Error transcribing best performing individual.");
 				e.printStackTrace();
+			}
+		}
+	}
+	
+
+	// Write a log file, on the asynchronous event thread if enabled.
+	private void writeLogFile(Runnable writer) {
+		if (asyncEvents) {
+			config.getEventManager().submitAsync(writer);
+		} else {
+			writer.run();
+		}
+	}
+
+	private static class TextFileWriter implements Runnable {
+		private final File file;
+		private final String text;
+
+		public TextFileWriter(File file, String text) {
+			this.file = file;
+			this.text = text;
+		}
+
+		@Override
+		public void run() {
+			try {
+				BufferedWriter outputfile = new BufferedWriter(new FileWriter(file));
+				outputfile.write(text);
+				outputfile.close();
+			} catch (IOException e) {
+				System.err.println("Error saving string representation of best performing network.");
+				e.printStackTrace();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "write " + file;
+		}
+	}
+
+	private static class ImageFileWriter implements Runnable {
+		private final File file;
+		private final BufferedImage image;
+		private final String description;
+
+		public ImageFileWriter(File file, BufferedImage image, String description) {
+			this.file = file;
+			this.image = image;
+			this.description = description;
+		}
+
+		@Override
+		public void run() {
+			try {
+				ImageIO.write(image, "png", file);
+				logger.info("Rendered " + description + " to " + file);
 			} catch (IOException e) {
 				System.err.println("Error saving image of best performing network.");
 				e.printStackTrace();
 			}
 		}
+
+		@Override
+		public String toString() {
+			return "write " + file;
+		}
 	}
-	
 
 	/**
 	 * @return The fittest Chromosome from the last generation.
@@ -720,6 +892,9 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 
 	public void dispose() {
 		bulkFitnessFunc.dispose();
+		if (history != null) {
+			history.close();
+		}
 	}
 
 	/**
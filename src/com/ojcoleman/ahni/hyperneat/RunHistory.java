@@ -0,0 +1,255 @@
+package com.ojcoleman.ahni.hyperneat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.jgapcustomised.Chromosome;
+
+import com.anji.persistence.ChromosomeCodec;
+
+/**
+ * A compact record of the history of an evolutionary run. For each generation some summary statistics are stored in
+ * primitive arrays, and the fittest and best performing Chromosomes are stored in the compact binary form produced by
+ * {@link ChromosomeCodec} (including their fitness and performance values), rather than retaining the Chromosome
+ * objects themselves (and, via their species, the rest of the population they belonged to). A champion whose record,
+ * including its fitness and performance values, is identical to that of the previously recorded fittest or best
+ * performing champion is stored only once. The champion records may optionally be
+ * written to a file instead of being kept in memory, in which case the memory used by the history is essentially
+ * constant over the run.
+ *
+ * @see HyperNEATEvolver#HISTORY_CHAMPIONS_KEY
+ * @see HyperNEATEvolver#HISTORY_SPILL_KEY
+ * @author Oliver Coleman
+ */
+public class RunHistory {
+	private int generationCount;
+	private long[] fittestIds;
+	private long[] bestPerformingIds;
+	private int[] speciesCounts;
+	private double[] meanGenomeSizes;
+
+	private boolean recordChampions;
+	// For each generation, the index of the record for the fittest and best performing Chromosome.
+	private int[] fittestRecords;
+	private int[] bestPerformingRecords;
+	// The encoded champions, either in memory or as offsets and lengths into the spill file.
+	private int recordCount;
+	// The most recently recorded fittest and best performing champions and their encodings, which new champions are
+	// compared against so that an unchanged champion is stored only once.
+	private int lastFittestRecord = -1, lastBestPerformingRecord = -1;
+	private byte[] lastFittestBytes, lastBestPerformingBytes;
+	private byte[][] recordData;
+	private long[] recordOffsets;
+	private int[] recordLengths;
+	private RandomAccessFile spillFile;
+
+	/**
+	 * @param expectedGenerations The expected number of generations (the history will grow if necessary).
+	 * @param recordChampions Whether to record the fittest and best performing Chromosome of each generation.
+	 * @param spillFile If not null then the champion records are written to this file instead of being kept in memory.
+	 *            Any existing file is overwritten.
+	 * @throws IOException If the spill file could not be created.
+	 */
+	public RunHistory(int expectedGenerations, boolean recordChampions, File spillFile) throws IOException {
+		int capacity = Math.max(1, expectedGenerations);
+		fittestIds = new long[capacity];
+		bestPerformingIds = new long[capacity];
+		speciesCounts = new int[capacity];
+		meanGenomeSizes = new double[capacity];
+		this.recordChampions = recordChampions;
+		if (recordChampions) {
+			fittestRecords = new int[capacity];
+			bestPerformingRecords = new int[capacity];
+			recordOffsets = new long[capacity];
+			recordLengths = new int[capacity];
+			if (spillFile != null) {
+				this.spillFile = new RandomAccessFile(spillFile, "rw");
+				this.spillFile.setLength(0);
+			} else {
+				recordData = new byte[capacity][];
+			}
+		}
+	}
+
+	/**
+	 * Record the given generation. Generations must be recorded in order.
+	 *
+	 * @param fittest The fittest Chromosome in the generation.
+	 * @param bestPerforming The best performing Chromosome in the generation.
+	 * @param speciesCount The number of species in the generation.
+	 * @param meanGenomeSize The mean genome size (number of alleles) in the generation.
+	 * @throws IOException If the champion records could not be written to the spill file.
+	 */
+	public synchronized void addGeneration(Chromosome fittest, Chromosome bestPerforming, int speciesCount, double meanGenomeSize) throws IOException {
+		int g = generationCount;
+		if (g == fittestIds.length) {
+			int capacity = g * 2;
+			fittestIds = Arrays.copyOf(fittestIds, capacity);
+			bestPerformingIds = Arrays.copyOf(bestPerformingIds, capacity);
+			speciesCounts = Arrays.copyOf(speciesCounts, capacity);
+			meanGenomeSizes = Arrays.copyOf(meanGenomeSizes, capacity);
+			if (recordChampions) {
+				fittestRecords = Arrays.copyOf(fittestRecords, capacity);
+				bestPerformingRecords = Arrays.copyOf(bestPerformingRecords, capacity);
+			}
+		}
+		fittestIds[g] = fittest.getId();
+		bestPerformingIds[g] = bestPerforming.getId();
+		speciesCounts[g] = speciesCount;
+		meanGenomeSizes[g] = meanGenomeSize;
+		if (recordChampions) {
+			byte[] fittestBytes = ChromosomeCodec.toBytes(fittest, true);
+			byte[] bestPerformingBytes = bestPerforming == fittest ? fittestBytes : ChromosomeCodec.toBytes(bestPerforming, true);
+			fittestRecords[g] = lastFittestRecord = getRecord(fittestBytes);
+			lastFittestBytes = fittestBytes;
+			bestPerformingRecords[g] = lastBestPerformingRecord = getRecord(bestPerformingBytes);
+			lastBestPerformingBytes = bestPerformingBytes;
+		}
+		generationCount++;
+	}
+
+	// Returns the index of the record with the given encoding, reusing the last fittest or best performing record if
+	// it is identical, otherwise adding a new record.
+	private int getRecord(byte[] bytes) throws IOException {
+		if (lastFittestBytes != null && Arrays.equals(bytes, lastFittestBytes)) {
+			return lastFittestRecord;
+		}
+		if (lastBestPerformingBytes != null && Arrays.equals(bytes, lastBestPerformingBytes)) {
+			return lastBestPerformingRecord;
+		}
+		return addRecord(bytes);
+	}
+
+	private int addRecord(byte[] bytes) throws IOException {
+		if (recordCount == recordLengths.length) {
+			int capacity = recordCount * 2;
+			recordOffsets = Arrays.copyOf(recordOffsets, capacity);
+			recordLengths = Arrays.copyOf(recordLengths, capacity);
+			if (recordData != null) {
+				recordData = Arrays.copyOf(recordData, capacity);
+			}
+		}
+		recordLengths[recordCount] = bytes.length;
+		if (spillFile != null) {
+			long offset = spillFile.length();
+			spillFile.seek(offset);
+			spillFile.write(bytes);
+			recordOffsets[recordCount] = offset;
+		} else {
+			recordData[recordCount] = bytes;
+		}
+		return recordCount++;
+	}
+
+	private Chromosome readRecord(int record) {
+		try {
+			byte[] bytes;
+			if (spillFile != null) {
+				bytes = new byte[recordLengths[record]];
+				spillFile.seek(recordOffsets[record]);
+				spillFile.readFully(bytes);
+			} else {
+				bytes = recordData[record];
+			}
+			return ChromosomeCodec.fromBytes(bytes);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read champion record from run history.", e);
+		}
+	}
+
+	private void checkGeneration(int generation) {
+		if (generation < 0 || generation >= generationCount)
+			throw new IndexOutOfBoundsException("Generation " + generation + " has not been recorded.");
+	}
+
+	private void checkChampionsRecorded() {
+		if (!recordChampions)
+			throw new IllegalStateException("Champions are not being recorded in the run history.");
+	}
+
+	/**
+	 * @return The number of generations recorded.
+	 */
+	public synchronized int getGenerationCount() {
+		return generationCount;
+	}
+
+	/**
+	 * @return true iff the fittest and best performing Chromosomes are recorded for each generation.
+	 */
+	public boolean isRecordingChampions() {
+		return recordChampions;
+	}
+
+	/**
+	 * @return The ID of the fittest Chromosome in the given generation.
+	 */
+	public synchronized long getFittestId(int generation) {
+		checkGeneration(generation);
+		return fittestIds[generation];
+	}
+
+	/**
+	 * @return The ID of the best performing Chromosome in the given generation.
+	 */
+	public synchronized long getBestPerformingId(int generation) {
+		checkGeneration(generation);
+		return bestPerformingIds[generation];
+	}
+
+	/**
+	 * @return The number of species in the given generation.
+	 */
+	public synchronized int getSpeciesCount(int generation) {
+		checkGeneration(generation);
+		return speciesCounts[generation];
+	}
+
+	/**
+	 * @return The mean genome size (number of alleles) in the given generation.
+	 */
+	public synchronized double getMeanGenomeSize(int generation) {
+		checkGeneration(generation);
+		return meanGenomeSizes[generation];
+	}
+
+	/**
+	 * Returns a copy of the fittest Chromosome in the given generation, decoded from the history. The returned
+	 * Chromosome has the same ID, alleles, fitness values and performance values as the original.
+	 *
+	 * @throws IllegalStateException if champions are not being recorded.
+	 */
+	public synchronized Chromosome getFittest(int generation) {
+		checkChampionsRecorded();
+		checkGeneration(generation);
+		return readRecord(fittestRecords[generation]);
+	}
+
+	/**
+	 * Returns a copy of the best performing Chromosome in the given generation, decoded from the history. The returned
+	 * Chromosome has the same ID, alleles, fitness values and performance values as the original.
+	 *
+	 * @throws IllegalStateException if champions are not being recorded.
+	 */
+	public synchronized Chromosome getBestPerforming(int generation) {
+		checkChampionsRecorded();
+		checkGeneration(generation);
+		return readRecord(bestPerformingRecords[generation]);
+	}
+
+	/**
+	 * Release any resources (the spill file) used by this history. The champion records are no longer available
+	 * after calling this method if they were written to a spill file.
+	 */
+	public synchronized void close() {
+		if (spillFile != null) {
+			try {
+				spillFile.close();
+			} catch (IOException e) {
+				// Ignore, nothing useful can be done.
+			}
+		}
+	}
+}
@@ -1,171 +1,360 @@
-package com.ojcoleman.ahni.misc;
-
-import java.util.*;
-
-import org.jgapcustomised.Chromosome;
-
-/**
- * This class implements the non-dominated sorting method selection method (according to rank and then crowding
- * comparison operator) based on the multi-objective genetic algorithm NSGA-II as described in DEB, Kalyanmoy ; PRATAP,
- * Amrit ; AGARWAL, Sameer A. ; MEYARIVAN, T.: "A Fast and Elitist Multiobjective Genetic Algorithm: NSGA-II". In: IEEE
- * Transactions on Evolutionary Computation, vol. 6, no. 2, April 2002, pp. 182-197.
- * 
- * This code is based on JNSGA2 by Joachim Melcher, Institut AIFB, Universitaet Karlsruhe (TH), Germany
- * http://sourceforge.net/projects/jnsga2
- */
-public class NSGAII {
-	/**
-	 * Performs a fast non-domination sort of the specified individuals. The method returns the different domination
-	 * fronts in ascending order by their rank and sets their rank value.
-	 * 
-	 * @param individuals individuals to sort
-	 * @return domination fronts in ascending order by their rank
-	 */
-	public static List<List<Chromosome>> fastNonDominatedSort(List<Chromosome> individuals) {
-		List<List<Chromosome>> dominationFronts = new ArrayList<List<Chromosome>>();
-
-		HashMap<Chromosome, List<Chromosome>> individual2DominatedChromosomes = new HashMap<Chromosome, List<Chromosome>>();
-		HashMap<Chromosome, Integer> individual2NumberOfDominatingChromosomes = new HashMap<Chromosome, Integer>();
-
-		for (Chromosome individualP : individuals) {
-			individual2DominatedChromosomes.put(individualP, new ArrayList<Chromosome>());
-			individual2NumberOfDominatingChromosomes.put(individualP, 0);
-
-			for (Chromosome individualQ : individuals) {
-				if (individualP.dominates(individualQ)) {
-					individual2DominatedChromosomes.get(individualP).add(individualQ);
-					individualQ.rank = 0; 
-				} else {
-					if (individualQ.dominates(individualP)) {
-						individual2NumberOfDominatingChromosomes.put(individualP, individual2NumberOfDominatingChromosomes.get(individualP) + 1);
-					}
-				}
-			}
-
-			if (individual2NumberOfDominatingChromosomes.get(individualP) == 0) {
-				// p belongs to the first front
-				if (dominationFronts.isEmpty()) {
-					dominationFronts.add(new ArrayList<Chromosome>());
-				}
-				dominationFronts.get(0).add(individualP);
-				individualP.rank = 0;
-			}
-		}
-
-		int i = 1;
-		while (dominationFronts.size() == i) {
-			List<Chromosome> nextDominationFront = new ArrayList<Chromosome>();
-			for (Chromosome individualP : dominationFronts.get(i - 1)) {
-				for (Chromosome individualQ : individual2DominatedChromosomes.get(individualP)) {
-					individual2NumberOfDominatingChromosomes.put(individualQ, individual2NumberOfDominatingChromosomes.get(individualQ) - 1);
-					if (individual2NumberOfDominatingChromosomes.get(individualQ) == 0) {
-						nextDominationFront.add(individualQ);
-						individualQ.rank = i; 
-					}
-				}
-			}
-			i++;
-			if (!nextDominationFront.isEmpty()) {
-				dominationFronts.add(nextDominationFront);
-			}
-		}
-
-		return dominationFronts;
-	}
-
-	public static List<Chromosome> getTop(List<List<Chromosome>> fronts, int numToSelect) {
-		// Add all members from each successive rank until the next rank to add would go over the desired size.
-		ArrayList<Chromosome> top = new ArrayList<Chromosome>();
-		int i = 0;
-		while (i < fronts.size() && top.size() + fronts.get(i).size() <= numToSelect) {
-			// crowdingDistanceAssignment(fronts.get(i)); This was used in tournament for selection of parents in JNSGA2
-			top.addAll(fronts.get(i));
-			i++;
-		}
-
-		// If we haven't reached the desired size, add individuals according to crowded comparison operator.
-		if (i < fronts.size() && top.size() != numToSelect) {
-			List<Chromosome> front = fronts.get(i);
-			sortByCrowdedComparison(front);
-			int numberOfMissingIndividuals = numToSelect - top.size();
-			top.addAll(front.subList(0, numberOfMissingIndividuals));
-		}
-
-		return top;
-	}
-
-	private static void sortByCrowdedComparison(List<Chromosome> individuals) {
-		// Reset crowding distances.
-		for (Chromosome c : individuals) {
-			c.crowdingDistance = 0;
-		}
-		int last = individuals.size() - 1;
-		int numberOfObjectives = individuals.get(0).getObjectiveCount();
-		for (int m = 0; m < numberOfObjectives; m++) {
-			// sort using m-th objective value
-			Collections.sort(individuals, new FitnessValueComparator(m));
-
-			// so that boundary points are always selected
-			individuals.get(0).crowdingDistance = Double.POSITIVE_INFINITY; // Elites always first.
-			// Don't replace an infinity value.
-			individuals.get(last).crowdingDistance = Math.max(individuals.get(last).crowdingDistance, Double.MAX_VALUE);
-
-			// If minimal and maximal fitness value for this objective are equal, do not change crowding distance
-			if (individuals.get(0).getFitnessValue(m) != individuals.get(last).getFitnessValue(m)) {
-				double range = individuals.get(last).getFitnessValue(m) - individuals.get(0).getFitnessValue(m);
-				for (int i = 1; i < last; i++) {
-					individuals.get(i).crowdingDistance += (individuals.get(i + 1).getFitnessValue(m) - individuals.get(i - 1).getFitnessValue(m)) / range;
-				}
-			}
-		}
-		Collections.sort(individuals, new CrowdedComparisonOperatorComparator());
-		
-		//for (Chromosome c : individuals) {
-		//	System.out.println(c.getId() + "  " + c.crowdingDistance + "  " + Arrays.toString(c.getFitnessValues()));
-		//}
-		//System.out.println();
-	}
-
-	/**
-	 * This inner class implements a comparator using the index-th objective fitness value of two individuals.
-	 */
-	private static class FitnessValueComparator implements Comparator<Chromosome> {
-		private int indexObjective;
-
-		/**
-		 * @param indexObjective objective/fitness index to sort on.
-		 */
-		private FitnessValueComparator(int indexObjective) {
-			this.indexObjective = indexObjective;
-		}
-
-		public int compare(Chromosome individual1, Chromosome individual2) {
-			if (individual1.getFitnessValue(indexObjective) < individual2.getFitnessValue(indexObjective)) {
-				return -1;
-			}
-			if (individual1.getFitnessValue(indexObjective) > individual2.getFitnessValue(indexObjective)) {
-				return 1;
-			}
-			// compare IDs if fitness is the same to keep the ordering stable.
-			return (int) Math.signum(individual1.getId() - individual2.getId());
-		}
-	}
-
-	/**
-	 * This inner class implements a comparator using the crowded comparison operator. A higher crowding value is
-	 * considered to be smaller in terms of ordering, such that in a descending sort the Chromosomes with lower crowding
-	 * distance come first.
-	 */
-	private static class CrowdedComparisonOperatorComparator implements Comparator<Chromosome> {
-		public int compare(Chromosome individual1, Chromosome individual2) {
-			if (individual1.crowdingDistance > individual2.crowdingDistance) {
-				return -1;
-			}
-			if (individual1.crowdingDistance < individual2.crowdingDistance) {
-				return 1;
-			}
-			// compare IDs if fitness is the same to keep the ordering stable.
-			return (int) Math.signum(individual1.getId() - individual2.getId());
-		}
-	}
-}
\ No newline at end of file
+package com.ojcoleman.ahni.misc;
+
+import java.util.*;
+
+import org.jgapcustomised.Chromosome;
+
+import com.ojcoleman.ahni.util.ArrayUtil;
+
+/**
+ * This class implements the non-dominated sorting method selection method (according to rank and then crowding
+ * comparison operator) based on the multi-objective genetic algorithm NSGA-II as described in DEB, Kalyanmoy ; PRATAP,
+ * Amrit ; AGARWAL, Sameer A. ; MEYARIVAN, T.: "A Fast and Elitist Multiobjective Genetic Algorithm: NSGA-II". In: IEEE
+ * Transactions on Evolutionary Computation, vol. 6, no. 2, April 2002, pp. 182-197.
+ * 
+ * This code is based on JNSGA2 by Joachim Melcher, Institut AIFB, Universitaet Karlsruhe (TH), Germany
+ * http://sourceforge.net/projects/jnsga2
+ */
+public class NSGAII {
+	/**
+	 * Performs a fast non-domination sort of the specified individuals. The method returns the different domination
+	 * fronts in ascending order by their rank and sets their rank value. Within each front individuals are in the same
+	 * order as in the given list. Individuals are ranked according to {@link Chromosome#dominates(Chromosome)}:
+	 * individuals with a fitness value of NaN for any objective are dominated by all individuals without, and (except
+	 * when there is only one objective, in which case the overall fitness is compared) do not dominate each other.
+	 * 
+	 * @param individuals individuals to sort
+	 * @return domination fronts in ascending order by their rank
+	 * @see #nonDominatedRanks(double[][])
+	 */
+	public static List<List<Chromosome>> fastNonDominatedSort(List<Chromosome> individuals) {
+		List<List<Chromosome>> dominationFronts = new ArrayList<List<Chromosome>>();
+		if (individuals.isEmpty()) {
+			return dominationFronts;
+		}
+
+		// Separate individuals with and without NaN fitness values, and rank each group separately.
+		int objectiveCount = individuals.get(0).getObjectiveCount();
+		int size = individuals.size();
+		int[] complete = new int[size], incomplete = new int[size];
+		int completeCount = 0, incompleteCount = 0;
+		for (int i = 0; i < size; i++) {
+			if (Double.isNaN(ArrayUtil.sum(individuals.get(i).getFitnessValues()))) {
+				incomplete[incompleteCount++] = i;
+			} else {
+				complete[completeCount++] = i;
+			}
+		}
+		int[] rank = new int[size];
+		int maxCompleteRank = -1;
+		if (completeCount > 0) {
+			double[][] objectives = new double[completeCount][];
+			for (int i = 0; i < completeCount; i++) {
+				objectives[i] = individuals.get(complete[i]).getFitnessValues();
+			}
+			int[] completeRank = nonDominatedRanks(objectives);
+			for (int i = 0; i < completeCount; i++) {
+				rank[complete[i]] = completeRank[i];
+				maxCompleteRank = Math.max(maxCompleteRank, completeRank[i]);
+			}
+		}
+		if (incompleteCount > 0) {
+			int[] incompleteRank = new int[incompleteCount];
+			if (objectiveCount == 1) {
+				double[][] objectives = new double[incompleteCount][1];
+				for (int i = 0; i < incompleteCount; i++) {
+					objectives[i][0] = individuals.get(incomplete[i]).getFitnessValue();
+				}
+				incompleteRank = nonDominatedRanks(objectives);
+				// Individuals with an overall fitness of NaN neither dominate nor are dominated by any other individual
+				// with a NaN fitness value.
+				for (int i = 0; i < incompleteCount; i++) {
+					if (Double.isNaN(objectives[i][0])) {
+						incompleteRank[i] = 0;
+					}
+				}
+			}
+			for (int i = 0; i < incompleteCount; i++) {
+				rank[incomplete[i]] = maxCompleteRank + 1 + incompleteRank[i];
+			}
+		}
+
+		for (int i = 0; i < size; i++) {
+			while (dominationFronts.size() <= rank[i]) {
+				dominationFronts.add(new ArrayList<Chromosome>());
+			}
+			Chromosome c = individuals.get(i);
+			c.rank = rank[i];
+			dominationFronts.get(rank[i]).add(c);
+		}
+		return dominationFronts;
+	}
+
+	/**
+	 * Determines the non-domination rank of each of the given objective vectors, where higher objective values are
+	 * better. A rank of 0 indicates the first (non-dominated) front, 1 the front dominated only by members of the first
+	 * front, and so on. Vectors containing NaN values are ranked after all vectors without, and do not dominate each
+	 * other.
+	 * 
+	 * For two objectives the fronts are found with a sweep over the vectors in lexicographic order, using a binary
+	 * search over the fronts found so far, in O(N log N) time. For more objectives the Efficient Non-dominated Sort
+	 * (ENS-SS) of Zhang et al. is used ("An Efficient Approach to Nondominated Sorting for Evolutionary Multiobjective
+	 * Optimization", IEEE Transactions on Evolutionary Computation, vol. 19, no. 2, 2015), which in practice performs
+	 * far fewer dominance comparisons than the O(MN^2) algorithm of Deb et al. Both avoid any allocation per
+	 * comparison.
+	 * 
+	 * @param objectives The objective vectors, in the format [individual][objective]. All vectors must have the same
+	 *            length.
+	 * @return The rank of each vector.
+	 */
+	public static int[] nonDominatedRanks(final double[][] objectives) {
+		int size = objectives.length;
+		int[] rank = new int[size];
+		if (size == 0) {
+			return rank;
+		}
+
+		// Vectors containing NaN are handled separately.
+		int[] order = new int[size];
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (!Double.isNaN(ArrayUtil.sum(objectives[i]))) {
+				order[count++] = i;
+			}
+		}
+		int nanCount = size - count;
+		if (nanCount > 0) {
+			order = Arrays.copyOf(order, count);
+		}
+
+		// Sort in descending lexicographic order, so that a vector can only be dominated by vectors preceding it.
+		sort(order, new IndexComparator() {
+			@Override
+			public int compare(int a, int b) {
+				double[] va = objectives[a], vb = objectives[b];
+				for (int m = 0; m < va.length; m++) {
+					if (va[m] != vb[m]) {
+						return va[m] > vb[m] ? -1 : 1;
+					}
+				}
+				return 0;
+			}
+		});
+
+		int frontCount = 0;
+		if (count > 0 && objectives[order[0]].length == 2) {
+			// For two objectives the vectors in each front are in order of decreasing first objective and increasing
+			// second objective. The vector most recently added to a front has the highest second objective value in it,
+			// and so dominates the current vector iff any member of the front does. Whether a vector is dominated by a
+			// front is monotonic in the front index, so the first front not dominating it can be found with a binary
+			// search.
+			double[][] lastInFront = new double[count][];
+			for (int i = 0; i < count; i++) {
+				double[] v = objectives[order[i]];
+				int low = 0, high = frontCount;
+				while (low < high) {
+					int mid = (low + high) >>> 1;
+					if (dominates(lastInFront[mid], v)) {
+						low = mid + 1;
+					} else {
+						high = mid;
+					}
+				}
+				rank[order[i]] = low;
+				lastInFront[low] = v;
+				if (low == frontCount) {
+					frontCount++;
+				}
+			}
+		} else {
+			// ENS-SS: assign each vector to the first front that contains no vector dominating it. The members of each
+			// front are checked in reverse order of addition, as later members are more similar to the current vector.
+			int[][] fronts = new int[count][];
+			int[] frontSizes = new int[count];
+			for (int i = 0; i < count; i++) {
+				int index = order[i];
+				double[] v = objectives[index];
+				int f = 0;
+				for (; f < frontCount; f++) {
+					int[] front = fronts[f];
+					boolean dominated = false;
+					for (int j = frontSizes[f] - 1; j >= 0 && !dominated; j--) {
+						dominated = dominates(objectives[front[j]], v);
+					}
+					if (!dominated) {
+						break;
+					}
+				}
+				if (f == frontCount) {
+					fronts[f] = new int[4];
+					frontCount++;
+				} else if (frontSizes[f] == fronts[f].length) {
+					fronts[f] = Arrays.copyOf(fronts[f], frontSizes[f] * 2);
+				}
+				fronts[f][frontSizes[f]++] = index;
+				rank[index] = f;
+			}
+		}
+
+		if (nanCount > 0) {
+			for (int i = 0; i < size; i++) {
+				if (Double.isNaN(ArrayUtil.sum(objectives[i]))) {
+					rank[i] = frontCount;
+				}
+			}
+		}
+		return rank;
+	}
+
+	/**
+	 * @return true iff the objective vector a is at least as good as b in all objectives and better in at least one.
+	 */
+	private static boolean dominates(double[] a, double[] b) {
+		boolean better = false;
+		for (int m = 0; m < a.length; m++) {
+			if (a[m] < b[m]) {
+				return false;
+			}
+			if (a[m] > b[m]) {
+				better = true;
+			}
+		}
+		return better;
+	}
+
+	public static List<Chromosome> getTop(List<List<Chromosome>> fronts, int numToSelect) {
+		// Add all members from each successive rank until the next rank to add would go over the desired size.
+		ArrayList<Chromosome> top = new ArrayList<Chromosome>();
+		int i = 0;
+		while (i < fronts.size() && top.size() + fronts.get(i).size() <= numToSelect) {
+			// crowdingDistanceAssignment(fronts.get(i)); This was used in tournament for selection of parents in JNSGA2
+			top.addAll(fronts.get(i));
+			i++;
+		}
+
+		// If we haven't reached the desired size, add individuals according to crowded comparison operator.
+		if (i < fronts.size() && top.size() != numToSelect) {
+			List<Chromosome> front = fronts.get(i);
+			sortByCrowdedComparison(front);
+			int numberOfMissingIndividuals = numToSelect - top.size();
+			top.addAll(front.subList(0, numberOfMissingIndividuals));
+		}
+
+		return top;
+	}
+
+	private static void sortByCrowdedComparison(List<Chromosome> individuals) {
+		int size = individuals.size();
+		int last = size - 1;
+		int numberOfObjectives = individuals.get(0).getObjectiveCount();
+		final long[] ids = new long[size];
+		final double[] crowdingDistance = new double[size];
+		for (int i = 0; i < size; i++) {
+			ids[i] = individuals.get(i).getId();
+		}
+		final double[] values = new double[size];
+		int[] order = new int[size];
+		for (int m = 0; m < numberOfObjectives; m++) {
+			// sort using m-th objective value
+			for (int i = 0; i < size; i++) {
+				values[i] = individuals.get(i).getFitnessValue(m);
+				order[i] = i;
+			}
+			sort(order, new IndexComparator() {
+				@Override
+				public int compare(int a, int b) {
+					if (values[a] < values[b]) {
+						return -1;
+					}
+					if (values[a] > values[b]) {
+						return 1;
+					}
+					// compare IDs if fitness is the same to keep the ordering stable.
+					return ids[a] < ids[b] ? -1 : (ids[a] > ids[b] ? 1 : 0);
+				}
+			});
+
+			// so that boundary points are always selected
+			crowdingDistance[order[0]] = Double.POSITIVE_INFINITY; // Elites always first.
+			// Don't replace an infinity value.
+			crowdingDistance[order[last]] = Math.max(crowdingDistance[order[last]], Double.MAX_VALUE);
+
+			// If minimal and maximal fitness value for this objective are equal, do not change crowding distance
+			if (values[order[0]] != values[order[last]]) {
+				double range = values[order[last]] - values[order[0]];
+				for (int i = 1; i < last; i++) {
+					crowdingDistance[order[i]] += (values[order[i + 1]] - values[order[i - 1]]) / range;
+				}
+			}
+		}
+
+		// Sort by decreasing crowding distance.
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		sort(order, new IndexComparator() {
+			@Override
+			public int compare(int a, int b) {
+				if (crowdingDistance[a] > crowdingDistance[b]) {
+					return -1;
+				}
+				if (crowdingDistance[a] < crowdingDistance[b]) {
+					return 1;
+				}
+				// compare IDs if fitness is the same to keep the ordering stable.
+				return ids[a] < ids[b] ? -1 : (ids[a] > ids[b] ? 1 : 0);
+			}
+		});
+		Chromosome[] sorted = new Chromosome[size];
+		for (int i = 0; i < size; i++) {
+			sorted[i] = individuals.get(order[i]);
+			sorted[i].crowdingDistance = crowdingDistance[order[i]];
+		}
+		for (int i = 0; i < size; i++) {
+			individuals.set(i, sorted[i]);
+		}
+	}
+
+	/**
+	 * Compares two elements of some set of elements given their indices.
+	 */
+	private static abstract class IndexComparator {
+		public abstract int compare(int a, int b);
+	}
+
+	/**
+	 * Stable sort (merge sort) of the given array of indices using the given comparator.
+	 */
+	private static void sort(int[] indices, IndexComparator comparator) {
+		if (indices.length > 1) {
+			mergeSort(indices.clone(), indices, 0, indices.length, comparator);
+		}
+	}
+
+	// Sorts src[from, to) into dest[from, to). src and dest must initially contain the same values.
+	private static void mergeSort(int[] src, int[] dest, int from, int to, IndexComparator comparator) {
+		int length = to - from;
+		if (length < 8) {
+			// Insertion sort for small ranges.
+			for (int i = from + 1; i < to; i++) {
+				int v = dest[i];
+				int j = i - 1;
+				for (; j >= from && comparator.compare(dest[j], v) > 0; j--) {
+					dest[j + 1] = dest[j];
+				}
+				dest[j + 1] = v;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(dest, src, from, mid, comparator);
+		mergeSort(dest, src, mid, to, comparator);
+		for (int i = from, p = from, q = mid; i < to; i++) {
+			if (q >= to || (p < mid && comparator.compare(src[p], src[q]) <= 0)) {
+				dest[i] = src[p++];
+			} else {
+				dest[i] = src[q++];
+			}
+		}
+	}
+}
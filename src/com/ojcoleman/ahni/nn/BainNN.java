@@ -14,8 +14,10 @@ import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
 
+import com.amd.aparapi.Kernel;
 import com.anji.integration.Activator;
 import com.anji.integration.TranscriberException;
+import com.anji.util.Properties;
 import com.ojcoleman.ahni.util.ArrayUtil;
 
 import com.ojcoleman.bain.NeuralNetwork;
@@ -42,7 +44,27 @@ import com.ojcoleman.bain.neuron.rate.NeuronCollectionWithBias;
 public class BainNN extends NNAdaptor {
 	private final static Logger logger = Logger.getLogger(BainNN.class);
 
+	/**
+	 * The execution mode for Bain substrate networks. Either the name of an Aparapi {@link Kernel.EXECUTION_MODE} (GPU,
+	 * CPU, JTP or SEQ) or {@link #EXECUTION_MODE_PARALLEL}. If not set the execution mode is selected by Bain.
+	 */
 	public static final String SUBSTRATE_EXECUTION_MODE = "ann.transcriber.bain.executionmode";
+	/**
+	 * Value for {@link #SUBSTRATE_EXECUTION_MODE} which causes substrate networks to be simulated in parallel on the CPU
+	 * by a {@link ParallelNeuralNetwork}. This is intended for large layered feed-forward substrates.
+	 */
+	public static final String EXECUTION_MODE_PARALLEL = "PARALLEL";
+	/**
+	 * The minimum number of synapses in a substrate network for it to be simulated in parallel when the execution mode
+	 * is {@link #EXECUTION_MODE_PARALLEL}. Smaller networks are simulated sequentially. Default is 10000.
+	 */
+	public static final String SUBSTRATE_PARALLEL_THRESHOLD = "ann.transcriber.bain.parallel.threshold";
+	/**
+	 * The number of threads used to simulate substrate networks when the execution mode is
+	 * {@link #EXECUTION_MODE_PARALLEL}. The threads are shared by all networks. Default is 0, which means use the number
+	 * of available processors.
+	 */
+	public static final String SUBSTRATE_PARALLEL_THREADS = "ann.transcriber.bain.parallel.threads";
 	public static final String SUBSTRATE_SIMULATION_RESOLUTION = "ann.transcriber.bain.resolution";
 
 	/**
@@ -683,6 +705,20 @@ public class BainNN extends NNAdaptor {
 		nn.dispose();
 	}
 
+	/**
+	 * Create a Bain neural network with the given neurons and synapses, using the execution mode and simulation
+	 * resolution specified by {@link #SUBSTRATE_EXECUTION_MODE} and {@link #SUBSTRATE_SIMULATION_RESOLUTION}.
+	 */
+	public static NeuralNetwork createNeuralNetwork(Properties props, NeuronCollection neurons, SynapseCollection synapses) {
+		int simRes = props.getIntProperty(SUBSTRATE_SIMULATION_RESOLUTION, 1000);
+		String execModeName = props.getProperty(SUBSTRATE_EXECUTION_MODE, null);
+		if (EXECUTION_MODE_PARALLEL.equals(execModeName)) {
+			return new ParallelNeuralNetwork(simRes, neurons, synapses, props.getIntProperty(SUBSTRATE_PARALLEL_THRESHOLD, 10000), props.getIntProperty(SUBSTRATE_PARALLEL_THREADS, 0));
+		}
+		Kernel.EXECUTION_MODE execMode = execModeName == null ? null : Kernel.EXECUTION_MODE.valueOf(execModeName);
+		return new NeuralNetwork(simRes, neurons, synapses, execMode);
+	}
+
 	public static NeuronCollection createNeuronCollection(String modelClass, int size, boolean enableBias, boolean typesEnabled, boolean paramsEnabled) throws IllegalArgumentException, SecurityException, InstantiationException, IllegalAccessException, ClassNotFoundException, InvocationTargetException, NoSuchMethodException {
 		NeuronCollection neurons = (NeuronCollection) ComponentCollection.createCollection(modelClass, size);
 		if (enableBias && !(neurons instanceof NeuronCollectionWithBias)) {
@@ -0,0 +1,240 @@
+package com.ojcoleman.ahni.nn;
+
+import java.util.Arrays;
+
+import com.anji.nn.activationfunction.ActivationFunction;
+
+/**
+ * A feed-forward {@link GridNet} that stores the receptive field weights for each pair of consecutive layers in a single
+ * contiguous array, with the offset and extent of the receptive field of each target neuron precomputed. Activation is
+ * performed in a single sweep over the layers using flat activation arrays, avoiding the nested array dereferencing and
+ * per-element bounds calculations of {@link GridNet#stepFF()}. The output is numerically identical to that of
+ * GridNet, as connections are summed in the same order.
+ *
+ * A batch of independent input patterns may be activated at once via {@link #next(double[][][])}, which loads the
+ * weights for each target neuron once for all patterns in the batch. {@link #nextSequence(double[][][])} uses the
+ * batched activation (for a feed-forward network each input in a sequence is independent of the others).
+ *
+ * The weight and bias arrays returned by {@link #getWeights()} and {@link #getBias()} may still be modified, but
+ * {@link #weightsChanged()} must then be called for the changes to take effect.
+ *
+ * @author Oliver Coleman
+ */
+public class FlatGridNet extends GridNet {
+	private int depth;
+	private int[] width, height;
+	private ActivationFunction activationFunction;
+
+	// Receptive field weights for each layer (excluding the input layer), [layer-1][weight]. The weights for each
+	// target neuron are stored consecutively, in target neuron order, and for each target neuron in source row-major
+	// order.
+	private double[][] flatWeights;
+	// Bias for each neuron, [layer-1][y * width + x].
+	private double[][] flatBias;
+	// For each target neuron: the index into the source layer activation array of the first neuron in the receptive
+	// field, and the height and width of the receptive field. [layer-1][y * width + x].
+	private int[][] sourceStart, fieldHeight, fieldWidth;
+	// Activation of each neuron, [layer][y * width + x].
+	private double[][] flatActivation;
+	// Activation buffers for batched activation, [pattern][layer][y * width + x].
+	private double[][][] batchActivation;
+
+	/**
+	 * Creates a feed-forward FlatGridNet with the given specifications. The arguments are as for
+	 * {@link GridNet#GridNet(int[][][], int[][], double[][][][][][], double[][][], ActivationFunction, int, String)},
+	 * except that the network must be feed-forward: connectionMaxRanges must be {-1, 1} for the z axis of every layer.
+	 */
+	public FlatGridNet(int[][][] connectionMaxRanges, int[][] layerDimensions, double[][][][][][] weights, double[][][] bias, ActivationFunction function, String aName) {
+		super(connectionMaxRanges, layerDimensions, weights, bias, function, 1, aName);
+		if (!isFeedForward()) {
+			throw new IllegalArgumentException("FlatGridNet only supports feed-forward networks.");
+		}
+		depth = weights.length + 1;
+		width = layerDimensions[0];
+		height = layerDimensions[1];
+		activationFunction = function;
+
+		flatWeights = new double[depth - 1][];
+		flatBias = new double[depth - 1][];
+		sourceStart = new int[depth - 1][];
+		fieldHeight = new int[depth - 1][];
+		fieldWidth = new int[depth - 1][];
+		flatActivation = new double[depth][];
+		flatActivation[0] = new double[height[0] * width[0]];
+		for (int tz = 1; tz < depth; tz++) {
+			int targetCount = height[tz] * width[tz];
+			flatBias[tz - 1] = new double[targetCount];
+			sourceStart[tz - 1] = new int[targetCount];
+			fieldHeight[tz - 1] = new int[targetCount];
+			fieldWidth[tz - 1] = new int[targetCount];
+			flatActivation[tz] = new double[targetCount];
+
+			int weightCount = 0;
+			for (int ty = 0, t = 0; ty < height[tz]; ty++) {
+				for (int tx = 0; tx < width[tz]; tx++, t++) {
+					double[][] w = weights[tz - 1][ty][tx][0];
+					// Same source neuron offsets as used in GridNet.stepFF().
+					int sy = Math.max(0, ty - connectionMaxRanges[tz - 1][1][0]);
+					int sx = Math.max(0, tx - connectionMaxRanges[tz - 1][2][0]);
+					sourceStart[tz - 1][t] = sy * width[tz - 1] + sx;
+					fieldHeight[tz - 1][t] = w.length;
+					fieldWidth[tz - 1][t] = w.length == 0 ? 0 : w[0].length;
+					weightCount += fieldHeight[tz - 1][t] * fieldWidth[tz - 1][t];
+				}
+			}
+			flatWeights[tz - 1] = new double[weightCount];
+		}
+		weightsChanged();
+	}
+
+	/**
+	 * Copies the weight and bias values from the arrays returned by {@link #getWeights()} and {@link #getBias()} into
+	 * the packed arrays used for activation. This must be called after the values in those arrays are modified. The
+	 * dimensions of the arrays must not be changed.
+	 */
+	public void weightsChanged() {
+		double[][][][][][] weights = getWeights();
+		double[][][] bias = getBias();
+		for (int tz = 1; tz < depth; tz++) {
+			double[] fw = flatWeights[tz - 1];
+			double[] fb = flatBias[tz - 1];
+			int k = 0;
+			for (int ty = 0, t = 0; ty < height[tz]; ty++) {
+				for (int tx = 0; tx < width[tz]; tx++, t++) {
+					double[][] w = weights[tz - 1][ty][tx][0];
+					for (int wy = 0; wy < w.length; wy++) {
+						System.arraycopy(w[wy], 0, fw, k, w[wy].length);
+						k += w[wy].length;
+					}
+					fb[t] = bias[tz - 1][ty][tx];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Perform one complete cycle, propagating signal from the input layer to the output layer.
+	 */
+	@Override
+	public void stepFF() {
+		double[][][] activation = getActivation();
+		copyIn(activation[0], flatActivation[0], width[0]);
+		for (int tz = 1; tz < depth; tz++) {
+			activateLayer(tz, flatActivation[tz - 1], flatActivation[tz]);
+			copyOut(flatActivation[tz], activation[tz], width[tz]);
+		}
+	}
+
+	// Activate the neurons in layer tz given the activation of layer tz-1.
+	private void activateLayer(int tz, double[] source, double[] target) {
+		double[] w = flatWeights[tz - 1];
+		double[] b = flatBias[tz - 1];
+		int[] start = sourceStart[tz - 1];
+		int[] fh = fieldHeight[tz - 1];
+		int[] fw = fieldWidth[tz - 1];
+		int sourceWidth = width[tz - 1];
+		for (int t = 0, k = 0; t < target.length; t++) {
+			double sum = b[t];
+			for (int wy = 0, s = start[t]; wy < fh[t]; wy++, s += sourceWidth) {
+				for (int wx = 0; wx < fw[t]; wx++, k++) {
+					sum += source[s + wx] * w[k];
+				}
+			}
+			target[t] = activationFunction.apply(sum);
+		}
+	}
+
+	/**
+	 * Activate the network for each of the given independent input patterns. The weights for each target neuron are
+	 * loaded once for all patterns. After this method returns the activation of the network is as if the last pattern
+	 * had been presented via {@link #next(double[][])}.
+	 *
+	 * @param stimuli The input patterns, in the format [pattern][y][x].
+	 * @return The output patterns, in the format [pattern][y][x].
+	 */
+	public double[][][] next(double[][][] stimuli) {
+		int patternCount = stimuli.length;
+		double[][][] response = new double[patternCount][height[depth - 1]][width[depth - 1]];
+		if (patternCount == 0) {
+			return response;
+		}
+		if (batchActivation == null || batchActivation.length < patternCount) {
+			batchActivation = new double[patternCount][depth][];
+			for (int p = 0; p < patternCount; p++) {
+				for (int l = 0; l < depth; l++) {
+					batchActivation[p][l] = new double[height[l] * width[l]];
+				}
+			}
+		}
+		for (int p = 0; p < patternCount; p++) {
+			copyIn(stimuli[p], batchActivation[p][0], width[0]);
+		}
+
+		for (int tz = 1; tz < depth; tz++) {
+			double[] w = flatWeights[tz - 1];
+			double[] b = flatBias[tz - 1];
+			int[] start = sourceStart[tz - 1];
+			int[] fh = fieldHeight[tz - 1];
+			int[] fw = fieldWidth[tz - 1];
+			int sourceWidth = width[tz - 1];
+			int targetCount = height[tz] * width[tz];
+			for (int t = 0, k = 0; t < targetCount; t++) {
+				int fieldSize = fh[t] * fw[t];
+				for (int p = 0; p < patternCount; p++) {
+					double[] source = batchActivation[p][tz - 1];
+					double sum = b[t];
+					for (int wy = 0, s = start[t], kp = k; wy < fh[t]; wy++, s += sourceWidth) {
+						for (int wx = 0; wx < fw[t]; wx++, kp++) {
+							sum += source[s + wx] * w[kp];
+						}
+					}
+					batchActivation[p][tz][t] = activationFunction.apply(sum);
+				}
+				k += fieldSize;
+			}
+		}
+
+		for (int p = 0; p < patternCount; p++) {
+			copyOut(batchActivation[p][depth - 1], response[p], width[depth - 1]);
+		}
+		// Leave the network in the state it would be in after activating the last pattern.
+		double[][][] activation = getActivation();
+		activation[0] = stimuli[patternCount - 1];
+		for (int l = 0; l < depth; l++) {
+			System.arraycopy(batchActivation[patternCount - 1][l], 0, flatActivation[l], 0, flatActivation[l].length);
+			if (l > 0) {
+				copyOut(flatActivation[l], activation[l], width[l]);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * As each input in a sequence is independent of the others for a feed-forward network, this is equivalent to
+	 * {@link #next(double[][][])}.
+	 */
+	@Override
+	public double[][][] nextSequence(double[][][] stimuli) {
+		return next(stimuli);
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		for (double[] a : flatActivation) {
+			Arrays.fill(a, 0);
+		}
+	}
+
+	private static void copyIn(double[][] grid, double[] flat, int width) {
+		for (int y = 0; y < grid.length; y++) {
+			System.arraycopy(grid[y], 0, flat, y * width, width);
+		}
+	}
+
+	private static void copyOut(double[] flat, double[][] grid, int width) {
+		for (int y = 0; y < grid.length; y++) {
+			System.arraycopy(flat, y * width, grid[y], 0, width);
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package com.ojcoleman.ahni.nn;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.ahni.util.DaemonThreadFactory;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.ComponentCollection;
+import com.ojcoleman.bain.base.ComponentConfiguration;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+
+/**
+ * <p>
+ * A Bain {@link NeuralNetwork} that performs the synapse and neuron updates for each simulation step in parallel on the
+ * CPU. The synapses and neurons are each divided into contiguous partitions which are updated concurrently by a pool
+ * of threads shared by all ParallelNeuralNetworks, first the synapses and then the neurons. For a layered feed-forward
+ * network every layer is updated in each step (see {@link BainNN#nextSequence(double[][])}), so the partitions span
+ * all the layers. Networks with fewer synapses than the given threshold are simulated sequentially, as for small
+ * networks the cost of coordinating the threads outweighs the gain.
+ * </p>
+ * <p>
+ * Bain neuron and synapse collections are Aparapi kernels whose <code>run()</code> method updates the component given
+ * by the kernel global ID. Each partition holds a clone of the kernel, which shares the component state arrays but has
+ * its own global ID, and invokes <code>run()</code> for each component in its range. This is what Aparapi does in its
+ * JTP execution mode, but without creating new threads every step, so any Bain neuron or synapse model may be used.
+ * </p>
+ * <p>
+ * Synapses add their output to the input of their post-synaptic neuron, so the synapses are only partitioned at
+ * indices where no post-synaptic neuron has synapses on both sides of the boundary. The substrate transcribers create
+ * synapses grouped by post-synaptic neuron so in practice this does not restrict partitioning. If no such boundaries
+ * can be found the network is simulated sequentially.
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class ParallelNeuralNetwork extends NeuralNetwork {
+	private final static Logger logger = Logger.getLogger(ParallelNeuralNetwork.class);
+
+	private static HashMap<Integer, ExecutorService> poolMap = new HashMap<Integer, ExecutorService>();
+
+	private final int threshold;
+	private final int threads;
+	private final ExecutorService pool;
+	private final Future<?>[] futures;
+
+	// The synapse and neuron partitions, or null if they need to be (re)created. If the network is to be simulated
+	// sequentially then the synapse partitions array has length 1.
+	private Partition[] synapsePartitions;
+	private Partition[] neuronPartitions;
+
+	// Working arrays for determining synapse partition boundaries, retained so they're not reallocated on every reset.
+	private int[] lastSynapse;
+	private int[] spanning;
+
+	/**
+	 * Create a new ParallelNeuralNetwork.
+	 *
+	 * @param timeResolution The number of simulation steps per second.
+	 * @param neurons The neurons in the network.
+	 * @param synapses The synapses in the network.
+	 * @param threshold The minimum number of synapses for the network to be simulated in parallel.
+	 * @param threads The number of threads to use. If 0 the number of available processors is used.
+	 */
+	public ParallelNeuralNetwork(int timeResolution, NeuronCollection<? extends ComponentConfiguration> neurons, SynapseCollection<? extends ComponentConfiguration> synapses, int threshold, int threads) {
+		// The component collections are run in Java, rather than via OpenCL, for both parallel and sequential
+		// simulation.
+		super(timeResolution, neurons, synapses, Kernel.EXECUTION_MODE.SEQ);
+		this.threshold = threshold;
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		pool = getPool(this.threads);
+		futures = new Future<?>[this.threads];
+	}
+
+	private static ExecutorService getPool(int threads) {
+		synchronized (poolMap) {
+			ExecutorService pool = poolMap.get(threads);
+			if (pool == null) {
+				pool = Executors.newFixedThreadPool(threads, new DaemonThreadFactory(ParallelNeuralNetwork.class.getName()));
+				poolMap.put(threads, pool);
+			}
+			return pool;
+		}
+	}
+
+	/**
+	 * Returns true iff the network is currently being simulated in parallel (it may not be if it is smaller than the
+	 * threshold or the synapses could not be partitioned).
+	 */
+	public synchronized boolean isParallel() {
+		if (synapsePartitions == null) {
+			createPartitions();
+		}
+		return synapsePartitions.length > 1;
+	}
+
+	@Override
+	public synchronized void step() {
+		if (synapsePartitions == null) {
+			createPartitions();
+		}
+		if (synapsePartitions.length == 1) {
+			super.step();
+			return;
+		}
+		run(synapsePartitions);
+		run(neuronPartitions);
+		step++;
+	}
+
+	/**
+	 * Run the network for the given number of steps. NeuralNetwork#run(int) steps the synapse and neuron collections
+	 * directly, so this is overridden to use {@link #step()}.
+	 */
+	@Override
+	public synchronized void run(int numSteps) {
+		for (int s = 0; s < numSteps; s++) {
+			step();
+		}
+	}
+
+	@Override
+	public void init() {
+		synapsePartitions = null;
+		super.init();
+	}
+
+	@Override
+	public synchronized void reset() {
+		// The synapse connectivity may have been changed (for example when a substrate is reused by a transcriber).
+		synapsePartitions = null;
+		super.reset();
+	}
+
+	@Override
+	public void setNeurons(NeuronCollection<? extends ComponentConfiguration> neurons) {
+		synapsePartitions = null;
+		super.setNeurons(neurons);
+	}
+
+	@Override
+	public void setSynapses(SynapseCollection<? extends ComponentConfiguration> synapses) {
+		synapsePartitions = null;
+		super.setSynapses(synapses);
+	}
+
+	// Run the given partitions, the first in this thread and the rest in the thread pool.
+	private void run(Partition[] partitions) {
+		for (int p = 1; p < partitions.length; p++) {
+			futures[p] = pool.submit(partitions[p]);
+		}
+		partitions[0].run();
+		try {
+			for (int p = 1; p < partitions.length; p++) {
+				futures[p].get();
+				futures[p] = null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Error simulating Bain network partition.", e.getCause());
+		}
+	}
+
+	private void createPartitions() {
+		int synapseCount = synapses.getSizePopulated();
+		int neuronCount = neurons.getSizePopulated();
+		int[] synapseBounds = synapseCount >= threshold ? getSynapseBoundaries(synapseCount, neuronCount) : null;
+		if (synapseBounds == null || synapseBounds.length <= 2) {
+			if (synapseCount >= threshold) {
+				logger.debug("Unable to partition synapses for parallel simulation, simulating sequentially.");
+			}
+			synapsePartitions = new Partition[] { null };
+			neuronPartitions = null;
+			return;
+		}
+
+		synapsePartitions = new Partition[synapseBounds.length - 1];
+		for (int p = 0; p < synapsePartitions.length; p++) {
+			synapsePartitions[p] = new Partition(synapses, synapseBounds[p], synapseBounds[p + 1]);
+		}
+		neuronPartitions = new Partition[Math.min(threads, neuronCount)];
+		for (int p = 0; p < neuronPartitions.length; p++) {
+			neuronPartitions[p] = new Partition(neurons, (int) ((long) neuronCount * p / neuronPartitions.length), (int) ((long) neuronCount * (p + 1) / neuronPartitions.length));
+		}
+	}
+
+	/**
+	 * Returns the boundaries of the synapse partitions, including 0 and synapseCount. A boundary may only be placed at
+	 * index b if no post-synaptic neuron has synapses at indices both less than b and greater than or equal to b.
+	 * Boundaries are placed at the first such index at or after each multiple of synapseCount / threads.
+	 */
+	private int[] getSynapseBoundaries(int synapseCount, int neuronCount) {
+		if (lastSynapse == null || lastSynapse.length < neuronCount) {
+			lastSynapse = new int[neuronCount];
+		}
+		if (spanning == null || spanning.length < synapseCount + 1) {
+			spanning = new int[synapseCount + 1];
+		} else {
+			Arrays.fill(spanning, 0, synapseCount + 1, 0);
+		}
+		for (int s = 0; s < synapseCount; s++) {
+			lastSynapse[synapses.getPostNeuron(s)] = s;
+		}
+		// Mark the ranges of indices (s, last synapse with the same post-synaptic neuron as s] as invalid boundaries,
+		// as a count of the ranges starting minus the count of the ranges ending at each index.
+		for (int s = 0; s < synapseCount; s++) {
+			int last = lastSynapse[synapses.getPostNeuron(s)];
+			if (last > s) {
+				spanning[s + 1]++;
+				spanning[last + 1]--;
+			}
+		}
+
+		int[] bounds = new int[threads + 1];
+		int boundCount = 1; // bounds[0] = 0
+		int spanCount = 0;
+		for (int b = 1; b < synapseCount && boundCount < threads; b++) {
+			spanCount += spanning[b];
+			if (spanCount == 0 && b >= (long) synapseCount * boundCount / threads) {
+				bounds[boundCount++] = b;
+			}
+		}
+		bounds[boundCount++] = synapseCount;
+		return Arrays.copyOf(bounds, boundCount);
+	}
+
+	/**
+	 * Updates a contiguous range of the components in a collection.
+	 */
+	private static class Partition implements Runnable {
+		final ComponentCollection kernel;
+		final Kernel.KernelState state;
+		final int start, end;
+
+		public Partition(ComponentCollection collection, int start, int end) {
+			kernel = (ComponentCollection) collection.clone();
+			state = kernel.getKernelState();
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			for (int i = start; i < end; i++) {
+				state.setGlobalId(0, i);
+				kernel.run();
+			}
+		}
+	}
+}
@@ -4,6 +4,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -11,6 +12,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.imageio.ImageIO;
 
@@ -24,7 +30,6 @@ import com.ojcoleman.bain.neuron.rate.NeuronCollectionWithBias;
 import org.apache.log4j.Logger;
 import org.jgapcustomised.Chromosome;
 
-import com.amd.aparapi.Kernel;
 import com.anji.integration.Transcriber;
 import com.anji.integration.TranscriberException;
 import com.ojcoleman.ahni.event.*;
@@ -33,6 +38,7 @@ import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.nn.BainNN;
 import com.ojcoleman.ahni.nn.NNAdaptor;
 import com.ojcoleman.ahni.transcriber.HyperNEATTranscriber.CPPN;
+import com.ojcoleman.ahni.util.DaemonThreadFactory;
 import com.ojcoleman.ahni.util.Point;
 
 /**
@@ -62,6 +68,13 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 	public static final String ES_HYPERNEAT_INPUT_POSITIONS = "ann.eshyperneat.input.positions";
 	public static final String ES_HYPERNEAT_OUTPUT_POSITIONS = "ann.eshyperneat.output.positions";
 	public static final String ES_HYPERNEAT_RECORD_COORDINATES = "ann.eshyperneat.record.coordinates";
+	/**
+	 * The number of threads used to discover the connectivity of each substrate. The neurons at each stage of the
+	 * search (the inputs, each iteration of hidden neurons, and the outputs) are explored concurrently, each thread
+	 * querying its own copy of the CPPN. The generated substrate is the same regardless of the number of threads.
+	 * Default is 1 (sequential discovery), 0 means use the number of available processors.
+	 */
+	public static final String ES_HYPERNEAT_PARALLEL_THREADS = "ann.eshyperneat.parallel.threads";
 	
 	/**
 	 * If true then the substrate is considered as occupying a 3D space, with the 
@@ -86,6 +99,18 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 	double runningAvgHiddenNeuronCount = 16;
 	double runningAvgSynapseCount = 160;
 	int maxQuadTreeSize = 1;
+	int discoveryThreads = 1;
+	
+	private static HashMap<Integer, ExecutorService> discoveryPoolMap = new HashMap<Integer, ExecutorService>();
+	private ExecutorService discoveryPool;
+	
+	// The quadtree nodes, query cache and working storage for the thread performing a discovery.
+	private final ThreadLocal<DiscoveryContext> discoveryContexts = new ThreadLocal<DiscoveryContext>() {
+		@Override
+		protected DiscoveryContext initialValue() {
+			return new DiscoveryContext();
+		}
+	};
 	
 	int maxNeuronCount = 0;
 	int maxSynapseCount = 0;
@@ -196,6 +221,21 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 		
 		maxQuadTreeSize = (int) Math.pow(4, maxDepth+0.25);
 		
+		discoveryThreads = props.getIntProperty(ES_HYPERNEAT_PARALLEL_THREADS, discoveryThreads);
+		if (discoveryThreads <= 0) {
+			discoveryThreads = Runtime.getRuntime().availableProcessors();
+		}
+		if (discoveryThreads > 1) {
+			synchronized (discoveryPoolMap) {
+				discoveryPool = discoveryPoolMap.get(discoveryThreads);
+				if (discoveryPool == null) {
+					// The calling thread performs discoveries too, so one less thread is required.
+					discoveryPool = Executors.newFixedThreadPool(discoveryThreads - 1, new DaemonThreadFactory(ESHyperNEATTranscriberBain.class.getName()));
+					discoveryPoolMap.put(discoveryThreads, discoveryPool);
+				}
+			}
+		}
+		
 		((Properties) props).getEvolver().addEventListener(this);
 	}
 
@@ -294,52 +334,41 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 		// Use a hash map to be able to quickly find if a node already exists at a given location.
 		Map<Neuron, Neuron> hiddenNeurons = new HashMap<Neuron, Neuron>((int) runningAvgHiddenNeuronCount);
 		List<Connection> connections = new ArrayList<Connection>((int) runningAvgSynapseCount);
-		List<TempConnection> tempConnections = new ArrayList<TempConnection>((int) runningAvgSynapseCount);
-		
-		// This list is passed to the quadTreeInitialisation and pruneAndExpress methods to be reused for performance reasons.
-		double[] tempStorageForCPPNValues = new double[maxQuadTreeSize];
 		
 		// Generate connections from input nodes.
-		for (Neuron input : inputNeuronPositionsCopy) {
-			// Analyse outgoing connectivity pattern from this input.		
-			QuadPoint root = quadTreeInitialisation(cppn, input, true, tempStorageForCPPNValues);
-			
-			// Traverse quad tree and retrieve connections.
-			tempConnections.clear();
-			pruneAndExpress(cppn, input, tempConnections, root, true, tempStorageForCPPNValues);
-			
-			for (TempConnection tempCon : tempConnections) {
-				Neuron newHidden = new Neuron(tempCon.targetPoint.x, tempCon.targetPoint.y, tempCon.targetPoint.z, Neuron.HIDDEN);
+		double[][] discovered = discover(genotype, cppn, inputNeuronPositionsCopy, true);
+		for (int i = 0; i < inputCount; i++) {
+			Neuron input = inputNeuronPositionsCopy.get(i);
+			double[] targets = discovered[i];
+			for (int t = 0; t < targets.length; t += 4) {
+				Neuron newHidden = new Neuron(targets[t], targets[t + 1], targets[t + 2], Neuron.HIDDEN);
 				if (hiddenNeurons.containsKey(newHidden)) {
 					newHidden = hiddenNeurons.get(newHidden);
 				} else {
 					hiddenNeurons.put(newHidden, newHidden);
 				}
-				double weight = tempCon.weight < 0 ? tempCon.weight * connectionWeightMin : tempCon.weight * connectionWeightMax;
+				double weight = targets[t + 3] < 0 ? targets[t + 3] * connectionWeightMin : targets[t + 3] * connectionWeightMax;
 				connections.add(new Connection(input, newHidden, weight));
 			}
 		}
-		tempConnections.clear();
 		
 		// Iteratively search for hidden nodes from those already found.
 		Map<Neuron, Neuron> unexploredHiddenNodes = new HashMap<Neuron, Neuron>(hiddenNeurons); // Use a hash map to quickly be able to find and remove a node.
 		for (int step = 0; step < esIterations; step++) {
-			for (Neuron hiddenNeuron : unexploredHiddenNodes.values()) {
-				// Analyse outgoing connectivity pattern from hidden neuron.
-				QuadPoint root = quadTreeInitialisation(cppn, hiddenNeuron, true, tempStorageForCPPNValues);
-				
-				// Traverse quad tree and retrieve connections.
-				tempConnections.clear();
-				pruneAndExpress(cppn, hiddenNeuron, tempConnections, root, true, tempStorageForCPPNValues);
-				
-				for (TempConnection tempCon : tempConnections) {
-					Neuron newHidden = new Neuron(tempCon.targetPoint.x, tempCon.targetPoint.y, tempCon.targetPoint.z, Neuron.HIDDEN);
+			// Analyse outgoing connectivity pattern from each hidden neuron.
+			List<Neuron> unexplored = new ArrayList<Neuron>(unexploredHiddenNodes.values());
+			discovered = discover(genotype, cppn, unexplored, true);
+			for (int i = 0; i < unexplored.size(); i++) {
+				Neuron hiddenNeuron = unexplored.get(i);
+				double[] targets = discovered[i];
+				for (int t = 0; t < targets.length; t += 4) {
+					Neuron newHidden = new Neuron(targets[t], targets[t + 1], targets[t + 2], Neuron.HIDDEN);
 					if (hiddenNeurons.containsKey(newHidden)) {
 						newHidden = hiddenNeurons.get(newHidden);
 					} else {
 						hiddenNeurons.put(newHidden, newHidden);
 					}
-					double weight = tempCon.weight < 0 ? tempCon.weight * connectionWeightMin : tempCon.weight * connectionWeightMax;
+					double weight = targets[t + 3] < 0 ? targets[t + 3] * connectionWeightMin : targets[t + 3] * connectionWeightMax;
 					connections.add(new Connection(hiddenNeuron, newHidden, weight));
 				}
 			}
@@ -350,21 +379,19 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 
 			unexploredHiddenNodes = temp;
 		}
-		tempConnections.clear();
 		
 		// Connect discovered hidden neurons to output neurons.
-		for (Neuron outputPos : outputNeuronPositionsCopy) {
-			// Analyse incoming connectivity pattern to this output
-			QuadPoint root = quadTreeInitialisation(cppn, outputPos, false, tempStorageForCPPNValues);
-			tempConnections.clear();
-			pruneAndExpress(cppn, outputPos, tempConnections, root, false, tempStorageForCPPNValues);
-
-			for (TempConnection tempCon : tempConnections) {
-				Neuron source = new Neuron(tempCon.sourcePoint.x, tempCon.sourcePoint.y, tempCon.sourcePoint.z, Neuron.HIDDEN);
+		// Analyse incoming connectivity pattern to each output.
+		discovered = discover(genotype, cppn, outputNeuronPositionsCopy, false);
+		for (int i = 0; i < outputCount; i++) {
+			Neuron outputPos = outputNeuronPositionsCopy.get(i);
+			double[] sources = discovered[i];
+			for (int t = 0; t < sources.length; t += 4) {
+				Neuron source = new Neuron(sources[t], sources[t + 1], sources[t + 2], Neuron.HIDDEN);
 				// New nodes not created here because all the hidden nodes that are connected to an input/hidden node
 				// are already expressed.
 				if (hiddenNeurons.containsKey(source)) { // only connect if hidden neuron already exists
-					double weight = tempCon.weight < 0 ? tempCon.weight * connectionWeightMin : tempCon.weight * connectionWeightMax;
+					double weight = sources[t + 3] < 0 ? sources[t + 3] * connectionWeightMin : sources[t + 3] * connectionWeightMax;
 					connections.add(new Connection(hiddenNeurons.get(source), outputPos, weight));
 				}
 			}
@@ -501,10 +528,7 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 		assert (ci == synapseCount);
 		synapses.setEfficaciesModified();
 
-		int simRes = properties.getIntProperty(BainNN.SUBSTRATE_SIMULATION_RESOLUTION, 1000);
-		String execModeName = properties.getProperty(BainNN.SUBSTRATE_EXECUTION_MODE, null);
-		Kernel.EXECUTION_MODE execMode = execModeName == null ? null : Kernel.EXECUTION_MODE.valueOf(execModeName);
-		NeuralNetwork nn = new NeuralNetwork(simRes, neurons, synapses, execMode);
+		NeuralNetwork nn = BainNN.createNeuralNetwork(properties, neurons, synapses);
 		int[] inputDims = new int[] { inputCount, 1 };
 		int[] outputDims = new int[] { outputCount, 1 };
 		int maxRecurrentCycles = properties.getIntProperty(HyperNEATTranscriberBain.SUBSTRATE_MAX_RECURRENT_CYCLE, 1000000);
@@ -565,6 +589,82 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 		}
 	}
 	
+	/**
+	 * Discover the connectivity pattern for each of the given neurons, by creating a quadtree with
+	 * {@link #quadTreeInitialisation(DiscoveryContext, Point, boolean)} and then traversing it with
+	 * {@link #pruneAndExpress(DiscoveryContext, Point, QuadPoint, boolean)}. If {@link #ES_HYPERNEAT_PARALLEL_THREADS}
+	 * is greater than 1 the neurons are explored concurrently, the calling thread using the given CPPN and the other
+	 * threads each creating their own CPPN from the genotype with {@link #getCPPN(Chromosome)}.
+	 * 
+	 * @param genotype The genotype the substrate is being generated from.
+	 * @param cppn The CPPN to use on the calling thread.
+	 * @param neurons The neurons to explore.
+	 * @param outgoing Specifies whether to discover outgoing (true) or incoming (false) connections.
+	 * @return For each neuron, the coordinates and CPPN weight value of each connected point (as returned by
+	 *         {@link DiscoveryContext#discover(CPPN, Point, boolean)}), in the same order as the given neurons.
+	 */
+	protected double[][] discover(final Chromosome genotype, CPPN cppn, final List<? extends Point> neurons, final boolean outgoing) throws TranscriberException {
+		final int count = neurons.size();
+		final double[][] results = new double[count][];
+		if (discoveryPool == null || count < 2) {
+			DiscoveryContext context = discoveryContexts.get();
+			for (int i = 0; i < count; i++) {
+				results[i] = context.discover(cppn, neurons.get(i), outgoing);
+			}
+			return results;
+		}
+
+		// Neurons are handed out one at a time to the calling thread and the pool threads. The calling thread keeps
+		// going until they have all been handed out, so it does not matter if the pool threads are busy with other
+		// substrates.
+		final AtomicInteger next = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(count);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		int helpers = Math.min(discoveryThreads, count) - 1;
+		for (int h = 0; h < helpers; h++) {
+			discoveryPool.execute(new Runnable() {
+				@Override
+				public void run() {
+					DiscoveryContext context = discoveryContexts.get();
+					CPPN helperCPPN = null;
+					int i;
+					while ((i = next.getAndIncrement()) < count) {
+						try {
+							if (helperCPPN == null) {
+								helperCPPN = getCPPN(genotype);
+							}
+							results[i] = context.discover(helperCPPN, neurons.get(i), outgoing);
+						} catch (Throwable t) {
+							error.compareAndSet(null, t);
+						} finally {
+							done.countDown();
+						}
+					}
+				}
+			});
+		}
+		DiscoveryContext context = discoveryContexts.get();
+		int i;
+		while ((i = next.getAndIncrement()) < count) {
+			try {
+				results[i] = context.discover(cppn, neurons.get(i), outgoing);
+			} catch (Throwable t) {
+				error.compareAndSet(null, t);
+			} finally {
+				done.countDown();
+			}
+		}
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			throw new TranscriberException("Interrupted while discovering substrate connectivity.", e);
+		}
+		if (error.get() != null) {
+			throw new TranscriberException("Error discovering substrate connectivity: " + error.get().getMessage(), error.get());
+		}
+		return results;
+	}
+	
 	private class Neuron extends Point {
 		public static final int INPUT = 1, HIDDEN = 2, OUTPUT = 3;
 		public int type;
@@ -592,6 +692,19 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 			children = new QuadPoint[4];
 		}
 		
+		/**
+		 * Reinitialise this QuadPoint so that it may be reused as a new, childless node.
+		 */
+		public QuadPoint set(double x, double y, double z, double width, int level) {
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.width = width;
+			this.level = level;
+			children[0] = children[1] = children[2] = children[3] = null;
+			return this;
+		}
+		
 		public String toString() {
 			return super.toString() + ": " + (float) cppnValue;
 		}
@@ -638,20 +751,177 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 		}
 	}
 
+	/**
+	 * Holds the state required by a thread to discover the connectivity of neurons, so that it can be reused for every
+	 * neuron explored by the thread. The quadtree nodes are taken from a pool that is recycled for each neuron, and the
+	 * CPPN output for each point queried is cached so that no connection is queried twice (the band pruning in
+	 * {@link ESHyperNEATTranscriberBain#pruneAndExpress(DiscoveryContext, Point, QuadPoint, boolean)} queries the
+	 * neighbours of a node, which are often nodes in the quadtree or neighbours of other nodes). Queries for different
+	 * neurons never share a connection, so the cache only spans the exploration of a single neuron.
+	 */
+	protected class DiscoveryContext {
+		private QuadPoint[] nodes = new QuadPoint[0];
+		private int nodeCount;
+		private final ArrayDeque<QuadPoint> queue = new ArrayDeque<QuadPoint>(maxQuadTreeSize);
+		private final double[] tempStorageForCPPNValues = new double[maxQuadTreeSize];
+		private final List<TempConnection> tempConnections = new ArrayList<TempConnection>();
+		
+		// Open-addressing hash table from the coordinates of the queried (non-neuron) point to the CPPN weight and LEO
+		// output. An entry is only valid if its stamp equals the current stamp, which allows clearing in constant time.
+		private long[] cacheKeys = new long[3 * 1024];
+		private double[] cacheWeights = new double[1024];
+		private boolean[] cacheLEOs = new boolean[1024];
+		private int[] cacheStamps = new int[1024];
+		private int cacheStamp = 1;
+		private int cacheSize;
+		private CPPN cppn;
+		private Point neuron;
+		private boolean outgoing;
+		private boolean lastLEO;
+		
+		/**
+		 * Discover the connectivity pattern for the given neuron.
+		 * 
+		 * @param cppn The CPPN to use.
+		 * @param neuron The source or target neuron position.
+		 * @param outgoing Specifies whether to discover outgoing (true) or incoming (false) connections.
+		 * @return The x, y and z coordinates and CPPN weight value of each connected point, laid out as [x0, y0, z0,
+		 *         w0, x1, y1, z1, w1, ...].
+		 */
+		public double[] discover(CPPN cppn, Point neuron, boolean outgoing) {
+			this.cppn = cppn;
+			this.neuron = neuron;
+			this.outgoing = outgoing;
+			nodeCount = 0;
+			if (++cacheStamp == 0) {
+				Arrays.fill(cacheStamps, 0);
+				cacheStamp = 1;
+			}
+			cacheSize = 0;
+			
+			// Analyse connectivity pattern for this neuron.
+			QuadPoint root = quadTreeInitialisation(this, neuron, outgoing);
+			
+			// Traverse quad tree and retrieve connections.
+			tempConnections.clear();
+			pruneAndExpress(this, neuron, root, outgoing);
+			
+			// Copy the coordinates as the quadtree nodes will be reused.
+			double[] result = new double[tempConnections.size() * 4];
+			int r = 0;
+			for (TempConnection tc : tempConnections) {
+				Point p = outgoing ? tc.targetPoint : tc.sourcePoint;
+				result[r++] = p.x;
+				result[r++] = p.y;
+				result[r++] = p.z;
+				result[r++] = tc.weight;
+			}
+			tempConnections.clear();
+			this.cppn = null;
+			return result;
+		}
+		
+		/**
+		 * Get a quadtree node from the pool.
+		 */
+		public QuadPoint newQuadPoint(double x, double y, double z, double width, int level) {
+			if (nodeCount == nodes.length) {
+				nodes = Arrays.copyOf(nodes, Math.max(16, nodes.length * 2));
+			}
+			if (nodes[nodeCount] == null) {
+				nodes[nodeCount] = new QuadPoint(x, y, z, width, level);
+			} else {
+				nodes[nodeCount].set(x, y, z, width, level);
+			}
+			return nodes[nodeCount++];
+		}
+		
+		/**
+		 * Query the CPPN for the connection between the neuron being explored and the given point (from the neuron if
+		 * the connectivity being discovered is outgoing, otherwise to it). The LEO value for the connection is
+		 * available from {@link #getLEO()} afterwards.
+		 * 
+		 * @return The value of the (first) weight output.
+		 */
+		public double query(double x, double y, double z) {
+			long kx = Double.doubleToLongBits(x), ky = Double.doubleToLongBits(y), kz = Double.doubleToLongBits(z);
+			long h = kx * 0x9E3779B97F4A7C15L + ky * 0xC2B2AE3D27D4EB4FL + kz * 0x165667B19E3779F9L;
+			int mask = cacheStamps.length - 1;
+			int i = (int) (h ^ (h >>> 32)) & mask;
+			while (cacheStamps[i] == cacheStamp) {
+				if (cacheKeys[i * 3] == kx && cacheKeys[i * 3 + 1] == ky && cacheKeys[i * 3 + 2] == kz) {
+					lastLEO = cacheLEOs[i];
+					return cacheWeights[i];
+				}
+				i = (i + 1) & mask;
+			}
+			
+			double weight = outgoing ? cppn.query(neuron.x, neuron.y, neuron.z, x, y, z) : cppn.query(x, y, z, neuron.x, neuron.y, neuron.z);
+			lastLEO = cppn.getLEO();
+			
+			cacheStamps[i] = cacheStamp;
+			cacheKeys[i * 3] = kx;
+			cacheKeys[i * 3 + 1] = ky;
+			cacheKeys[i * 3 + 2] = kz;
+			cacheWeights[i] = weight;
+			cacheLEOs[i] = lastLEO;
+			if (++cacheSize * 2 > cacheStamps.length) {
+				growCache();
+			}
+			return weight;
+		}
+		
+		/**
+		 * Get the LEO value for the most recent call to {@link #query(double, double, double)}.
+		 */
+		public boolean getLEO() {
+			return lastLEO;
+		}
+		
+		private void growCache() {
+			long[] oldKeys = cacheKeys;
+			double[] oldWeights = cacheWeights;
+			boolean[] oldLEOs = cacheLEOs;
+			int[] oldStamps = cacheStamps;
+			int capacity = oldStamps.length * 2;
+			cacheKeys = new long[capacity * 3];
+			cacheWeights = new double[capacity];
+			cacheLEOs = new boolean[capacity];
+			cacheStamps = new int[capacity];
+			int mask = capacity - 1;
+			for (int o = 0; o < oldStamps.length; o++) {
+				if (oldStamps[o] == cacheStamp) {
+					long kx = oldKeys[o * 3], ky = oldKeys[o * 3 + 1], kz = oldKeys[o * 3 + 2];
+					long h = kx * 0x9E3779B97F4A7C15L + ky * 0xC2B2AE3D27D4EB4FL + kz * 0x165667B19E3779F9L;
+					int i = (int) (h ^ (h >>> 32)) & mask;
+					while (cacheStamps[i] == cacheStamp) {
+						i = (i + 1) & mask;
+					}
+					cacheStamps[i] = cacheStamp;
+					cacheKeys[i * 3] = kx;
+					cacheKeys[i * 3 + 1] = ky;
+					cacheKeys[i * 3 + 2] = kz;
+					cacheWeights[i] = oldWeights[o];
+					cacheLEOs[i] = oldLEOs[o];
+				}
+			}
+		}
+	}
+
 	/**
 	 * Creates a quadtree by recursively subdividing the initial square, which spans the space from (-1, -1) to (1, 1), 
 	 * until a desired initial resolution is reached. For every quadtree square with centre (x, y) the CPPN is queried 
 	 * with arguments (a, b, x, y) and the resulting connection weight value w is stored.
 	 * 
-	 * @param cppn The CPPN to use.
+	 * @param context The context to query the CPPN with and take quadtree nodes from. It must be discovering the connectivity for the given neuron.
 	 * @param n The source or target neuron position.
 	 * @param outgoing Specifies whether the connection is for a source (outgoing = true) or target node (outgoing = false).
-	 * @param tempStorageForCPPNValues A list store the CPPN value for each node in the quadtree. Allows reuse of same list for performance reasons.
 	 * @return The root of the generated quadtree, each QuadPoint stores CPPN activation level for its position.
 	 */
-	public QuadPoint quadTreeInitialisation(CPPN cppn, Point n, boolean outgoing, double[] tempStorageForCPPNValues) {
-		QuadPoint root = new QuadPoint(0.5, 0.5, 0.5, 1, 1); // x, y, z, width, level
-		ArrayDeque<QuadPoint> queue = new ArrayDeque<QuadPoint>(maxQuadTreeSize);
+	public QuadPoint quadTreeInitialisation(DiscoveryContext context, Point n, boolean outgoing) {
+		QuadPoint root = context.newQuadPoint(0.5, 0.5, 0.5, 1, 1); // x, y, z, width, level
+		ArrayDeque<QuadPoint> queue = context.queue;
+		queue.clear();
 		queue.add(root);
 
 		//DecimalFormat nf1 = new DecimalFormat("###0.0##");
@@ -673,32 +943,25 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 			double offset = childWidth * 0.5;
 			if (pseudo3D ) {
 				// Hidden nodes located on XZ plane at y = 0.5.
-				parent.children[0] = new QuadPoint(parent.x - offset, 0.5, parent.z - offset, childWidth, childLevel);
-				parent.children[1] = new QuadPoint(parent.x - offset, 0.5, parent.z + offset, childWidth, childLevel);
-				parent.children[2] = new QuadPoint(parent.x + offset, 0.5, parent.z - offset, childWidth, childLevel);
-				parent.children[3] = new QuadPoint(parent.x + offset, 0.5, parent.z + offset, childWidth, childLevel);
+				parent.children[0] = context.newQuadPoint(parent.x - offset, 0.5, parent.z - offset, childWidth, childLevel);
+				parent.children[1] = context.newQuadPoint(parent.x - offset, 0.5, parent.z + offset, childWidth, childLevel);
+				parent.children[2] = context.newQuadPoint(parent.x + offset, 0.5, parent.z - offset, childWidth, childLevel);
+				parent.children[3] = context.newQuadPoint(parent.x + offset, 0.5, parent.z + offset, childWidth, childLevel);
 			}
 			else {
 				// Hidden nodes located on XY plane.
-				parent.children[0] = new QuadPoint(parent.x - offset, parent.y - offset, 0, childWidth, childLevel);
-				parent.children[1] = new QuadPoint(parent.x - offset, parent.y + offset, 0, childWidth, childLevel);
-				parent.children[2] = new QuadPoint(parent.x + offset, parent.y - offset, 0, childWidth, childLevel);
-				parent.children[3] = new QuadPoint(parent.x + offset, parent.y + offset, 0, childWidth, childLevel);
+				parent.children[0] = context.newQuadPoint(parent.x - offset, parent.y - offset, 0, childWidth, childLevel);
+				parent.children[1] = context.newQuadPoint(parent.x - offset, parent.y + offset, 0, childWidth, childLevel);
+				parent.children[2] = context.newQuadPoint(parent.x + offset, parent.y - offset, 0, childWidth, childLevel);
+				parent.children[3] = context.newQuadPoint(parent.x + offset, parent.y + offset, 0, childWidth, childLevel);
 			}
 			
 			// Get CPPN output for each child.
 			for (int ci = 0; ci < 4; ci++) {
 				QuadPoint child = parent.children[ci];
-				if (outgoing) { // Querying connection from input or hidden node.
-					child.cppnValue = cppn.query(n, child); // Outgoing connectivity pattern.
-					//child.cppnValue = cppn.getRangedWeight();
-				}
-				else { // Querying connection to output node.
-					child.cppnValue = cppn.query(child, n); // Incoming connectivity pattern.
-					//child.cppnValue = cppn.getRangedWeight();
-				}
-				
-				child.leo = cppn.getLEO();
+				// Outgoing connectivity pattern if querying connection from input or hidden node, incoming if querying connection to output node.
+				child.cppnValue = context.query(child.x, child.y, child.z);
+				child.leo = context.getLEO();
 				
 				/*if (firstTime) {
 					int hwI = (int) Math.round(childWidth * w);
@@ -712,7 +975,7 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 			}
 
 			// Divide if minimum resolution hasn't been reached or variance is above threshold and maximum resolution hasn't been reached.
-			if (parent.level < initialDepth || (parent.level < maxDepth && variance(parent, tempStorageForCPPNValues) > divisionThreshold)) {
+			if (parent.level < initialDepth || (parent.level < maxDepth && variance(parent, context.tempStorageForCPPNValues) > divisionThreshold)) {
 				for (int ci = 0; ci < 4; ci++) {
 					queue.add(parent.children[ci]);
 				}
@@ -740,14 +1003,12 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 	 * created for each qualifying node with centre (x, y). Thus adds connections that are in bands of the two-dimensional 
 	 * cross-section of the hypercube containing the source or target node to the connections list.
 	 * 
-	 * @param cppn The CPPN to use.
+	 * @param context The context to query the CPPN with. It must be discovering the connectivity for the given neuron. New connections are added to its list of connections.
 	 * @param neuron The source or target neuron (position).
-	 * @param connections The list to add new connections to.
 	 * @param root The root of the quadtree.
 	 * @param outgoing Specifies whether the connection is for a source (outgoing = true) or target node (outgoing = false).
-	 * @param tempStorageForCPPNValues A list store the CPPN value for each node in the quadtree. Allows reuse of same list for performance reasons.
 	 */
-	protected void pruneAndExpress(CPPN cppn, Point neuron, List<TempConnection> connections, QuadPoint root, boolean outgoing, double[] tempStorageForCPPNValues) {
+	protected void pruneAndExpress(DiscoveryContext context, Point neuron, QuadPoint root, boolean outgoing) {
 		double left = 0, right = 0, top = 0, bottom = 0;
 
 		if (root.children[0] == null)
@@ -756,34 +1017,22 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 		// Traverse quadtree depth-first.
 		for (int ci = 0; ci < 4; ci++) {
 			QuadPoint child = root.children[ci];
-			double childVariance = variance(child, tempStorageForCPPNValues);
+			double childVariance = variance(child, context.tempStorageForCPPNValues);
 			if (childVariance >= varianceThreshold) {
-				pruneAndExpress(cppn, neuron, connections, child, outgoing, tempStorageForCPPNValues);
+				pruneAndExpress(context, neuron, child, outgoing);
 			} else if (child.leo) { // If LEO disabled this should always happen for at least the leaf nodes because their variance is zero.
 				// Determine if point is in a band by checking neighbour CPPN values.
+				// The neuron is fixed for the context, so queries are specified by the coordinates of the neighbour.
 				double width = root.width;
-				if (outgoing) {
-					left = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x - width, child.y, child.z));
-					right = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x + width, child.y, child.z));
-					if (pseudo3D) { // Hidden nodes located on XZ plane.
-						top = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x, child.y, child.z - width));
-						bottom = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x, child.y, child.z + width));
-					}
-					else { // Hidden nodes located on XY plane.
-						top = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x, child.y - width, child.z));
-						bottom = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x, child.y + width, child.z));
-					}
-				} else {
-					left = Math.abs(child.cppnValue - cppn.query(child.x - width, child.y, child.z, neuron.x, neuron.y, neuron.z));
-					right = Math.abs(child.cppnValue - cppn.query(child.x + width, child.y, child.z, neuron.x, neuron.y, neuron.z));
-					if (pseudo3D) { // Hidden nodes located on XZ plane.
-						top = Math.abs(child.cppnValue - cppn.query(child.x, child.y, child.z - width, neuron.x, neuron.y, neuron.z));
-						bottom = Math.abs(child.cppnValue - cppn.query(child.x, child.y, child.z + width, neuron.x, neuron.y, neuron.z));
-					}
-					else { // Hidden nodes located on XY plane.
-						top = Math.abs(child.cppnValue - cppn.query(child.x, child.y - width, child.z, neuron.x, neuron.y, neuron.z));
-						bottom = Math.abs(child.cppnValue - cppn.query(child.x, child.y + width, child.z, neuron.x, neuron.y, neuron.z));
-					}
+				left = Math.abs(child.cppnValue - context.query(child.x - width, child.y, child.z));
+				right = Math.abs(child.cppnValue - context.query(child.x + width, child.y, child.z));
+				if (pseudo3D) { // Hidden nodes located on XZ plane.
+					top = Math.abs(child.cppnValue - context.query(child.x, child.y, child.z - width));
+					bottom = Math.abs(child.cppnValue - context.query(child.x, child.y, child.z + width));
+				}
+				else { // Hidden nodes located on XY plane.
+					top = Math.abs(child.cppnValue - context.query(child.x, child.y - width, child.z));
+					bottom = Math.abs(child.cppnValue - context.query(child.x, child.y + width, child.z));
 				}
 				
 				if (Math.max(Math.min(top, bottom), Math.min(left, right)) > bandThrehold) {
@@ -793,7 +1042,7 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 					} else {
 						tc = new TempConnection(child, neuron, child.cppnValue);
 					}
-					connections.add(tc);
+					context.tempConnections.add(tc);
 				}
 
 			}
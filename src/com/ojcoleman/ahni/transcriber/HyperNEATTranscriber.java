@@ -9,6 +9,7 @@ import org.jgapcustomised.Chromosome;
 import com.anji.integration.Activator;
 import com.anji.integration.AnjiActivator;
 import com.anji.integration.AnjiNetTranscriber;
+import com.anji.integration.CompiledAnjiActivator;
 import com.anji.integration.Transcriber;
 import com.anji.integration.TranscriberException;
 import com.anji.neat.NeatConfiguration;
@@ -720,6 +721,8 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 	 */
 	public class CPPN {
 		protected Activator cppnActivator;
+		// Set if cppnActivator is a CompiledAnjiActivator, which allows querying without allocating an output array.
+		protected CompiledAnjiActivator compiledCPPNActivator;
 		protected double[] cppnInput = new double[cppnInputCount];
 		protected double[] cppnOutput;
 		protected double cppnMin, cppnMax, cppnRange;
@@ -729,10 +732,20 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		 * Squared length of the current synapse (set when query() called).
 		 */
 		protected double synapseLength = 0;
+		// Input vectors, output vectors and synapse lengths for each point in the most recent batch query.
+		protected double[] batchInput = new double[0];
+		protected double[] batchOutput = new double[0];
+		protected double[] batchSynapseLength = new double[0];
 
 		public CPPN(Chromosome genotype) throws TranscriberException {
 			cppnActivator = cppnTranscriber.transcribe(genotype);
-			((AnjiActivator) cppnActivator).setName("CPPN-" + genotype.getId());
+			if (cppnActivator instanceof CompiledAnjiActivator) {
+				compiledCPPNActivator = (CompiledAnjiActivator) cppnActivator;
+				compiledCPPNActivator.setName("CPPN-" + genotype.getId());
+				cppnOutput = new double[compiledCPPNActivator.getOutputCount()];
+			} else {
+				((AnjiActivator) cppnActivator).setName("CPPN-" + genotype.getId());
+			}
 			if (cppnIdxBiasInput != -1) {
 				cppnInput[cppnIdxBiasInput] = 1; // Bias.
 			}
@@ -933,12 +946,42 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		}
 		
 
+		/**
+		 * Get the coordinates of all the neurons in the specified layer of a grid-based substrate, ordered by y index
+		 * and then x index (i.e. the point for grid indices (x, y) is at index y * width[z] + x).
+		 * 
+		 * @see #getCoordinatesForGridIndices(int, int, int, Point)
+		 */
+		public Point[] getLayerCoordinates(int z) {
+			Point[] points = new Point[width[z] * height[z]];
+			for (int y = 0, i = 0; y < height[z]; y++) {
+				for (int x = 0; x < width[z]; x++, i++) {
+					points[i] = getCoordinatesForGridIndices(x, y, z, null);
+				}
+			}
+			return points;
+		}
+
 		/**
 		 * Query this CPPN.
 		 * 
 		 * @return The value of the (first) weight output. Other outputs can be retrieved with the various get methods.
 		 */
 		public double query() {
+			prepareInput();
+			cppnActivator.reset();
+			if (compiledCPPNActivator != null) {
+				compiledCPPNActivator.next(cppnInput, cppnOutput);
+			} else {
+				cppnOutput = cppnActivator.next(cppnInput);
+			}
+			return getWeight();
+		}
+
+		/**
+		 * Set the delta and angle inputs (if enabled) from the current source and target coordinates.
+		 */
+		private void prepareInput() {
 			synapseLength = -1; // Reset
 			if (includeDelta || leoThresholdFactorDistance) {
 				double dx = 0, dy = 0, dz = 0;
@@ -965,10 +1008,81 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 					angle += 1;
 				cppnInput[cppnIdxAn] = angle;
 			}
+		}
 
-			cppnActivator.reset();
-			cppnOutput = cppnActivator.next(cppnInput);
-			return getWeight();
+		/**
+		 * Query this CPPN for every combination of the given source and target points. If the CPPN is a
+		 * non-recurrent {@link CompiledAnjiActivator} (see {@link AnjiNetTranscriber#COMPILED_KEY}) then the whole
+		 * batch is evaluated as one vectorised sweep over the network, otherwise each point is queried in turn. The
+		 * results are identical to calling {@link #query(Point, Point)} for each combination. After calling this
+		 * method {@link #selectBatchResult(int)} may be used to make the results for a specific point available via
+		 * the various get methods.
+		 * 
+		 * @param sources The source points, in CPPN input coordinates (e.g. as given by
+		 *            {@link #getCoordinatesForGridIndices(int, int, int, Point)}).
+		 * @param targets The target points, in CPPN input coordinates.
+		 * @return The output values for all points, laid out as [(targetIndex * sources.length + sourceIndex) *
+		 *         {@link HyperNEATTranscriber#getCPPNOutputCount()} + outputIndex]. The returned array is reused by
+		 *         subsequent batch queries and may be longer than required.
+		 */
+		public double[] queryBatch(Point[] sources, Point[] targets) {
+			int count = sources.length * targets.length;
+			if (batchSynapseLength.length < count) {
+				batchInput = new double[count * cppnInputCount];
+				batchOutput = new double[count * cppnOutputCount];
+				batchSynapseLength = new double[count];
+			}
+			int p = 0;
+			for (Point t : targets) {
+				cppnInput[cppnIdxTX] = t.x;
+				cppnInput[cppnIdxTY] = t.y;
+				if (cppnIdxTZ != -1) {
+					cppnInput[cppnIdxTZ] = t.z;
+				}
+				for (Point s : sources) {
+					cppnInput[cppnIdxSX] = s.x;
+					cppnInput[cppnIdxSY] = s.y;
+					if (cppnIdxSZ != -1) {
+						cppnInput[cppnIdxSZ] = s.z;
+					}
+					prepareInput();
+					System.arraycopy(cppnInput, 0, batchInput, p * cppnInputCount, cppnInputCount);
+					batchSynapseLength[p] = synapseLength;
+					p++;
+				}
+			}
+
+			if (compiledCPPNActivator != null && !compiledCPPNActivator.isRecurrent()) {
+				compiledCPPNActivator.nextBatch(batchInput, batchOutput, count);
+			} else {
+				for (p = 0; p < count; p++) {
+					System.arraycopy(batchInput, p * cppnInputCount, cppnInput, 0, cppnInputCount);
+					cppnActivator.reset();
+					if (compiledCPPNActivator != null) {
+						compiledCPPNActivator.next(cppnInput, cppnOutput);
+					} else {
+						cppnOutput = cppnActivator.next(cppnInput);
+					}
+					System.arraycopy(cppnOutput, 0, batchOutput, p * cppnOutputCount, cppnOutputCount);
+				}
+			}
+			return batchOutput;
+		}
+
+		/**
+		 * Make the results for the specified point from the most recent call to {@link #queryBatch(Point[], Point[])}
+		 * the current results, so that they may be retrieved with the various get methods as if {@link #query()} had
+		 * been called for that point.
+		 * 
+		 * @param index The index of the point, given by targetIndex * sources.length + sourceIndex.
+		 */
+		public void selectBatchResult(int index) {
+			System.arraycopy(batchInput, index * cppnInputCount, cppnInput, 0, cppnInputCount);
+			if (cppnOutput == null) {
+				cppnOutput = new double[cppnOutputCount];
+			}
+			System.arraycopy(batchOutput, index * cppnOutputCount, cppnOutput, 0, cppnOutputCount);
+			synapseLength = batchSynapseLength[index];
 		}
 
 		/**
@@ -18,7 +18,6 @@ import com.ojcoleman.bain.base.SynapseConfiguration;
 import org.apache.log4j.Logger;
 import org.jgapcustomised.*;
 
-import com.amd.aparapi.Kernel;
 import com.anji.integration.Transcriber;
 import com.anji.integration.TranscriberException;
 import com.ojcoleman.ahni.hyperneat.HyperNEATConfiguration;
@@ -276,19 +275,25 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 		}
 		
 		// Query CPPN for substrate synapse parameters.
+		// The CPPN is queried in batches of one target neuron against a whole source layer.
+		Point[][] layerCoords = new Point[depth][];
+		for (int z = 0; z < depth; z++) {
+			layerCoords[z] = cppn.getLayerCoordinates(z);
+		}
+		Point[] target = new Point[1];
 		// Start at tz=1: don't allow connections to inputs.
 		for (int tz = 1; tz < depth; tz++) {
 			for (int ty = 0; ty < height[tz]; ty++) {
 				for (int tx = 0; tx < width[tz]; tx++) {
 					int bainNeuronIndexTarget = getBainNeuronIndex(tx, ty, tz);
 					
-					cppn.setTargetCoordinatesFromGridIndices(tx, ty, tz);
+					target[0] = layerCoords[tz][ty * width[tz] + tx];
 					
 					// Iteration over layers for the source neuron is only used for recurrent networks.
 					for (int sz = (feedForward ? tz - 1 : 0); sz < (feedForward ? tz : depth); sz++) {
+						cppn.queryBatch(layerCoords[sz], target);
 						for (int sy = 0; sy < height[sz]; sy++) {
 							for (int sx = 0; sx < width[sz]; sx++) {
-								cppn.setSourceCoordinatesFromGridIndices(sx, sy, sz);
 								
 //								String key = genotype.getId() + ":" + synapseIndex;
 //								String val = ArrayUtil.toString(cppn.cppnInput, ", ", nf);
@@ -301,7 +306,7 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 //									debugCPPNInput.put(key, val);
 //								}
 								
-								cppn.query();
+								cppn.selectBatchResult(sy * width[sz] + sx);
 								
 //								val = ArrayUtil.toString(cppn.cppnOutput, ", ", nf);
 //								if (debugCPPNOutput.containsKey(key)) {
@@ -402,10 +407,7 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 		synapses.compress();
 		
 		if (createNewPhenotype) {
-			int simRes = properties.getIntProperty(BainNN.SUBSTRATE_SIMULATION_RESOLUTION, 1000);
-			String execModeName = properties.getProperty(BainNN.SUBSTRATE_EXECUTION_MODE, null);
-			Kernel.EXECUTION_MODE execMode = execModeName == null ? null : Kernel.EXECUTION_MODE.valueOf(execModeName);
-			NeuralNetwork nn = new NeuralNetwork(simRes, neurons, synapses, execMode);
+			NeuralNetwork nn = BainNN.createNeuralNetwork(properties, neurons, synapses);
 			int[] outputDims = new int[] { width[depth - 1], height[depth - 1] };
 			int[] inputDims = new int[] { width[0], height[0] };
 			int maxRecurrentCycles = properties.getIntProperty(SUBSTRATE_MAX_RECURRENT_CYCLE, 1000);
@@ -15,6 +15,7 @@ import com.anji.nn.*;
 import com.anji.nn.activationfunction.ActivationFunction;
 import com.anji.nn.activationfunction.ActivationFunctionFactory;
 import com.ojcoleman.ahni.hyperneat.Properties;
+import com.ojcoleman.ahni.nn.FlatGridNet;
 import com.ojcoleman.ahni.nn.GridNet;
 
 /**
@@ -30,11 +31,18 @@ import com.ojcoleman.ahni.nn.GridNet;
  */
 public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 	public static final String HYPERNEAT_ACTIVATION_FUNCTION_KEY = "ann.hyperneat.activation.function";
+	/**
+	 * Set to true to produce {@link FlatGridNet}s for feed-forward substrates. These store the weights in contiguous
+	 * arrays and are considerably faster to activate than the standard {@link GridNet}, producing the same output.
+	 * Default is false.
+	 */
+	public static final String HYPERNEAT_GRIDNET_FLAT_KEY = "ann.hyperneat.gridnet.flat";
 
 	private final static Logger logger = Logger.getLogger(HyperNEATTranscriberGridNet.class);
 
 	private ActivationFunction activationFunction;
 	private boolean layerEncodingIsInput = false;
+	private boolean flat = false;
 
 	public HyperNEATTranscriberGridNet() {
 	}
@@ -46,6 +54,7 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 	public void init(com.ojcoleman.ahni.hyperneat.Properties props) {
 		super.init(props);
 		activationFunction = ActivationFunctionFactory.getInstance().get(props.getProperty(HYPERNEAT_ACTIVATION_FUNCTION_KEY));
+		flat = props.getBooleanProperty(HYPERNEAT_GRIDNET_FLAT_KEY, false);
 	}
 
 	/**
@@ -198,9 +207,16 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 			}
 
 			if (createNewPhenotype) {
-				phenotype = new GridNet(connectionMaxRanges, layerDimensions, weights, bias, activationFunction, 1, "network " + genotype.getId());
+				if (flat) {
+					phenotype = new FlatGridNet(connectionMaxRanges, layerDimensions, weights, bias, activationFunction, "network " + genotype.getId());
+				} else {
+					phenotype = new GridNet(connectionMaxRanges, layerDimensions, weights, bias, activationFunction, 1, "network " + genotype.getId());
+				}
 				logger.info("New substrate has input size " + width[0] + "x" + height[0] + " and " + phenotype.getConnectionCount(true) + " connections.");
 			} else {
+				if (phenotype instanceof FlatGridNet) {
+					((FlatGridNet) phenotype).weightsChanged();
+				}
 				phenotype.setName("network " + genotype.getId());
 			}
 		} else { // RECURRENT
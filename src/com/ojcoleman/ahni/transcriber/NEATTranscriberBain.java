@@ -22,7 +22,6 @@ import org.apache.log4j.Logger;
 import org.jgapcustomised.BulkFitnessFunction;
 import org.jgapcustomised.Chromosome;
 
-import com.amd.aparapi.Kernel;
 import com.anji.integration.Activator;
 import com.anji.integration.Transcriber;
 import com.anji.integration.TranscriberException;
@@ -236,11 +235,8 @@ public class NEATTranscriberBain extends TranscriberAdaptor<BainNN> implements C
 			cyclesPerStep = props.getIntProperty(RECURRENT_CYCLES_KEY, 1);
 		}
 
-		int simRes = props.getIntProperty(BainNN.SUBSTRATE_SIMULATION_RESOLUTION, 1000);
 		// If feed-forward, cycles per step is depth-1.
-		String execModeName = props.getProperty(BainNN.SUBSTRATE_EXECUTION_MODE, null);
-		Kernel.EXECUTION_MODE execMode = execModeName == null ? null : Kernel.EXECUTION_MODE.valueOf(execModeName);
-		NeuralNetwork nn = new NeuralNetwork(simRes, neurons, synapses, execMode);
+		NeuralNetwork nn = BainNN.createNeuralNetwork(props, neurons, synapses);
 		int[] inputDims = new int[] { inputNeuronAlleles.size() };
 		int[] outputDims = new int[] { outputNeuronAlleles.size() };
 		try {
@@ -0,0 +1,113 @@
+package com.ojcoleman.ahni.util;
+
+import java.util.Random;
+
+/**
+ * Samples indices with probability proportional to a fixed set of non-negative weights, in constant time per sample,
+ * using Vose's alias method. Building the alias table takes O(n) time. This is suitable for roulette wheel selection
+ * with replacement; if the weights change between samples use {@link FenwickSampler} instead. Instances are
+ * immutable and may be shared between threads, given a separate Random for each thread.
+ *
+ * @author Oliver Coleman
+ */
+public class AliasSampler {
+	private final double[] probability;
+	private final int[] alias;
+	private final int size;
+	private final boolean empty;
+
+	/**
+	 * Create a sampler for the given weights.
+	 */
+	public AliasSampler(double[] weights) {
+		this(weights, weights.length);
+	}
+
+	/**
+	 * Create a sampler for the first <code>size</code> elements of the given weights.
+	 */
+	public AliasSampler(double[] weights, int size) {
+		this.size = size;
+		probability = new double[size];
+		alias = new int[size];
+
+		double total = 0;
+		for (int i = 0; i < size; i++) {
+			if (!(weights[i] >= 0) || Double.isInfinite(weights[i])) {
+				throw new IllegalArgumentException("Weights must be finite and non-negative, got " + weights[i]);
+			}
+			total += weights[i];
+		}
+		empty = total <= 0;
+		if (empty) {
+			return;
+		}
+
+		// Scale the weights so that they average 1, then pair each "small" entry (< 1) with a "large" entry which
+		// donates the remainder of the small entry's column.
+		int[] small = new int[size];
+		int[] large = new int[size];
+		int smallCount = 0, largeCount = 0;
+		for (int i = 0; i < size; i++) {
+			probability[i] = weights[i] * size / total;
+			if (probability[i] < 1) {
+				small[smallCount++] = i;
+			} else {
+				large[largeCount++] = i;
+			}
+		}
+		while (smallCount > 0 && largeCount > 0) {
+			int s = small[--smallCount];
+			int l = large[--largeCount];
+			alias[s] = l;
+			probability[l] = (probability[l] + probability[s]) - 1;
+			if (probability[l] < 1) {
+				small[smallCount++] = l;
+			} else {
+				large[largeCount++] = l;
+			}
+		}
+		// Any remaining entries are (up to rounding error) exactly 1.
+		while (largeCount > 0) {
+			probability[large[--largeCount]] = 1;
+		}
+		while (smallCount > 0) {
+			int s = small[--smallCount];
+			// Rounding error may leave an entry with zero weight here, make sure it is never selected.
+			probability[s] = weights[s] > 0 ? 1 : 0;
+			alias[s] = s;
+		}
+		// A zero-weight entry must always redirect to its alias. If rounding error has left such an entry without a
+		// valid alias, point it at an entry that is selected outright.
+		for (int i = 0; i < size; i++) {
+			if (probability[i] == 0 && weights[alias[i]] == 0) {
+				for (int j = 0; j < size; j++) {
+					if (weights[j] > 0 && probability[j] == 1) {
+						alias[i] = j;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of weights in this sampler.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Select an index with probability proportional to its weight. Indices with a weight of zero are never selected.
+	 *
+	 * @return The selected index, or -1 if all the weights are zero.
+	 */
+	public int sample(Random random) {
+		if (empty) {
+			return -1;
+		}
+		int i = random.nextInt(size);
+		return random.nextDouble() < probability[i] ? i : alias[i];
+	}
+}
@@ -0,0 +1,157 @@
+package com.ojcoleman.ahni.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Samples indices with probability proportional to a set of non-negative weights that may be changed between samples.
+ * The weights are stored in a Fenwick (binary indexed) tree of primitive doubles, so sampling an index and changing a
+ * weight both take O(log n) time, rather than the O(n) of walking the cumulative weights. This is suitable for
+ * roulette wheel selection without replacement, where the weight of each selected item is reduced after it is selected.
+ * If the weights do not change between samples {@link AliasSampler} is faster. Instances are not thread-safe.
+ *
+ * @author Oliver Coleman
+ */
+public class FenwickSampler {
+	private double[] weights;
+	// tree[i] holds the sum of the weights with (1-based) indices in (i - lowestOneBit(i), i].
+	private double[] tree;
+	private int size;
+	private int topStep;
+	// The number of weights that are greater than zero.
+	private int nonZeroCount;
+
+	/**
+	 * Create a sampler for the given weights. The array is copied.
+	 */
+	public FenwickSampler(double[] weights) {
+		this(weights, weights.length);
+	}
+
+	/**
+	 * Create a sampler for the first <code>size</code> elements of the given weights. The array is copied.
+	 */
+	public FenwickSampler(double[] weights, int size) {
+		reset(weights, size);
+	}
+
+	/**
+	 * Replace all the weights in this sampler with the first <code>size</code> elements of the given array, reusing the
+	 * internal arrays if they are large enough. This takes O(n) time.
+	 */
+	public void reset(double[] newWeights, int size) {
+		if (weights == null || weights.length < size) {
+			weights = new double[size];
+			tree = new double[size + 1];
+		}
+		this.size = size;
+		System.arraycopy(newWeights, 0, weights, 0, size);
+		Arrays.fill(tree, 0, size + 1, 0);
+		nonZeroCount = 0;
+		for (int i = 1; i <= size; i++) {
+			tree[i] += checkWeight(weights[i - 1]);
+			if (weights[i - 1] > 0) {
+				nonZeroCount++;
+			}
+			int parent = i + (i & -i);
+			if (parent <= size) {
+				tree[parent] += tree[i];
+			}
+		}
+		topStep = size == 0 ? 0 : Integer.highestOneBit(size);
+	}
+
+	private static double checkWeight(double w) {
+		if (!(w >= 0) || Double.isInfinite(w)) {
+			throw new IllegalArgumentException("Weights must be finite and non-negative, got " + w);
+		}
+		return w;
+	}
+
+	/**
+	 * Returns the number of weights in this sampler.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the weight at the given index.
+	 */
+	public double getWeight(int index) {
+		return weights[index];
+	}
+
+	/**
+	 * Set the weight at the given index.
+	 */
+	public void setWeight(int index, double weight) {
+		addWeight(index, checkWeight(weight) - weights[index]);
+	}
+
+	/**
+	 * Add the given amount to the weight at the given index. If the resulting weight is negative it is set to zero.
+	 */
+	public void addWeight(int index, double delta) {
+		double w = weights[index] + delta;
+		if (w < 0) {
+			delta -= w;
+			w = 0;
+		}
+		if (weights[index] > 0 && w == 0) {
+			nonZeroCount--;
+		} else if (weights[index] == 0 && w > 0) {
+			nonZeroCount++;
+		}
+		weights[index] = w;
+		for (int i = index + 1; i <= size; i += i & -i) {
+			tree[i] += delta;
+		}
+	}
+
+	/**
+	 * Returns the sum of all the weights.
+	 */
+	public double getTotalWeight() {
+		double sum = 0;
+		for (int i = size; i > 0; i -= i & -i) {
+			sum += tree[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Select an index with probability proportional to its weight. Indices with a weight of zero are never selected.
+	 *
+	 * @return The selected index, or -1 if all the weights are zero.
+	 */
+	public int sample(Random random) {
+		double total = getTotalWeight();
+		if (nonZeroCount == 0 || total <= 0) {
+			return -1;
+		}
+		while (true) {
+			int index = find(random.nextDouble() * total);
+			// Rounding errors accumulated by updating the tree may very rarely land the search on or past a zero
+			// weight, in which case rebuild the tree from the weights and sample again.
+			if (index < size && weights[index] > 0) {
+				return index;
+			}
+			reset(weights, size);
+			total = getTotalWeight();
+		}
+	}
+
+	// Returns the (0-based) index of the first weight for which the cumulative weight exceeds the given target.
+	private int find(double target) {
+		int pos = 0;
+		for (int step = topStep; step > 0; step >>= 1) {
+			int next = pos + step;
+			if (next <= size && tree[next] <= target) {
+				pos = next;
+				target -= tree[next];
+			}
+		}
+		return pos;
+	}
+}
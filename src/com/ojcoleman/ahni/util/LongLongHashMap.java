@@ -0,0 +1,186 @@
+package com.ojcoleman.ahni.util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive long keys to primitive long values, using open addressing with linear probing. This avoids
+ * the boxing of keys and values and the per-entry objects of {@link java.util.HashMap}, so it uses roughly a quarter
+ * of the memory for maps with many entries. Entries are removed by shifting subsequent entries back rather than
+ * leaving tombstones, so performance does not degrade with many removals. Instances are not thread-safe.
+ *
+ * @author Oliver Coleman
+ */
+public class LongLongHashMap {
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] keys;
+	private long[] values;
+	private boolean[] used;
+	private int size;
+	private int mask;
+	private int resizeThreshold;
+
+	/**
+	 * Create an empty map with a default initial capacity.
+	 */
+	public LongLongHashMap() {
+		this(16);
+	}
+
+	/**
+	 * Create an empty map able to hold the given number of entries before it must grow.
+	 */
+	public LongLongHashMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity * LOAD_FACTOR < expectedSize) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new long[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+		resizeThreshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	private int slot(long key) {
+		// Finalisation step of MurmurHash3, to spread sequential keys.
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key & mask;
+	}
+
+	// Returns the index of the slot containing the given key, or -1 if it is not present.
+	private int find(long key) {
+		int i = slot(key);
+		while (used[i]) {
+			if (keys[i] == key) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the value mapped to the given key, or defaultValue if there is no mapping for the key.
+	 */
+	public long get(long key, long defaultValue) {
+		int i = find(key);
+		return i == -1 ? defaultValue : values[i];
+	}
+
+	/**
+	 * @return true iff there is a mapping for the given key.
+	 */
+	public boolean containsKey(long key) {
+		return find(key) != -1;
+	}
+
+	/**
+	 * Map the given key to the given value, replacing any existing mapping for the key.
+	 */
+	public void put(long key, long value) {
+		int i = slot(key);
+		while (used[i]) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		used[i] = true;
+		keys[i] = key;
+		values[i] = value;
+		if (++size > resizeThreshold) {
+			rehash(keys.length << 1);
+		}
+	}
+
+	/**
+	 * Remove the mapping for the given key, if any.
+	 *
+	 * @return true iff a mapping was removed.
+	 */
+	public boolean remove(long key) {
+		int i = find(key);
+		if (i == -1) {
+			return false;
+		}
+		// Shift back any subsequent entries in the same probe sequence that would otherwise become unreachable.
+		int gap = i;
+		int j = (i + 1) & mask;
+		while (used[j]) {
+			int home = slot(keys[j]);
+			// Move the entry at j into the gap if its home slot is not cyclically within (gap, j].
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				keys[gap] = keys[j];
+				values[gap] = values[j];
+				gap = j;
+			}
+			j = (j + 1) & mask;
+		}
+		used[gap] = false;
+		size--;
+		return true;
+	}
+
+	/**
+	 * @return the number of mappings.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true iff there are no mappings.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Remove all mappings.
+	 */
+	public void clear() {
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	/**
+	 * @return a new array containing the keys of all mappings, in no particular order.
+	 */
+	public long[] keys() {
+		long[] result = new long[size];
+		for (int i = 0, k = 0; k < size; i++) {
+			if (used[i]) {
+				result[k++] = keys[i];
+			}
+		}
+		return result;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				int j = slot(oldKeys[i]);
+				while (used[j]) {
+					j = (j + 1) & mask;
+				}
+				used[j] = true;
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+}
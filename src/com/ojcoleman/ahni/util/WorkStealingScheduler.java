@@ -0,0 +1,198 @@
+package com.ojcoleman.ahni.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Distributes a set of tasks over a fixed number of workers (usually long-lived threads) such that idle workers steal
+ * tasks from busy ones. Tasks are given an estimated cost and are assigned to workers in longest-expected-first order
+ * so that each worker receives approximately the same total expected cost, and so that the most expensive tasks are
+ * started first. Each worker takes tasks from the front (most expensive end) of its own queue; when its queue is empty
+ * it steals from the back (least expensive end) of the queue of the worker with the most expected work remaining. This
+ * greatly reduces the time workers spend idle at the end of a batch when task costs vary widely, while keeping
+ * contention between workers low (each queue has its own lock, which is usually only acquired by its owner).
+ *
+ * A typical usage is for each worker to call {@link #next(int)} repeatedly until it returns null after
+ * {@link #schedule(List, double[])} has been called.
+ *
+ * @author Oliver Coleman
+ */
+public class WorkStealingScheduler<T> {
+	private final WorkQueue[] queues;
+	private volatile int stealCount;
+
+	/**
+	 * @param workerCount The number of workers tasks will be distributed over.
+	 */
+	public WorkStealingScheduler(int workerCount) {
+		if (workerCount < 1)
+			throw new IllegalArgumentException("The number of workers must be at least 1.");
+		queues = new WorkQueue[workerCount];
+		for (int w = 0; w < workerCount; w++) {
+			queues[w] = new WorkQueue();
+		}
+	}
+
+	/**
+	 * Schedule the given tasks. This should only be called when no worker is retrieving tasks, typically before the
+	 * workers are started on a new batch. Any tasks remaining from a previous batch are discarded.
+	 *
+	 * @param tasks The tasks to schedule.
+	 * @param costs The estimated cost of each task, for example the expected execution time. If null then all tasks are
+	 *            considered to have equal cost and are distributed in the given order.
+	 */
+	public void schedule(List<T> tasks, final double[] costs) {
+		int taskCount = tasks.size();
+		if (costs != null && costs.length != taskCount)
+			throw new IllegalArgumentException("The number of costs does not match the number of tasks.");
+
+		// Determine the order in which to assign tasks, most expensive first.
+		Integer[] order = new Integer[taskCount];
+		for (int i = 0; i < taskCount; i++) {
+			order[i] = i;
+		}
+		if (costs != null) {
+			// Arrays.sort is stable so tasks with equal cost retain their relative order.
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Double.compare(costs[b], costs[a]);
+				}
+			});
+		}
+
+		for (WorkQueue queue : queues) {
+			queue.reset(taskCount / queues.length + 1);
+		}
+		// Assign each task to the worker with the least total expected cost so far (longest processing time first
+		// heuristic). With equal costs this distributes the tasks in round-robin fashion.
+		for (int i = 0; i < taskCount; i++) {
+			double cost = costs != null ? Math.max(0, costs[order[i]]) : 1;
+			WorkQueue least = queues[0];
+			for (int w = 1; w < queues.length; w++) {
+				if (queues[w].totalCost < least.totalCost) {
+					least = queues[w];
+				}
+			}
+			least.add(tasks.get(order[i]), cost);
+		}
+		stealCount = 0;
+	}
+
+	/**
+	 * Retrieve the next task for the given worker, stealing a task from another worker if the given worker has no
+	 * tasks remaining.
+	 *
+	 * @param worker The index of the worker, in the range [0, number of workers).
+	 * @return The next task, or null if there are no tasks remaining for any worker.
+	 */
+	@SuppressWarnings("unchecked")
+	public T next(int worker) {
+		T task = (T) queues[worker].pollFirst();
+		while (task == null) {
+			// Steal from the worker with the most expected work remaining.
+			WorkQueue victim = null;
+			double victimCost = 0;
+			for (int w = 0; w < queues.length; w++) {
+				if (w != worker) {
+					double remaining = queues[w].remainingCost();
+					if (remaining >= 0 && (victim == null || remaining > victimCost)) {
+						victim = queues[w];
+						victimCost = remaining;
+					}
+				}
+			}
+			if (victim == null) {
+				return null;
+			}
+			// The victim's queue may have been emptied since we checked, in which case look again.
+			task = (T) victim.pollLast();
+			if (task != null) {
+				synchronized (this) {
+					stealCount++;
+				}
+			}
+		}
+		return task;
+	}
+
+	/**
+	 * @return The number of workers.
+	 */
+	public int getWorkerCount() {
+		return queues.length;
+	}
+
+	/**
+	 * @return The number of tasks stolen by workers from other workers since the last call to
+	 *         {@link #schedule(List, double[])}.
+	 */
+	public int getStealCount() {
+		return stealCount;
+	}
+
+	/**
+	 * A double-ended queue of tasks ordered by decreasing cost, which tracks the total expected cost of the tasks
+	 * remaining in it.
+	 */
+	private static class WorkQueue {
+		private Object[] tasks = new Object[0];
+		private double[] taskCosts = new double[0];
+		private int head, tail;
+		private double totalCost;
+		private double remainingCost;
+
+		void reset(int capacity) {
+			if (tasks.length < capacity) {
+				tasks = new Object[capacity];
+				taskCosts = new double[capacity];
+			} else {
+				Arrays.fill(tasks, null);
+			}
+			head = 0;
+			tail = 0;
+			totalCost = 0;
+			remainingCost = 0;
+		}
+
+		void add(Object task, double cost) {
+			if (tail == tasks.length) {
+				tasks = Arrays.copyOf(tasks, tasks.length * 2 + 1);
+				taskCosts = Arrays.copyOf(taskCosts, taskCosts.length * 2 + 1);
+			}
+			tasks[tail] = task;
+			taskCosts[tail] = cost;
+			tail++;
+			totalCost += cost;
+			remainingCost += cost;
+		}
+
+		synchronized Object pollFirst() {
+			if (head == tail)
+				return null;
+			return take(head++);
+		}
+
+		synchronized Object pollLast() {
+			if (head == tail)
+				return null;
+			return take(--tail);
+		}
+
+		private Object take(int index) {
+			Object task = tasks[index];
+			tasks[index] = null;
+			// Avoid accumulated rounding error when the queue is empty.
+			remainingCost = head == tail ? 0 : remainingCost - taskCosts[index];
+			return task;
+		}
+
+		/**
+		 * @return The total cost of the remaining tasks, or -1 if there are no tasks remaining.
+		 */
+		synchronized double remainingCost() {
+			return head == tail ? -1 : remainingCost;
+		}
+	}
+}
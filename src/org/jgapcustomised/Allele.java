@@ -197,6 +197,18 @@ public abstract class Allele implements Comparable {
 	 */
 	public abstract boolean isEquivalent(Allele otherAllele);
 
+	/**
+	 * Returns a hash of the parameters of this allele, other than its value (see {@link #getValue()}), that are compared
+	 * by {@link #isEquivalent(Allele)}. Equivalent alleles must return the same hash. The hash should not depend on
+	 * object identity so that it is stable across runs. The default implementation returns 0, which is appropriate for
+	 * alleles that are equivalent iff their values are equal.
+	 * 
+	 * @see PackedAlleles#getFingerprint()
+	 */
+	public long getStructuralHash() {
+		return 0;
+	}
+
 	/**
 	 * Generic method for setting the value of an allele. If not required then this method should be overridden with a method returning 0.
 	 */
@@ -44,6 +44,18 @@ public abstract class BulkFitnessFunction implements Serializable {
 	 * @return Return true when an evolutionary run should be completed before the maximum number of generations is complete, false otherwise.
 	 */
 	public abstract boolean endRun();
+
+	/**
+	 * Called by {@link Genotype} when pipelined evolution is enabled (see {@link Configuration#isPipelinedEvolution()})
+	 * as each new offspring is created, before the remaining offspring have been produced and before it is passed to
+	 * {@link #evaluate(List)}. Implementations may use this to begin preparing the offspring for evaluation in the
+	 * background, for example by transcribing it to its phenotype. Note that the offspring may still be removed from the
+	 * population (for example if it is a clone) before the next evaluation. This default implementation does nothing.
+	 * 
+	 * @param offspring The new offspring.
+	 */
+	public void offspringCreated(Chromosome offspring) {
+	}
 	
 	/**
 	 * @return Returns the number of objectives being employed. This is only valid for fitness functions and 
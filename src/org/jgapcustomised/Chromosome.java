@@ -145,7 +145,8 @@ public class Chromosome implements Comparable, Serializable {
 
 		setId(an_id);
 		m_material = a_material;
-		m_alleles = Collections.unmodifiableSortedSet(m_material.getAlleles());
+		// Read the alleles without discarding the packed form (and fingerprint) the material may share with its parent.
+		m_alleles = Collections.unmodifiableSortedSet(m_material.getAllelesForReading());
 		associateAllelesWithChromosome();
 		m_fitnessValue = new double[objectiveCount];
 		Arrays.fill(m_fitnessValue, Double.NaN);
@@ -155,6 +156,36 @@ public class Chromosome implements Comparable, Serializable {
 		m_performanceValue = new TreeMap<String, Double>();
 	}
 
+	/**
+	 * Create a copy of the given Chromosome that shares its genetic material but has its own copy of its evaluation
+	 * data. The alleles remain associated with the given Chromosome.
+	 */
+	private Chromosome(Chromosome other) {
+		setId(other.m_id);
+		m_material = other.m_material;
+		m_alleles = other.m_alleles;
+		m_isSelectedForNextGeneration = other.m_isSelectedForNextGeneration;
+		m_fitnessValue = other.m_fitnessValue.clone();
+		m_performanceValue = new TreeMap<String, Double>(other.m_performanceValue);
+		m_overallFitnessValue = other.m_overallFitnessValue;
+		evaluationDataStable = other.evaluationDataStable;
+		m_specie = other.m_specie;
+		isElite = other.isElite;
+		rank = other.rank;
+		novelty = other.novelty;
+		behaviours = other.behaviours != null ? other.behaviours.clone() : null;
+		crowdingDistance = other.crowdingDistance;
+	}
+
+	/**
+	 * @return A copy of this Chromosome whose evaluation data (fitness, performance, novelty, rank, species etc) is not
+	 *         affected by subsequent changes to this Chromosome. The genetic material is shared, as it does not change.
+	 * @see GenotypeSnapshot
+	 */
+	Chromosome snapshot() {
+		return new Chromosome(this);
+	}
+
 	private void associateAllelesWithChromosome() {
 		Iterator it = m_alleles.iterator();
 		while (it.hasNext()) {
@@ -457,6 +488,17 @@ public class Chromosome implements Comparable, Serializable {
 		return m_material.isEquivalent(c2.m_material);
 	}
 
+	/**
+	 * Returns a 64-bit fingerprint of the genetic material of this Chromosome. Equivalent Chromosomes (see
+	 * {@link #isEquivalent(Chromosome)}) have the same fingerprint, and non-equivalent Chromosomes almost certainly do
+	 * not, so it may be used as a key to cache or de-duplicate Chromosomes by their genetic material.
+	 * 
+	 * @see ChromosomeMaterial#getFingerprint()
+	 */
+	public long getFingerprint() {
+		return m_material.getFingerprint();
+	}
+
 	/**
 	 * Sets whether this Chromosome has been selected by the natural selector to continue to the next generation.
 	 * 
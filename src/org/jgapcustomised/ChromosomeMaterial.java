@@ -19,6 +19,8 @@
  */
 package org.jgapcustomised;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -40,8 +42,11 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	
 	private Long primaryParentId = null;
 	private Long secondaryParentId = null;
-	private SortedSet<Allele> m_alleles = null;
+	// The alleles, or null if they have not yet been expanded from packedAlleles (see alleles()).
+	private volatile SortedSet<Allele> m_alleles = null;
 	private boolean shouldMutate = true;
+	// Packed representation of m_alleles, created on demand and discarded when m_alleles may have been modified.
+	private transient volatile PackedAlleles packedAlleles = null;
 
 	public boolean pruned;
 
@@ -74,6 +79,24 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 		m_alleles = new TreeSet<Allele>(a_initialAlleles);
 	}
 
+	/**
+	 * Create chromosome from the given packed alleles. Used for crossover and cloning. The packed alleles are shared
+	 * with (and so must not be modified by) the new material, and are only expanded into Allele objects when the
+	 * alleles are first required.
+	 * 
+	 * @param aPackedAlleles
+	 * @param aPrimaryParentId
+	 * @param aSecondaryParentId
+	 */
+	public ChromosomeMaterial(PackedAlleles aPackedAlleles, Long aPrimaryParentId, Long aSecondaryParentId) {
+		if (aPackedAlleles == null) {
+			throw new IllegalArgumentException("The given packed alleles cannot be null.");
+		}
+		setPrimaryParentId(aPrimaryParentId);
+		setSecondaryParentId(aSecondaryParentId);
+		packedAlleles = aPackedAlleles;
+	}
+
 	/**
 	 * Create chromosome with one parents. Used for cloning.
 	 * 
@@ -111,20 +134,9 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	 * @return copy of this object
 	 */
 	public ChromosomeMaterial clone(Long parentId) {
-		// First we make a copy of each of the Genes. We explicity use the Gene
-		// at each respective gene location (locus) to create the new Gene that
-		// is to occupy that same locus in the new Chromosome.
-		// -------------------------------------------------------------------
-		List<Allele> copyOfAlleles = new ArrayList<Allele>(m_alleles.size());
-
-		for (Allele orig : m_alleles) {
-			copyOfAlleles.add(orig.cloneAllele());
-		}
-
-		// Now construct a new Chromosome with the copies of the genes and return it.
-		// ---------------------------------------------------------------
+		// The copy is made from the packed representation, which may then be shared with the copy.
 		Long cloneParentId = (parentId == null) ? getPrimaryParentId() : parentId;
-		return new ChromosomeMaterial(copyOfAlleles, cloneParentId);
+		return new ChromosomeMaterial(getPackedAlleles(), cloneParentId, null);
 	}
 	
 	/**
@@ -133,17 +145,71 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	 * @return The number of alleles contained within this ChromosomeMaterial instance.
 	 */
 	public int size() {
-		return m_alleles.size();
+		SortedSet<Allele> alleles = m_alleles;
+		return alleles != null ? alleles.size() : packedAlleles.size();
 	}
 
 	/**
 	 * Retrieves the set of genes. This method exists primarily for the benefit of GeneticOperators that require the
-	 * ability to manipulate Chromosomes at a low level.
+	 * ability to manipulate Chromosomes at a low level. As the returned alleles may be modified the packed
+	 * representation of them (see {@link #getPackedAlleles()}) is discarded, thus methods that only read the alleles
+	 * should prefer {@link #getPackedAlleles()} where possible.
 	 * 
 	 * @return an array of the Genes contained within this Chromosome.
 	 */
 	public SortedSet<Allele> getAlleles() {
-		return m_alleles;
+		SortedSet<Allele> alleles = alleles();
+		packedAlleles = null;
+		return alleles;
+	}
+
+	/**
+	 * Returns the alleles without discarding the packed representation of them, for use by {@link Chromosome}. The
+	 * returned alleles must not be modified.
+	 */
+	SortedSet<Allele> getAllelesForReading() {
+		return alleles();
+	}
+
+	// Returns the alleles, expanding them from the packed representation if necessary.
+	private SortedSet<Allele> alleles() {
+		SortedSet<Allele> alleles = m_alleles;
+		if (alleles == null) {
+			synchronized (this) {
+				if (m_alleles == null) {
+					m_alleles = new TreeSet<Allele>(packedAlleles.toAlleles());
+				}
+				alleles = m_alleles;
+			}
+		}
+		return alleles;
+	}
+
+	/**
+	 * Returns a compact, array-based representation of the alleles of this ChromosomeMaterial. The representation is
+	 * created on demand and cached until {@link #getAlleles()} or {@link #setAlleles(SortedSet)} is called. Alleles
+	 * obtained from {@link #getAlleles()} should not be modified after this method has been called, unless
+	 * {@link #getAlleles()} is called again afterwards.
+	 */
+	public PackedAlleles getPackedAlleles() {
+		PackedAlleles p = packedAlleles;
+		if (p == null) {
+			p = new PackedAlleles(alleles());
+			packedAlleles = p;
+		}
+		return p;
+	}
+
+	/**
+	 * Returns a 64-bit fingerprint of the alleles of this ChromosomeMaterial. Equivalent materials (see
+	 * {@link #isEquivalent(ChromosomeMaterial)}) have the same fingerprint, and non-equivalent materials almost
+	 * certainly do not. The fingerprint is cached with the packed representation of the alleles (see
+	 * {@link #getPackedAlleles()}), so it is shared with clones and recalculated only after the alleles are modified.
+	 * 
+	 * @see PackedAlleles#getFingerprint()
+	 */
+	public long getFingerprint() {
+		return getPackedAlleles().getFingerprint();
 	}
 
 	/**
@@ -157,7 +223,7 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 
 		// Append the representations of each of the gene Alleles.
 		// -------------------------------------------------------
-		Iterator iter = m_alleles.iterator();
+		Iterator iter = alleles().iterator();
 		if (iter.hasNext()) {
 			Allele allele = (Allele) iter.next();
 			representation.append(allele.toString());
@@ -242,12 +308,12 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 		}
 
 		ChromosomeMaterial otherChromosome = (ChromosomeMaterial) other;
-		SortedSet otherAlleles = otherChromosome.m_alleles;
+		SortedSet otherAlleles = otherChromosome.alleles();
 
 		// If the other Chromosome doesn't have the same number of genes,
 		// then whichever has more is the "greater" Chromosome.
 		// --------------------------------------------------------------
-		if (otherAlleles.size() != m_alleles.size()) {
+		if (otherAlleles.size() != alleles().size()) {
 			return false;
 		}
 
@@ -255,7 +321,7 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 		// one of the genes is not equal, then we return the result of its
 		// comparison.
 		// ---------------------------------------------------------------
-		Iterator iter = m_alleles.iterator();
+		Iterator iter = alleles().iterator();
 		Iterator otherIter = otherAlleles.iterator();
 		while (iter.hasNext() && otherIter.hasNext()) {
 			Allele allele = (Allele) iter.next();
@@ -285,20 +351,20 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 		}
 
 		ChromosomeMaterial otherChromosome = (ChromosomeMaterial) other;
-		SortedSet otherAlleles = otherChromosome.m_alleles;
+		SortedSet otherAlleles = otherChromosome.alleles();
 
 		// If the other Chromosome doesn't have the same number of genes,
 		// then whichever has more is the "greater" Chromosome.
 		// --------------------------------------------------------------
-		if (otherAlleles.size() != m_alleles.size()) {
-			return m_alleles.size() - otherAlleles.size();
+		if (otherAlleles.size() != alleles().size()) {
+			return alleles().size() - otherAlleles.size();
 		}
 
 		// Next, compare the gene values (alleles) for differences. If
 		// one of the genes is not equal, then we return the result of its
 		// comparison.
 		// ---------------------------------------------------------------
-		Iterator iter = m_alleles.iterator();
+		Iterator iter = alleles().iterator();
 		Iterator otherIter = otherAlleles.iterator();
 		while (iter.hasNext() && otherIter.hasNext()) {
 			Allele allele = (Allele) iter.next();
@@ -370,13 +436,13 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	}
 	
 	public long getMinInnovationID() {
-		if (m_alleles.isEmpty()) return -1;
-		return m_alleles.first().getInnovationId();
+		if (alleles().isEmpty()) return -1;
+		return alleles().first().getInnovationId();
 	}
 	
 	public long getMaxInnovationID() {
-		if (m_alleles.isEmpty()) return -1;
-		return m_alleles.last().getInnovationId();
+		if (alleles().isEmpty()) return -1;
+		return alleles().last().getInnovationId();
 	}
 
 	/**
@@ -409,95 +475,10 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	 * @param speciationParms
 	 * @return distance between this object and <code>target</code>
 	 * @see Allele#distance(Allele)
+	 * @see PackedAlleles#distance(PackedAlleles, SpeciationParms)
 	 */
 	public double distance(ChromosomeMaterial target, SpeciationParms speciationParms) {
-		//boolean log = Math.random() < 0.01;
-		boolean log = false;
-		
-		boolean useValues = speciationParms.specieCompatMismatchUseValues();
-		double disjointCountOrValueSum = 0, excessCountOrValueSum = 0, commonCount = 0;
-		double weightDifference = 0;
-		int maxSize = Math.max(this.getAlleles().size(), target.getAlleles().size());
-		
-		if (m_alleles.isEmpty() || target.m_alleles.isEmpty()) {
-			if (log) System.err.println("empty");
-			
-			ChromosomeMaterial m = m_alleles.isEmpty() ? target : this;
-			for (Allele a : m.getAlleles()) {
-				excessCountOrValueSum += getMismatchValue(a, useValues);
-			}
-		}
-		else {
-			Iterator<Allele> thisIter = m_alleles.iterator(), targetIter = target.m_alleles.iterator();
-			Allele thisCurrent = thisIter.next(), targetCurrent = targetIter.next();
-			long thisMaxInnoID = this.getMaxInnovationID(), targetMaxInnoID = target.getMaxInnovationID();
-			// Iterate through this and target alleles counting up common and disjoint genes as we go.
-			do {
-				if (thisCurrent.getInnovationId() == targetCurrent.getInnovationId()) {
-					commonCount++;
-					weightDifference += thisCurrent.distance(targetCurrent);
-					thisCurrent = thisIter.hasNext() ? thisIter.next() : null;
-					targetCurrent = targetIter.hasNext() ? targetIter.next() : null;
-				}
-				else {
-					Allele a = thisCurrent.getInnovationId() < targetCurrent.getInnovationId() ? thisCurrent : targetCurrent;
-					disjointCountOrValueSum += getMismatchValue(a, useValues);
-					
-					if (thisCurrent.getInnovationId() < targetCurrent.getInnovationId()) {
-						thisCurrent = thisIter.hasNext() ? thisIter.next() : null;
-					}
-					else {
-						targetCurrent = targetIter.hasNext() ? targetIter.next() : null;
-					}
-				}
-			} while (thisCurrent != null && targetCurrent != null);
-			
-			// If the last gene pulled from this set of genes is out of the range of innovation IDs of the target, add it to excess.
-			if (thisCurrent != null && thisCurrent.getInnovationId() > targetMaxInnoID) {
-				excessCountOrValueSum += getMismatchValue(thisCurrent, useValues);
-			}
-			// If the last gene pulled from the target set of genes is out of the range of innovation IDs of this set of genes, add it to excess.
-			if (targetCurrent != null && targetCurrent.getInnovationId() > thisMaxInnoID) {	
-				excessCountOrValueSum += getMismatchValue(targetCurrent, useValues);
-			}
-		
-			// Iterate over and count up any remaining excess genes.
-			while (thisIter.hasNext()) {
-				excessCountOrValueSum += getMismatchValue(thisIter.next(), useValues);
-			}
-			while (targetIter.hasNext()) {
-				excessCountOrValueSum += getMismatchValue(targetIter.next(), useValues);
-			}
-		}
-		
-		if (speciationParms.specieCompatNormalise()) {
-			excessCountOrValueSum /= maxSize;
-			disjointCountOrValueSum /= maxSize;
-			if (commonCount > 0) weightDifference /= commonCount;
-		}
-		
-		double result2 = (speciationParms.getSpecieCompatExcessCoeff() * excessCountOrValueSum) + (speciationParms.getSpecieCompatDisjointCoeff() * disjointCountOrValueSum) + (speciationParms.getSpecieCompatCommonCoeff() * weightDifference);
-		
-		if (log) {
-			System.err.println("\nexcessCount " + excessCountOrValueSum);
-			System.err.println("disjointCount " + disjointCountOrValueSum);
-			System.err.println("commonCount " + commonCount);
-			System.err.println("weightDifference " + weightDifference);
-			System.err.println("result2 " + result2);
-			System.err.println(this.toString());
-			System.err.println(target.toString());
-		}
-		
-		//if (result != result2) {
-		//	System.err.println("result " + result  + " != " + result2 + "     " + (result - result2));
-		//}
-		return result2;
-	}
-	
-	// Distance value of a mismatched allele as determined by whether we're using a constant value (1), 
-	// or the stored value of the allele (eg the connection weight or neuron bias).
-	private double getMismatchValue(Allele a, boolean useValues) {
-		return useValues ? a.getValue() : 1;
+		return getPackedAlleles().distance(target.getPackedAlleles(), speciationParms);
 	}
 
 	/**
@@ -507,6 +488,7 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	 */
 	public void setAlleles(SortedSet<Allele> aAlleles) {
 		m_alleles = aAlleles;
+		packedAlleles = null;
 	}
 	
 
@@ -524,4 +506,10 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	public void setShouldMutate(boolean mutate) {
 		this.shouldMutate = mutate;
 	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		// The packed alleles are not serialised, so make sure the alleles have been expanded from them.
+		alleles();
+		out.defaultWriteObject();
+	}
 }
@@ -110,12 +110,34 @@ public class Configuration implements java.io.Serializable {
 	 */
 	private Random m_randomGenerator = null;
 
+	/**
+	 * The seed from which task random number generators are derived, see {@link #newTaskRandomGenerator(long...)}.
+	 */
+	private Long m_randomSeed = null;
+
+	/**
+	 * The current generation, used when deriving task random number generators.
+	 */
+	private volatile int m_generation = 0;
+
+	/**
+	 * The random number generator for the task being performed by the current thread, if any. This is not serialised,
+	 * and is created when first required, see {@link #taskRandomGenerator()}.
+	 */
+	private transient volatile ThreadLocal<Random> m_taskRandomGenerator;
+
 	/**
 	 * References the EventManager that is to be used for the notification of genetic events and the management of event
 	 * subscribers.
 	 */
 	private EventManager m_eventManager = null;
 
+	/**
+	 * Records per-generation timing and throughput metrics, see {@link EvolutionMetrics}. This is not serialised, and
+	 * is created when first required.
+	 */
+	private transient EvolutionMetrics m_metrics;
+
 	/**
 	 * Stores all of the ReproductionOperator implementations that are to be used to operate upon the chromosomes of a
 	 * population after natural selection. In general, operators will be executed in the order that they are added to
@@ -184,6 +206,12 @@ public class Configuration implements java.io.Serializable {
 	 */
 	private int m_populationSize = 0;
 
+	/**
+	 * Whether offspring are handed to the bulk fitness function as they are created, see
+	 * {@link #setPipelinedEvolution(boolean)}.
+	 */
+	private boolean m_pipelinedEvolution = false;
+
 	/**
 	 * Indicates whether the settings of this Configuration instance have been locked. Prior to locking, the settings
 	 * may be set and reset as desired. Once this flag is set to true, no settings may be altered.
@@ -315,12 +343,108 @@ public class Configuration implements java.io.Serializable {
 	}
 
 	/**
-	 * Retrieves the random generator setup in this Configuration instance.
+	 * Retrieves the random generator setup in this Configuration instance. If a task random generator has been set for
+	 * the current thread (see {@link #setTaskRandomGenerator(Random)}) then that is returned instead.
 	 * 
 	 * @return The random generator.
 	 */
 	public Random getRandomGenerator() {
-		return m_randomGenerator;
+		Random taskRandom = taskRandomGenerator().get();
+		return taskRandom != null ? taskRandom : m_randomGenerator;
+	}
+
+	// Returns the thread-local task random generator, creating it if necessary (it is null after deserialisation).
+	private ThreadLocal<Random> taskRandomGenerator() {
+		ThreadLocal<Random> taskRandomGenerator = m_taskRandomGenerator;
+		if (taskRandomGenerator == null) {
+			synchronized (this) {
+				if (m_taskRandomGenerator == null) {
+					m_taskRandomGenerator = new ThreadLocal<Random>();
+				}
+				taskRandomGenerator = m_taskRandomGenerator;
+			}
+		}
+		return taskRandomGenerator;
+	}
+
+	/**
+	 * Sets the seed from which task random generators are derived, see {@link #newTaskRandomGenerator(long...)}. This
+	 * would usually be the seed used to initialise the main random generator. If it is not set then a seed is drawn
+	 * from the main random generator when first required.
+	 * 
+	 * @param seed The seed.
+	 * @throws InvalidConfigurationException if this object is locked.
+	 */
+	public synchronized void setRandomSeed(long seed) throws InvalidConfigurationException {
+		verifyChangesAllowed();
+		m_randomSeed = seed;
+	}
+
+	/**
+	 * @return The seed from which task random generators are derived.
+	 */
+	public synchronized long getRandomSeed() {
+		if (m_randomSeed == null) {
+			m_randomSeed = m_randomGenerator.nextLong();
+		}
+		return m_randomSeed;
+	}
+
+	/**
+	 * Sets the current generation, used when deriving task random generators. This is set by {@link Genotype} at the
+	 * start of each generation.
+	 */
+	public void setGeneration(int generation) {
+		m_generation = generation;
+	}
+
+	/**
+	 * @return The current generation, as set by {@link #setGeneration(int)}.
+	 */
+	public int getGeneration() {
+		return m_generation;
+	}
+
+	/**
+	 * Create a new random generator for a task that may be performed in parallel with other tasks. The generator is
+	 * seeded deterministically from the run seed (see {@link #getRandomSeed()}), the current generation and the given
+	 * keys, which should identify the task (for example a constant identifying the kind of task and the ID of the
+	 * species or chromosome it operates on). Thus tasks draw from independent streams, avoiding contention on the main
+	 * random generator, and produce the same results regardless of the number of threads or order of execution.
+	 * 
+	 * @param keys Values identifying the task.
+	 * @return A new random generator.
+	 * @see #setTaskRandomGenerator(Random)
+	 */
+	public Random newTaskRandomGenerator(long... keys) {
+		long seed = mixSeed(getRandomSeed() + 0x9E3779B97F4A7C15L * (m_generation + 1));
+		for (long key : keys) {
+			seed = mixSeed(seed ^ mixSeed(key + 0x9E3779B97F4A7C15L));
+		}
+		return new Random(seed);
+	}
+
+	// The SplitMix64 finalisation function, so that similar inputs produce unrelated seeds.
+	private static long mixSeed(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Sets the random generator returned by {@link #getRandomGenerator()} for the current thread, typically one
+	 * created by {@link #newTaskRandomGenerator(long...)}. Code that performs a task in parallel should set the task
+	 * generator before performing the task and clear it afterwards, so that any code called by the task (for example
+	 * reproduction operators) uses the task generator rather than the shared main generator.
+	 * 
+	 * @param random The task random generator, or null to revert to the main random generator.
+	 */
+	public void setTaskRandomGenerator(Random random) {
+		if (random == null) {
+			taskRandomGenerator().remove();
+		} else {
+			taskRandomGenerator().set(random);
+		}
 	}
 
 	/**
@@ -350,6 +474,28 @@ public class Configuration implements java.io.Serializable {
 		return m_populationSize;
 	}
 
+	/**
+	 * Sets whether pipelined evolution is enabled. When enabled {@link Genotype#evolve()} completes the offspring
+	 * produced by each reproduction operator before running the next one, applying the mutation operators to each
+	 * offspring in turn (rather than applying each mutation operator to all offspring in turn), and passes each new
+	 * offspring to {@link BulkFitnessFunction#offspringCreated(Chromosome)} as soon as it is complete, so that the
+	 * fitness function can prepare it for evaluation while the remaining offspring are produced.
+	 * 
+	 * @param pipelined true to enable pipelined evolution.
+	 * @throws InvalidConfigurationException if this object is locked.
+	 */
+	public synchronized void setPipelinedEvolution(boolean pipelined) throws InvalidConfigurationException {
+		verifyChangesAllowed();
+		m_pipelinedEvolution = pipelined;
+	}
+
+	/**
+	 * @return true iff pipelined evolution is enabled, see {@link #setPipelinedEvolution(boolean)}.
+	 */
+	public boolean isPipelinedEvolution() {
+		return m_pipelinedEvolution;
+	}
+
 	/**
 	 * Sets the EventManager that is to be associated with this configuration. The EventManager is responsible for the
 	 * management of event subscribers and event notifications.
@@ -378,6 +524,17 @@ public class Configuration implements java.io.Serializable {
 		return m_eventManager;
 	}
 
+	/**
+	 * Retrieves the metrics recorder associated with this configuration. Metrics are only recorded once
+	 * {@link EvolutionMetrics#start(java.io.File, EvolutionMetrics.Format)} has been called.
+	 */
+	public synchronized EvolutionMetrics getMetrics() {
+		if (m_metrics == null) {
+			m_metrics = new EvolutionMetrics();
+		}
+		return m_metrics;
+	}
+
 	/**
 	 * Locks all of the settings in this configuration object. Once this method is successfully invoked, none of the
 	 * settings may be changed. There is no way to unlock this object once it is locked.
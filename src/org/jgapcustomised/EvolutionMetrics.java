@@ -0,0 +1,493 @@
+package org.jgapcustomised;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Records timing and throughput metrics for each generation: the time spent in each phase of
+ * {@link Genotype#evolve()}, the time each evaluation thread spends transcribing and evaluating individuals, the
+ * number of evaluations per second and the rate at which memory is allocated (where supported by the JVM). The metrics
+ * for each generation may be written to a CSV or JSON file, and the metrics for the most recent generation are
+ * available via JMX once {@link #registerMBean(String)} has been called.
+ *
+ * Metrics are only recorded once {@link #start(File, Format)} has been called. Until then the recording methods do
+ * nothing (and {@link #time()} does not query the system timer), so the instrumentation has negligible cost when
+ * disabled. One instance is associated with each {@link Configuration}, see {@link Configuration#getMetrics()}.
+ *
+ * @author Oliver Coleman
+ */
+public class EvolutionMetrics implements EvolutionMetricsMBean {
+	private static Logger logger = Logger.getLogger(EvolutionMetrics.class);
+
+	/**
+	 * The phases of {@link Genotype#evolve()} that are timed. {@link #OTHER} is the time not accounted for by the other
+	 * phases (for example event handling).
+	 */
+	public enum Phase {
+		EVALUATION, SPECIATION, SELECTION, REPRODUCTION, MUTATION, CLONE_CULLING, OTHER
+	}
+
+	/**
+	 * The format of the metrics file. For JSON each generation is written as a JSON object on a separate line.
+	 */
+	public enum Format {
+		CSV, JSON
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+
+	private volatile boolean enabled = false;
+	private Format format;
+	private BufferedWriter writer;
+	private ObjectName mbeanName;
+
+	// Current generation, only accessed by the thread calling Genotype.evolve().
+	private long generationStart;
+	private final long[] phaseNanos = new long[PHASES.length];
+	private int evaluationCount;
+	private final Map<Long, Long> previousAllocatedBytes = new HashMap<Long, Long>();
+
+	// Per evaluation thread times for the current generation.
+	private final ConcurrentHashMap<String, ThreadTimes> threadTimes = new ConcurrentHashMap<String, ThreadTimes>();
+
+	// The metrics for the last complete generation.
+	private volatile GenerationRecord last;
+
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private com.sun.management.ThreadMXBean allocationBean;
+
+	/**
+	 * Start recording metrics.
+	 *
+	 * @param file The file to write the metrics for each generation to, or null to not write the metrics to a file.
+	 *            Any existing file is overwritten.
+	 * @param format The format of the file.
+	 * @throws IOException If the file could not be created.
+	 */
+	public synchronized void start(File file, Format format) throws IOException {
+		close();
+		this.format = format;
+		if (file != null) {
+			writer = new BufferedWriter(new FileWriter(file));
+			if (format == Format.CSV) {
+				writer.write(csvHeader());
+				writer.newLine();
+				writer.flush();
+			}
+		}
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+			if (bean.isThreadAllocatedMemorySupported()) {
+				if (!bean.isThreadAllocatedMemoryEnabled()) {
+					bean.setThreadAllocatedMemoryEnabled(true);
+				}
+				allocationBean = bean;
+			}
+		}
+		if (allocationBean == null) {
+			logger.info("Memory allocation rate is not available in this JVM, it will be reported as -1.");
+		}
+		previousAllocatedBytes.clear();
+		threadTimes.clear();
+		last = null;
+		enabled = true;
+	}
+
+	/**
+	 * Make the metrics for the most recent generation available via JMX, with the object name
+	 * <code>com.ojcoleman.ahni:type=EvolutionMetrics,name=&lt;name&gt;</code>. Any existing MBean with the same name
+	 * is replaced.
+	 */
+	public synchronized void registerMBean(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("com.ojcoleman.ahni:type=EvolutionMetrics,name=" + ObjectName.quote(name));
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(this, objectName);
+			mbeanName = objectName;
+		} catch (Exception e) {
+			logger.warn("Could not register evolution metrics MBean: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Stop recording metrics, close the metrics file and unregister the MBean, if applicable.
+	 */
+	public synchronized void close() {
+		enabled = false;
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				logger.warn("Could not close evolution metrics file: " + e.getMessage());
+			}
+			writer = null;
+		}
+		if (mbeanName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+			} catch (Exception e) {
+				// Ignore, nothing useful can be done.
+			}
+			mbeanName = null;
+		}
+	}
+
+	/**
+	 * @return true iff metrics are being recorded.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return The current value of the system timer in nanoseconds if metrics are being recorded, otherwise 0. Used to
+	 *         mark the start of a phase, see {@link #endPhase(Phase, long)}.
+	 */
+	public long time() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Mark the start of a generation.
+	 */
+	public void startGeneration() {
+		if (!enabled)
+			return;
+		generationStart = System.nanoTime();
+		for (int p = 0; p < phaseNanos.length; p++) {
+			phaseNanos[p] = 0;
+		}
+		evaluationCount = 0;
+		for (ThreadTimes times : threadTimes.values()) {
+			times.reset();
+		}
+	}
+
+	/**
+	 * Add the time since the given start time to the given phase for the current generation.
+	 *
+	 * @param phase The phase.
+	 * @param start The start time of the phase as returned by {@link #time()}.
+	 */
+	public void endPhase(Phase phase, long start) {
+		if (!enabled)
+			return;
+		phaseNanos[phase.ordinal()] += System.nanoTime() - start;
+	}
+
+	/**
+	 * Set the number of individuals evaluated in the current generation.
+	 */
+	public void setEvaluationCount(int count) {
+		evaluationCount = count;
+	}
+
+	/**
+	 * Record the time the calling thread spent transcribing and evaluating an individual. This may be called by
+	 * multiple threads concurrently.
+	 *
+	 * @param transcriptionNanos The time spent transcribing (or waiting for the transcription of) the individual.
+	 * @param evaluationNanos The time spent evaluating the individual, not including transcription.
+	 */
+	public void recordEvaluation(long transcriptionNanos, long evaluationNanos) {
+		if (!enabled)
+			return;
+		String thread = Thread.currentThread().getName();
+		ThreadTimes times = threadTimes.get(thread);
+		if (times == null) {
+			times = new ThreadTimes();
+			ThreadTimes existing = threadTimes.putIfAbsent(thread, times);
+			if (existing != null) {
+				times = existing;
+			}
+		}
+		times.add(transcriptionNanos, evaluationNanos);
+	}
+
+	/**
+	 * Mark the end of a generation, and write the metrics for it to the metrics file.
+	 *
+	 * @param generation The generation number.
+	 */
+	public void endGeneration(int generation) {
+		if (!enabled)
+			return;
+		long generationNanos = System.nanoTime() - generationStart;
+		long accounted = 0;
+		for (int p = 0; p < phaseNanos.length; p++) {
+			accounted += phaseNanos[p];
+		}
+		phaseNanos[Phase.OTHER.ordinal()] = Math.max(0, generationNanos - accounted);
+
+		Map<String, long[]> threads = new TreeMap<String, long[]>();
+		for (Map.Entry<String, ThreadTimes> entry : threadTimes.entrySet()) {
+			long[] values = entry.getValue().get();
+			if (values[0] > 0) {
+				threads.put(entry.getKey(), values);
+			}
+		}
+
+		GenerationRecord record = new GenerationRecord(generation, generationNanos, phaseNanos.clone(), evaluationCount, threads, allocatedBytesSinceLastGeneration());
+		last = record;
+		write(record);
+	}
+
+	// Returns the number of bytes allocated by all live threads since the last call, or -1 if not supported.
+	private long allocatedBytesSinceLastGeneration() {
+		if (allocationBean == null)
+			return -1;
+		long[] ids = threadBean.getAllThreadIds();
+		long[] bytes = allocationBean.getThreadAllocatedBytes(ids);
+		long total = 0;
+		Map<Long, Long> current = new HashMap<Long, Long>();
+		for (int i = 0; i < ids.length; i++) {
+			if (bytes[i] < 0)
+				continue;
+			Long previous = previousAllocatedBytes.get(ids[i]);
+			total += bytes[i] - (previous == null ? 0 : previous);
+			current.put(ids[i], bytes[i]);
+		}
+		previousAllocatedBytes.clear();
+		previousAllocatedBytes.putAll(current);
+		return total;
+	}
+
+	private synchronized void write(GenerationRecord record) {
+		if (writer == null)
+			return;
+		try {
+			writer.write(format == Format.CSV ? record.toCSV() : record.toJSON());
+			writer.newLine();
+			writer.flush();
+		} catch (IOException e) {
+			logger.warn("Could not write evolution metrics: " + e.getMessage());
+		}
+	}
+
+	private static String csvHeader() {
+		StringBuilder sb = new StringBuilder("generation,generation_ms");
+		for (Phase phase : PHASES) {
+			sb.append(",").append(phase.name().toLowerCase()).append("_ms");
+		}
+		sb.append(",evaluations,evaluations_per_second,evaluation_threads,transcription_ms,evaluator_ms,max_thread_busy_ms,allocated_bytes,allocation_rate_bytes_per_second");
+		return sb.toString();
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1000000d;
+	}
+
+	/**
+	 * Transcription and evaluation times for a single evaluation thread. Only updated by the thread it belongs to, but
+	 * read and reset by the thread calling {@link Genotype#evolve()}.
+	 */
+	private static class ThreadTimes {
+		private long count, transcriptionNanos, evaluationNanos;
+
+		synchronized void add(long transcription, long evaluation) {
+			count++;
+			transcriptionNanos += transcription;
+			evaluationNanos += evaluation;
+		}
+
+		synchronized long[] get() {
+			return new long[] { count, transcriptionNanos, evaluationNanos };
+		}
+
+		synchronized void reset() {
+			count = 0;
+			transcriptionNanos = 0;
+			evaluationNanos = 0;
+		}
+	}
+
+	/**
+	 * The metrics for one generation.
+	 */
+	private static class GenerationRecord {
+		final int generation;
+		final long generationNanos;
+		final long[] phaseNanos;
+		final int evaluations;
+		final Map<String, long[]> threads;
+		final long allocatedBytes;
+		final long transcriptionNanos, evaluatorNanos, maxThreadBusyNanos;
+
+		GenerationRecord(int generation, long generationNanos, long[] phaseNanos, int evaluations, Map<String, long[]> threads, long allocatedBytes) {
+			this.generation = generation;
+			this.generationNanos = generationNanos;
+			this.phaseNanos = phaseNanos;
+			this.evaluations = evaluations;
+			this.threads = threads;
+			this.allocatedBytes = allocatedBytes;
+			long t = 0, e = 0, max = 0;
+			for (long[] values : threads.values()) {
+				t += values[1];
+				e += values[2];
+				max = Math.max(max, values[1] + values[2]);
+			}
+			transcriptionNanos = t;
+			evaluatorNanos = e;
+			maxThreadBusyNanos = max;
+		}
+
+		double evaluationsPerSecond() {
+			long nanos = phaseNanos[Phase.EVALUATION.ordinal()];
+			return nanos > 0 ? evaluations / (nanos / 1e9) : 0;
+		}
+
+		double allocationRate() {
+			return allocatedBytes < 0 ? -1 : allocatedBytes / (generationNanos / 1e9);
+		}
+
+		String toCSV() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(generation).append(",").append(millis(generationNanos));
+			for (long nanos : phaseNanos) {
+				sb.append(",").append(millis(nanos));
+			}
+			sb.append(",").append(evaluations).append(",").append(evaluationsPerSecond());
+			sb.append(",").append(threads.size()).append(",").append(millis(transcriptionNanos)).append(",").append(millis(evaluatorNanos)).append(",").append(millis(maxThreadBusyNanos));
+			sb.append(",").append(allocatedBytes).append(",").append(allocationRate());
+			return sb.toString();
+		}
+
+		String toJSON() {
+			StringBuilder sb = new StringBuilder("{");
+			sb.append("\"generation\":").append(generation);
+			sb.append(",\"generation_ms\":").append(millis(generationNanos));
+			sb.append(",\"phases_ms\":{");
+			for (int p = 0; p < PHASES.length; p++) {
+				sb.append(p > 0 ? "," : "").append("\"").append(PHASES[p].name().toLowerCase()).append("\":").append(millis(phaseNanos[p]));
+			}
+			sb.append("},\"evaluations\":").append(evaluations);
+			sb.append(",\"evaluations_per_second\":").append(evaluationsPerSecond());
+			sb.append(",\"threads\":{");
+			boolean first = true;
+			for (Map.Entry<String, long[]> entry : threads.entrySet()) {
+				long[] values = entry.getValue();
+				sb.append(first ? "" : ",").append("\"").append(entry.getKey().replace("\\", "\\\\").replace("\"", "\\\"")).append("\":{");
+				sb.append("\"evaluations\":").append(values[0]);
+				sb.append(",\"transcription_ms\":").append(millis(values[1]));
+				sb.append(",\"evaluation_ms\":").append(millis(values[2])).append("}");
+				first = false;
+			}
+			sb.append("},\"allocated_bytes\":").append(allocatedBytes);
+			sb.append(",\"allocation_rate_bytes_per_second\":").append(allocationRate());
+			sb.append("}");
+			return sb.toString();
+		}
+	}
+
+	private double phaseMillis(Phase phase) {
+		GenerationRecord record = last;
+		return record == null ? 0 : millis(record.phaseNanos[phase.ordinal()]);
+	}
+
+	// MBean attributes, for the last complete generation.
+
+	@Override
+	public int getGeneration() {
+		GenerationRecord record = last;
+		return record == null ? -1 : record.generation;
+	}
+
+	@Override
+	public double getGenerationMillis() {
+		GenerationRecord record = last;
+		return record == null ? 0 : millis(record.generationNanos);
+	}
+
+	@Override
+	public double getEvaluationMillis() {
+		return phaseMillis(Phase.EVALUATION);
+	}
+
+	@Override
+	public double getSpeciationMillis() {
+		return phaseMillis(Phase.SPECIATION);
+	}
+
+	@Override
+	public double getSelectionMillis() {
+		return phaseMillis(Phase.SELECTION);
+	}
+
+	@Override
+	public double getReproductionMillis() {
+		return phaseMillis(Phase.REPRODUCTION);
+	}
+
+	@Override
+	public double getMutationMillis() {
+		return phaseMillis(Phase.MUTATION);
+	}
+
+	@Override
+	public double getCloneCullingMillis() {
+		return phaseMillis(Phase.CLONE_CULLING);
+	}
+
+	@Override
+	public double getOtherMillis() {
+		return phaseMillis(Phase.OTHER);
+	}
+
+	@Override
+	public int getEvaluations() {
+		GenerationRecord record = last;
+		return record == null ? 0 : record.evaluations;
+	}
+
+	@Override
+	public double getEvaluationsPerSecond() {
+		GenerationRecord record = last;
+		return record == null ? 0 : record.evaluationsPerSecond();
+	}
+
+	@Override
+	public double getTranscriptionMillis() {
+		GenerationRecord record = last;
+		return record == null ? 0 : millis(record.transcriptionNanos);
+	}
+
+	@Override
+	public double getEvaluatorMillis() {
+		GenerationRecord record = last;
+		return record == null ? 0 : millis(record.evaluatorNanos);
+	}
+
+	@Override
+	public double getMaxThreadBusyMillis() {
+		GenerationRecord record = last;
+		return record == null ? 0 : millis(record.maxThreadBusyNanos);
+	}
+
+	@Override
+	public long getAllocatedBytes() {
+		GenerationRecord record = last;
+		return record == null ? -1 : record.allocatedBytes;
+	}
+
+	@Override
+	public double getAllocationRate() {
+		GenerationRecord record = last;
+		return record == null ? -1 : record.allocationRate();
+	}
+}
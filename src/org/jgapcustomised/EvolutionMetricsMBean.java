@@ -0,0 +1,72 @@
+package org.jgapcustomised;
+
+/**
+ * JMX management interface for {@link EvolutionMetrics}. All attributes refer to the most recently completed
+ * generation. Times are in milliseconds.
+ *
+ * @author Oliver Coleman
+ */
+public interface EvolutionMetricsMBean {
+	/**
+	 * @return The generation number, or -1 if no generation has been completed.
+	 */
+	public int getGeneration();
+
+	/**
+	 * @return The total time taken by {@link Genotype#evolve()}.
+	 */
+	public double getGenerationMillis();
+
+	public double getEvaluationMillis();
+
+	public double getSpeciationMillis();
+
+	public double getSelectionMillis();
+
+	public double getReproductionMillis();
+
+	public double getMutationMillis();
+
+	public double getCloneCullingMillis();
+
+	/**
+	 * @return The time not accounted for by the other phases.
+	 */
+	public double getOtherMillis();
+
+	/**
+	 * @return The number of individuals evaluated.
+	 */
+	public int getEvaluations();
+
+	/**
+	 * @return The number of individuals evaluated divided by the duration of the evaluation phase.
+	 */
+	public double getEvaluationsPerSecond();
+
+	/**
+	 * @return The total time spent by all evaluation threads transcribing individuals.
+	 */
+	public double getTranscriptionMillis();
+
+	/**
+	 * @return The total time spent by all evaluation threads evaluating individuals, not including transcription.
+	 */
+	public double getEvaluatorMillis();
+
+	/**
+	 * @return The largest transcription plus evaluation time of any single evaluation thread. Comparing this to the
+	 *         evaluation phase time indicates how well the work was balanced across threads.
+	 */
+	public double getMaxThreadBusyMillis();
+
+	/**
+	 * @return The number of bytes allocated by all threads during the generation, or -1 if not supported by the JVM.
+	 */
+	public long getAllocatedBytes();
+
+	/**
+	 * @return The number of bytes allocated per second during the generation, or -1 if not supported by the JVM.
+	 */
+	public double getAllocationRate();
+}
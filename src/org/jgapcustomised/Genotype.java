@@ -24,8 +24,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.jgapcustomised.event.GeneticEvent;
 
@@ -281,8 +283,12 @@ public class Genotype implements Serializable {
 	public synchronized Chromosome evolve() {
 		try {
 			m_activeConfiguration.lockSettings();
+			m_activeConfiguration.setGeneration(generation);
 			BulkFitnessFunction bulkFunction = m_activeConfiguration.getBulkFitnessFunction();
 			Iterator<Chromosome> it;
+			EvolutionMetrics metrics = m_activeConfiguration.getMetrics();
+			metrics.startGeneration();
+			long phaseStart;
 			
 			// Reset evaluation data for all members of the population.
 			for (Chromosome c : m_chromosomes) {
@@ -298,6 +304,8 @@ public class Genotype implements Serializable {
 			// function so that it can evaluate and assign fitness values to
 			// each of the Chromosomes.
 			// --------------------------------------------------------------
+			phaseStart = metrics.time();
+			metrics.setEvaluationCount(m_chromosomes.size());
 			if (bulkFunction != null) {
 				bulkFunction.evaluate(m_chromosomes);
 			} else {
@@ -312,6 +320,7 @@ public class Genotype implements Serializable {
 					c.setFitnessValue(fitness);
 				}
 			}
+			metrics.endPhase(EvolutionMetrics.Phase.EVALUATION, phaseStart);
 			
 			// Fire an event to indicate we've evaluated all chromosomes.
 			// -------------------------------------------------------
@@ -336,7 +345,9 @@ public class Genotype implements Serializable {
 			}
 			
 			// Speciate population.
+			phaseStart = metrics.time();
 			m_specStrategy.speciate(m_chromosomes, m_species, this);
+			metrics.endPhase(EvolutionMetrics.Phase.SPECIATION, phaseStart);
 			// Update originalSize for each species.
 			for (Species species : m_species) {
 				species.originalSize = species.size();
@@ -388,18 +399,22 @@ public class Genotype implements Serializable {
 			// Select chromosomes to generate new population from, and determine elites that will survive unchanged to next generation.
 			// Note that speciation must occur before selection to allow selecting correct proportion of parents and elites for each species.
 			// ------------------------------------------------------------
+			phaseStart = metrics.time();
 			NaturalSelector selector = m_activeConfiguration.getNaturalSelector();
 			selector.add(m_activeConfiguration, m_species, m_chromosomes, bestPerforming);
 			m_chromosomes = selector.select(m_activeConfiguration);
 			selector.empty();
+			// Used for constant time membership tests of the selected chromosomes, rather than searching m_chromosomes.
+			Set<Chromosome> selected = new HashSet<Chromosome>(m_chromosomes);
+			metrics.endPhase(EvolutionMetrics.Phase.SELECTION, phaseStart);
 			
 			assert m_species.contains(bestPerforming.getSpecie()) : "Species containing global bestPerforming removed from species list.";
-			assert m_chromosomes.contains(bestPerforming) : "Global bestPerforming removed from population." + bestPerforming;
+			assert selected.contains(bestPerforming) : "Global bestPerforming removed from population." + bestPerforming;
 			
 			
 			// Find fittest individual (this has been moved from just below bulkFunction.evaluate(m_chromosomes) because now the
 			// selector can change the overall fitness, which is what we're using here.
-			if (previousFittest != null && m_chromosomes.contains(previousFittest)) {
+			if (previousFittest != null && selected.contains(previousFittest)) {
 				// Attempt to reuse previous fittest if available.
 				fittest = previousFittest;
 			}
@@ -414,6 +429,7 @@ public class Genotype implements Serializable {
 			previousFittest = fittest;
 			
 			// For each species calculate the average (shared) fitness value and then cull it down to contain only parent chromosomes.
+			phaseStart = metrics.time();
 			Iterator<Species> speciesIter = m_species.iterator();
 			while (speciesIter.hasNext()) {
 				Species s = speciesIter.next();
@@ -422,14 +438,15 @@ public class Genotype implements Serializable {
 				s.calculateAverageFitness();
 
 				// Remove any individuals not selected as parents from the species.
-				s.cull(m_chromosomes);
+				s.cull(selected);
 			}
+			metrics.endPhase(EvolutionMetrics.Phase.SELECTION, phaseStart);
 			if (m_species.isEmpty()) {
 				logger.info("All species removed!");
 			}
 			
 			assert m_species.contains(bestPerforming.getSpecie()) : "Species containing global bestPerforming removed from species list.";
-			assert m_chromosomes.contains(bestPerforming) : "Global bestPerforming removed from population.";
+			assert selected.contains(bestPerforming) : "Global bestPerforming removed from population.";
 			
 
 			// Repopulate the population of species and chromosomes with those selected
@@ -440,17 +457,46 @@ public class Genotype implements Serializable {
 			m_activeConfiguration.getEventManager().fireGeneticEvent(new GeneticEvent(GeneticEvent.GENOTYPE_START_GENETIC_OPERATORS_EVENT, this));
 
 			
-			// Execute Reproduction Operators.
+			// Execute Reproduction and Mutation Operators.
 			// -------------------------------------
 			List<ChromosomeMaterial> offspring = new ArrayList<ChromosomeMaterial>();
-			for (ReproductionOperator operator : m_activeConfiguration.getReproductionOperators()) {
-				operator.reproduce(m_activeConfiguration, m_species, offspring);
-			}
-			
-			// Execute Mutation Operators.
-			// -------------------------------------
-			for (MutationOperator operator : m_activeConfiguration.getMutationOperators()) {
-				operator.mutate(m_activeConfiguration, offspring);
+			List<Chromosome> pipelinedOffspring = null;
+			if (m_activeConfiguration.isPipelinedEvolution() && bulkFunction != null) {
+				// Complete the offspring produced by each reproduction operator in turn and hand them to the fitness
+				// function, so that it may begin preparing them for evaluation while the remaining reproduction
+				// operators are run and the remaining offspring are completed.
+				pipelinedOffspring = new ArrayList<Chromosome>();
+				for (ReproductionOperator reproductionOperator : m_activeConfiguration.getReproductionOperators()) {
+					phaseStart = metrics.time();
+					int batchStart = offspring.size();
+					reproductionOperator.reproduce(m_activeConfiguration, m_species, offspring);
+					metrics.endPhase(EvolutionMetrics.Phase.REPRODUCTION, phaseStart);
+					
+					phaseStart = metrics.time();
+					for (ChromosomeMaterial material : offspring.subList(batchStart, offspring.size())) {
+						if (material.shouldMutate()) {
+							for (MutationOperator operator : m_activeConfiguration.getMutationOperators()) {
+								operator.mutate(m_activeConfiguration, material);
+							}
+						}
+						Chromosome chrom = new Chromosome(material, m_activeConfiguration.nextChromosomeId(), m_activeConfiguration.getObjectiveCount(), m_activeConfiguration.getNoveltyObjectiveCount());
+						pipelinedOffspring.add(chrom);
+						bulkFunction.offspringCreated(chrom);
+					}
+					metrics.endPhase(EvolutionMetrics.Phase.MUTATION, phaseStart);
+				}
+			} else {
+				phaseStart = metrics.time();
+				for (ReproductionOperator operator : m_activeConfiguration.getReproductionOperators()) {
+					operator.reproduce(m_activeConfiguration, m_species, offspring);
+				}
+				metrics.endPhase(EvolutionMetrics.Phase.REPRODUCTION, phaseStart);
+				
+				phaseStart = metrics.time();
+				for (MutationOperator operator : m_activeConfiguration.getMutationOperators()) {
+					operator.mutate(m_activeConfiguration, offspring);
+				}
+				metrics.endPhase(EvolutionMetrics.Phase.MUTATION, phaseStart);
 			}
 			
 
@@ -472,12 +518,22 @@ public class Genotype implements Serializable {
 			
 			// Add offspring
 			// ------------------------------
-			addChromosomesFromMaterial(offspring);
+			if (pipelinedOffspring != null) {
+				addChromosomes(pipelinedOffspring);
+			} else {
+				addChromosomesFromMaterial(offspring);
+			}
 			
+			phaseStart = metrics.time();
+			// Collect the clones from all species and remove them from the population in a single pass.
+			Set<Chromosome> removed = new HashSet<Chromosome>();
 			for (Species s : m_species) {
-				List<Chromosome> removed = s.cullClones();
+				removed.addAll(s.cullClones());
+			}
+			if (!removed.isEmpty()) {
 				m_chromosomes.removeAll(removed);
 			}
+			metrics.endPhase(EvolutionMetrics.Phase.CLONE_CULLING, phaseStart);
 			
 			// Do we really care if we're a little bit off the target population size?
 			// In case we're off due to rounding errors
@@ -498,6 +554,7 @@ public class Genotype implements Serializable {
 			// -------------------------------------------------------
 			m_activeConfiguration.getEventManager().fireGeneticEvent(new GeneticEvent(GeneticEvent.GENOTYPE_EVOLVED_EVENT, this));
 
+			metrics.endGeneration(generation);
 			
 			generation++;
 		} catch (InvalidConfigurationException e) {
@@ -0,0 +1,114 @@
+package org.jgapcustomised;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * An immutable view of the state of a {@link Genotype} at the time a genetic event was fired. This is the source of
+ * the events delivered to asynchronous listeners (see
+ * {@link org.jgapcustomised.event.EventManager#addEventListener(String, org.jgapcustomised.event.GeneticEventListener, boolean)}),
+ * as the Genotype itself will usually have moved on to the next generation by the time the event is processed.
+ *
+ * The Chromosomes in a snapshot are copies of those in the population at the time the snapshot was taken (see
+ * {@link Chromosome#snapshot()}), so their evaluation data (fitness, performance and novelty values, rank, species
+ * etc) are those of the generation the snapshot was taken in, even if the Genotype has since re-evaluated the
+ * original Chromosomes. The genetic material of a Chromosome does not change once it is created, so it is shared with
+ * the original rather than copied.
+ *
+ * @author Oliver Coleman
+ */
+public class GenotypeSnapshot {
+	private final int generation;
+	private final List<Chromosome> chromosomes;
+	private final int speciesCount;
+	private final Chromosome fittest;
+	private final double fittestFitness;
+	private final Chromosome bestPerforming;
+	private final double bestPerformance;
+
+	/**
+	 * Create a snapshot of the current state of the given Genotype.
+	 */
+	public GenotypeSnapshot(Genotype genotype) {
+		synchronized (genotype) {
+			generation = genotype.getGeneration();
+			List<Chromosome> population = genotype.getChromosomes();
+			IdentityHashMap<Chromosome, Chromosome> copies = new IdentityHashMap<Chromosome, Chromosome>(population.size() * 2);
+			ArrayList<Chromosome> list = new ArrayList<Chromosome>(population.size());
+			for (Chromosome c : population) {
+				list.add(copy(c, copies));
+			}
+			chromosomes = Collections.unmodifiableList(list);
+			speciesCount = genotype.getSpecies().size();
+			fittest = copy(genotype.getFittestChromosome(), copies);
+			bestPerforming = copy(genotype.getBestPerforming(), copies);
+		}
+		fittestFitness = fittest != null ? fittest.getFitnessValue() : Double.NaN;
+		bestPerformance = bestPerforming != null ? bestPerforming.getPerformanceValue() : Double.NaN;
+	}
+
+	// Returns the copy of the given Chromosome, creating it if necessary, so that a Chromosome occurring more than once
+	// in the snapshot (eg as both a member of the population and the fittest) is copied only once.
+	private static Chromosome copy(Chromosome c, IdentityHashMap<Chromosome, Chromosome> copies) {
+		if (c == null)
+			return null;
+		Chromosome copy = copies.get(c);
+		if (copy == null) {
+			copy = c.snapshot();
+			copies.put(c, copy);
+		}
+		return copy;
+	}
+
+	/**
+	 * @return The generation the Genotype was at when this snapshot was taken.
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return An unmodifiable list of copies of the Chromosomes in the population when this snapshot was taken.
+	 */
+	public List<Chromosome> getChromosomes() {
+		return chromosomes;
+	}
+
+	/**
+	 * @return The number of species when this snapshot was taken.
+	 */
+	public int getSpeciesCount() {
+		return speciesCount;
+	}
+
+	/**
+	 * @return The Chromosome with the highest overall fitness value when this snapshot was taken, or null if the
+	 *         population was empty.
+	 */
+	public Chromosome getFittestChromosome() {
+		return fittest;
+	}
+
+	/**
+	 * @return The overall fitness value of the fittest Chromosome when this snapshot was taken.
+	 */
+	public double getFittestFitness() {
+		return fittestFitness;
+	}
+
+	/**
+	 * @return The best performing Chromosome when this snapshot was taken, or null if it had not been determined.
+	 */
+	public Chromosome getBestPerforming() {
+		return bestPerforming;
+	}
+
+	/**
+	 * @return The performance value of the best performing Chromosome when this snapshot was taken.
+	 */
+	public double getBestPerformance() {
+		return bestPerformance;
+	}
+}
@@ -108,9 +108,7 @@ public abstract class NaturalSelector {
 			// remove least fittest from selected
 			Collections.sort(result, new ChromosomeFitnessComparator(true /* asc */, speciatedFitness /* speciated fitness */));
 			int numToRemove = result.size() - numToSelect;
-			for (int i = 0; i < numToRemove; ++i) {
-				result.remove(0);
-			}
+			result.subList(0, numToRemove).clear();
 		} else if (result.size() < numToSelect) {
 			int moreToSelect = numToSelect - result.size();
 			List<Chromosome> more = select(config, moreToSelect);
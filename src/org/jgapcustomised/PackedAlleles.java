@@ -0,0 +1,329 @@
+package org.jgapcustomised;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+
+import com.anji.neat.ConnectionAllele;
+import com.anji.neat.NeuronAllele;
+
+/**
+ * A compact, immutable, array-based representation of a set of {@link Allele}s, consisting of the innovation IDs of
+ * the alleles in ascending order and parallel arrays of allele values and type tags. Compatibility distance, crossover
+ * and centroid calculations can be performed directly on the arrays without iterating over or allocating Allele
+ * objects. Instances may be converted back to the equivalent set of Alleles via {@link #toAlleles()}.
+ *
+ * Because instances are immutable they may be shared between threads and between {@link ChromosomeMaterial}s that
+ * contain equivalent alleles.
+ *
+ * @see ChromosomeMaterial#getPackedAlleles()
+ * @author Oliver Coleman
+ */
+public class PackedAlleles {
+	/**
+	 * Type tag for {@link NeuronAllele}s.
+	 */
+	public static final byte TYPE_NEURON = 0;
+	/**
+	 * Type tag for {@link ConnectionAllele}s.
+	 */
+	public static final byte TYPE_CONNECTION = 1;
+	/**
+	 * Type tag for all other Allele types.
+	 */
+	public static final byte TYPE_OTHER = 2;
+
+	/**
+	 * An empty set of alleles.
+	 */
+	public static final PackedAlleles EMPTY = new PackedAlleles(new long[0], new double[0], new byte[0], new Allele[0]);
+
+	private final long[] innovationIds;
+	private final double[] values;
+	private final byte[] types;
+	// Alleles used as prototypes when converting back to Alleles. The values of the prototypes are not used.
+	private final Allele[] prototypes;
+	// Cached result of getFingerprint(), 0 if not yet calculated.
+	private volatile long fingerprint;
+
+	private PackedAlleles(long[] innovationIds, double[] values, byte[] types, Allele[] prototypes) {
+		this.innovationIds = innovationIds;
+		this.values = values;
+		this.types = types;
+		this.prototypes = prototypes;
+	}
+
+	/**
+	 * Create a packed representation of the given alleles.
+	 *
+	 * @param alleles The alleles, which must be sorted by innovation ID (as they are in a {@link ChromosomeMaterial}).
+	 */
+	public PackedAlleles(SortedSet<Allele> alleles) {
+		int size = alleles.size();
+		innovationIds = new long[size];
+		values = new double[size];
+		types = new byte[size];
+		prototypes = new Allele[size];
+		int i = 0;
+		for (Allele allele : alleles) {
+			innovationIds[i] = allele.getInnovationId();
+			values[i] = allele.getValue();
+			types[i] = allele instanceof ConnectionAllele ? TYPE_CONNECTION : (allele instanceof NeuronAllele ? TYPE_NEURON : TYPE_OTHER);
+			prototypes[i] = allele;
+			i++;
+		}
+	}
+
+	/**
+	 * @return The number of alleles.
+	 */
+	public int size() {
+		return innovationIds.length;
+	}
+
+	/**
+	 * @return The innovation ID of the allele at the given index. Innovation IDs are in ascending order.
+	 */
+	public long getInnovationId(int index) {
+		return innovationIds[index];
+	}
+
+	/**
+	 * @return The value of the allele at the given index.
+	 * @see Allele#getValue()
+	 */
+	public double getValue(int index) {
+		return values[index];
+	}
+
+	/**
+	 * @return The type tag of the allele at the given index, one of {@link #TYPE_NEURON}, {@link #TYPE_CONNECTION} or
+	 *         {@link #TYPE_OTHER}.
+	 */
+	public byte getType(int index) {
+		return types[index];
+	}
+
+	/**
+	 * @return The index of the allele with the given innovation ID, or a negative value if there is no such allele.
+	 */
+	public int indexOf(long innovationId) {
+		return Arrays.binarySearch(innovationIds, innovationId);
+	}
+
+	/**
+	 * @return A new copy of this set of alleles with the given values.
+	 */
+	public PackedAlleles withValues(double[] newValues) {
+		if (newValues.length != values.length)
+			throw new IllegalArgumentException("Number of values does not match number of alleles.");
+		return new PackedAlleles(innovationIds, newValues.clone(), types, prototypes);
+	}
+
+	/**
+	 * @return A copy of the values of the alleles.
+	 */
+	public double[] getValues() {
+		return values.clone();
+	}
+
+	/**
+	 * Returns a 64-bit fingerprint of this set of alleles. Sets of alleles which are equivalent according to
+	 * {@link ChromosomeMaterial#isEquivalent(ChromosomeMaterial)} have the same fingerprint, and sets which are not
+	 * equivalent have the same fingerprint only with very low probability, so the fingerprint may be used as a hash key
+	 * for equivalence, with the full equivalence test only required when fingerprints collide. The fingerprint does not
+	 * depend on object identity, so is stable across runs. It is calculated once and cached, and so is shared by all
+	 * {@link ChromosomeMaterial}s sharing this instance (for example clones that have not been mutated).
+	 */
+	public long getFingerprint() {
+		long f = fingerprint;
+		if (f == 0) {
+			f = mix(innovationIds.length);
+			for (int i = 0; i < values.length; i++) {
+				// Equivalence compares values with ==, so 0.0 and -0.0 must hash the same.
+				long valueBits = values[i] == 0 ? 0 : Double.doubleToLongBits(values[i]);
+				f = mix(f + mix(prototypes[i].getStructuralHash() ^ mix(valueBits)));
+			}
+			if (f == 0) {
+				f = 1;
+			}
+			fingerprint = f;
+		}
+		return f;
+	}
+
+	// The finaliser of the SplitMix64 generator, a fast bijective mix of the bits of a 64-bit value.
+	private static long mix(long z) {
+		z += 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Create a new set of Allele objects equivalent to this packed representation.
+	 *
+	 * @return The new alleles, sorted by innovation ID.
+	 */
+	public List<Allele> toAlleles() {
+		List<Allele> alleles = new ArrayList<Allele>(prototypes.length);
+		for (int i = 0; i < prototypes.length; i++) {
+			Allele allele = prototypes[i].cloneAllele();
+			allele.setValue(values[i]);
+			alleles.add(allele);
+		}
+		return alleles;
+	}
+
+	/**
+	 * Calculates compatibility distance between this and <code>target</code> according to <a
+	 * href="http://nn.cs.utexas.edu/downloads/papers/stanley.ec02.pdf">NEAT </a> speciation methodology. Produces the
+	 * same result as {@link ChromosomeMaterial#distance(ChromosomeMaterial, SpeciationParms)} for the equivalent
+	 * ChromosomeMaterials.
+	 *
+	 * @param target
+	 * @param speciationParms
+	 * @return distance between this object and <code>target</code>
+	 */
+	public double distance(PackedAlleles target, SpeciationParms speciationParms) {
+		boolean useValues = speciationParms.specieCompatMismatchUseValues();
+		double disjointCountOrValueSum = 0, excessCountOrValueSum = 0, commonCount = 0;
+		double weightDifference = 0;
+		long[] thisIds = innovationIds, targetIds = target.innovationIds;
+		double[] thisValues = values, targetValues = target.values;
+		int thisSize = thisIds.length, targetSize = targetIds.length;
+		int maxSize = Math.max(thisSize, targetSize);
+
+		// Iterate through this and target alleles counting up common and disjoint genes as we go.
+		int i = 0, j = 0;
+		while (i < thisSize && j < targetSize) {
+			if (thisIds[i] == targetIds[j]) {
+				commonCount++;
+				weightDifference += Math.abs(thisValues[i] - targetValues[j]);
+				i++;
+				j++;
+			} else if (thisIds[i] < targetIds[j]) {
+				disjointCountOrValueSum += useValues ? thisValues[i] : 1;
+				i++;
+			} else {
+				disjointCountOrValueSum += useValues ? targetValues[j] : 1;
+				j++;
+			}
+		}
+		// Any remaining genes are outside the range of innovation IDs of the other set of genes, so are excess.
+		for (; i < thisSize; i++) {
+			excessCountOrValueSum += useValues ? thisValues[i] : 1;
+		}
+		for (; j < targetSize; j++) {
+			excessCountOrValueSum += useValues ? targetValues[j] : 1;
+		}
+
+		if (speciationParms.specieCompatNormalise()) {
+			excessCountOrValueSum /= maxSize;
+			disjointCountOrValueSum /= maxSize;
+			if (commonCount > 0)
+				weightDifference /= commonCount;
+		}
+
+		return (speciationParms.getSpecieCompatExcessCoeff() * excessCountOrValueSum) + (speciationParms.getSpecieCompatDisjointCoeff() * disjointCountOrValueSum) + (speciationParms.getSpecieCompatCommonCoeff() * weightDifference);
+	}
+
+	/**
+	 * Performs crossover where the child inherits all structure (genes) from the dominant parent, and the values for
+	 * genes the parents have in common are either taken from one of the parents or a blend of the values from both
+	 * parents, with equal probability.
+	 *
+	 * @param dominant The dominant parent.
+	 * @param recessive The recessive parent.
+	 * @param random The random number generator to use.
+	 * @return The child.
+	 */
+	public static PackedAlleles crossover(PackedAlleles dominant, PackedAlleles recessive, Random random) {
+		long[] domIds = dominant.innovationIds, recIds = recessive.innovationIds;
+		double[] domValues = dominant.values, recValues = recessive.values;
+		double[] childValues = domValues.clone();
+		int j = 0;
+		for (int i = 0; i < domIds.length; i++) {
+			while (j < recIds.length && recIds[j] < domIds[i])
+				j++;
+			if (j == recIds.length)
+				break;
+			if (recIds[j] == domIds[i]) {
+				int valueSwitch = random.nextInt(3);
+				// valueSwitch == 0 means we use dominant allele value, nothing to do.
+				if (valueSwitch == 1) {
+					// Use recessive allele value.
+					childValues[i] = recValues[j];
+				} else if (valueSwitch == 2) {
+					// Use value somewhere between those from both parents.
+					double s = random.nextDouble();
+					childValues[i] = domValues[i] * s + recValues[j] * (1 - s);
+				}
+			}
+		}
+		return new PackedAlleles(domIds, childValues, dominant.types, dominant.prototypes);
+	}
+
+	/**
+	 * Calculates the component-wise mean of the given sets of alleles, where an allele that does not occur in a set
+	 * contributes nothing to the sum for that allele (but the sum is still divided by the total number of sets).
+	 *
+	 * @param sets The sets of alleles.
+	 * @return The mean, containing the union of the alleles in the given sets.
+	 */
+	public static PackedAlleles mean(Collection<PackedAlleles> sets) {
+		if (sets.isEmpty())
+			return EMPTY;
+
+		// Merge each set into the running totals in turn. Both are sorted by innovation ID.
+		long[] ids = new long[0];
+		double[] totals = new double[0];
+		byte[] types = new byte[0];
+		Allele[] prototypes = new Allele[0];
+		for (PackedAlleles set : sets) {
+			int maxSize = ids.length + set.innovationIds.length;
+			long[] newIds = new long[maxSize];
+			double[] newTotals = new double[maxSize];
+			byte[] newTypes = new byte[maxSize];
+			Allele[] newPrototypes = new Allele[maxSize];
+			int i = 0, j = 0, k = 0;
+			while (i < ids.length || j < set.innovationIds.length) {
+				if (j == set.innovationIds.length || (i < ids.length && ids[i] < set.innovationIds[j])) {
+					newIds[k] = ids[i];
+					newTotals[k] = totals[i];
+					newTypes[k] = types[i];
+					newPrototypes[k] = prototypes[i];
+					i++;
+				} else if (i == ids.length || set.innovationIds[j] < ids[i]) {
+					newIds[k] = set.innovationIds[j];
+					newTotals[k] = set.values[j];
+					newTypes[k] = set.types[j];
+					newPrototypes[k] = set.prototypes[j];
+					j++;
+				} else {
+					newIds[k] = ids[i];
+					newTotals[k] = totals[i] + set.values[j];
+					newTypes[k] = types[i];
+					newPrototypes[k] = prototypes[i];
+					i++;
+					j++;
+				}
+				k++;
+			}
+			ids = k == maxSize ? newIds : Arrays.copyOf(newIds, k);
+			totals = k == maxSize ? newTotals : Arrays.copyOf(newTotals, k);
+			types = k == maxSize ? newTypes : Arrays.copyOf(newTypes, k);
+			prototypes = k == maxSize ? newPrototypes : Arrays.copyOf(newPrototypes, k);
+		}
+
+		// For speed we multiply by reciprocal instead of dividing by count.
+		double countReciprocal = 1.0 / sets.size();
+		for (int i = 0; i < totals.length; i++) {
+			totals[i] *= countReciprocal;
+		}
+		return new PackedAlleles(ids, totals, types, prototypes);
+	}
+}
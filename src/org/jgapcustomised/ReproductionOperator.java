@@ -23,8 +23,10 @@ package org.jgapcustomised;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.jgapcustomised.impl.CloneReproductionOperator;
 
@@ -65,7 +67,14 @@ public abstract class ReproductionOperator {
 			if (parentSpecies.isEmpty()) {
 				throw new IllegalStateException("no parent species from which to produce offspring");
 			}
-			final List<ChromosomeMaterial> newOffspring = Collections.synchronizedList(new ArrayList<ChromosomeMaterial>(targetNewOffspringCount));
+			final List<ChromosomeMaterial> newOffspring = new ArrayList<ChromosomeMaterial>(targetNewOffspringCount);
+			// Offspring are collected per species and then combined in species order, so that the result does not
+			// depend on the order in which species are processed by the threads.
+			final Map<Species, List<ChromosomeMaterial>> speciesOffspring = new IdentityHashMap<Species, List<ChromosomeMaterial>>();
+			for (Species species : parentSpecies) {
+				speciesOffspring.put(species, new ArrayList<ChromosomeMaterial>());
+			}
+			final long operatorKey = getClass().getName().hashCode();
 
 			// calculate total fitness
 			double totalSpeciesFitnessTemp = 0;
@@ -85,16 +94,25 @@ public abstract class ReproductionOperator {
 						if (numSpecieOffspring <= 0 && (getSlice() > 0.5 || getClass().equals(CloneReproductionOperator.class)))
 							numSpecieOffspring = 1;
 						
-						if (numSpecieOffspring > 0)
+						if (numSpecieOffspring > 0) {
+							// Use a random stream specific to this operator and species so that results are
+							// reproducible regardless of thread scheduling.
+							config.setTaskRandomGenerator(config.newTaskRandomGenerator(operatorKey, species.getID()));
 							try {
-								reproduce(config, species.getChromosomes(), numSpecieOffspring, newOffspring);
+								reproduce(config, species.getChromosomes(), numSpecieOffspring, speciesOffspring.get(species));
 							} catch (InvalidConfigurationException e) {
 								e.printStackTrace();
+							} finally {
+								config.setTaskRandomGenerator(null);
 							}
+						}
 					}
 				}
 				
 			});
+			for (Species species : parentSpecies) {
+				newOffspring.addAll(speciesOffspring.get(species));
+			}
 			
 			// Remove random offspring if we have too many.
 			while (newOffspring.size() > targetNewOffspringCount) {
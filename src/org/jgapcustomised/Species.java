@@ -23,9 +23,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Species are reproductively isolated segments of a population. They are used to ensure diversity in the population.
@@ -65,9 +68,10 @@ public class Species {
 
 	/**
 	 * chromosomes active in current population; these logically should be a <code>Set</code>, but we use a
-	 * <code>List</code> to make random selection easier, specifically in <code>ReproductionOperator</code>
+	 * <code>List</code> to make random selection easier, specifically in <code>ReproductionOperator</code>. Membership
+	 * is tracked by {@link Chromosome#getSpecie()}, so that it can be tested in constant time.
 	 */
-	private List<Chromosome> chromosomes = Collections.synchronizedList(new LinkedList<Chromosome>());
+	private List<Chromosome> chromosomes = Collections.synchronizedList(new ArrayList<Chromosome>());
 
 	private ChromosomeMaterial representative = null;
 
@@ -173,8 +177,7 @@ public class Species {
 		}
 		// if (chromosomes.isEmpty() && !match(aChromosome))
 		// throw new IllegalArgumentException("chromosome does not match specie: " + aChromosome);
-		if (chromosomes.contains(aChromosome))
-			return false;
+		// A Chromosome with no species is not a member of any species, so there's no need to search the member list.
 		aChromosome.setSpecie(this);
 		bestPerforming = null; // Set to null rather than test as the performance comparator checks ID as well as performance
 		return chromosomes.add(aChromosome);
@@ -185,14 +188,12 @@ public class Species {
 	 * @return true if chromosome was removed, false if chromosome not a member of this specie
 	 */
 	public boolean remove(Chromosome aChromosome) {
-		int index = chromosomes.indexOf(aChromosome);
-		if (index == -1) {
+		if (aChromosome.getSpecie() != this || !chromosomes.remove(aChromosome)) {
 			return false;
 		}
 		aChromosome.resetSpecie();
 		if (aChromosome == bestPerforming)
 			bestPerforming = null;
-		chromosomes.remove(index);
 		return true;
 	}
 	
@@ -260,16 +261,24 @@ public class Species {
 	 * Remove all chromosomes from this specie except <code>keepers</code> NOTE: this method does not update the species
 	 * field in the removed Chromosomes.
 	 * 
-	 * @param keepers <code>Collection</code> contains chromosome objects
+	 * @param keepers <code>Collection</code> contains chromosome objects. If this is the whole population it should be
+	 *            a <code>Set</code>, so that culling takes time linear in the size of this species; other collections are
+	 *            copied to a <code>Set</code> first.
 	 */
+	@SuppressWarnings("unchecked")
 	public void cull(Collection<Chromosome> keepers) {
-		Iterator<Chromosome> it = chromosomes.iterator();
-		while (it.hasNext()) {
-			Chromosome e = it.next();
-			if (!keepers.contains(e)) {
-				e.resetSpecie();
-				it.remove();
+		Set<Chromosome> keeperSet = keepers instanceof Set ? (Set<Chromosome>) keepers : new HashSet<Chromosome>(keepers);
+		synchronized (chromosomes) {
+			int kept = 0;
+			for (int i = 0; i < chromosomes.size(); i++) {
+				Chromosome e = chromosomes.get(i);
+				if (keeperSet.contains(e)) {
+					chromosomes.set(kept++, e);
+				} else {
+					e.resetSpecie();
+				}
 			}
+			truncate(kept);
 		}
 		bestPerforming = null;
 	}
@@ -278,17 +287,27 @@ public class Species {
 	 * remove all non-elite chromosomes from this species, except for population-wide bestPerforming
 	 */
 	public void cullToElites(Chromosome popBestPerforming) {
-		Iterator<Chromosome> it = chromosomes.iterator();
-		while (it.hasNext()) {
-			Chromosome e = it.next();
-			if (!e.isElite && e != popBestPerforming) {
-				e.resetSpecie();
-				it.remove();
+		synchronized (chromosomes) {
+			int kept = 0;
+			for (int i = 0; i < chromosomes.size(); i++) {
+				Chromosome e = chromosomes.get(i);
+				if (e.isElite || e == popBestPerforming) {
+					chromosomes.set(kept++, e);
+				} else {
+					e.resetSpecie();
+				}
 			}
+			truncate(kept);
 		}
 		bestPerforming = null;
 	}
 
+	// Remove the chromosomes from the given index onwards, after the ones to keep have been compacted to the front of
+	// the list. Must be called while holding the lock on chromosomes.
+	private void truncate(int size) {
+		chromosomes.subList(size, chromosomes.size()).clear();
+	}
+
 	/**
 	 * update internal variables (bestPerforming, stagnantGenerationsCount) to begin new generation
 	 */
@@ -504,12 +523,13 @@ public class Species {
 
 	public void setElites(List<Chromosome> elites) {
 		eliteCount = 0;
+		Set<Chromosome> eliteSet = new HashSet<Chromosome>(elites);
 		for (Chromosome c : chromosomes) {
 			if (c.getSpecie() != this) {
 				throw new IllegalStateException("The Chromosome to set as elite in a species is not a member of the species.");
 			}
 			
-			if (elites.contains(c)) {
+			if (eliteSet.contains(c)) {
 				c.isElite = true;
 				eliteCount++;
 			}
@@ -534,6 +554,8 @@ public class Species {
 
 	/**
 	 * Remove the clones from this species, as determined by {@link org.jgapcustomised.Chromosome#isEquivalent(Chromosome)}.
+	 * Chromosomes are grouped by {@link Chromosome#getFingerprint()}, so this takes time linear in the size of the
+	 * species rather than comparing every pair of Chromosomes.
 	 */
 	@SuppressWarnings("unchecked")
 	public List<Chromosome> cullClones() {
@@ -552,21 +574,55 @@ public class Species {
 		}
 		
 		List<Chromosome> toRemove = new ArrayList<Chromosome>();
-		for (int i = 0; i < chromosomesArr.size(); i++) {
-			Chromosome c1 = chromosomesArr.get(i);
-			for (int j = i+1; j < chromosomesArr.size(); j++) {
-				Chromosome c2 = chromosomesArr.get(j);
-				if (!toRemove.contains(c2) && c1.isEquivalent(c2)) {
-					assert (c2 != bestPerforming) : "shouldn't remove best performing, index is " + j + "\n" + chromosomesArr + "\n" + chromosomes;
-					toRemove.add(c2);
-					originalSize--;
+		Set<Chromosome> toRemoveSet = new HashSet<Chromosome>();
+		// The first Chromosome with each distinct genome, keyed by fingerprint, so that each Chromosome need only be
+		// fully compared with those that have the same fingerprint. Non-equivalent Chromosomes with the same fingerprint
+		// are very rare, any after the first are kept in collisions.
+		Map<Long, Chromosome> distinct = new HashMap<Long, Chromosome>(chromosomesArr.size() * 2);
+		List<Chromosome> collisions = null;
+		for (Chromosome c : chromosomesArr) {
+			long fingerprint = c.getFingerprint();
+			Chromosome first = distinct.get(fingerprint);
+			if (first == null) {
+				distinct.put(fingerprint, c);
+				continue;
+			}
+			boolean isClone = first.isEquivalent(c);
+			if (!isClone && collisions != null) {
+				for (Chromosome other : collisions) {
+					if (other.getFingerprint() == fingerprint && other.isEquivalent(c)) {
+						isClone = true;
+						break;
+					}
 				}
 			}
+			if (isClone) {
+				assert (c != bestPerforming) : "shouldn't remove best performing\n" + chromosomesArr + "\n" + chromosomes;
+				toRemove.add(c);
+				toRemoveSet.add(c);
+				originalSize--;
+			} else {
+				if (collisions == null) {
+					collisions = new ArrayList<Chromosome>();
+				}
+				collisions.add(c);
+			}
 		}
 		
-		for (Chromosome c : toRemove) {
-			c.resetSpecie();
-			chromosomes.remove(c);
+		if (!toRemove.isEmpty()) {
+			for (Chromosome c : toRemove) {
+				c.resetSpecie();
+			}
+			synchronized (chromosomes) {
+				int kept = 0;
+				for (int i = 0; i < chromosomes.size(); i++) {
+					Chromosome c = chromosomes.get(i);
+					if (!toRemoveSet.contains(c)) {
+						chromosomes.set(kept++, c);
+					}
+				}
+				truncate(kept);
+			}
 		}
 		return toRemove;
 	}
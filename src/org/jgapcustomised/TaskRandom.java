@@ -0,0 +1,95 @@
+package org.jgapcustomised;
+
+import java.util.Random;
+
+/**
+ * A Random that draws every value from the generator returned by {@link Configuration#getRandomGenerator()} for a
+ * given Configuration. Code holding a reference to a TaskRandom thus uses the task random generator for the current
+ * thread if one has been set (see {@link Configuration#setTaskRandomGenerator(Random)}), and the main random
+ * generator otherwise. Until a Configuration is set the given fallback generator is used. The seed of a TaskRandom can
+ * not be set.
+ * 
+ * @author Oliver Coleman
+ */
+public class TaskRandom extends Random {
+	private static final long serialVersionUID = 1L;
+
+	private final Random fallback;
+	private volatile Configuration config;
+	// Random's constructor calls setSeed(), which should be allowed.
+	private final boolean constructed;
+
+	/**
+	 * @param fallback The generator to use until a Configuration is set, usually the main random generator.
+	 */
+	public TaskRandom(Random fallback) {
+		this.fallback = fallback;
+		constructed = true;
+	}
+
+	/**
+	 * Set the Configuration whose random generator should be used.
+	 */
+	public void setConfiguration(Configuration config) {
+		this.config = config;
+	}
+
+	private Random delegate() {
+		Configuration c = config;
+		return c != null ? c.getRandomGenerator() : fallback;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException The seed of a TaskRandom can not be set.
+	 */
+	@Override
+	public synchronized void setSeed(long seed) {
+		if (constructed)
+			throw new UnsupportedOperationException("The seed of a TaskRandom can not be set.");
+	}
+
+	@Override
+	protected int next(int bits) {
+		return delegate().nextInt() >>> (32 - bits);
+	}
+
+	@Override
+	public void nextBytes(byte[] bytes) {
+		delegate().nextBytes(bytes);
+	}
+
+	@Override
+	public int nextInt() {
+		return delegate().nextInt();
+	}
+
+	@Override
+	public int nextInt(int n) {
+		return delegate().nextInt(n);
+	}
+
+	@Override
+	public long nextLong() {
+		return delegate().nextLong();
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return delegate().nextBoolean();
+	}
+
+	@Override
+	public float nextFloat() {
+		return delegate().nextFloat();
+	}
+
+	@Override
+	public double nextDouble() {
+		return delegate().nextDouble();
+	}
+
+	@Override
+	public double nextGaussian() {
+		return delegate().nextGaussian();
+	}
+}
@@ -19,24 +19,83 @@
  */
 package org.jgapcustomised.event;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.jgapcustomised.Genotype;
+import org.jgapcustomised.GenotypeSnapshot;
+
+import com.ojcoleman.ahni.util.DaemonThreadFactory;
 
 /**
  * Manages event notification in the system. Observers that desire to be notified of genetic events should subscribe to
  * this class via the addEventListener() method. To unsubscribe, use the removeEventListener() method. To generate a
  * genetic event, use the fireGeneticEvent() method, which will take care of notifying the appropriate subscribers.
+ * <p>
+ * Listeners may be subscribed as asynchronous, in which case they are notified of events on a background thread, in
+ * the order the events were fired, so that the thread firing the event (usually the evolution thread) does not wait
+ * for them (for example to write data to disk). Events are held in a bounded queue until they are delivered, see
+ * {@link #setAsyncQueue(int, OverflowPolicy)}. If the source of an event is a {@link Genotype} then asynchronous
+ * listeners receive an event with the same name whose source is a {@link GenotypeSnapshot} of it. When a
+ * {@link GeneticEvent#RUN_COMPLETED_EVENT} is fired, fireGeneticEvent() does not return until all pending
+ * asynchronous notifications have been delivered.
+ * </p>
  */
 public class EventManager {
+	private static Logger logger = Logger.getLogger(EventManager.class);
+
+	/**
+	 * Policies for handling an asynchronous event when the queue of pending asynchronous events is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The thread firing the event waits until there is space in the queue.
+		 */
+		BLOCK,
+		/**
+		 * The event is not delivered to the asynchronous listeners (a warning is logged).
+		 */
+		DISCARD
+	}
+
 	/**
 	 * References a Map of subscribed event listeners. Each key is an event name, and each value is a List of listeners
 	 * subscribed to that event.
 	 */
 	private Map m_listeners = new HashMap();
 
+	/**
+	 * As for m_listeners, but for listeners subscribed to be notified asynchronously.
+	 */
+	private Map m_asyncListeners = new HashMap();
+
+	private int m_asyncQueueSize = 4;
+
+	private OverflowPolicy m_overflowPolicy = OverflowPolicy.BLOCK;
+
+	/**
+	 * Delivers asynchronous notifications, created when the first asynchronous notification is made.
+	 */
+	private ThreadPoolExecutor m_asyncExecutor;
+
+	/**
+	 * The number of asynchronous notifications that have been queued but not yet completed, guarded by
+	 * m_pendingLock.
+	 */
+	private int m_pendingCount = 0;
+
+	private final Object m_pendingLock = new Object();
+
 	/**
 	 * Adds a new listener that will be notified when the event represented by the given name is fired.
 	 * 
@@ -45,11 +104,26 @@ public class EventManager {
 	 * @param a_eventListenerToAdd the genetic listener to subscribe to notifications of the given event.
 	 */
 	public synchronized void addEventListener(String a_eventName, GeneticEventListener a_eventListenerToAdd) {
-		List eventListeners = (List) m_listeners.get(a_eventName);
+		addEventListener(a_eventName, a_eventListenerToAdd, false);
+	}
+
+	/**
+	 * Adds a new listener that will be notified when the event represented by the given name is fired.
+	 * 
+	 * @param a_eventName the name of the event to which the given listener should be subscribed. Standard events are
+	 *            represented by constants in the GeneticEvent class.
+	 * @param a_eventListenerToAdd the genetic listener to subscribe to notifications of the given event.
+	 * @param a_async if true then the listener is notified on a background thread, and if the source of the event is a
+	 *            Genotype the listener receives a GenotypeSnapshot as the source instead. The listener must not
+	 *            modify any state used by the thread firing the event.
+	 */
+	public synchronized void addEventListener(String a_eventName, GeneticEventListener a_eventListenerToAdd, boolean a_async) {
+		Map listeners = a_async ? m_asyncListeners : m_listeners;
+		List eventListeners = (List) listeners.get(a_eventName);
 
 		if (eventListeners == null) {
 			eventListeners = new LinkedList();
-			m_listeners.put(a_eventName, eventListeners);
+			listeners.put(a_eventName, eventListeners);
 		}
 
 		eventListeners.add(a_eventListenerToAdd);
@@ -57,7 +131,7 @@ public class EventManager {
 
 	/**
 	 * Removes the given listener from subscription of the indicated event. The listener will no longer be notified when
-	 * the given event occurs.
+	 * the given event occurs (however it may still be notified of asynchronous events fired before it was removed).
 	 * 
 	 * @param a_eventName the name of the event to which the given listener should be removed. Standard events are
 	 *            represented by constants in the GeneticEvent class.
@@ -69,16 +143,63 @@ public class EventManager {
 		if (eventListeners != null) {
 			eventListeners.remove(a_eventListenerToRemove);
 		}
+
+		eventListeners = (List) m_asyncListeners.get(a_eventName);
+		if (eventListeners != null) {
+			eventListeners.remove(a_eventListenerToRemove);
+		}
+	}
+
+	/**
+	 * Sets the maximum number of asynchronous notifications that may be waiting to be delivered, and what to do when
+	 * this number is reached. This must be called before any events with asynchronous listeners are fired. The
+	 * defaults are 4 and {@link OverflowPolicy#BLOCK}.
+	 * 
+	 * @param a_queueSize the maximum number of pending asynchronous notifications.
+	 * @param a_overflowPolicy what to do when an asynchronous notification is made and the queue is full.
+	 */
+	public synchronized void setAsyncQueue(int a_queueSize, OverflowPolicy a_overflowPolicy) {
+		if (a_queueSize < 1) {
+			throw new IllegalArgumentException("The asynchronous event queue size must be at least 1.");
+		}
+		if (m_asyncExecutor != null) {
+			throw new IllegalStateException("The asynchronous event queue may not be changed once it is in use.");
+		}
+		m_asyncQueueSize = a_queueSize;
+		m_overflowPolicy = a_overflowPolicy;
 	}
 
 	/**
 	 * Fires a genetic event. All subscribers of that particular event type (as determined by the name of the event)
-	 * will be notified of it having been fired.
+	 * will be notified of it having been fired. Synchronous subscribers are notified before this method returns,
+	 * asynchronous subscribers are notified on a background thread (unless the event is discarded according to the
+	 * overflow policy). If the event is a {@link GeneticEvent#RUN_COMPLETED_EVENT} then this method waits for all
+	 * pending asynchronous notifications to be completed.
 	 * 
 	 * @param a_eventToFire The representation of the GeneticEvent to fire.
 	 */
-	public synchronized void fireGeneticEvent(GeneticEvent a_eventToFire) {
-		List eventListeners = (List) m_listeners.get(a_eventToFire.getEventName());
+	public void fireGeneticEvent(GeneticEvent a_eventToFire) {
+		List eventListeners;
+		List asyncEventListeners;
+		synchronized (this) {
+			eventListeners = copyListeners(m_listeners, a_eventToFire.getEventName());
+			asyncEventListeners = copyListeners(m_asyncListeners, a_eventToFire.getEventName());
+		}
+
+		boolean runCompleted = GeneticEvent.RUN_COMPLETED_EVENT.equals(a_eventToFire.getEventName());
+		if (runCompleted) {
+			// Make room so that the run completed event is never discarded.
+			flush();
+		}
+
+		if (asyncEventListeners != null) {
+			GeneticEvent asyncEvent = a_eventToFire;
+			if (a_eventToFire.getSource() instanceof Genotype) {
+				// Take the snapshot before the synchronous listeners are notified, as some of them modify the Genotype.
+				asyncEvent = new GeneticEvent(a_eventToFire.getEventName(), new GenotypeSnapshot((Genotype) a_eventToFire.getSource()));
+			}
+			submitAsync(new AsyncNotification(asyncEvent, asyncEventListeners));
+		}
 
 		if (eventListeners != null) {
 			// Iterate over the listeners and notify each one of the event.
@@ -88,5 +209,123 @@ public class EventManager {
 				((GeneticEventListener) listenerIterator.next()).geneticEventFired(a_eventToFire);
 			}
 		}
+
+		if (runCompleted) {
+			flush();
+		}
+	}
+
+	/**
+	 * Runs the given task on the same background thread and queue used to notify asynchronous listeners, subject to
+	 * the same overflow policy. This allows other slow operations to be performed in order with the asynchronous
+	 * notifications, for example writing files.
+	 * 
+	 * @param a_task The task to run.
+	 */
+	public void submitAsync(final Runnable a_task) {
+		ThreadPoolExecutor executor;
+		synchronized (this) {
+			if (m_asyncExecutor == null) {
+				m_asyncExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(m_asyncQueueSize), new DaemonThreadFactory("EventManager"), new OverflowHandler());
+				m_asyncExecutor.allowCoreThreadTimeOut(true);
+			}
+			executor = m_asyncExecutor;
+		}
+		synchronized (m_pendingLock) {
+			m_pendingCount++;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						a_task.run();
+					} catch (Throwable e) {
+						logger.error("Error in asynchronous genetic event notification or task.", e);
+					} finally {
+						taskFinished();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// Discarded according to the overflow policy.
+			taskFinished();
+			logger.warn("Asynchronous genetic event queue is full, discarding notification or task: " + a_task);
+		}
+	}
+
+	/**
+	 * Waits until all pending asynchronous notifications and tasks have been completed.
+	 */
+	public void flush() {
+		synchronized (m_pendingLock) {
+			while (m_pendingCount > 0) {
+				try {
+					m_pendingLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private void taskFinished() {
+		synchronized (m_pendingLock) {
+			m_pendingCount--;
+			if (m_pendingCount == 0) {
+				m_pendingLock.notifyAll();
+			}
+		}
+	}
+
+	private static List copyListeners(Map listeners, String a_eventName) {
+		List eventListeners = (List) listeners.get(a_eventName);
+		return (eventListeners == null || eventListeners.isEmpty()) ? null : new ArrayList(eventListeners);
+	}
+
+	/**
+	 * Implements the overflow policy when the asynchronous queue is full.
+	 */
+	private class OverflowHandler implements RejectedExecutionHandler {
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (m_overflowPolicy == OverflowPolicy.BLOCK && !executor.isShutdown()) {
+				try {
+					executor.getQueue().put(r);
+					return;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			throw new RejectedExecutionException();
+		}
+	}
+
+	/**
+	 * Notifies a list of asynchronous listeners of an event.
+	 */
+	private static class AsyncNotification implements Runnable {
+		private final GeneticEvent event;
+		private final List listeners;
+
+		public AsyncNotification(GeneticEvent event, List listeners) {
+			this.event = event;
+			this.listeners = listeners;
+		}
+
+		public void run() {
+			Iterator listenerIterator = listeners.iterator();
+			while (listenerIterator.hasNext()) {
+				GeneticEventListener listener = (GeneticEventListener) listenerIterator.next();
+				try {
+					listener.geneticEventFired(event);
+				} catch (Throwable e) {
+					logger.error("Error notifying " + listener + " of " + event.getEventName() + ".", e);
+				}
+			}
+		}
+
+		public String toString() {
+			return event.getEventName();
+		}
 	}
 }
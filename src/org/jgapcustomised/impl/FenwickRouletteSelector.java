@@ -0,0 +1,165 @@
+package org.jgapcustomised.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jgapcustomised.Chromosome;
+import org.jgapcustomised.Configuration;
+import org.jgapcustomised.NaturalSelector;
+
+import com.anji.util.Configurable;
+import com.anji.util.Properties;
+import com.ojcoleman.ahni.util.AliasSampler;
+import com.ojcoleman.ahni.util.FenwickSampler;
+
+/**
+ * A roulette wheel selector with the same selection semantics as {@link WeightedRouletteSelector}, but which is
+ * efficient for large populations. Each Chromosome occupies a portion of the wheel proportional to its (speciated, see
+ * {@link NaturalSelector#setSpeciatedFitness(boolean)}) fitness multiplied by the number of times it has been added.
+ * By default selection is without replacement: each time a Chromosome is selected one instance of it is removed from
+ * the wheel. The wheel is stored in a {@link FenwickSampler}, so each spin takes O(log n) time rather than O(n), and
+ * fitness values are used as doubles rather than being scaled to integer slot counts. If
+ * {@link #REPLACEMENT_KEY} is set to true then selection is with replacement, and an {@link AliasSampler} is used so
+ * that each spin takes constant time.
+ *
+ * If the remaining Chromosomes on the wheel all have zero fitness then they are selected uniformly at random.
+ *
+ * @author Oliver Coleman
+ */
+public class FenwickRouletteSelector extends NaturalSelector implements Configurable {
+	/**
+	 * Properties key, whether selected Chromosomes remain on the wheel and may be selected again. Default is false.
+	 */
+	public static final String REPLACEMENT_KEY = "selector.roulette.replacement";
+
+	private boolean replacement = false;
+
+	private List<Chromosome> chromosomes = new ArrayList<Chromosome>();
+	private Map<Chromosome, Integer> indices = new HashMap<Chromosome, Integer>();
+	// The fitness of, and number of instances added of, each Chromosome in chromosomes.
+	private double[] fitnessValues = new double[16];
+	private int[] counts = new int[16];
+
+	@Override
+	public void init(Properties props) throws Exception {
+		replacement = props.getBooleanProperty(REPLACEMENT_KEY, replacement);
+	}
+
+	/**
+	 * Set whether selection is with replacement.
+	 */
+	public void setReplacement(boolean replacement) {
+		this.replacement = replacement;
+	}
+
+	/**
+	 * Add a Chromosome instance to this selector's working pool of Chromosomes.
+	 *
+	 * @param config The current active Configuration to be used during the add process.
+	 * @param c The specimen to add to the pool.
+	 */
+	@Override
+	protected synchronized void add(Configuration config, Chromosome c) {
+		Integer index = indices.get(c);
+		if (index != null) {
+			counts[index]++;
+		} else {
+			c.setIsSelectedForNextGeneration(false);
+			int i = chromosomes.size();
+			if (i == counts.length) {
+				fitnessValues = Arrays.copyOf(fitnessValues, i * 2);
+				counts = Arrays.copyOf(counts, i * 2);
+			}
+			chromosomes.add(c);
+			indices.put(c, i);
+			double fitness = speciatedFitness ? c.getSpeciatedFitnessValue() : c.getFitnessValue();
+			// Negative and NaN (unevaluated) fitness values are given no chance of selection.
+			fitnessValues[i] = fitness > 0 ? fitness : 0;
+			counts[i] = 1;
+		}
+	}
+
+	/**
+	 * Select the given number of Chromosomes by spinning the wheel, see {@link FenwickRouletteSelector}.
+	 *
+	 * @param config The current active Configuration that is to be used during the selection process.
+	 * @param numToSelect The number of Chromosomes to select.
+	 * @return List contains Chromosome objects. Without replacement this will contain fewer than numToSelect
+	 *         Chromosomes if fewer than that have been added.
+	 */
+	@Override
+	protected synchronized List<Chromosome> select(Configuration config, int numToSelect) {
+		List<Chromosome> result = new ArrayList<Chromosome>(numToSelect);
+		int size = chromosomes.size();
+		if (size == 0) {
+			return result;
+		}
+		Random random = config.getRandomGenerator();
+		double[] weights = new double[size];
+		for (int i = 0; i < size; i++) {
+			weights[i] = fitnessValues[i] * counts[i];
+		}
+
+		if (replacement) {
+			AliasSampler sampler = new AliasSampler(weights, size);
+			while (result.size() < numToSelect) {
+				int i = sampler.sample(random);
+				if (i == -1) {
+					i = random.nextInt(size);
+				}
+				select(i, result);
+			}
+		} else {
+			FenwickSampler sampler = new FenwickSampler(weights, size);
+			int[] remaining = Arrays.copyOf(counts, size);
+			int remainingTotal = 0;
+			for (int i = 0; i < size; i++) {
+				remainingTotal += remaining[i];
+			}
+			while (result.size() < numToSelect && remainingTotal > 0) {
+				int i = sampler.sample(random);
+				if (i == -1) {
+					i = selectUniformly(random, remaining, remainingTotal);
+				}
+				remaining[i]--;
+				remainingTotal--;
+				// Set rather than subtract from the weight so that it is exactly 0 once no instances remain.
+				sampler.setWeight(i, fitnessValues[i] * remaining[i]);
+				select(i, result);
+			}
+		}
+		return result;
+	}
+
+	private void select(int index, List<Chromosome> result) {
+		Chromosome c = chromosomes.get(index);
+		c.setIsSelectedForNextGeneration(true);
+		result.add(c);
+	}
+
+	// Select an index with probability proportional to the given number of remaining instances.
+	private static int selectUniformly(Random random, int[] remaining, int remainingTotal) {
+		int r = random.nextInt(remainingTotal);
+		int i = 0;
+		while (r >= remaining[i]) {
+			r -= remaining[i];
+			i++;
+		}
+		return i;
+	}
+
+	@Override
+	protected synchronized void emptyImpl() {
+		chromosomes.clear();
+		indices.clear();
+	}
+
+	@Override
+	public boolean changesOverallFitness() {
+		return false;
+	}
+}